@@ -41,6 +41,10 @@ CREATE UNIQUE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issu
 -- Do not apply both of them!
 -- CREATE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issuerDN);
 
+-- Only used when database.certificatesearchindex.enabled=true, for searching certificates in the RA web
+CREATE INDEX certificatesearchtoken_idx1 ON CertificateSearchTokenData (searchToken, tokenType);
+CREATE INDEX certificatesearchtoken_idx2 ON CertificateSearchTokenData (fingerprint);
+
 CREATE INDEX historydata_idx1 ON CertReqHistoryData (username);
 CREATE INDEX historydata_idx3 ON CertReqHistoryData (serialNumber);
 
@@ -193,6 +193,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint VARCHAR(254) NOT NULL,
+    id VARCHAR(254) NOT NULL,
+    rowProtection CLOB(10K),
+    rowVersion INTEGER NOT NULL,
+    searchToken VARCHAR(254) NOT NULL,
+    tokenType INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE CryptoTokenData (
     id INTEGER NOT NULL,
     lastUpdate BIGINT NOT NULL,
@@ -336,6 +346,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk VARCHAR(254) NOT NULL,
+    claimExpireTime BIGINT,
+    claimOwner VARCHAR(254),
     fingerprint VARCHAR(254),
     lastUpdate BIGINT NOT NULL,
     publishStatus INTEGER NOT NULL,
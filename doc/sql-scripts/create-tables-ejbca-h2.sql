@@ -167,6 +167,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint VARCHAR(256) NOT NULL,
+    id VARCHAR(256) NOT NULL,
+    rowProtection VARCHAR,
+    rowVersion INTEGER NOT NULL,
+    searchToken VARCHAR(256) NOT NULL,
+    tokenType INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE CryptoTokenData (
     id INTEGER NOT NULL,
     lastUpdate BIGINT NOT NULL,
@@ -310,6 +320,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk VARCHAR(256) NOT NULL,
+    claimExpireTime BIGINT,
+    claimOwner VARCHAR(256),
     fingerprint VARCHAR(256),
     lastUpdate BIGINT NOT NULL,
     publishStatus INTEGER NOT NULL,
@@ -167,6 +167,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint VARCHAR(256) NOT NULL,
+    id VARCHAR(256) NOT NULL,
+    rowProtection LONG VARCHAR with null,
+    rowVersion INT4 NOT NULL,
+    searchToken VARCHAR(256) NOT NULL,
+    tokenType INT4 NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE CryptoTokenData (
     id INT4 NOT NULL,
     lastUpdate BIGINT NOT NULL,
@@ -310,6 +320,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk VARCHAR(256) NOT NULL,
+    claimExpireTime INT8 with null,
+    claimOwner VARCHAR(256) with null,
     fingerprint VARCHAR(256) with null,
     lastUpdate INT8 NOT NULL,
     publishStatus INT4 NOT NULL,
@@ -170,6 +170,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 ) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint VARCHAR(250) BINARY NOT NULL,
+    id VARCHAR(250) BINARY NOT NULL,
+    rowProtection LONGTEXT,
+    rowVersion INT(11) NOT NULL,
+    searchToken VARCHAR(250) BINARY NOT NULL,
+    tokenType INT(11) NOT NULL,
+    PRIMARY KEY (id)
+) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
+
 CREATE TABLE CryptoTokenData (
     id INT(11) NOT NULL,
     lastUpdate BIGINT(20) NOT NULL,
@@ -313,6 +323,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk VARCHAR(250) BINARY NOT NULL,
+    claimExpireTime BIGINT(20),
+    claimOwner VARCHAR(250) BINARY,
     fingerprint VARCHAR(250) BINARY,
     lastUpdate BIGINT(20) NOT NULL,
     publishStatus INT(11) NOT NULL,
@@ -167,6 +167,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint VARCHAR2(255 byte) NOT NULL,
+    id VARCHAR2(255 byte) NOT NULL,
+    rowProtection CLOB,
+    rowVersion NUMBER(10) NOT NULL,
+    searchToken VARCHAR2(255 byte) NOT NULL,
+    tokenType NUMBER(10) NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE CryptoTokenData (
     id NUMBER(10) NOT NULL,
     lastUpdate NUMBER(19) NOT NULL,
@@ -310,6 +320,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk VARCHAR2(255 byte) NOT NULL,
+    claimExpireTime NUMBER(19),
+    claimOwner VARCHAR2(255 byte),
     fingerprint VARCHAR2(255 byte),
     lastUpdate NUMBER(19) NOT NULL,
     publishStatus NUMBER(10) NOT NULL,
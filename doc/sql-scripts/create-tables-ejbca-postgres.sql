@@ -167,6 +167,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint TEXT NOT NULL,
+    id TEXT NOT NULL,
+    rowProtection TEXT,
+    rowVersion INT4 NOT NULL,
+    searchToken TEXT NOT NULL,
+    tokenType INT4 NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE CryptoTokenData (
     id INT4 NOT NULL,
     lastUpdate INT8 NOT NULL,
@@ -310,6 +320,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk TEXT NOT NULL,
+    claimExpireTime INT8,
+    claimOwner TEXT,
     fingerprint TEXT,
     lastUpdate INT8 NOT NULL,
     publishStatus INT4 NOT NULL,
@@ -167,6 +167,16 @@ CREATE TABLE CertificateProfileData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE CertificateSearchTokenData (
+    fingerprint VARCHAR(255) NOT NULL,
+    id VARCHAR(255) NOT NULL,
+    rowProtection TEXT,
+    rowVersion INTEGER NOT NULL,
+    searchToken VARCHAR(255) NOT NULL,
+    tokenType INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE CryptoTokenData (
     id INTEGER NOT NULL,
     lastUpdate DECIMAL(20,0) NOT NULL,
@@ -310,6 +320,8 @@ CREATE TABLE PublisherData (
 
 CREATE TABLE PublisherQueueData (
     pk VARCHAR(255) NOT NULL,
+    claimExpireTime DECIMAL(20,0),
+    claimOwner VARCHAR(255),
     fingerprint VARCHAR(255),
     lastUpdate DECIMAL(20,0) NOT NULL,
     publishStatus INTEGER NOT NULL,
@@ -13,6 +13,7 @@ drop table CRLData if exists;
 drop table CertReqHistoryData if exists;
 drop table CertificateData if exists;
 drop table CertificateProfileData if exists;
+drop table CertificateSearchTokenData if exists;
 drop table CryptoTokenData if exists;
 drop table EndEntityProfileData if exists;
 drop table GlobalConfigurationData if exists;
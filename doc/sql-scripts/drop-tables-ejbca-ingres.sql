@@ -11,6 +11,7 @@ drop table CRLData;
 drop table CertReqHistoryData;
 drop table CertificateData;
 drop table CertificateProfileData;
+drop table CertificateSearchTokenData;
 drop table CryptoTokenData;
 drop table EndEntityProfileData;
 drop table GlobalConfigurationData;
@@ -13,6 +13,7 @@ drop table if exists CRLData;
 drop table if exists CertReqHistoryData;
 drop table if exists CertificateData;
 drop table if exists CertificateProfileData;
+drop table if exists CertificateSearchTokenData;
 drop table if exists CryptoTokenData;
 drop table if exists EndEntityProfileData;
 drop table if exists GlobalConfigurationData;
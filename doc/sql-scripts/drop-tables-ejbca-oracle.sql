@@ -11,6 +11,7 @@ drop table CRLData cascade constraints;
 drop table CertReqHistoryData cascade constraints;
 drop table CertificateData cascade constraints;
 drop table CertificateProfileData cascade constraints;
+drop table CertificateSearchTokenData cascade constraints;
 drop table CryptoTokenData cascade constraints;
 drop table EndEntityProfileData cascade constraints;
 drop table GlobalConfigurationData cascade constraints;
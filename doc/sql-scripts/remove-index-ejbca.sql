@@ -19,6 +19,9 @@ DROP INDEX certificatedata_idx12 ON CertificateData;
 -- ALTER TABLE CertificateData DROP INDEX certificatedata_idx13;
 -- ALTER TABLE CertificateData DROP INDEX certificatedata_idx14;
 
+DROP INDEX certificatesearchtoken_idx1 ON CertificateSearchTokenData;
+DROP INDEX certificatesearchtoken_idx2 ON CertificateSearchTokenData;
+
 DROP INDEX historydata_idx1 ON CertReqHistoryData;
 DROP INDEX historydata_idx3 ON CertReqHistoryData;
 
@@ -0,0 +1,85 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.authorization.control.StandardRules;
+import org.cesecore.roles.AccessRulesHelper;
+import org.cesecore.roles.AccessRulesTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Authorization checks against the access rules of a role with rules for many CAs and profiles.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessRulesBenchmark {
+
+    private final HashMap<String, Boolean> accessRules = new HashMap<>();
+    private AccessRulesTrie accessRulesTrie;
+    private String allowedResource;
+    private String deniedResource;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < 200; i++) {
+            accessRules.put(StandardRules.CAACCESS.resource() + (1000 + i) + "/", Boolean.TRUE);
+            accessRules.put("/endentityprofilesrules/" + (2000 + i) + "/", Boolean.TRUE);
+            accessRules.put("/endentityprofilesrules/" + (2000 + i) + "/revoke_end_entity/", Boolean.FALSE);
+        }
+        accessRules.put(StandardRules.ROLE_ROOT.resource(), Boolean.FALSE);
+        accessRules.put("/ra_functionality/", Boolean.TRUE);
+        AccessRulesHelper.normalizeResources(accessRules);
+        accessRulesTrie = new AccessRulesTrie(accessRules);
+        allowedResource = "/endentityprofilesrules/2150/create_end_entity";
+        deniedResource = "/endentityprofilesrules/2150/revoke_end_entity";
+    }
+
+    @Benchmark
+    public boolean hasAccessToResourceAllowed() {
+        return AccessRulesHelper.hasAccessToResource(accessRules, allowedResource);
+    }
+
+    @Benchmark
+    public boolean hasAccessToResourceDenied() {
+        return AccessRulesHelper.hasAccessToResource(accessRules, deniedResource);
+    }
+
+    @Benchmark
+    public boolean trieHasAccessToResourceAllowed() {
+        return accessRulesTrie.hasAccessToResource(allowedResource);
+    }
+
+    @Benchmark
+    public boolean trieHasAccessToResourceDenied() {
+        return accessRulesTrie.hasAccessToResource(deniedResource);
+    }
+}
@@ -0,0 +1,189 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.bouncycastle.jce.X509KeyUsage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.InvalidAlgorithmException;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.ca.catoken.CAToken;
+import org.cesecore.certificates.ca.catoken.CATokenConstants;
+import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.certificates.endentity.EndEntityType;
+import org.cesecore.certificates.endentity.EndEntityTypes;
+import org.cesecore.keys.token.CryptoToken;
+import org.cesecore.keys.token.CryptoTokenFactory;
+import org.cesecore.keys.token.SoftCryptoToken;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.StringTools;
+
+/**
+ * Realistic CA set-up for the benchmarks: a root CA and an issuing sub CA with keys in soft crypto tokens, an end entity
+ * certificate issued by the sub CA and revocation lists of any size.
+ *
+ * @version $Id$
+ */
+public final class CaFixture {
+
+    public static final String ROOT_CA_DN = "CN=Benchmark Root CA,O=EJBCA Benchmark,C=SE";
+    public static final String SUB_CA_DN = "CN=Benchmark Issuing CA,O=EJBCA Benchmark,C=SE";
+    public static final String USER_DN = "CN=benchmark user,OU=Devices,O=EJBCA Benchmark,C=SE";
+
+    private final AvailableCustomCertificateExtensionsConfiguration cceConfig = new AvailableCustomCertificateExtensionsConfiguration();
+    private final CryptoToken rootCryptoToken;
+    private final CryptoToken subCryptoToken;
+    private final X509CA rootCa;
+    private final X509CA subCa;
+    private final KeyPair userKeyPair;
+    private final X509Certificate userCertificate;
+    private final CertificateProfile endUserProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+
+    /**
+     * @param signatureAlgorithm signature algorithm of the CAs, for example SHA256WithRSA
+     * @param keySpec key specification of the CA and end entity keys, for example 2048 for RSA or prime256v1 for EC
+     */
+    public CaFixture(final String signatureAlgorithm, final String keySpec) throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final String keyAlgorithm = signatureAlgorithm.toUpperCase().contains("ECDSA") ? "EC" : "RSA";
+        rootCryptoToken = createCryptoToken(1, keySpec);
+        subCryptoToken = createCryptoToken(2, keySpec);
+        rootCa = createCa(rootCryptoToken, ROOT_CA_DN, signatureAlgorithm, CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA, CAInfo.SELFSIGNED);
+        final PublicKey rootPublicKey = rootCryptoToken.getPublicKey(CAToken.SOFTPRIVATESIGNKEYALIAS);
+        final PrivateKey rootPrivateKey = rootCryptoToken.getPrivateKey(CAToken.SOFTPRIVATESIGNKEYALIAS);
+        final X509Certificate rootCertificate = CertTools.genSelfCertForPurpose(ROOT_CA_DN, 3650L, null, rootPrivateKey, rootPublicKey,
+                signatureAlgorithm, true, X509KeyUsage.keyCertSign + X509KeyUsage.cRLSign, null, null, BouncyCastleProvider.PROVIDER_NAME);
+        rootCa.setCertificateChain(Arrays.<Certificate>asList(rootCertificate));
+
+        subCa = createCa(subCryptoToken, SUB_CA_DN, signatureAlgorithm, CertificateProfileConstants.CERTPROFILE_FIXED_SUBCA, rootCa.getCAId());
+        final EndEntityInformation subCaEntity = new EndEntityInformation("benchmarksubca", SUB_CA_DN, rootCa.getCAId(), null, null,
+                new EndEntityType(EndEntityTypes.ENDUSER), 0, CertificateProfileConstants.CERTPROFILE_FIXED_SUBCA, EndEntityConstants.TOKEN_USERGEN, 0, null);
+        final Certificate subCaCertificate = rootCa.generateCertificate(rootCryptoToken, subCaEntity,
+                subCryptoToken.getPublicKey(CAToken.SOFTPRIVATESIGNKEYALIAS), -1, null, "3650d",
+                new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_SUBCA), "00000", cceConfig);
+        final List<Certificate> subCaChain = new ArrayList<>();
+        subCaChain.add(subCaCertificate);
+        subCaChain.add(rootCertificate);
+        subCa.setCertificateChain(subCaChain);
+
+        userKeyPair = KeyTools.genKeys(keySpec, keyAlgorithm);
+        userCertificate = (X509Certificate) issueCertificate(USER_DN, userKeyPair.getPublic());
+    }
+
+    /** Issue an end entity certificate from the sub CA */
+    public Certificate issueCertificate(final String subjectDn, final PublicKey publicKey) throws Exception {
+        final EndEntityInformation user = new EndEntityInformation("benchmarkuser", subjectDn, subCa.getCAId(), "dNSName=device.example.com",
+                null, new EndEntityType(EndEntityTypes.ENDUSER), 0, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER,
+                EndEntityConstants.TOKEN_USERGEN, 0, null);
+        return subCa.generateCertificate(subCryptoToken, user, publicKey, -1, null, "365d", endUserProfile, "00000", cceConfig);
+    }
+
+    /** @return the given number of revoked certificates with random serial numbers, as for a large CRL */
+    public static Collection<RevokedCertInfo> createRevokedCertificates(final int count) {
+        final Random random = new Random(count);
+        final long now = System.currentTimeMillis();
+        final List<RevokedCertInfo> revoked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final BigInteger serialNumber = new BigInteger(63, random);
+            final byte[] fingerprint = new byte[20];
+            random.nextBytes(fingerprint);
+            revoked.add(new RevokedCertInfo(fingerprint, serialNumber.toByteArray(), now - random.nextInt(1000000000),
+                    RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, now + 365L * 24 * 3600 * 1000));
+        }
+        return revoked;
+    }
+
+    public CryptoToken getSubCryptoToken() {
+        return subCryptoToken;
+    }
+
+    public X509CA getSubCa() {
+        return subCa;
+    }
+
+    public X509Certificate getSubCaCertificate() {
+        return (X509Certificate) subCa.getCACertificate();
+    }
+
+    public PrivateKey getSubCaPrivateKey() throws Exception {
+        return subCryptoToken.getPrivateKey(CAToken.SOFTPRIVATESIGNKEYALIAS);
+    }
+
+    public KeyPair getUserKeyPair() {
+        return userKeyPair;
+    }
+
+    public X509Certificate getUserCertificate() {
+        return userCertificate;
+    }
+
+    public CertificateProfile getEndUserProfile() {
+        return endUserProfile;
+    }
+
+    public AvailableCustomCertificateExtensionsConfiguration getCustomCertificateExtensionsConfiguration() {
+        return cceConfig;
+    }
+
+    private static CryptoToken createCryptoToken(final int id, final String keySpec) throws Exception {
+        final Properties cryptoTokenProperties = new Properties();
+        cryptoTokenProperties.setProperty(CryptoToken.AUTOACTIVATE_PIN_PROPERTY, "foo1234");
+        final CryptoToken cryptoToken = CryptoTokenFactory.createCryptoToken(SoftCryptoToken.class.getName(), cryptoTokenProperties, null, id,
+                "Benchmark CryptoToken " + id);
+        cryptoToken.generateKeyPair(keySpec, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        cryptoToken.generateKeyPair(keySpec, CAToken.SOFTPRIVATEDECKEYALIAS);
+        return cryptoToken;
+    }
+
+    private static X509CA createCa(final CryptoToken cryptoToken, final String dn, final String signatureAlgorithm, final int certificateProfileId,
+            final int signedBy) throws InvalidAlgorithmException {
+        final Properties caTokenProperties = new Properties();
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CERTSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CRLSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_DEFAULT_STRING, CAToken.SOFTPRIVATEDECKEYALIAS);
+        final CAToken caToken = new CAToken(cryptoToken.getId(), caTokenProperties);
+        caToken.setKeySequence(CAToken.DEFAULT_KEYSEQUENCE);
+        caToken.setKeySequenceFormat(StringTools.KEY_SEQUENCE_FORMAT_NUMERIC);
+        caToken.setSignatureAlgorithm(signatureAlgorithm);
+        caToken.setEncryptionAlgorithm(signatureAlgorithm);
+        final X509CAInfo caInfo = new X509CAInfo(dn, CertTools.getPartFromDN(dn, "CN"), CAConstants.CA_ACTIVE, certificateProfileId, "3650d",
+                signedBy, null, caToken);
+        caInfo.setDescription("Benchmark CA");
+        final X509CA ca = new X509CA(caInfo);
+        ca.setCAToken(caToken);
+        return ca;
+    }
+}
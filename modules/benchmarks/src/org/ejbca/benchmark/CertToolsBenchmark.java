@@ -0,0 +1,63 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.cesecore.util.CertTools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DN parsing and certificate decoding, done for almost every request.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CertToolsBenchmark {
+
+    private static final String DN = "CN=benchmark user,SN=123456789,OU=Devices,OU=Production,O=EJBCA Benchmark,L=Stockholm,ST=Stockholm,C=SE";
+
+    private byte[] encodedCertificate;
+
+    @Setup
+    public void setup() throws Exception {
+        encodedCertificate = new CaFixture("SHA256WithRSA", "2048").getUserCertificate().getEncoded();
+    }
+
+    @Benchmark
+    public X500Name stringToBcX500Name() {
+        return CertTools.stringToBcX500Name(DN);
+    }
+
+    @Benchmark
+    public X509Certificate getCertfromByteArray() throws Exception {
+        return CertTools.getCertfromByteArray(encodedCertificate, X509Certificate.class);
+    }
+}
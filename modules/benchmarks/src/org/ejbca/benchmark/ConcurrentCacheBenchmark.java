@@ -0,0 +1,73 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.util.ConcurrentCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cache lookups with many threads, mostly hits as for the OCSP and authorization caches.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ConcurrentCacheBenchmark {
+
+    @Param({ "100", "10000" })
+    public int keys;
+
+    private ConcurrentCache<Integer, String> cache;
+
+    @Setup
+    public void setup() {
+        cache = new ConcurrentCache<>();
+        cache.setMaxEntries(keys * 2L);
+        for (int i = 0; i < keys; i++) {
+            final ConcurrentCache<Integer, String>.Entry entry = cache.openCacheEntry(i, 1000);
+            entry.putValue("value " + i);
+            entry.setCacheValidity(TimeUnit.HOURS.toMillis(1));
+            entry.close();
+        }
+    }
+
+    @Benchmark
+    public String openCacheEntry() {
+        final ConcurrentCache<Integer, String>.Entry entry = cache.openCacheEntry(ThreadLocalRandom.current().nextInt(keys), 1000);
+        try {
+            return entry.getValue();
+        } finally {
+            entry.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.cesecore.certificates.ocsp.HsmResponseThread;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing an OCSP request and building a signed response for it, the same way as the OCSP responder does.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OcspResponseBenchmark {
+
+    @Param({ "SHA256WithRSA:2048", "SHA256WithECDSA:prime256v1" })
+    public String algorithm;
+
+    private String signatureAlgorithm;
+    private byte[] encodedRequest;
+    private X509Certificate[] signerChain;
+    private PrivateKey signerKey;
+    private RespID respId;
+
+    @Setup
+    public void setup() throws Exception {
+        final String[] algorithmAndKeySpec = algorithm.split(":");
+        signatureAlgorithm = algorithmAndKeySpec[0];
+        final CaFixture fixture = new CaFixture(signatureAlgorithm, algorithmAndKeySpec[1]);
+        final X509Certificate caCertificate = fixture.getSubCaCertificate();
+        final CertificateID certificateId = new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(caCertificate), fixture.getUserCertificate().getSerialNumber());
+        final OCSPReqBuilder requestBuilder = new OCSPReqBuilder();
+        requestBuilder.addRequest(certificateId);
+        final byte[] nonce = new byte[16];
+        requestBuilder.setRequestExtensions(new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(nonce))));
+        encodedRequest = requestBuilder.build().getEncoded();
+        signerChain = new X509Certificate[] { caCertificate };
+        signerKey = fixture.getSubCaPrivateKey();
+        respId = new RespID(new JcaX509CertificateHolder(caCertificate).getSubject());
+    }
+
+    @Benchmark
+    public byte[] buildResponse() throws Exception {
+        final OCSPReq request = new OCSPReq(encodedRequest);
+        final BasicOCSPRespBuilder responseBuilder = new BasicOCSPRespBuilder(respId);
+        for (final Req singleRequest : request.getRequestList()) {
+            final Date now = new Date();
+            responseBuilder.addResponse(singleRequest.getCertID(), CertificateStatus.GOOD, now, new Date(now.getTime() + 60000L), null);
+        }
+        final Extension nonce = request.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce);
+        if (nonce != null) {
+            responseBuilder.setResponseExtensions(new Extensions(nonce));
+        }
+        final BasicOCSPResp basicResponse = new HsmResponseThread(responseBuilder, signatureAlgorithm, signerKey, signerChain,
+                BouncyCastleProvider.PROVIDER_NAME, null).call();
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResponse).getEncoded();
+    }
+}
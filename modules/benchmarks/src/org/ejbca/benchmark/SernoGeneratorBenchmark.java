@@ -0,0 +1,76 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.ca.internal.SernoGenerator;
+import org.cesecore.certificates.ca.internal.SernoGeneratorRandom;
+import org.cesecore.config.ConfigurationHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serial number generation with one or several SecureRandom instances (ca.rnginstances), with 1 and 16 threads, to see how
+ * certificate issuance scales with the number of issuing threads.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SernoGeneratorBenchmark {
+
+    @Param({ "1", "4", "16" })
+    public int rngInstances;
+
+    @Param({ "SHA1PRNG", "defaultstrong" })
+    public String rngAlgorithm;
+
+    private SernoGenerator sernoGenerator;
+
+    @Setup
+    public void setup() {
+        ConfigurationHolder.updateConfigurationWithoutBackup("ca.rnginstances", String.valueOf(rngInstances));
+        ConfigurationHolder.updateConfigurationWithoutBackup("ca.rngalgorithm", rngAlgorithm);
+        // A new generator each time, since the configuration is only read when the generator is created
+        sernoGenerator = new SernoGeneratorRandom() {};
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BigInteger getSernoOneThread() {
+        return sernoGenerator.getSerno();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public BigInteger getSernoSixteenThreads() {
+        return sernoGenerator.getSerno();
+    }
+}
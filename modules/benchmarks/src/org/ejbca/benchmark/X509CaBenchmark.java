@@ -0,0 +1,74 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.security.cert.Certificate;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.X509CRLHolder;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Certificate and CRL generation by an issuing CA with a soft crypto token.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class X509CaBenchmark {
+
+    @Param({ "SHA256WithRSA:2048", "SHA256WithECDSA:prime256v1" })
+    public String algorithm;
+
+    /** Number of revoked certificates on the CRL */
+    @Param({ "1000", "100000" })
+    public int revokedCertificates;
+
+    private CaFixture fixture;
+    private Collection<RevokedCertInfo> revoked;
+    private int crlNumber = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        final String[] algorithmAndKeySpec = algorithm.split(":");
+        fixture = new CaFixture(algorithmAndKeySpec[0], algorithmAndKeySpec[1]);
+        revoked = CaFixture.createRevokedCertificates(revokedCertificates);
+    }
+
+    @Benchmark
+    public Certificate generateCertificate() throws Exception {
+        return fixture.issueCertificate(CaFixture.USER_DN, fixture.getUserKeyPair().getPublic());
+    }
+
+    @Benchmark
+    public X509CRLHolder generateCRL() throws Exception {
+        return fixture.getSubCa().generateCRL(fixture.getSubCryptoToken(), revoked, ++crlNumber);
+    }
+}
@@ -0,0 +1,65 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.util.XmlSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of the data map of a certificate profile, as when profiles are stored and read from the database.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlSerializerBenchmark {
+
+    private Map<String, Object> data;
+    private String encoded;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() {
+        data = (Map<String, Object>) new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER).saveData();
+        encoded = XmlSerializer.encode(data);
+    }
+
+    @Benchmark
+    public String encode() {
+        return XmlSerializer.encode(data);
+    }
+
+    @Benchmark
+    public Map<String, Object> decode() {
+        return XmlSerializer.decode(encoded);
+    }
+}
@@ -58,14 +58,14 @@ public class CertStoreServlet extends StoreServletBase {
 
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
-	    returnCerts( this.certCache.findLatestByIssuerDN(HashID.getFromB64(iHash)), resp, iHash );
+	    returnCerts( this.certCache.findLatestByIssuerDN(HashID.getFromB64(iHash)), req, resp, iHash );
 		return;
 	}
 
 
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
-	    returnCert( this.certCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash)), resp, name );
+	    returnCert( this.certCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash)), req, resp, name );
 	}
 
 	@Override
@@ -76,7 +76,7 @@ public class CertStoreServlet extends StoreServletBase {
 	@Override
 	public void sHash(String sHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
 	    final X509Certificate cert = this.certCache.findLatestBySubjectDN(HashID.getFromB64(sHash));
-		returnCert( cert, resp, sHash);
+		returnCert( cert, req, resp, sHash);
 	}
 
 	@Override
@@ -93,11 +93,14 @@ public class CertStoreServlet extends StoreServletBase {
 		return "CA certificates";
 	}
 
-	private void returnCert(X509Certificate cert, HttpServletResponse resp, String name) throws IOException, ServletException {
+	private void returnCert(X509Certificate cert, HttpServletRequest req, HttpServletResponse resp, String name) throws IOException, ServletException {
 		if (cert==null) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No certificate with hash: "+HTMLTools.htmlescape(name));
 			return;
 		}
+		if ( isNotModified(req, resp, "\"" + CertTools.getFingerprintAsString(cert) + "\"", this.certCache.getLastUpdate()) ) {
+			return;
+		}
 		final byte encoded[];
 		try {
 			encoded = cert.getEncoded();
@@ -110,11 +113,20 @@ public class CertStoreServlet extends StoreServletBase {
 		resp.getOutputStream().write(encoded);
 	}
 	
-	private void returnCerts(X509Certificate certs[], HttpServletResponse resp, String name) throws IOException, ServletException {
+	private void returnCerts(X509Certificate certs[], HttpServletRequest req, HttpServletResponse resp, String name) throws IOException, ServletException {
 		if (certs==null) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No certificates with issuer hash DN: "+HTMLTools.htmlescape(name));
 			return;
 		}
+		// The multipart boundary differs between responses, so the entity tag of the set of certificates is weak
+		final StringBuilder fingerprints = new StringBuilder();
+		for (final X509Certificate cert : certs) {
+			fingerprints.append(CertTools.getFingerprintAsString(cert)).append(';');
+		}
+		// A newly stored certificate may have an older notBefore than the ones already returned, so the validity dates can not be used
+		if ( isNotModified(req, resp, "W/\"" + CertTools.getFingerprintAsString(fingerprints.toString().getBytes()) + "\"", this.certCache.getLastUpdate()) ) {
+			return;
+		}
 		final Multipart mp = new MimeMultipart();// mixed is default
 		try {
 			resp.setContentType(mp.getContentType());
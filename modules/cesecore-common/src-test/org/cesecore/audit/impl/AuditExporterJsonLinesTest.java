@@ -0,0 +1,56 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.cesecore.audit.audit.AuditExporter;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+/**
+ * Test JSON Lines exporter implementation.
+ *
+ * @version $Id$
+ */
+public class AuditExporterJsonLinesTest {
+
+    @Test
+    public void testExportAndParse() throws Exception {
+        final String value = "ĞİŞğışÅÄÖåäö\t\"quoted\"\nnew line\\";
+        final AuditExporter auditExporter = new AuditExporterJsonLines();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        auditExporter.setOutputStream(baos);
+        for (long i = 0; i < 2; i++) {
+            auditExporter.writeStartObject();
+            auditExporter.writeField("sequenceNumber", i);
+            auditExporter.writeField("additionalDetails", value);
+            auditExporter.writeField("searchDetail1", (String) null);
+            auditExporter.writeEndObject();
+        }
+        auditExporter.close();
+        final String[] lines = new String(baos.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals("Each entry should be written on a line of its own.", 2, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            final JSONObject parsed = (JSONObject) JSONValue.parseWithException(lines[i]);
+            assertEquals(Long.valueOf(i), parsed.get("sequenceNumber"));
+            assertEquals(value, parsed.get("additionalDetails"));
+            assertNull(parsed.get("searchDetail1"));
+        }
+    }
+}
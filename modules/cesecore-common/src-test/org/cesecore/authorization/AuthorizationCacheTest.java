@@ -119,6 +119,45 @@ public class AuthorizationCacheTest {
         log.trace("<testBasicOperations");
     }
 
+    /** Test that an entry is loaded again after a failed load, instead of the failure being cached */
+    @Test
+    public void testFailedLoadIsNotCached() throws AuthenticationFailedException {
+        log.trace(">testFailedLoadIsNotCached");
+        AuthorizationCache.INSTANCE.reset();
+        final AtomicInteger loadCount = new AtomicInteger(0);
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/rule1", Boolean.TRUE);
+        final AuthenticationToken at1 = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("AuthorizationCacheTest1"));
+        final AuthorizationCacheCallback callback = new AuthorizationCacheCallback() {
+            @Override
+            public AuthorizationResult loadAuthorization(AuthenticationToken authenticationToken) throws AuthenticationFailedException {
+                if (loadCount.incrementAndGet() == 1) {
+                    throw new AuthenticationFailedException("First load fails.");
+                }
+                return new AuthorizationResult(accessRules, 0);
+            }
+            @Override
+            public long getKeepUnusedEntriesFor() {
+                return 3600000L;
+            }
+            @Override
+            public void subscribeToAuthorizationCacheReload(AuthorizationCacheReloadListener authorizationCacheReloadListener) {
+                // Not needed for this test
+            }
+        };
+        try {
+            AuthorizationCache.INSTANCE.get(at1, callback);
+            fail("The failed load should be reported to the caller.");
+        } catch (AuthenticationFailedException e) {
+            // Expected
+        }
+        assertEquals("The next lookup should load the access rules again.", 1, AuthorizationCache.INSTANCE.get(at1, callback).size());
+        assertEquals(2, loadCount.get());
+        assertEquals("The successful load should be cached.", 1, AuthorizationCache.INSTANCE.get(at1, callback).size());
+        assertEquals(2, loadCount.get());
+        log.trace("<testFailedLoadIsNotCached");
+    }
+
     /** Test already cached entries are reloaded if there is an update to the authorization system */
     @Test
     public void testSubscribeToAuthorizationCacheReload() throws InterruptedException, AuthenticationFailedException {
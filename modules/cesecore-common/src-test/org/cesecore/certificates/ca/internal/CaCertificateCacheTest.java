@@ -15,6 +15,7 @@ package org.cesecore.certificates.ca.internal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.security.SignatureException;
@@ -150,6 +151,24 @@ public class CaCertificateCacheTest {
 
 	}
 
+	@Test
+	public void test03LastUpdate() throws Exception {
+		final CaCertificateCache cache = CaCertificateCache.INSTANCE;
+		final Collection<Certificate> certs = new ArrayList<Certificate>();
+		certs.add(CertTools.getCertfromByteArray(testsub, X509Certificate.class));
+		cache.loadCertificates(new ArrayList<Certificate>());
+		cache.loadCertificates(certs);
+		final long lastUpdate = cache.getLastUpdate();
+		assertTrue("Loading new certificates should set the update time.", lastUpdate > 0);
+		Thread.sleep(10);
+		cache.loadCertificates(new ArrayList<Certificate>(certs));
+		assertEquals("Reloading the same certificates should not change the update time.", lastUpdate, cache.getLastUpdate());
+		// A certificate with an older notBefore than the cached one is still an update
+		certs.add(CertTools.getCertfromByteArray(testroot, X509Certificate.class));
+		cache.loadCertificates(certs);
+		assertTrue("Loading another certificate should change the update time.", cache.getLastUpdate() > lastUpdate);
+	}
+
 	public static Throwable threadException = null;
 	@Test
 	public void test02loadCertificates() throws Exception {
@@ -22,9 +22,19 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
+import org.cesecore.config.ConfigurationHolder;
 import org.junit.Test;
 
 
@@ -149,6 +159,49 @@ public class SernoGeneratorTest {
         log.info("Creating "+noRounds*1000+" 8 octet serNos with "+algo+" took "+(end-start)+" ms, thats "+div+" ms per serno");
     }
     
+    /** Test that threads using different random number generator instances produce unique and valid serial numbers. */
+    @Test
+    public void testGenerateSernosInParallel() throws Exception {
+        final String oldValue = ConfigurationHolder.getString("ca.rnginstances");
+        ConfigurationHolder.updateConfiguration("ca.rnginstances", "4");
+        try {
+            final SernoGeneratorRandom gen = new SernoGeneratorRandom();
+            gen.setAlgorithm("SHA1PRNG");
+            assertEquals(4, gen.getRandomInstances());
+            final int noThreads = 8;
+            final int noSernosPerThread = 20000;
+            final Set<BigInteger> sernos = Collections.newSetFromMap(new ConcurrentHashMap<BigInteger, Boolean>());
+            final ExecutorService executorService = Executors.newFixedThreadPool(noThreads);
+            try {
+                final List<Future<Integer>> futures = new ArrayList<>();
+                for (int i = 0; i < noThreads; i++) {
+                    futures.add(executorService.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() {
+                            int duplicates = 0;
+                            for (int j = 0; j < noSernosPerThread; j++) {
+                                final BigInteger serno = gen.getSerno();
+                                assertTrue("Serial number out of range: " + serno.toString(16), gen.checkSernoValidity(serno));
+                                if (!sernos.add(serno)) {
+                                    duplicates++;
+                                }
+                            }
+                            return duplicates;
+                        }
+                    }));
+                }
+                for (final Future<Integer> future : futures) {
+                    assertEquals("Duplicate 64 bit serial numbers were produced.", Integer.valueOf(0), future.get());
+                }
+            } finally {
+                executorService.shutdown();
+            }
+            assertEquals(noThreads * noSernosPerThread, sernos.size());
+        } finally {
+            ConfigurationHolder.updateConfiguration("ca.rnginstances", oldValue == null ? "1" : oldValue);
+        }
+    }
+
     private void generateSernos(final int nrOctets, final String algorithm, final int maxDups, final int roundsOf1000) throws Exception {
         // this will actually create a default RNG first (depending on configuration in cesecore.properties), which will be changed by setAlgorithm below
         SernoGenerator gen = SernoGeneratorRandom.instance();
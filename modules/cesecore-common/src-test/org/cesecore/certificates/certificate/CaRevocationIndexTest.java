@@ -0,0 +1,136 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.junit.Test;
+
+/**
+ * Test of the in-memory index of revoked certificates.
+ *
+ * @version $Id$
+ */
+public class CaRevocationIndexTest {
+
+    private static final String ISSUER_DN = "CN=RevocationIndexTest";
+    private static final BigInteger SERIAL1 = new BigInteger("1234567890");
+    private static final BigInteger SERIAL2 = new BigInteger("-42");
+
+    @Test
+    public void testLoadAndUpdate() {
+        final CaRevocationIndex index = new CaRevocationIndex(ISSUER_DN);
+        assertFalse("Index should not be authoritative before it is loaded.", index.isAuthoritative(SERIAL1));
+        final Map<BigInteger, CertificateStatus> revoked = new HashMap<>();
+        revoked.put(SERIAL1, revokedStatus(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        index.load(revoked, 1000L);
+        assertTrue(index.isAuthoritative(SERIAL1));
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, index.getRevokedStatus(SERIAL1).revocationReason);
+        assertNull("Certificate not in index should not be revoked.", index.getRevokedStatus(SERIAL2));
+        // Unrevoke SERIAL1 and revoke SERIAL2
+        final Map<BigInteger, CertificateStatus> changes = new HashMap<>();
+        changes.put(SERIAL1, new CertificateStatus(CertificateStatus.OK.toString(), 2000L, RevokedCertInfo.NOT_REVOKED, 0));
+        changes.put(SERIAL2, revokedStatus(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        assertEquals(2, index.update(changes, 2000L));
+        assertNull(index.getRevokedStatus(SERIAL1));
+        assertNotNull(index.getRevokedStatus(SERIAL2));
+        assertEquals(1, index.size());
+        assertEquals("Applying the same changes again should not change anything.", 0, index.update(changes, 3000L));
+        assertEquals(3000L, index.getLastRefreshTime());
+    }
+
+    @Test
+    public void testPending() throws Exception {
+        final CaRevocationIndex index = new CaRevocationIndex(ISSUER_DN);
+        index.load(new HashMap<BigInteger, CertificateStatus>(), 1000L);
+        index.markPending(SERIAL1);
+        assertFalse("Index should not be authoritative for pending serial numbers.", index.isAuthoritative(SERIAL1));
+        assertTrue(index.isAuthoritative(SERIAL2));
+        final long beforeRefresh = System.currentTimeMillis() + 1;
+        assertEquals(1, index.getPendingBefore(beforeRefresh).size());
+        final Map<BigInteger, CertificateStatus> changes = new HashMap<>();
+        changes.put(SERIAL1, CertificateStatus.NOT_AVAILABLE);
+        index.update(changes, beforeRefresh);
+        assertTrue("Pending mark should have been cleared by the refresh.", index.isAuthoritative(SERIAL1));
+        assertNull(index.getRevokedStatus(SERIAL1));
+    }
+
+    @Test
+    public void testDeletedEntries() throws Exception {
+        final CaRevocationIndex index = new CaRevocationIndex(ISSUER_DN);
+        final Map<BigInteger, CertificateStatus> revoked = new HashMap<>();
+        revoked.put(SERIAL1, revokedStatus(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        revoked.put(SERIAL2, revokedStatus(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        index.load(revoked, 1000L);
+        assertFalse(index.hasDeletedEntries(2));
+        assertFalse("Revocations committed after the refresh should not cause a reload.", index.hasDeletedEntries(3));
+        // The limited entry for SERIAL1 is deleted on another node, so a refresh does not read it
+        index.update(new HashMap<BigInteger, CertificateStatus>(), 2000L);
+        assertNotNull("A refresh can not see the deleted row.", index.getRevokedStatus(SERIAL1));
+        assertTrue("The deleted row should be detected from the count.", index.hasDeletedEntries(1));
+        // The stale entry survives a snapshot, and must be detected after a restart as well
+        final File file = File.createTempFile("revocationindex", ".bin");
+        try {
+            index.writeSnapshot(file);
+            final CaRevocationIndex restored = new CaRevocationIndex(ISSUER_DN);
+            assertTrue(restored.readSnapshot(file));
+            assertTrue(restored.hasDeletedEntries(1));
+            revoked.remove(SERIAL1);
+            restored.load(revoked, 3000L);
+            assertNull("Reloading should remove the deleted entry.", restored.getRevokedStatus(SERIAL1));
+            assertFalse(restored.hasDeletedEntries(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final CaRevocationIndex index = new CaRevocationIndex(ISSUER_DN);
+        final Map<BigInteger, CertificateStatus> revoked = new HashMap<>();
+        revoked.put(SERIAL1, revokedStatus(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        revoked.put(SERIAL2, revokedStatus(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        index.load(revoked, 4711L);
+        final File file = File.createTempFile("revocationindex", ".bin");
+        try {
+            index.writeSnapshot(file);
+            final CaRevocationIndex restored = new CaRevocationIndex(ISSUER_DN);
+            assertTrue("Snapshot should have been read.", restored.readSnapshot(file));
+            assertTrue(restored.isLoaded());
+            assertEquals(4711L, restored.getLastRefreshTime());
+            assertEquals(2, restored.size());
+            final CertificateStatus status = restored.getRevokedStatus(SERIAL2);
+            assertEquals(CertificateStatus.REVOKED, status);
+            assertEquals(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, status.revocationReason);
+            assertEquals(5000L, status.revocationDate.getTime());
+            assertEquals(17, status.certificateProfileId);
+            assertFalse("Snapshot for another issuer should not have been read.", new CaRevocationIndex("CN=Other").readSnapshot(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private CertificateStatus revokedStatus(final int reason) {
+        return new CertificateStatus(CertificateStatus.REVOKED.toString(), 5000L, reason, 17);
+    }
+}
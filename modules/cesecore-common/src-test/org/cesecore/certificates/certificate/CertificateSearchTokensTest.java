@@ -0,0 +1,86 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Test of the search tokens in the certificate search index.
+ *
+ * @version $Id$
+ */
+public class CertificateSearchTokensTest {
+
+    @Test
+    public void testSubjectDnTokens() {
+        final Set<String> tokens = CertificateSearchTokens.getSubjectDnTokens("CN=John Doe,O=Example Org,C=SE");
+        assertTrue("The whole DN should be a token for exact searches.", tokens.contains("CN=JOHN DOE,O=EXAMPLE ORG,C=SE"));
+        assertTrue(tokens.contains("CN=JOHN DOE"));
+        assertTrue(tokens.contains("JOHN DOE"));
+        assertTrue("A search for the last name should match.", startsWithAny(tokens, CertificateSearchTokens.normalize("doe")));
+        assertTrue(startsWithAny(tokens, "EXAMPLE"));
+        assertTrue(startsWithAny(tokens, "ORG"));
+        assertFalse("Only the start of words should match.", startsWithAny(tokens, "OHN"));
+        assertTrue(CertificateSearchTokens.getSubjectDnTokens("").isEmpty());
+        assertTrue(CertificateSearchTokens.getSubjectDnTokens(null).isEmpty());
+    }
+
+    @Test
+    public void testSubjectAltNameTokens() {
+        final Set<String> tokens = CertificateSearchTokens.getSubjectAltNameTokens("rfc822name=john.doe@example.com, dNSName=www.example.com");
+        assertTrue(startsWithAny(tokens, "JOHN.DOE@"));
+        assertTrue(startsWithAny(tokens, "DOE@EXAMPLE"));
+        assertTrue(startsWithAny(tokens, "EXAMPLE.COM"));
+        assertTrue(startsWithAny(tokens, "WWW.EXAMPLE"));
+        assertTrue(tokens.contains(CertificateSearchTokens.normalize("rfc822name=john.doe@example.com, dNSName=www.example.com")));
+        assertTrue(CertificateSearchTokens.getSubjectAltNameTokens(null).isEmpty());
+    }
+
+    @Test
+    public void testUsernameAndSerialNumberTokens() {
+        final Set<String> tokens = CertificateSearchTokens.getUsernameTokens("user_name-1");
+        assertTrue(tokens.contains("USER_NAME-1"));
+        assertTrue(tokens.contains("NAME-1"));
+        assertTrue(tokens.contains("1"));
+        assertEquals(3, tokens.size());
+        assertTrue(CertificateSearchTokens.getUsernameTokens("-_-").contains("-_-"));
+        assertEquals(1, CertificateSearchTokens.getSerialNumberTokens("1234567890").size());
+        assertTrue(CertificateSearchTokens.getSerialNumberTokens(null).isEmpty());
+    }
+
+    @Test
+    public void testLongValuesAreTruncated() {
+        final StringBuilder sb = new StringBuilder("CN=");
+        for (int i = 0; i < 100; i++) {
+            sb.append("word").append(i).append(' ');
+        }
+        for (final String token : CertificateSearchTokens.getSubjectDnTokens(sb.toString())) {
+            assertTrue(token.length() <= CertificateSearchTokens.MAX_TOKEN_LENGTH);
+        }
+    }
+
+    private boolean startsWithAny(final Set<String> tokens, final String prefix) {
+        for (final String token : tokens) {
+            if (token.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.Base64;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @version $Id$
+ */
+public class ParsedCertificateCacheTest {
+
+    private static String base64Cert;
+    private static String fingerprint;
+    private static String otherBase64Cert;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("512", "RSA");
+        final Certificate certificate = CertTools.genSelfCert("CN=ParsedCertificateCacheTest", 10L, null, keyPair.getPrivate(), keyPair.getPublic(),
+                "SHA256WithRSA", false);
+        base64Cert = new String(Base64.encode(certificate.getEncoded()));
+        fingerprint = CertTools.getFingerprintAsString(certificate);
+        final Certificate otherCertificate = CertTools.genSelfCert("CN=ParsedCertificateCacheTest other", 10L, null, keyPair.getPrivate(),
+                keyPair.getPublic(), "SHA256WithRSA", false);
+        otherBase64Cert = new String(Base64.encode(otherCertificate.getEncoded()));
+    }
+
+    @After
+    public void after() {
+        ParsedCertificateCache.INSTANCE.setMaxEntries(10000);
+    }
+
+    @Test
+    public void testSameCertificateFromCache() throws Exception {
+        final ParsedCertificateCache cache = ParsedCertificateCache.INSTANCE;
+        cache.setMaxEntries(10);
+        final Certificate first = cache.getCertificate(fingerprint, base64Cert);
+        final Certificate second = cache.getCertificate(fingerprint, new String(base64Cert));
+        assertSame("The parsed certificate should be reused.", first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void testOtherEncodingWithSameFingerprintIsParsed() throws Exception {
+        final ParsedCertificateCache cache = ParsedCertificateCache.INSTANCE;
+        cache.setMaxEntries(10);
+        final Certificate cached = cache.getCertificate(fingerprint, base64Cert);
+        final Certificate other = cache.getCertificate(fingerprint, otherBase64Cert);
+        assertNotSame("A different certificate must not be returned from the cache.", cached, other);
+        assertEquals("CN=ParsedCertificateCacheTest other", CertTools.getSubjectDN(other));
+        assertSame("The first certificate should still be cached.", cached, cache.getCertificate(fingerprint, base64Cert));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final ParsedCertificateCache cache = ParsedCertificateCache.INSTANCE;
+        cache.setMaxEntries(0);
+        assertNotSame(cache.getCertificate(fingerprint, base64Cert), cache.getCertificate(fingerprint, base64Cert));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+}
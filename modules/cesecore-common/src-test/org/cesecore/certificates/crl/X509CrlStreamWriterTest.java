@@ -0,0 +1,135 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that CRLs written by {@link X509CrlStreamWriter} are identical to the ones built by BouncyCastle in memory.
+ *
+ * @version $Id$
+ */
+public class X509CrlStreamWriterTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=X509CrlStreamWriterTest,O=Test,C=SE");
+    private static final Date THIS_UPDATE = new Date(1500000000000L);
+    private static final Date NEXT_UPDATE = new Date(1500086400000L);
+
+    private static KeyPair keys;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+    }
+
+    @Test
+    public void testSameEncodingAsBuilder() throws Exception {
+        final ExtensionsGenerator extgen = new ExtensionsGenerator();
+        extgen.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(4711)));
+        final Extensions extensions = extgen.generate();
+        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlgen.setNextUpdate(NEXT_UPDATE);
+        crlgen.addExtension(extensions.getExtension(Extension.cRLNumber));
+        try (final X509CrlStreamWriter crlWriter = new X509CrlStreamWriter(ISSUER, THIS_UPDATE, NEXT_UPDATE, extensions)) {
+            // Enough entries for multi-byte lengths, different reasons, and a revocation date encoded as GeneralizedTime
+            for (int i = 0; i < 1000; i++) {
+                final BigInteger serialNumber = BigInteger.valueOf(i).shiftLeft(i % 70).add(BigInteger.ONE);
+                final Date revocationDate = new Date(1400000000000L + i * 60000L);
+                final int reason = i % 11 == 7 ? RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL : i % 7;
+                crlgen.addCRLEntry(serialNumber, revocationDate, reason);
+                crlWriter.addEntry(serialNumber, revocationDate, reason);
+            }
+            final Date farFuture = new Date(4102444800000L); // 2100-01-01
+            crlgen.addCRLEntry(BigInteger.TEN, farFuture, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+            crlWriter.addEntry(BigInteger.TEN, farFuture, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+            final byte[] expected = crlgen.build(getSigner()).getEncoded();
+            crlWriter.sign(getSigner());
+            assertTrue("Signature should be valid.", crlWriter.isSignatureValid(CertTools.genContentVerifierProvider(keys.getPublic())));
+            assertEquals(expected.length, crlWriter.getEncodedLength());
+            final byte[] encoded = crlWriter.getEncoded();
+            assertArrayEquals("Streamed CRL should be encoded exactly like a CRL built in memory.", expected, encoded);
+            final X509CRL crl = CertTools.getCRLfromByteArray(encoded);
+            crl.verify(keys.getPublic());
+            assertEquals(1001, crl.getRevokedCertificates().size());
+        }
+    }
+
+    @Test
+    public void testCopyEntries() throws Exception {
+        final X509v2CRLBuilder previousCrlgen = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        previousCrlgen.setNextUpdate(NEXT_UPDATE);
+        previousCrlgen.addCRLEntry(BigInteger.valueOf(1), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        previousCrlgen.addCRLEntry(BigInteger.valueOf(2), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD);
+        previousCrlgen.addCRLEntry(BigInteger.valueOf(3), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED);
+        previousCrlgen.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+        final byte[] previousCrl = previousCrlgen.build(getSigner()).getEncoded();
+        // Certificate 2 is unrevoked and certificate 4 revoked since the previous CRL
+        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(ISSUER, NEXT_UPDATE);
+        crlgen.addCRLEntry(BigInteger.valueOf(1), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        crlgen.addCRLEntry(BigInteger.valueOf(3), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED);
+        crlgen.addCRLEntry(BigInteger.valueOf(4), NEXT_UPDATE, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED);
+        try (final X509CrlStreamWriter crlWriter = new X509CrlStreamWriter(ISSUER, NEXT_UPDATE, null, null)) {
+            assertEquals(2, crlWriter.addEntries(previousCrl, new HashSet<>(Arrays.asList(BigInteger.valueOf(2), BigInteger.valueOf(4)))));
+            crlWriter.addEntry(BigInteger.valueOf(4), NEXT_UPDATE, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED);
+            crlWriter.sign(getSigner());
+            assertArrayEquals(crlgen.build(getSigner()).getEncoded(), crlWriter.getEncoded());
+        }
+        // A CRL without entries has nothing to copy
+        try (final X509CrlStreamWriter crlWriter = new X509CrlStreamWriter(ISSUER, NEXT_UPDATE, null, null)) {
+            final X509v2CRLBuilder emptyCrlgen = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+            emptyCrlgen.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+            assertEquals(0, crlWriter.addEntries(emptyCrlgen.build(getSigner()).getEncoded(), new HashSet<BigInteger>()));
+        }
+    }
+
+    @Test
+    public void testEmptyCrl() throws Exception {
+        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlgen.setNextUpdate(NEXT_UPDATE);
+        try (final X509CrlStreamWriter crlWriter = new X509CrlStreamWriter(ISSUER, THIS_UPDATE, NEXT_UPDATE, null)) {
+            crlWriter.sign(getSigner());
+            assertArrayEquals(crlgen.build(getSigner()).getEncoded(), crlWriter.getEncoded());
+            assertEquals(0, crlWriter.getEntryCount());
+        }
+    }
+
+    private ContentSigner getSigner() throws Exception {
+        return new JcaContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA).setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keys.getPrivate());
+    }
+}
@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache.OcspPreSignedResponse;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the cache that holds signed OCSP responses to single certificate requests without nonce.
+ *
+ * @version $Id$
+ */
+public class OcspPreSignedResponseCacheTest {
+
+    private static final BigInteger SERIAL1 = new BigInteger("1");
+    private static final BigInteger SERIAL2 = new BigInteger("2");
+
+    private String defaultRefreshTime = null;
+    private String defaultMaxEntries = null;
+    private OCSPResp ocspResponse;
+
+    @Before
+    public void before() throws Exception {
+        OcspPreSignedResponseCache.INSTANCE.flush();
+        defaultRefreshTime = ConfigurationHolder.getString(OcspConfiguration.PRESIGNED_RESPONSES_REFRESH_TIME);
+        defaultMaxEntries = ConfigurationHolder.getString(OcspConfiguration.PRESIGNED_RESPONSES_MAX_ENTRIES);
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGNED_RESPONSES_REFRESH_TIME, "300");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGNED_RESPONSES_MAX_ENTRIES, "10000");
+        ocspResponse = new OCSPRespBuilder().build(OCSPRespBuilder.UNAUTHORIZED, null);
+    }
+
+    @After
+    public void after() {
+        OcspPreSignedResponseCache.INSTANCE.flush();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGNED_RESPONSES_REFRESH_TIME, defaultRefreshTime);
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGNED_RESPONSES_MAX_ENTRIES, defaultMaxEntries);
+    }
+
+    @Test
+    public void testLookupKeyGeneration() {
+        final String key1 = OcspPreSignedResponseCache.INSTANCE.createCacheLookupKey(0, getCertificateId(SERIAL1));
+        final String key2 = OcspPreSignedResponseCache.INSTANCE.createCacheLookupKey(0, getCertificateId(SERIAL1));
+        assertEquals("Same input should have generated the same key.", key1, key2);
+        final String key3 = OcspPreSignedResponseCache.INSTANCE.createCacheLookupKey(0, getCertificateId(SERIAL2));
+        assertFalse("Different serial number should not have generated the same key.", key1.equals(key3));
+        final String key4 = OcspPreSignedResponseCache.INSTANCE.createCacheLookupKey(1, getCertificateId(SERIAL1));
+        assertFalse("Different responder should not have generated the same key.", key1.equals(key4));
+    }
+
+    @Test
+    public void testStoreAndInvalidate() {
+        assertNull("Cache should be empty from start.", OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1));
+        put("key1", SERIAL1, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        put("key2", SERIAL1, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        put("key3", SERIAL2, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertEquals(3, OcspPreSignedResponseCache.INSTANCE.size());
+        final OcspPreSignedResponse response = OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1);
+        assertNotNull("Stored response should have been returned.", response);
+        assertTrue("Returned response should have been marked as used.", response.isUsed());
+        OcspPreSignedResponseCache.INSTANCE.invalidate(SERIAL1);
+        assertNull("Invalidated response should not have been returned.", OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1));
+        assertNull("Invalidated response should not have been returned.", OcspPreSignedResponseCache.INSTANCE.getResponse("key2", SERIAL1));
+        assertNotNull("Response for other serial number should remain.", OcspPreSignedResponseCache.INSTANCE.getResponse("key3", SERIAL2));
+        assertEquals(1, OcspPreSignedResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testNotStoredAfterConcurrentInvalidation() {
+        final long invalidationCount = OcspPreSignedResponseCache.INSTANCE.getInvalidationCount();
+        // Status changes between the status lookup and the attempt to store the response
+        OcspPreSignedResponseCache.INSTANCE.invalidate(SERIAL2);
+        put("key1", SERIAL1, null, invalidationCount);
+        assertNull("Response based on stale status should not have been stored.", OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1));
+    }
+
+    @Test
+    public void testRefreshTime() {
+        final long now = System.currentTimeMillis();
+        put("key1", SERIAL1, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertEquals("Refresh time should be limited by configuration.", now + 300000L,
+                OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1).getRefreshTime(), 1000L);
+        put("key2", SERIAL1, Long.valueOf(now + 60000L), OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertEquals("Refresh time should be limited to half the time to nextUpdate.", now + 30000L,
+                OcspPreSignedResponseCache.INSTANCE.getResponse("key2", SERIAL1).getRefreshTime(), 1000L);
+        put("key3", SERIAL1, Long.valueOf(now - 1000L), OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertNull("Response past nextUpdate should not have been stored.", OcspPreSignedResponseCache.INSTANCE.getResponse("key3", SERIAL1));
+    }
+
+    @Test
+    public void testResponsesToRefresh() {
+        put("key1", SERIAL1, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        put("key2", SERIAL2, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertNotNull(OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1));
+        assertTrue("No response should need refresh yet.", OcspPreSignedResponseCache.INSTANCE.getResponsesToRefresh(System.currentTimeMillis()).isEmpty());
+        final List<OcspPreSignedResponse> responses = OcspPreSignedResponseCache.INSTANCE.getResponsesToRefresh(System.currentTimeMillis() + 301000L);
+        assertEquals("Only the used response should be refreshed.", 1, responses.size());
+        assertEquals("The used response should be refreshed.", ocspResponse, responses.get(0).getOcspResponse());
+        assertNull("Unused response should have been dropped.", OcspPreSignedResponseCache.INSTANCE.getResponse("key2", SERIAL2));
+        assertEquals(1, OcspPreSignedResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGNED_RESPONSES_MAX_ENTRIES, "1");
+        put("key1", SERIAL1, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        put("key2", SERIAL2, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertNotNull(OcspPreSignedResponseCache.INSTANCE.getResponse("key1", SERIAL1));
+        assertNull("Full cache should not have stored another response.", OcspPreSignedResponseCache.INSTANCE.getResponse("key2", SERIAL2));
+        // Replacing an existing entry is always allowed
+        put("key1", SERIAL1, null, OcspPreSignedResponseCache.INSTANCE.getInvalidationCount());
+        assertEquals(1, OcspPreSignedResponseCache.INSTANCE.size());
+    }
+
+    private void put(final String key, final BigInteger serialNumber, final Long nextUpdate, final long invalidationCount) {
+        OcspPreSignedResponseCache.INSTANCE.putResponse(key, serialNumber, ocspResponse, new byte[0], 0, null, CertificateStatus.OK, 0L, nextUpdate,
+                invalidationCount);
+    }
+
+    private CertificateID getCertificateId(final BigInteger serialNumber) {
+        final AlgorithmIdentifier sha1 = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE);
+        return new CertificateID(new CertID(sha1, new DEROctetString(new byte[20]), new DEROctetString(new byte[20]), new ASN1Integer(serialNumber)));
+    }
+}
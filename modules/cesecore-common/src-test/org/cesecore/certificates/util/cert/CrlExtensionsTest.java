@@ -0,0 +1,63 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.util.cert;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.Enumeration;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.Test;
+
+/**
+ * Tests reading reason codes from CRL entries.
+ *
+ * @version $Id$
+ */
+public class CrlExtensionsTest {
+
+    @Test
+    public void testReasonCodeOfAsn1Entries() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(new X500Name("CN=CrlExtensionsTest"), new Date());
+        crlgen.addCRLEntry(BigInteger.valueOf(1), new Date(), RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED);
+        crlgen.addCRLEntry(BigInteger.valueOf(2), new Date(), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        crlgen.addCRLEntry(BigInteger.valueOf(3), new Date(), RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL);
+        final X509CRL crl = CertTools.getCRLfromByteArray(crlgen.build(new JcaContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA)
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keys.getPrivate())).getEncoded());
+        final Enumeration<?> entries = TBSCertList.getInstance(crl.getTBSCertList()).getRevokedCertificateEnumeration();
+        int count = 0;
+        while (entries.hasMoreElements()) {
+            final TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry) entries.nextElement();
+            assertEquals("Reason code should be the same as read from the X509CRLEntry.",
+                    CrlExtensions.extractReasonCode(crl.getRevokedCertificate(entry.getUserCertificate().getValue())),
+                    CrlExtensions.extractReasonCode(entry));
+            count++;
+        }
+        assertEquals(3, count);
+    }
+}
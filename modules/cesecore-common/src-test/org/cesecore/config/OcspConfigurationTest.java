@@ -14,11 +14,15 @@
 package org.cesecore.config;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileWriter;
 
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.ocsp.cache.OcspConfigurationCache;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -31,9 +35,16 @@ public class OcspConfigurationTest {
 	
 	@Before
 	public void setUp() {
+		ConfigurationHolder.backupConfiguration();
 		ConfigurationHolder.instance().clear();
 	}
 
+	@After
+	public void tearDown() {
+		ConfigurationHolder.restoreConfiguration();
+		OcspConfigurationCache.INSTANCE.reloadConfiguration();
+	}
+
 	@Test
 	public void testMaxAgeNextUpdate() throws Exception {
 		long maxAge = OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE);
@@ -70,4 +81,24 @@ public class OcspConfigurationTest {
 		assertEquals(70000, nextUpdate);
 	}
 	
+	@Test
+	public void testUntilNextUpdateOrMaxAgeConfiguredForAnyProfile() throws Exception {
+		assertFalse(OcspConfiguration.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile());
+		File f = File.createTempFile("testocspconf", "properties");
+		f.deleteOnExit();
+		FileWriter fos = new FileWriter(f);
+		fos.write("ocsp.maxAge=60\nocsp.untilNextUpdate=70\nocsp.999.revoked.maxAge=70\nocsp.999.revoked.untilNextUpdate=80\n");
+		fos.close();
+		ConfigurationHolder.addConfigurationFile(f.getAbsolutePath());
+		assertFalse("Defaults and values for revoked certificates should not count.", OcspConfiguration.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile());
+		OcspConfigurationCache.INSTANCE.reloadConfiguration();
+		assertFalse(OcspConfigurationCache.INSTANCE.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile());
+		ConfigurationHolder.updateConfiguration("ocsp.888.untilNextUpdate", "85");
+		assertTrue(OcspConfiguration.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile());
+		assertFalse("The cached value should only change when the configuration is reloaded.",
+				OcspConfigurationCache.INSTANCE.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile());
+		OcspConfigurationCache.INSTANCE.reloadConfiguration();
+		assertTrue(OcspConfigurationCache.INSTANCE.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile());
+	}
+
 }
@@ -0,0 +1,204 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test of the common cache implementations.
+ *
+ * @version $Id$
+ */
+public class LoadingCacheTest {
+
+    @Test
+    public void testExpire() throws Exception {
+        final LoadingCache<String, String> cache = new LoadingCache<>(200, -1, 0);
+        cache.put("foo", "bar");
+        assertEquals("bar", cache.getIfPresent("foo"));
+        assertNull(cache.getIfPresent("other"));
+        Thread.sleep(250);
+        assertNull("Object should have expired.", cache.getIfPresent("foo"));
+        assertEquals(1, cache.getStatistics().getHitCount());
+        assertEquals(2, cache.getStatistics().getMissCount());
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMaxSize() {
+        final LoadingCache<Integer, String> cache = new LoadingCache<>(0, -1, 3);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        // Make 1 the most recently used one, with a later access time than the others
+        setLastAccess(cache, 1);
+        cache.put(4, "four");
+        assertEquals(3, cache.size());
+        assertNotNull("Most recently used object should have been kept.", cache.peek(1));
+        assertNotNull(cache.peek(4));
+        assertEquals(1, cache.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testBatchEviction() {
+        final LoadingCache<Integer, String> cache = new LoadingCache<>(0, -1, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "value");
+        }
+        setLastAccess(cache, 0);
+        cache.put(100, "value");
+        assertEquals("A full cache should evict down to 90% of the maximum size.", 90, cache.size());
+        assertEquals(11, cache.getStatistics().getEvictionCount());
+        assertNotNull("Most recently used object should have been kept.", cache.peek(0));
+        for (int i = 101; i < 10000; i++) {
+            cache.put(i, "value");
+            assertTrue("The cache should not grow beyond its maximum size.", cache.size() <= 100);
+        }
+    }
+
+    @Test
+    public void testLoadAndRefresh() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingCache.Loader<String, Integer> loader = new LoadingCache.Loader<String, Integer>() {
+            @Override
+            public Integer load(final String key) {
+                return "missing".equals(key) ? null : loads.incrementAndGet();
+            }
+        };
+        final LoadingCache<String, Integer> cache = new LoadingCache<>(0, 100, 0);
+        assertEquals(Integer.valueOf(1), cache.get("key", loader));
+        assertEquals("Object should be cached.", Integer.valueOf(1), cache.get("key", loader));
+        assertNull(cache.get("missing", loader));
+        assertEquals("Missing objects should not be cached.", 1, cache.size());
+        Thread.sleep(150);
+        assertTrue(cache.shouldRefresh("key"));
+        assertFalse("Only the first thread should refresh the object.", cache.shouldRefresh("key"));
+        Thread.sleep(150);
+        assertEquals("Object should have been refreshed.", Integer.valueOf(2), cache.get("key", loader));
+        assertEquals(3, cache.getStatistics().getLoadCount());
+    }
+
+    @Test
+    public void testSingleLoader() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LoadingCache<String, Integer> cache = new LoadingCache<>(0, -1, 0);
+        final LoadingCache.Loader<String, Integer> loader = new LoadingCache.Loader<String, Integer>() {
+            @Override
+            public Integer load(final String key) {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return loads.incrementAndGet();
+            }
+        };
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger sum = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    sum.addAndGet(cache.get("key", loader));
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        loading.await();
+        // Give the other threads time to find the load in progress
+        Thread.sleep(100);
+        release.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("Only one thread should have loaded the object.", 1, loads.get());
+        assertEquals(5, sum.get());
+    }
+
+    @Test
+    public void testCommonCacheBase() {
+        final CommonCacheBase<String> cache = new CommonCacheBase<String>() {
+            @Override
+            protected long getCacheTime() {
+                return 60000;
+            }
+            @Override
+            protected long getMaxCacheLifeTime() {
+                return 0;
+            }
+        };
+        assertTrue(cache.shouldCheckForUpdates(1));
+        cache.updateWith(1, 4711, "one", "object1");
+        cache.updateWith(2, 4712, "two", "object2");
+        assertFalse(cache.shouldCheckForUpdates(1));
+        assertEquals("object1", cache.getEntry(1));
+        assertNull(cache.getEntry((Integer) null));
+        assertFalse("Same digest should not update the cache.", cache.willUpdate(1, 4711));
+        assertEquals(Integer.valueOf(2), cache.getNameToIdMap().get("two"));
+        cache.removeEntry(2);
+        assertNull(cache.getNameToIdMap().get("two"));
+        assertEquals(1, cache.getNameToIdMap().size());
+        assertEquals("one", cache.getName(1));
+        cache.flush();
+        assertNull(cache.getEntry(1));
+        assertTrue(cache.getNameToIdMap().isEmpty());
+    }
+
+    @Test
+    public void testSnapshotCache() {
+        final AtomicInteger loads = new AtomicInteger();
+        final SnapshotCache.Loader<Integer> loader = new SnapshotCache.Loader<Integer>() {
+            @Override
+            public Integer load() {
+                return loads.incrementAndGet();
+            }
+        };
+        final SnapshotCache<Integer> cache = new SnapshotCache<Integer>() {
+            @Override
+            protected long getCacheTime() {
+                return 60000;
+            }
+        };
+        assertEquals(Integer.valueOf(1), cache.get(loader));
+        assertEquals(Integer.valueOf(1), cache.get(loader));
+        cache.reload(loader, true);
+        assertEquals("Forced reload should always load.", Integer.valueOf(2), cache.get(loader));
+        assertEquals(2, cache.getStatistics().getLoadCount());
+        assertEquals(2, cache.getStatistics().getHitCount());
+    }
+
+    /** Wait until the clock has moved, and then use the object so it gets a later access time than the ones before */
+    private void setLastAccess(final LoadingCache<Integer, String> cache, final int key) {
+        final long start = System.currentTimeMillis();
+        while (System.currentTimeMillis() == start) {
+            Thread.yield();
+        }
+        assertNotNull(cache.getIfPresent(key));
+    }
+}
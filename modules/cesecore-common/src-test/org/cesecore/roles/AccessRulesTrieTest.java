@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+/**
+ * Test of the precompiled access rules.
+ *
+ * @version $Id$
+ */
+public class AccessRulesTrieTest {
+
+    private static final String[] RESOURCES = { "/", "/a", "/a/", "/a/b", "/a/b/", "/a/b/c", "/a/bc", "/a/c/d/e", "/b", "/b/a", "/b/a/x",
+            "/c", "/c/d", "/c/d/e", "/ca/1", "/ca/-1", "/ca/12", "/d", "/a//b", "//", "", "x", null };
+
+    @Test
+    public void testSameResultAsHelper() {
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/a/", Role.STATE_ALLOW);
+        accessRules.put("/a/b/", Role.STATE_DENY);
+        accessRules.put("/a/b/c", Role.STATE_ALLOW);
+        accessRules.put("/b/", Role.STATE_DENY);
+        accessRules.put("/b/a/", Role.STATE_ALLOW);
+        accessRules.put("/c/d", Role.STATE_ALLOW);
+        accessRules.put("/c/d/", Role.STATE_DENY);
+        accessRules.put("/ca/1/", Role.STATE_ALLOW);
+        assertSameResult(accessRules);
+        accessRules.put("/", Role.STATE_ALLOW);
+        assertSameResult(accessRules);
+        accessRules.put("", Role.STATE_DENY);
+        assertSameResult(accessRules);
+        assertSameResult(new HashMap<String, Boolean>());
+    }
+
+    @Test
+    public void testAccess() {
+        final HashMap<String, Boolean> accessRules = new HashMap<>();
+        accessRules.put("/", Role.STATE_ALLOW);
+        accessRules.put("/ca/", Role.STATE_DENY);
+        accessRules.put("/ca/1/", Role.STATE_ALLOW);
+        final AccessRulesTrie accessRulesTrie = new AccessRulesTrie(accessRules);
+        assertTrue(accessRulesTrie.hasAccessToResource("/administrator"));
+        assertFalse(accessRulesTrie.hasAccessToResource("/ca"));
+        assertFalse("Deeper deny rule should override the root allow rule.", accessRulesTrie.hasAccessToResource("/ca/12"));
+        assertTrue(accessRulesTrie.hasAccessToResource("/ca/1"));
+        assertTrue(accessRulesTrie.hasAccessToResources("/ca/1", "/administrator"));
+        assertFalse(accessRulesTrie.hasAccessToResources("/ca/1", "/ca/2"));
+        assertEquals(accessRules, accessRulesTrie.getAccessRules());
+    }
+
+    private void assertSameResult(final HashMap<String, Boolean> accessRules) {
+        final AccessRulesTrie accessRulesTrie = new AccessRulesTrie(accessRules);
+        for (final String resource : RESOURCES) {
+            if (resource == null || resource.isEmpty()) {
+                assertFalse(accessRulesTrie.hasAccessToResource(resource));
+            } else {
+                assertEquals("Unexpected access to " + resource + " with rules " + accessRules, AccessRulesHelper.hasAccessToResource(accessRules, resource),
+                        accessRulesTrie.hasAccessToResource(resource));
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.junit.Test;
+
+/**
+ * Tests that data maps can be written in the compact format and read back in both formats.
+ *
+ * @version $Id$
+ */
+public class DataMapSerializerTest {
+
+    @Test
+    public void testCompactRoundTrip() {
+        final LinkedHashMap<Object, Object> nested = new LinkedHashMap<>();
+        nested.put(Integer.valueOf(1), "one");
+        nested.put("set", new LinkedHashSet<>(Arrays.asList("a", "b")));
+        final Base64PutHashMap dataMap = new Base64PutHashMap();
+        dataMap.put("version", Float.valueOf(46.0f));
+        dataMap.put("string", "plain value");
+        dataMap.put("nonascii", "ĞİŞğışÅÄÖåäö");
+        dataMap.put("empty", "");
+        dataMap.put("null", null);
+        dataMap.put("boolean", Boolean.TRUE);
+        dataMap.put("long", Long.valueOf(Long.MIN_VALUE));
+        dataMap.put("double", Double.valueOf(0.1));
+        dataMap.put("biginteger", new BigInteger("-123456789012345678901234567890"));
+        dataMap.put("date", new Date(1234567890L));
+        dataMap.put("list", new ArrayList<>(Arrays.asList(Integer.valueOf(3), null, "x")));
+        dataMap.put("map", new HashMap<>(nested));
+        dataMap.put("linkedmap", nested);
+        final String compact = DataMapSerializer.encodeCompact(dataMap);
+        assertNotNull("Map with supported types should be written in the compact format.", compact);
+        assertTrue(DataMapSerializer.isCompact(compact));
+        final Map<?, ?> decoded = DataMapSerializer.decode(compact);
+        assertEquals(dataMap, decoded);
+        assertEquals("Order should be kept.", new ArrayList<>(dataMap.keySet()), new ArrayList<>(decoded.keySet()));
+        assertEquals(LinkedHashMap.class, decoded.get("linkedmap").getClass());
+        assertEquals(HashMap.class, decoded.get("map").getClass());
+        assertEquals(LinkedHashSet.class, ((Map<?, ?>) decoded.get("linkedmap")).get("set").getClass());
+        assertEquals("ĞİŞğışÅÄÖåäö", new Base64GetHashMap(decoded).get("nonascii"));
+    }
+
+    @Test
+    public void testByteArray() {
+        final LinkedHashMap<Object, Object> dataMap = new LinkedHashMap<>();
+        dataMap.put("bytes", new byte[] { 0, 1, -1, 127 });
+        assertArrayEquals(new byte[] { 0, 1, -1, 127 }, (byte[]) DataMapSerializer.decode(DataMapSerializer.encodeCompact(dataMap)).get("bytes"));
+    }
+
+    @Test
+    public void testReadXml() {
+        final Base64PutHashMap dataMap = new Base64PutHashMap();
+        dataMap.put("string", "ĞİŞğışÅÄÖåäö");
+        dataMap.put("list", new ArrayList<>(Arrays.asList(Integer.valueOf(3), "x")));
+        final String xml = DataMapSerializer.encodeXml(dataMap);
+        assertFalse(DataMapSerializer.isCompact(xml));
+        assertEquals(dataMap, DataMapSerializer.decode(xml));
+    }
+
+    @Test
+    public void testUnsupportedTypeNotCompact() {
+        final LinkedHashMap<Object, Object> dataMap = new LinkedHashMap<>();
+        dataMap.put("list", new ArrayList<>(Arrays.asList(new StringBuilder("not supported"))));
+        assertNull("Unsupported types should not be written in the compact format.", DataMapSerializer.encodeCompact(dataMap));
+        // Written as XML since the compact format is disabled by default, and would be if it was enabled
+        assertFalse(DataMapSerializer.isCompact(DataMapSerializer.encode(dataMap)));
+    }
+
+    @Test
+    public void testCertificateProfileSameAsXml() {
+        final Base64PutHashMap dataMap = new Base64PutHashMap();
+        dataMap.putAll((Map<?, ?>) new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER).saveData());
+        final String compact = DataMapSerializer.encodeCompact(dataMap);
+        assertNotNull("A default certificate profile should be possible to write in the compact format.", compact);
+        assertEquals(DataMapSerializer.decode(DataMapSerializer.encodeXml(dataMap)), DataMapSerializer.decode(compact));
+        assertTrue("Compact format should be smaller than XML.", compact.length() < DataMapSerializer.encodeXml(dataMap).length());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCorruptData() {
+        DataMapSerializer.decode(DataMapSerializer.COMPACT_FORMAT_PREFIX + "AAAAAAAA");
+    }
+}
@@ -20,7 +20,7 @@ import org.apache.log4j.Logger;
 
 /**
  * This class represents the audit log validation report. 
- * It's generated during validation.
+ * It's generated during validation. Errors and warnings may be added from several threads.
  *
  * @version $Id$
  */
@@ -46,11 +46,16 @@ public class AuditLogValidationReport implements Serializable{
      * Add a new error to the report list
      * @param error The error to be added.
      */
-    public void error(final AuditLogReportElem error) {
+    public synchronized void error(final AuditLogReportElem error) {
     	log.warn(String.format("ERROR: auditlog sequence: %d -> %d. Reason: %s", error.getFirst(), error.getSecond(), error.getReasons()));
         this.errors.add(error);
     }
 
+    /** @return the number of errors found */
+    public synchronized int getErrorCount() {
+        return errors.size();
+    }
+
     /** @return a list of warnings in this report. */
     public List<AuditLogReportElem> warnings() {
         return this.warns;
@@ -60,8 +65,13 @@ public class AuditLogValidationReport implements Serializable{
      * Add a new warning to the report.
      * @param warning The warning.
      */
-    public void warn(final AuditLogReportElem warning){
+    public synchronized void warn(final AuditLogReportElem warning){
     	log.info(String.format("WARN: auditlog sequence: %d -> %d. Reason: %s", warning.getFirst(), warning.getSecond(), warning.getReasons()));
         this.warns.add(warning);
     }
+
+    /** @return the number of warnings found */
+    public synchronized int getWarningCount() {
+        return warns.size();
+    }
 }
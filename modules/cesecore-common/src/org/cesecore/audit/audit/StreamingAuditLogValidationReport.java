@@ -0,0 +1,72 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.audit;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Audit log validation report that writes each error and warning to a stream as one line, instead of keeping them in memory.
+ * Only the number of errors and warnings are kept, so {@link #errors()} and {@link #warnings()} are always empty.
+ *
+ * @version $Id$
+ */
+public class StreamingAuditLogValidationReport extends AuditLogValidationReport {
+
+    private static final Logger log = Logger.getLogger(StreamingAuditLogValidationReport.class);
+    private static final long serialVersionUID = 1L;
+
+    private final transient Writer writer;
+    private int errorCount = 0;
+    private int warningCount = 0;
+
+    /** @param writer where errors and warnings are written. Not closed by this class. */
+    public StreamingAuditLogValidationReport(final Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public synchronized void error(final AuditLogReportElem error) {
+        log.warn(String.format("ERROR: auditlog sequence: %d -> %d. Reason: %s", error.getFirst(), error.getSecond(), error.getReasons()));
+        errorCount++;
+        write("ERROR", error);
+    }
+
+    @Override
+    public synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public synchronized void warn(final AuditLogReportElem warning) {
+        log.info(String.format("WARN: auditlog sequence: %d -> %d. Reason: %s", warning.getFirst(), warning.getSecond(), warning.getReasons()));
+        warningCount++;
+        write("WARN", warning);
+    }
+
+    @Override
+    public synchronized int getWarningCount() {
+        return warningCount;
+    }
+
+    private void write(final String level, final AuditLogReportElem elem) {
+        try {
+            writer.write(String.format("%s: auditlog sequence: %d -> %d. Reason: %s%n", level, elem.getFirst(), elem.getSecond(), elem.getReasons()));
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write audit log validation report: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.cesecore.audit.audit.AuditExporter;
+import org.json.simple.JSONValue;
+
+/**
+ * Implementation of AuditExporter that writes each log entry as a JSON object on a line of its own ("JSON Lines").
+ *
+ * Each entry is written to the output stream as soon as it is complete, so memory usage does not depend on the number of
+ * exported entries, and the output can be processed line by line by log analysis tools.
+ *
+ * @version $Id$
+ */
+public class AuditExporterJsonLines implements AuditExporter {
+
+    private Writer writer;
+    private boolean isThisLineEmpty;
+
+    @Override
+    public void setOutputStream(final OutputStream outputStream) throws IOException {
+        writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writer.write('{');
+        isThisLineEmpty = true;
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        writer.write("}\n");
+    }
+
+    @Override
+    public void writeField(final String key, final long value) throws IOException {
+        writeKey(key);
+        writer.write(Long.toString(value));
+    }
+
+    @Override
+    public void writeField(final String key, final String value) throws IOException {
+        writeKey(key);
+        if (value == null) {
+            writer.write("null");
+        } else {
+            writer.write('"');
+            writer.write(JSONValue.escape(value));
+            writer.write('"');
+        }
+    }
+
+    /** Write the key, preceded by a comma if it is not the first one in this object. */
+    private void writeKey(final String key) throws IOException {
+        if (!isThisLineEmpty) {
+            writer.write(',');
+        }
+        writer.write('"');
+        writer.write(JSONValue.escape(key));
+        writer.write("\":");
+        isThisLineEmpty = false;
+    }
+
+    @Override
+    public void startObjectLabel(final String label) throws IOException {
+    }
+
+    @Override
+    public void endObjectLabel() throws IOException {
+    }
+}
@@ -24,6 +24,7 @@ import org.cesecore.authentication.AuthenticationFailedException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.access.AuthorizationCacheReload;
 import org.cesecore.authorization.access.AuthorizationCacheReloadListener;
+import org.cesecore.roles.AccessRulesTrie;
 import org.cesecore.util.ValidityDate;
 
 /**
@@ -40,18 +41,27 @@ public enum AuthorizationCache {
     INSTANCE, RAINSTANCE;
     
     private final Logger log = Logger.getLogger(AuthorizationCache.class);
+    private static final AccessRulesTrie EMPTY_ACCESS_RULES_TRIE = new AccessRulesTrie(new HashMap<String, Boolean>());
 
     /** The access available to an authentication token and corresponding version of the authorization systems updateNumber */
     public static class AuthorizationResult {
         final HashMap<String, Boolean> accessRules;
+        final AccessRulesTrie accessRulesTrie;
         final int updateNumber;
 
         public AuthorizationResult(final HashMap<String, Boolean> accessRules, final int updateNumber) {
+            this(accessRules, null, updateNumber);
+        }
+
+        private AuthorizationResult(final HashMap<String, Boolean> accessRules, final AccessRulesTrie accessRulesTrie, final int updateNumber) {
             this.accessRules = accessRules;
+            this.accessRulesTrie = accessRulesTrie;
             this.updateNumber = updateNumber;
         }
 
         public HashMap<String, Boolean> getAccessRules() { return accessRules; }
+        /** @return the precompiled access rules, or null if this result was not returned by the cache */
+        public AccessRulesTrie getAccessRulesTrie() { return accessRulesTrie; }
         public int getUpdateNumeber() { return updateNumber; }
     }
     
@@ -69,6 +79,7 @@ public enum AuthorizationCache {
     
     private class AuthorizationCacheEntry {
         HashMap<String, Boolean> accessRules;
+        AccessRulesTrie accessRulesTrie;
         int updateNumber = 0;
         long timeOfLastUse = 0L;
         AuthenticationToken authenticationToken;
@@ -153,10 +164,15 @@ public enum AuthorizationCache {
         return getAuthorizationResult(authenticationToken, authorizationCacheCallback).accessRules;
     }
 
+    /** @return the precompiled access rules granted to the specified authenticationToken using the callback to load them if needed. Never null.  */
+    public AccessRulesTrie getAccessRulesTrie(final AuthenticationToken authenticationToken, final AuthorizationCacheCallback authorizationCacheCallback) throws AuthenticationFailedException {
+        return getAuthorizationResult(authenticationToken, authorizationCacheCallback).accessRulesTrie;
+    }
+
     /** @return the access rules granted to the specified authenticationToken and corresponding update number using the callback to load them if needed. Never null.  */
     public AuthorizationResult getAuthorizationResult(final AuthenticationToken authenticationToken, final AuthorizationCacheCallback authorizationCacheCallback) throws AuthenticationFailedException {
         if (authenticationToken==null || authorizationCacheCallback==null) {
-            return new AuthorizationResult(new HashMap<String,Boolean>(), 0);
+            return new AuthorizationResult(new HashMap<String,Boolean>(), EMPTY_ACCESS_RULES_TRIE, 0);
         }
         final String key = authenticationToken.getUniqueId();
         final AuthorizationCacheEntry authorizationCacheEntry = new AuthorizationCacheEntry();
@@ -177,7 +193,13 @@ public enum AuthorizationCache {
                     // Cache a copy of the loaded access rules map
                     ret.accessRules.putAll(authorizationResult.accessRules);
                 }
+                // Compile the rules once, so that checking access to a resource does not have to parse the resource paths
+                ret.accessRulesTrie = new AccessRulesTrie(ret.accessRules);
             } finally {
+                if (ret.accessRulesTrie == null) {
+                    // The load failed, so don't keep the entry around. The next get will load it again.
+                    cacheMap.remove(key, ret);
+                }
                 // Ensure that we release any waiting thread
                 ret.countDownLatch.countDown();
             }
@@ -208,7 +230,11 @@ public enum AuthorizationCache {
         }
         // Weak indication of last use, so rebuild can eventually purge unused entries
         ret.timeOfLastUse = System.currentTimeMillis();
-        return new AuthorizationResult(ret.accessRules, ret.updateNumber);
+        if (ret.accessRulesTrie == null) {
+            // The load this thread was waiting for failed, and the entry has already been removed by the loading thread
+            throw new AuthenticationFailedException("Authorization for '" + key + "' could not be loaded.");
+        }
+        return new AuthorizationResult(ret.accessRules, ret.accessRulesTrie, ret.updateNumber);
     }
     
     public int getLastUpdateNumber() {
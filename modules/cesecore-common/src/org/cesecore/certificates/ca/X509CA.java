@@ -137,6 +137,7 @@ import org.cesecore.certificates.certificatetransparency.CTLogInfo;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.X509CrlStreamWriter;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
@@ -1614,22 +1615,8 @@ public class X509CA extends CA implements Serializable {
             log.debug("generateCRL(" + certs.size() + ", " + crlPeriod + ", " + crlnumber + ", " + isDeltaCRL + ", " + basecrlnumber);
         }
 
-        // Make DNs
         final X509Certificate cacert = (X509Certificate) getCACertificate();
-        final X500Name issuer;
-        if (cacert == null) {
-            // This is an initial root CA, since no CA-certificate exists
-            // (I don't think we can ever get here!!!)
-            final X500NameStyle nameStyle;
-            if (getUsePrintableStringSubjectDN()) {
-                nameStyle = PrintableStringNameStyle.INSTANCE;
-            } else {
-                nameStyle = CeSecoreNameStyle.INSTANCE;
-            }
-            issuer = CertTools.stringToBcX500Name(getSubjectDN(), nameStyle, getUseLdapDNOrder());
-        } else {
-            issuer = X500Name.getInstance(cacert.getSubjectX500Principal().getEncoded());
-        }
+        final X500Name issuer = getCrlIssuer(cacert);
         final Date thisUpdate = new Date();
         final Date nextUpdate = new Date();
         nextUpdate.setTime(nextUpdate.getTime() + crlPeriod);
@@ -1647,19 +1634,157 @@ public class X509CA extends CA implements Serializable {
             }
         }
 
+        final Extensions crlExtensions = generateCrlExtensions(cryptoToken, cacert, crlnumber, isDeltaCRL, basecrlnumber);
+        if (crlExtensions != null) {
+            for (final ASN1ObjectIdentifier oid : crlExtensions.getExtensionOIDs()) {
+                crlgen.addExtension(crlExtensions.getExtension(oid));
+            }
+        }
+
+        final X509CRLHolder crl;
+        if (log.isDebugEnabled()) {
+            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+        crl = crlgen.build(getCrlSigner(cryptoToken, sigAlg));
+        if (log.isDebugEnabled()) {
+            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+
+        // Verify using the CA certificate before returning
+        // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
+        // because something is wrong...
+        final PublicKey verifyKey = getCrlVerifyKey(cryptoToken, cacert);
+        try {
+            final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
+            if (!crl.isSignatureValid(verifier)) {
+                throw new SignatureException("Error verifying CRL to be returned.");
+            }
+        } catch (OperatorCreationException e) {
+            // Very fatal error
+            throw new RuntimeException("Can not create Jca content signer: ", e);
+        } catch (CertException e) {
+            throw new SignatureException(e.getMessage(), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+        return crl;
+    }
+
+    /**
+     * Generates a CRL or delta CRL in the same way as {@link #generateCRL(CryptoToken, Collection, int)} and
+     * {@link #generateDeltaCRL(CryptoToken, Collection, int, int)}, but the entries are encoded one at a time to a temporary file
+     * instead of building the complete CRL in memory. The CRL is signed and verified when this method returns.
+     *
+     * @param cryptoToken the crypto token holding the CRL signing key
+     * @param certs the revoked certificates to include, iterated once
+     * @param crlnumber CRLNumber for this CRL
+     * @param isDeltaCRL true if we should generate a DeltaCRL
+     * @param basecrlnumber caseCRLNumber for a delta CRL, use 0 for full CRLs
+     * @return the signed CRL, which must be closed by the caller to remove the temporary file
+     */
+    public X509CrlStreamWriter generateCRLStream(CryptoToken cryptoToken, Collection<RevokedCertInfo> certs, int crlnumber, boolean isDeltaCRL,
+            int basecrlnumber) throws CryptoTokenOfflineException, IllegalCryptoTokenException, IOException, SignatureException {
+        return generateCRLStream(cryptoToken, null, certs, crlnumber, isDeltaCRL, basecrlnumber);
+    }
+
+    /**
+     * Generates a full CRL from the entries of a previous full CRL and the changes since it was generated, instead of from all revoked
+     * certificates. The previous CRL is parsed one entry at a time, and entries are written as in
+     * {@link #generateCRLStream(CryptoToken, Collection, int, boolean, int)}.
+     *
+     * @param cryptoToken the crypto token holding the CRL signing key
+     * @param previousCrl the DER encoded previous full CRL of this CA
+     * @param changes entries to add or replace. Entries with reason {@link RevokedCertInfo#REVOCATION_REASON_REMOVEFROMCRL} are removed.
+     * @param crlnumber CRLNumber for this CRL
+     * @return the signed CRL, which must be closed by the caller to remove the temporary file
+     */
+    public X509CrlStreamWriter generateIncrementalCRLStream(CryptoToken cryptoToken, byte[] previousCrl, Collection<RevokedCertInfo> changes,
+            int crlnumber) throws CryptoTokenOfflineException, IllegalCryptoTokenException, IOException, SignatureException {
+        return generateCRLStream(cryptoToken, previousCrl, changes, crlnumber, false, 0);
+    }
+
+    private X509CrlStreamWriter generateCRLStream(CryptoToken cryptoToken, byte[] previousCrl, Collection<RevokedCertInfo> certs, int crlnumber,
+            boolean isDeltaCRL, int basecrlnumber) throws CryptoTokenOfflineException, IllegalCryptoTokenException, IOException, SignatureException {
+        final String sigAlg = getCAInfo().getCAToken().getSignatureAlgorithm();
+        final long crlPeriod = isDeltaCRL ? getDeltaCRLPeriod() : getCRLPeriod();
+        if (log.isDebugEnabled()) {
+            log.debug("generateCRLStream(" + certs.size() + ", " + crlPeriod + ", " + crlnumber + ", " + isDeltaCRL + ", " + basecrlnumber);
+        }
+        final X509Certificate cacert = (X509Certificate) getCACertificate();
+        final Date thisUpdate = new Date();
+        final Date nextUpdate = new Date(thisUpdate.getTime() + crlPeriod);
+        final Extensions crlExtensions = generateCrlExtensions(cryptoToken, cacert, crlnumber, isDeltaCRL, basecrlnumber);
+        final X509CrlStreamWriter crlWriter = new X509CrlStreamWriter(getCrlIssuer(cacert), thisUpdate, nextUpdate, crlExtensions);
+        boolean success = false;
+        try {
+            if (previousCrl != null) {
+                final Set<BigInteger> changedSerialNumbers = new HashSet<>();
+                for (final RevokedCertInfo certinfo : certs) {
+                    changedSerialNumbers.add(certinfo.getUserCertificate());
+                }
+                crlWriter.addEntries(previousCrl, changedSerialNumbers);
+            }
+            for (final RevokedCertInfo certinfo : certs) {
+                if (previousCrl == null || certinfo.getReason() != RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
+                    crlWriter.addEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Encoded " + crlWriter.getEntryCount() + " revoked certificates to CRL. Free memory=" + Runtime.getRuntime().freeMemory());
+            }
+            crlWriter.sign(getCrlSigner(cryptoToken, sigAlg));
+            // Verify using the CA certificate before returning, just like for CRLs generated in memory
+            try {
+                if (!crlWriter.isSignatureValid(CertTools.genContentVerifierProvider(getCrlVerifyKey(cryptoToken, cacert)))) {
+                    throw new SignatureException("Error verifying CRL to be returned.");
+                }
+            } catch (OperatorCreationException e) {
+                // Very fatal error
+                throw new RuntimeException("Can not create Jca content signer: ", e);
+            }
+            success = true;
+            return crlWriter;
+        } finally {
+            if (!success) {
+                crlWriter.close();
+            }
+        }
+    }
+
+    /** @return the issuer name to use in CRLs */
+    private X500Name getCrlIssuer(final X509Certificate cacert) {
+        if (cacert == null) {
+            // This is an initial root CA, since no CA-certificate exists
+            // (I don't think we can ever get here!!!)
+            final X500NameStyle nameStyle;
+            if (getUsePrintableStringSubjectDN()) {
+                nameStyle = PrintableStringNameStyle.INSTANCE;
+            } else {
+                nameStyle = CeSecoreNameStyle.INSTANCE;
+            }
+            return CertTools.stringToBcX500Name(getSubjectDN(), nameStyle, getUseLdapDNOrder());
+        } else {
+            return X500Name.getInstance(cacert.getSubjectX500Principal().getEncoded());
+        }
+    }
 
+    /** @return the CRL extensions configured for this CA, or null if there are none */
+    private Extensions generateCrlExtensions(CryptoToken cryptoToken, X509Certificate cacert, int crlnumber, boolean isDeltaCRL, int basecrlnumber)
+            throws CryptoTokenOfflineException, IOException {
+        final ExtensionsGenerator extgen = new ExtensionsGenerator();
         // Authority key identifier
         if (getUseAuthorityKeyIdentifier() == true) {
             byte[] caSkid = (cacert != null ? CertTools.getSubjectKeyId(cacert) : null);
             if (caSkid != null) {
                 // Use subject key id from CA certificate
                 AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(caSkid);
-                crlgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
+                extgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
             } else {
                 JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils(SHA1DigestCalculator.buildSha1Instance());
                 AuthorityKeyIdentifier aki = extensionUtils.createAuthorityKeyIdentifier(cryptoToken.getPublicKey(getCAToken().getAliasFromPurpose(
                         CATokenConstants.CAKEYPURPOSE_CRLSIGN)));
-                crlgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
+                extgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
             }
         }
 
@@ -1676,13 +1801,13 @@ public class X509CA extends CA implements Serializable {
         if(accessList.size() > 0) {
             AuthorityInformationAccess authorityInformationAccess = AuthorityInformationAccess.getInstance(new DERSequence(accessList));
             // "This CRL extension MUST NOT be marked critical." according to rfc4325
-            crlgen.addExtension(Extension.authorityInfoAccess, false, authorityInformationAccess);
+            extgen.addExtension(Extension.authorityInfoAccess, false, authorityInformationAccess);
         }
 
         // CRLNumber extension
         if (getUseCRLNumber() == true) {
             CRLNumber crlnum = new CRLNumber(BigInteger.valueOf(crlnumber));
-            crlgen.addExtension(Extension.cRLNumber, this.getCRLNumberCritical(), crlnum);
+            extgen.addExtension(Extension.cRLNumber, this.getCRLNumberCritical(), crlnum);
         }
 
         // ExpiredCertsOnCRL extension (is always specified as not critical)
@@ -1708,7 +1833,7 @@ public class X509CA extends CA implements Serializable {
             sdf.applyPattern(GMTdatePattern);
             // For now force parameter with date equals NotBefore of CA certificate, or now
             final Date keepDate = cacert != null ? cacert.getNotBefore() : new Date();
-            crlgen.addExtension(ExpiredCertsOnCRL, false, new DERGeneralizedTime(keepDate));
+            extgen.addExtension(ExpiredCertsOnCRL, false, new DERGeneralizedTime(keepDate));
             if (log.isDebugEnabled()) {
                 log.debug("ExpiredCertsOnCRL extension added to CRL. Keep date: "+keepDate);
             }
@@ -1717,7 +1842,7 @@ public class X509CA extends CA implements Serializable {
         if (isDeltaCRL) {
             // DeltaCRLIndicator extension
             CRLNumber basecrlnum = new CRLNumber(BigInteger.valueOf(basecrlnumber));
-            crlgen.addExtension(Extension.deltaCRLIndicator, true, basecrlnum);
+            extgen.addExtension(Extension.deltaCRLIndicator, true, basecrlnum);
         }
         // CRL Distribution point URI and Freshest CRL DP
         if (getUseCrlDistributionPointOnCrl()) {
@@ -1731,7 +1856,7 @@ public class X509CA extends CA implements Serializable {
                 // According to the RFC, IDP must be a critical extension.
                 // Nonetheless, at the moment, Mozilla is not able to correctly
                 // handle the IDP extension and discards the CRL if it is critical.
-                crlgen.addExtension(Extension.issuingDistributionPoint, getCrlDistributionPointOnCrlCritical(), idp);
+                extgen.addExtension(Extension.issuingDistributionPoint, getCrlDistributionPointOnCrlCritical(), idp);
             }
 
             if (!isDeltaCRL) {
@@ -1744,31 +1869,26 @@ public class X509CA extends CA implements Serializable {
                     // CRL must not be marked as critical. Therefore it is
                     // hardcoded as not critical and is independent of
                     // getCrlDistributionPointOnCrlCritical().
-                    crlgen.addExtension(Extension.freshestCRL, false, ext);
+                    extgen.addExtension(Extension.freshestCRL, false, ext);
                 }
 
             }
         }
+        return extgen.isEmpty() ? null : extgen.generate();
+    }
 
-        final X509CRLHolder crl;
-        if (log.isDebugEnabled()) {
-            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
+    private ContentSigner getCrlSigner(final CryptoToken cryptoToken, final String sigAlg) throws CryptoTokenOfflineException {
         final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
         try {
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), 20480);
-            crl = crlgen.build(signer);
+            return new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), 20480);
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
         }
-        if (log.isDebugEnabled()) {
-            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
+    }
 
-        // Verify using the CA certificate before returning
-        // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
-        // because something is wrong...
+    /** @return the public key that CRLs must be verifiable with */
+    private PublicKey getCrlVerifyKey(final CryptoToken cryptoToken, final X509Certificate cacert) throws CryptoTokenOfflineException {
         final PublicKey verifyKey;
         if (cacert != null) {
             verifyKey = cacert.getPublicKey();
@@ -1776,26 +1896,12 @@ public class X509CA extends CA implements Serializable {
                 log.trace("Got the verify key from the CA certificate.");
             }
         } else {
-            verifyKey = cryptoToken.getPublicKey(alias);
+            verifyKey = cryptoToken.getPublicKey(getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN));
             if (log.isTraceEnabled()) {
                 log.trace("Got the verify key from the CA token.");
             }
         }
-        try {
-            final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
-            if (!crl.isSignatureValid(verifier)) {
-                throw new SignatureException("Error verifying CRL to be returned.");
-            }
-        } catch (OperatorCreationException e) {
-            // Very fatal error
-            throw new RuntimeException("Can not create Jca content signer: ", e);
-        } catch (CertException e) {
-            throw new SignatureException(e.getMessage(), e);
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
-        return crl;
+        return verifyKey;
     }
 
     /**
@@ -54,6 +54,8 @@ public enum CaCertificateCache  {
 
 	/** Cache time counter, set and used by loadCertificates */
 	private long certValidTo = 0;
+	/** Time when the cached certificates last changed, set by loadCertificates */
+	private volatile long lastUpdate = -1;
 
     public X509Certificate findLatestBySubjectDN(final HashID id) {
         final X509Certificate ret = certsFromSubjectDN.get(id.getKey());
@@ -87,6 +89,14 @@ public enum CaCertificateCache  {
         return ret;
     }
 
+    /**
+     * @return epoch milliseconds when a load last changed the cached certificates, or -1 if no certificates have been loaded. A certificate
+     * stored in the database is not seen here until the next load, so this is when it became visible through the cache.
+     */
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
     public boolean isCacheExpired() {
         return certValidTo < System.currentTimeMillis();
     }
@@ -187,6 +197,11 @@ public enum CaCertificateCache  {
             }
             log.debug(sw);
         }
+        // Only a load that changes the cached certificates is an update, the periodic reloads of the same certificates are not
+        if (!newCertsFromSubjectKeyIdentifier.equals(certsFromSubjectKeyIdentifier) || !newCertsFromIssuerDN.equals(certsFromIssuerDN)
+                || !newCertsFromSubjectDN.equals(certsFromSubjectDN) || !newRootCertificates.equals(rootCertificates)) {
+            lastUpdate = System.currentTimeMillis();
+        }
         //Replace the old caches
         certsFromSubjectKeyIdentifier = newCertsFromSubjectKeyIdentifier;
         certsFromIssuerDN = newCertsFromIssuerDN;
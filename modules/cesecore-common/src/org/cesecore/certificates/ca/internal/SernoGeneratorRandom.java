@@ -28,6 +28,9 @@ import org.cesecore.internal.InternalResources;
 /**
  * Implements a singleton serial number generator using SecureRandom. This generator generates random 8 octec (64 bits) serial numbers.
  * 
+ * The generator may use several independently seeded SecureRandom instances (ca.rnginstances), where each thread always uses the same
+ * instance, so that threads issuing certificates in parallel don't all wait for the same SecureRandom.
+ * 
  * RFC3280 defines serialNumber be positive INTEGER, and X.690 defines INTEGER consist of one or more octets. X.690 also defines as follows:
  * 
  * If the contents octets of an integer value encoding consist of more than one octet, then the bits of the first octet and bit 8 of the second octet:
@@ -61,19 +64,37 @@ public class SernoGeneratorRandom implements SernoGenerator {
     /** random generator algorithm, default SHA1PRNG */
     private String algorithm = "SHA1PRNG";
 
-    /** number of bytes serial number to generate, default 8 */
-    private int noOctets = 8;
+    /** Serial number size and the range of valid serial numbers for that size. Replaced as a whole, so that getSerno sees consistent values. */
+    private static final class SernoRange {
+        /** number of bytes serial number to generate */
+        private final int noOctets;
+        /** lowest possible value we should deliver when getSerno is called */
+        private final BigInteger lowest;
+        /** highest possible value we should deliver when getSerno is called */
+        private final BigInteger highest;
+
+        private SernoRange(final int noOctets) {
+            char[] arr = new char[noOctets*2];
+            // 00800000 (filled with 0 to the no of octets)
+            Arrays.fill(arr, '0');
+            arr[2] = '8';
+            lowest = new BigInteger(String.valueOf(arr), 16);
+            // 7FFFFFFF (filled with F to the no of octets)
+            Arrays.fill(arr, 'F');
+            arr[0] = '7';
+            highest = new BigInteger(String.valueOf(arr), 16);
+            this.noOctets = noOctets;
+        }
+    }
+
+    /** number of bytes serial number to generate and valid range, default 8 (0080000000000000 - 7FFFFFFFFFFFFFFF) */
+    private volatile SernoRange range = new SernoRange(8);
 
-    /** random generator */
-    private SecureRandom random;
+    /** random generators, each thread uses the one at (thread id modulo number of generators) */
+    private volatile SecureRandom[] randoms;
 
     /** A handle to the unique Singleton instance. */
-    private static SernoGeneratorRandom instance = null;
-
-    /** lowest possible value we should deliver when getSerno is called */
-    private BigInteger lowest = new BigInteger("0080000000000000", 16); // Default value for 64 bit serials
-    /** highest possible value we should deliver when getSerno is called */
-    private BigInteger highest = new BigInteger("7FFFFFFFFFFFFFFF", 16); // Default value for 64 bit serials
+    private static volatile SernoGeneratorRandom instance = null;
 
     /**
      * Creates a serial number generator using SecureRandom
@@ -91,13 +112,29 @@ public class SernoGeneratorRandom implements SernoGenerator {
     }
 
     private void init() {
+        final int instances = CesecoreConfiguration.getCaSerialNumberRngInstances();
+        final SecureRandom[] randoms = new SecureRandom[instances];
+        for (int i = 0; i < instances; i++) {
+            // Each instance seeds itself from the system's entropy source, so the instances are independent of each other
+            randoms[i] = createRandom(i == 0);
+        }
+        if (instances > 1) {
+            log.info("Using " + instances + " " + randoms[0].getAlgorithm() + " instances for serialNumber RNG.");
+        }
+        this.randoms = randoms;
+    }
+
+    private SecureRandom createRandom(final boolean logAlgorithm) {
         // Init random number generator for random serial numbers. 
         // SecureRandom provides a cryptographically strong random number generator (RNG).
+        SecureRandom random = null;
         try {
             // Use a specified algorithm if ca.rngalgorithm is provided and it's not set to default
             if (!StringUtils.isEmpty(algorithm) && !StringUtils.containsIgnoreCase(algorithm, "default")) {
                 random = SecureRandom.getInstance(algorithm);
-                log.info("Using "+algorithm+" serialNumber RNG algorithm.");
+                if (logAlgorithm) {
+                    log.info("Using "+algorithm+" serialNumber RNG algorithm.");
+                }
             } else if (!StringUtils.isEmpty(algorithm) && StringUtils.equalsIgnoreCase(algorithm, "defaultstrong")) {
                 // If defaultstrong is specified and we use >=JDK8 try the getInstanceStrong to get a guaranteed strong random number generator.
                 // Note that this may give you a generator that takes >30 seconds to create a single random number. 
@@ -105,7 +142,9 @@ public class SernoGeneratorRandom implements SernoGenerator {
                 try {
                     final Method methodGetInstanceStrong = SecureRandom.class.getDeclaredMethod("getInstanceStrong");
                     random = (SecureRandom) methodGetInstanceStrong.invoke(null);
-                    log.info("Using SecureRandom.getInstanceStrong() with " + random.getAlgorithm() + " for serialNumber RNG algorithm.");
+                    if (logAlgorithm) {
+                        log.info("Using SecureRandom.getInstanceStrong() with " + random.getAlgorithm() + " for serialNumber RNG algorithm.");
+                    }
                 } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
                     throw new IllegalStateException("SecureRandom.getInstanceStrong() is not available or failed invocation. (This method was added in Java 8.)");
                 }
@@ -114,7 +153,9 @@ public class SernoGeneratorRandom implements SernoGenerator {
                 // On Linux the default Java implementation uses the (secure) /dev/(u)random, but on windows something else
                 // On JDK8/Linux this gives you a NativePRNG, while SecureRandom.getInstanceStrong() gives a NativePRNGBlocking.
                 random = new SecureRandom();
-                log.info("Using default " + random.getAlgorithm() + " serialNumber RNG algorithm.");
+                if (logAlgorithm) {
+                    log.info("Using default " + random.getAlgorithm() + " serialNumber RNG algorithm.");
+                }
             }
         } catch (NoSuchAlgorithmException e) {
             //This state is unrecoverable, and since algorithm is set in configuration requires a redeploy to handle
@@ -126,6 +167,7 @@ public class SernoGeneratorRandom implements SernoGenerator {
         }
         // Call nextBytes directly after in order to force seeding if not already done. SecureRandom typically seeds on first call.
         random.nextBytes(new byte[20]);
+        return random;
     }
 
     /**
@@ -133,30 +175,50 @@ public class SernoGeneratorRandom implements SernoGenerator {
      * 
      * @return An instance of the serial number generator.
      */
-    public static synchronized SernoGenerator instance() {
-        if (instance == null) {
-            instance = new SernoGeneratorRandom();
+    public static SernoGenerator instance() {
+        // Double-checked locking, so that the threads that get a serial number for each issued certificate don't synchronize here
+        SernoGeneratorRandom ret = instance;
+        if (ret == null) {
+            synchronized (SernoGeneratorRandom.class) {
+                ret = instance;
+                if (ret == null) {
+                    ret = new SernoGeneratorRandom();
+                    instance = ret;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** @return the random generator used by the calling thread */
+    private SecureRandom getRandom() {
+        final SecureRandom[] randoms = this.randoms;
+        if (randoms.length == 1) {
+            return randoms[0];
         }
-        return instance;
+        return randoms[(int) (Thread.currentThread().getId() % randoms.length)];
     }
 
     @Override
-    public synchronized BigInteger getSerno() {
+    public BigInteger getSerno() {
         // This is only for testing, of size is set to 0 we will generate random number
         // between 1 and 4, this will give collisions often...
-        if (noOctets == 0) {
+        final SernoRange range = this.range;
+        if (range.noOctets == 0) {
             Random rand = new Random();
             return new java.math.BigInteger(Long.toString(rand.nextInt(4)));
         }
 
-        final byte[] sernobytes = new byte[noOctets];
+        // SecureRandom.nextBytes is thread safe, so only threads using the same instance wait for each other here
+        final SecureRandom random = getRandom();
+        final byte[] sernobytes = new byte[range.noOctets];
         boolean ok = false;
         BigInteger serno = null;
         while (!ok) {
             random.nextBytes(sernobytes);
             serno = (new java.math.BigInteger(sernobytes)).abs();
             // Must be within the range 0080000000000000 - 7FFFFFFFFFFFFFFF
-            if (checkSernoValidity(serno)) {
+            if (checkSernoValidity(range, serno)) {
                 ok = true;
             } else {
                 String msg = intres.getLocalizedMessage("sernogenerator.discarding");
@@ -167,7 +229,11 @@ public class SernoGeneratorRandom implements SernoGenerator {
     }
 
     protected boolean checkSernoValidity(final BigInteger serno) {
-        if ((serno.compareTo(lowest) >= 0) && (serno.compareTo(highest) <= 0)) {
+        return checkSernoValidity(range, serno);
+    }
+
+    private boolean checkSernoValidity(final SernoRange range, final BigInteger serno) {
+        if ((serno.compareTo(range.lowest) >= 0) && (serno.compareTo(range.highest) <= 0)) {
             return true;
         }
         return false;
@@ -175,21 +241,23 @@ public class SernoGeneratorRandom implements SernoGenerator {
 
     @Override
     public int getNoSernoBytes() {
-        return noOctets;
+        return range.noOctets;
     }
 
     @Override
     public void setSeed(final long seed) {
-        random.setSeed(seed);
+        // The seed supplements the existing seed of each instance, so they still generate different numbers
+        for (final SecureRandom random : randoms) {
+            random.setSeed(seed);
+        }
     }
 
     @Override
-    public void setAlgorithm(final String algo) throws NoSuchAlgorithmException {
+    public synchronized void setAlgorithm(final String algo) throws NoSuchAlgorithmException {
         // Since re-initialization is expensive, we only do it if we changed the algo
         if (this.algorithm == null || !this.algorithm.equals(algo)) {
             this.algorithm = algo;
             // We must force re-init after choosing a new algorithm
-            this.random = null;
             init();
         }
     }
@@ -198,26 +266,24 @@ public class SernoGeneratorRandom implements SernoGenerator {
      * @return the random generator algorithm as reported by the underlying Java random number generator.
      */
     protected String getAlgorithm() {
-        return random.getAlgorithm();
+        return randoms[0].getAlgorithm();
+    }
+
+    /** Available for testing
+     * @return the number of random generator instances used by different threads
+     */
+    protected int getRandomInstances() {
+        return randoms.length;
     }
     
     @Override
-    public void setSernoOctetSize(final int noOctets) {
-        if (this.noOctets != noOctets) {
+    public synchronized void setSernoOctetSize(final int noOctets) {
+        if (this.range.noOctets != noOctets) {
         	// We allow 0 octets for testing
             if ((noOctets > 20) && (noOctets != 0)) {
                 throw new IllegalArgumentException("SernoOctetSize must be between 4 and 20 bytes for this generator.");
             }
-            char[] arr = new char[noOctets*2];
-            // 00800000 (filled with 0 to the no of octets)
-            Arrays.fill(arr, '0');
-            arr[2] = '8';
-            lowest = new BigInteger(String.valueOf(arr), 16);
-            // 7FFFFFFF (filled with F to the no of octets)
-            Arrays.fill(arr, 'F');
-            arr[0] = '7';
-            highest = new BigInteger(String.valueOf(arr), 16);
-            this.noOctets = noOctets;
+            this.range = new SernoRange(noOctets);
         }
     }
 
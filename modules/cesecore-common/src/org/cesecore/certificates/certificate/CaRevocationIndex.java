@@ -0,0 +1,259 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * In-memory index of the revoked certificates of one CA.
+ *
+ * Only revoked certificates are kept, so the index is small even for CAs with many issued certificates. A serial number
+ * that is not in the index belongs to a certificate that is either not revoked or does not exist at all.
+ *
+ * Serial numbers whose status is being changed on this node are marked as pending until the next refresh has read the
+ * committed status from the database. The index is not authoritative for pending serial numbers, or before it has been
+ * loaded.
+ *
+ * @version $Id$
+ */
+public class CaRevocationIndex {
+
+    private static final Logger log = Logger.getLogger(CaRevocationIndex.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x52564958; // "RVIX"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final String issuerDn;
+    private final ConcurrentHashMap<BigInteger, CertificateStatus> revoked = new ConcurrentHashMap<>();
+    /** Serial numbers with a status change in progress on this node, mapped to the time they were marked */
+    private final ConcurrentHashMap<BigInteger, Long> pending = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+    /** Epoch milliseconds of the start of the last load or refresh that read from the database */
+    private volatile long lastRefreshTime = 0;
+    /** Epoch milliseconds of when the index was last checked for revoked certificates deleted from the database */
+    private volatile long lastDeletionCheckTime = 0;
+
+    public CaRevocationIndex(final String issuerDn) {
+        this.issuerDn = issuerDn;
+    }
+
+    public String getIssuerDn() {
+        return issuerDn;
+    }
+
+    /** @return true if the index has been loaded, and no change of the certificate's status is in progress on this node */
+    public boolean isAuthoritative(final BigInteger serialNumber) {
+        return loaded && !pending.containsKey(serialNumber);
+    }
+
+    /** @return the status of the certificate if it is revoked, or null if it is not revoked or does not exist */
+    public CertificateStatus getRevokedStatus(final BigInteger serialNumber) {
+        return revoked.get(serialNumber);
+    }
+
+    /** Marks a serial number as having a status change in progress, so lookups go to the database until the next refresh. */
+    public void markPending(final BigInteger serialNumber) {
+        pending.put(serialNumber, Long.valueOf(System.currentTimeMillis()));
+    }
+
+    /** @return the serial numbers marked as pending before the given time */
+    public List<BigInteger> getPendingBefore(final long time) {
+        final List<BigInteger> ret = new ArrayList<>();
+        for (final Map.Entry<BigInteger, Long> entry : pending.entrySet()) {
+            if (entry.getValue().longValue() < time) {
+                ret.add(entry.getKey());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Replaces the whole content of the index.
+     *
+     * @param revokedStatuses the status of every revoked certificate of the CA
+     * @param refreshTime epoch milliseconds of when the database read started
+     */
+    public void load(final Map<BigInteger, CertificateStatus> revokedStatuses, final long refreshTime) {
+        for (final BigInteger serialNumber : revoked.keySet()) {
+            if (!revokedStatuses.containsKey(serialNumber)) {
+                revoked.remove(serialNumber);
+            }
+        }
+        revoked.putAll(revokedStatuses);
+        lastRefreshTime = refreshTime;
+        loaded = true;
+    }
+
+    /**
+     * Applies statuses read from the database. Revoked certificates are added, all others are removed. Pending marks for the
+     * given serial numbers that were set before the database read started are cleared.
+     *
+     * @param statuses the committed status of each certificate that might have changed
+     * @param refreshTime epoch milliseconds of when the database read started
+     * @return the number of serial numbers whose revocation status changed in the index
+     */
+    public int update(final Map<BigInteger, CertificateStatus> statuses, final long refreshTime) {
+        int changes = 0;
+        for (final Map.Entry<BigInteger, CertificateStatus> entry : statuses.entrySet()) {
+            final BigInteger serialNumber = entry.getKey();
+            final CertificateStatus status = entry.getValue();
+            if (status.equals(CertificateStatus.REVOKED)) {
+                final CertificateStatus previous = revoked.put(serialNumber, status);
+                if (previous == null || previous.revocationReason != status.revocationReason) {
+                    changes++;
+                }
+            } else if (revoked.remove(serialNumber) != null) {
+                changes++;
+            }
+            final Long markedAt = pending.get(serialNumber);
+            if (markedAt != null && markedAt.longValue() < refreshTime) {
+                pending.remove(serialNumber, markedAt);
+            }
+        }
+        lastRefreshTime = Math.max(lastRefreshTime, refreshTime);
+        return changes;
+    }
+
+    /**
+     * Checks the index against the number of revoked certificates of the CA in the database, counted after a refresh. A refresh only
+     * reads rows that still exist, so a revoked certificate row that was deleted, like a limited entry removed from hold by an imported
+     * CRL, stays in the index. Revocations committed after the refresh can only make the count larger than the index.
+     *
+     * @param revokedCount the number of revoked certificates of the CA in the database
+     * @return true if the index has entries that are no longer in the database, and must be loaded again
+     */
+    public boolean hasDeletedEntries(final long revokedCount) {
+        return revoked.size() > revokedCount;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public long getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+
+    /** @return epoch milliseconds of the last check for deleted entries, or 0 if the index has not been checked since it was created */
+    public long getLastDeletionCheckTime() {
+        return lastDeletionCheckTime;
+    }
+
+    /** Records that the index was checked for deleted entries, or fully loaded from the database, at the given time. */
+    public void setLastDeletionCheckTime(final long lastDeletionCheckTime) {
+        this.lastDeletionCheckTime = lastDeletionCheckTime;
+    }
+
+    /** @return the number of revoked certificates in the index */
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Writes the revoked entries to a memory-mapped file, so that the index can be restored with {@link #readSnapshot(File)} after a
+     * restart without reading all revoked certificates from the database.
+     */
+    public void writeSnapshot(final File file) throws IOException {
+        final Map<BigInteger, CertificateStatus> entries = new HashMap<>(revoked);
+        final List<byte[]> serialNumbers = new ArrayList<>(entries.size());
+        final byte[] encodedIssuerDn = issuerDn.getBytes(StandardCharsets.UTF_8);
+        long size = 4 + 4 + 4 + encodedIssuerDn.length + 8 + 4;
+        for (final BigInteger serialNumber : entries.keySet()) {
+            final byte[] encoded = serialNumber.toByteArray();
+            serialNumbers.add(encoded);
+            size += 2 + encoded.length + 8 + 4 + 4;
+        }
+        final File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (final RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw"); final FileChannel channel = raf.getChannel()) {
+            raf.setLength(size);
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putInt(SNAPSHOT_VERSION);
+            buffer.putInt(encodedIssuerDn.length);
+            buffer.put(encodedIssuerDn);
+            buffer.putLong(lastRefreshTime);
+            buffer.putInt(entries.size());
+            for (final byte[] encoded : serialNumbers) {
+                final CertificateStatus status = entries.get(new BigInteger(encoded));
+                buffer.putShort((short) encoded.length);
+                buffer.put(encoded);
+                buffer.putLong(status.revocationDate.getTime());
+                buffer.putInt(status.revocationReason);
+                buffer.putInt(status.certificateProfileId);
+            }
+            buffer.force();
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Unable to replace revocation index snapshot " + file.getAbsolutePath());
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote " + entries.size() + " revoked entries for '" + issuerDn + "' to " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Restores the revoked entries from a file written by {@link #writeSnapshot(File)}. The index is then as current as the
+     * last refresh before the snapshot was written, and must be refreshed from that time with {@link #update(Map, long)}.
+     *
+     * @return true if the snapshot was read, false if it was not in the expected format
+     */
+    public boolean readSnapshot(final File file) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r"); final FileChannel channel = raf.getChannel()) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 20 || buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                log.info("Ignoring revocation index snapshot in unknown format: " + file.getAbsolutePath());
+                return false;
+            }
+            final byte[] encodedIssuerDn = new byte[buffer.getInt()];
+            buffer.get(encodedIssuerDn);
+            if (!issuerDn.equals(new String(encodedIssuerDn, StandardCharsets.UTF_8))) {
+                log.info("Ignoring revocation index snapshot for another issuer: " + file.getAbsolutePath());
+                return false;
+            }
+            final long snapshotTime = buffer.getLong();
+            final int count = buffer.getInt();
+            final Map<BigInteger, CertificateStatus> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                final byte[] encoded = new byte[buffer.getShort()];
+                buffer.get(encoded);
+                final long revocationDate = buffer.getLong();
+                final int revocationReason = buffer.getInt();
+                final int certificateProfileId = buffer.getInt();
+                entries.put(new BigInteger(encoded), new CertificateStatus(CertificateStatus.REVOKED.toString(), revocationDate, revocationReason,
+                        certificateProfileId));
+            }
+            load(entries, snapshotTime);
+            return true;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and similar for truncated files
+            log.info("Ignoring unreadable revocation index snapshot " + file.getAbsolutePath() + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.cesecore.util.CertTools;
+
+/**
+ * Creates the search tokens of a certificate, that are stored in the certificate search index.
+ * <p>
+ * A search token is an upper case string. For each value in the subject DN and subject alternative name, and for the username,
+ * the tokens are the whole value and every part of the value that starts at a word (after a space, dot, '@' or similar). A search
+ * that finds certificates with a token starting with the search string will then find every certificate where the search string
+ * matches the start of a word in one of the values. The whole subject DN and subject alternative name, each component ("CN=Name")
+ * and the serial number are also tokens, for exact searches.
+ *
+ * @version $Id$
+ */
+public final class CertificateSearchTokens {
+
+    /** Token created from the subject DN */
+    public static final int TYPE_SUBJECTDN = 0;
+    /** Token created from the subject alternative name */
+    public static final int TYPE_SUBJECTALTNAME = 1;
+    /** Token created from the username */
+    public static final int TYPE_USERNAME = 2;
+    /** The serial number in decimal form */
+    public static final int TYPE_SERIALNUMBER = 3;
+
+    /** Longer tokens are truncated, to fit in an indexed database column */
+    public static final int MAX_TOKEN_LENGTH = 250;
+
+    private CertificateSearchTokens() {}
+
+    /** @return the tokens of a subject DN, or an empty set if there are none */
+    public static Set<String> getSubjectDnTokens(final String subjectDn) {
+        final Set<String> tokens = new LinkedHashSet<>();
+        if (StringUtils.isNotEmpty(subjectDn)) {
+            tokens.add(normalize(subjectDn));
+            addComponentTokens(tokens, subjectDn);
+        }
+        return tokens;
+    }
+
+    /** @return the tokens of a subject alternative name, or an empty set if there are none */
+    public static Set<String> getSubjectAltNameTokens(final String subjectAltName) {
+        final Set<String> tokens = new LinkedHashSet<>();
+        if (StringUtils.isNotEmpty(subjectAltName)) {
+            tokens.add(normalize(subjectAltName));
+            addComponentTokens(tokens, subjectAltName);
+        }
+        return tokens;
+    }
+
+    /** @return the tokens of a username, or an empty set if there are none */
+    public static Set<String> getUsernameTokens(final String username) {
+        final Set<String> tokens = new LinkedHashSet<>();
+        if (StringUtils.isNotEmpty(username)) {
+            addWordTokens(tokens, normalize(username));
+        }
+        return tokens;
+    }
+
+    /** @return the token of a serial number in decimal form */
+    public static Set<String> getSerialNumberTokens(final String serialNumber) {
+        if (StringUtils.isEmpty(serialNumber)) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(normalize(serialNumber));
+    }
+
+    /** @return the search string in the same form as the tokens */
+    public static String normalize(final String value) {
+        final String upperCase = value.trim().toUpperCase(Locale.ROOT);
+        return upperCase.length() > MAX_TOKEN_LENGTH ? upperCase.substring(0, MAX_TOKEN_LENGTH) : upperCase;
+    }
+
+    /** Add the tokens of each "name=value" component of a DN or subject alternative name */
+    private static void addComponentTokens(final Set<String> tokens, final String dn) {
+        for (final String component : CertTools.getX500NameComponents(dn)) {
+            final String normalized = normalize(component);
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            tokens.add(normalized);
+            final int equalsIndex = normalized.indexOf('=');
+            addWordTokens(tokens, equalsIndex == -1 ? normalized : normalized.substring(equalsIndex + 1).trim());
+        }
+    }
+
+    /** Add the value and every part of it that starts at the beginning of a word */
+    private static void addWordTokens(final Set<String> tokens, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isLetterOrDigit(value.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(value.charAt(i - 1)))) {
+                tokens.add(value.substring(i));
+            } else if (i == 0) {
+                tokens.add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.security.cert.Certificate;
+import java.security.cert.CertificateParsingException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.util.Base64;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.ConcurrentCache;
+
+/**
+ * Cache of certificates read from the database, in parsed form, so that certificates that are read often (CA certificates, OCSP signers,
+ * certificates in the publisher queue) are not Base64 decoded and parsed again every time.
+ * <p>
+ * Certificates are cached by fingerprint, but a cached certificate is only returned if the Base64 encoded certificate is exactly the same
+ * as the one it was parsed from. The certificate objects are shared, and must not be modified. The maximum number of certificates is set
+ * with certificate.parsedcache.maxentries, 0 disables the cache.
+ *
+ * @version $Id$
+ */
+public enum ParsedCertificateCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(ParsedCertificateCache.class);
+
+    /** Milliseconds to wait for another thread that is parsing the same certificate, before parsing it ourselves */
+    private static final long CACHE_READ_TIMEOUT = 500L;
+
+    private final ConcurrentCache<String, CachedCertificate> cache = new ConcurrentCache<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static final class CachedCertificate {
+        private final String base64Cert;
+        private final Certificate certificate;
+
+        private CachedCertificate(final String base64Cert, final Certificate certificate) {
+            this.base64Cert = base64Cert;
+            this.certificate = certificate;
+        }
+    }
+
+    private ParsedCertificateCache() {
+        setMaxEntries(CesecoreConfiguration.getParsedCertificateCacheMaxEntries());
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the certificate, as stored in the database
+     * @param base64Cert the Base64 encoded certificate, as stored in the database
+     * @return the parsed certificate, from the cache if it has been parsed before
+     * @throws CertificateParsingException if the certificate can not be parsed
+     */
+    public Certificate getCertificate(final String fingerprint, final String base64Cert) throws CertificateParsingException {
+        if (fingerprint == null || !cache.isEnabled()) {
+            return parse(base64Cert);
+        }
+        final ConcurrentCache<String, CachedCertificate>.Entry entry = cache.openCacheEntry(fingerprint, CACHE_READ_TIMEOUT);
+        if (entry == null) {
+            return parse(base64Cert);
+        }
+        try {
+            if (entry.isInCache()) {
+                final CachedCertificate cached = entry.getValue();
+                if (cached != null && base64Cert.equals(cached.base64Cert)) {
+                    hits.incrementAndGet();
+                    return cached.certificate;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Certificate with fingerprint " + fingerprint + " is not the same as the cached certificate. Not using the cache.");
+                }
+                return parse(base64Cert);
+            }
+            final Certificate certificate = parse(base64Cert);
+            entry.putValue(new CachedCertificate(base64Cert, certificate));
+            return certificate;
+        } finally {
+            entry.close();
+        }
+    }
+
+    /**
+     * Set the maximum number of cached certificates, 0 to disable the cache. The cache is emptied.
+     */
+    public void setMaxEntries(final long maxEntries) {
+        cache.clear();
+        if (maxEntries == 0) {
+            cache.setEnabled(false);
+        } else {
+            cache.setMaxEntries(maxEntries);
+            cache.setEnabled(true);
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /** @return number of certificates that were found in the cache */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return number of certificates that had to be parsed */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return the ratio of certificates that were found in the cache, between 0 and 1 */
+    public double getHitRatio() {
+        final long hitCount = hits.get();
+        final long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private Certificate parse(final String base64Cert) throws CertificateParsingException {
+        misses.incrementAndGet();
+        return CertTools.getCertfromByteArray(Base64.decode(base64Cert.getBytes()), Certificate.class);
+    }
+}
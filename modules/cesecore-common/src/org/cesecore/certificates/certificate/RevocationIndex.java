@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Holds one {@link CaRevocationIndex} per issuer DN. Indexes are created on first use and filled and refreshed by
+ * CertificateStoreSessionBean.
+ *
+ * @version $Id$
+ */
+public enum RevocationIndex {
+    INSTANCE;
+
+    private final ConcurrentHashMap<String, CaRevocationIndex> indexes = new ConcurrentHashMap<>();
+
+    /** @return the index for the issuer DN (in BC DN format), which may not have been loaded yet */
+    public CaRevocationIndex getIndex(final String issuerDn) {
+        CaRevocationIndex index = indexes.get(issuerDn);
+        if (index == null) {
+            index = new CaRevocationIndex(issuerDn);
+            final CaRevocationIndex existing = indexes.putIfAbsent(issuerDn, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    /** @return all indexes that have been loaded */
+    public List<CaRevocationIndex> getLoadedIndexes() {
+        final List<CaRevocationIndex> ret = new ArrayList<>();
+        for (final CaRevocationIndex index : indexes.values()) {
+            if (index.isLoaded()) {
+                ret.add(index);
+            }
+        }
+        return ret;
+    }
+
+    /** Drops the index for the issuer DN, so it is loaded from the database again on next use. */
+    public void remove(final String issuerDn) {
+        indexes.remove(issuerDn);
+        final File snapshot = getSnapshotFile(issuerDn);
+        if (snapshot != null) {
+            snapshot.delete();
+        }
+    }
+
+    /** @return the file used to persist the index for the issuer DN, or null if persistence is not configured */
+    public File getSnapshotFile(final String issuerDn) {
+        final String directory = CesecoreConfiguration.getRevocationIndexDirectory();
+        if (directory == null) {
+            return null;
+        }
+        return new File(directory, "revocationindex-" + Integer.toHexString(issuerDn.hashCode()) + ".bin");
+    }
+
+    /** Clear all indexes. */
+    public void flush() {
+        indexes.clear();
+    }
+}
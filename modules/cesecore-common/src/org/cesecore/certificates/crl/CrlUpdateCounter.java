@@ -0,0 +1,53 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cesecore.util.CertTools;
+
+/**
+ * Counts the CRLs that have been stored by this node for each issuer, so that caches of the latest CRL can tell that they are stale
+ * without reading the database. CRLs stored by other nodes sharing the database are not counted.
+ *
+ * @version $Id$
+ */
+public enum CrlUpdateCounter {
+    INSTANCE;
+
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /** Called by CrlStoreSessionBean when the transaction that stored a CRL has been committed. */
+    public void crlStored(final String issuerDn, final boolean deltaCrl) {
+        getCounter(issuerDn, deltaCrl).incrementAndGet();
+    }
+
+    /** @return a number that is changed every time a full or delta CRL from the issuer is stored by this node */
+    public long getCount(final String issuerDn, final boolean deltaCrl) {
+        return getCounter(issuerDn, deltaCrl).get();
+    }
+
+    private AtomicLong getCounter(final String issuerDn, final boolean deltaCrl) {
+        final String key = (deltaCrl ? "delta;" : "full;") + CertTools.stringToBCDNString(issuerDn);
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            counter = new AtomicLong();
+            final AtomicLong existing = counters.putIfAbsent(key, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+}
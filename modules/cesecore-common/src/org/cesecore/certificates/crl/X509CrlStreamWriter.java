@@ -0,0 +1,365 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1TaggedObjectParser;
+import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+/**
+ * Writes a signed X.509 CRL without keeping the revoked certificate entries in memory.
+ *
+ * Entries are DER encoded one at a time to a temporary file. When all entries have been added, the TBSCertList is streamed
+ * from the file through the signer, and the complete CRL is written by {@link #writeTo(OutputStream)}. The encoding is the
+ * same as the one produced by X509v2CRLBuilder for the same input.
+ *
+ * Instances must be closed to remove the temporary file.
+ *
+ * @version $Id$
+ */
+public class X509CrlStreamWriter implements Closeable {
+
+    private static final Logger log = Logger.getLogger(X509CrlStreamWriter.class);
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final X500Name issuer;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private final Extensions extensions;
+    private final File entriesFile;
+    private OutputStream entriesOut;
+    private long entriesLength = 0;
+    private long entryCount = 0;
+    private byte[] tbsHeader = null;
+    private byte[] tbsTrailer = null;
+    private AlgorithmIdentifier signatureAlgorithm = null;
+    private byte[] signature = null;
+
+    /**
+     * @param issuer the issuer name of the CRL
+     * @param thisUpdate thisUpdate of the CRL
+     * @param nextUpdate nextUpdate of the CRL, or null to leave it out
+     * @param extensions CRL extensions, or null if the CRL has none
+     * @throws IOException if the temporary file for the entries could not be created
+     */
+    public X509CrlStreamWriter(final X500Name issuer, final Date thisUpdate, final Date nextUpdate, final Extensions extensions) throws IOException {
+        this.issuer = issuer;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.extensions = extensions;
+        this.entriesFile = File.createTempFile("crlentries", ".der");
+        this.entriesOut = new BufferedOutputStream(new FileOutputStream(entriesFile), BUFFER_SIZE);
+    }
+
+    /**
+     * Adds a revoked certificate entry. The entry is encoded and written to the temporary file immediately.
+     *
+     * @param serialNumber serial number of the revoked certificate
+     * @param revocationDate time of revocation
+     * @param reason one of the RevokedCertInfo.REVOCATION_REASON_ constants, 0 (unspecified) leaves out the reasonCode extension
+     */
+    public void addEntry(final BigInteger serialNumber, final Date revocationDate, final int reason) throws IOException {
+        if (entriesOut == null) {
+            throw new IllegalStateException("Entries can not be added after the CRL has been signed.");
+        }
+        final ASN1EncodableVector entry = new ASN1EncodableVector();
+        entry.add(new ASN1Integer(serialNumber));
+        entry.add(new Time(revocationDate));
+        if (reason != 0) {
+            if (reason < 0) {
+                throw new IllegalArgumentException("invalid reason value: " + reason);
+            }
+            final ASN1Encodable reasonCode = new DERSequence(new ASN1Encodable[] { Extension.reasonCode,
+                    new DEROctetString(CRLReason.lookup(reason).getEncoded(ASN1Encoding.DER)) });
+            entry.add(new DERSequence(reasonCode));
+        }
+        final byte[] encoded = new DERSequence(entry).getEncoded(ASN1Encoding.DER);
+        entriesOut.write(encoded);
+        entriesLength += encoded.length;
+        entryCount++;
+    }
+
+    /**
+     * Copies the entries of an existing CRL, except the ones for the given serial numbers. The existing CRL is parsed one entry at
+     * a time, and entries are copied with their extensions as they are.
+     *
+     * @param encodedCrl a DER encoded CRL
+     * @param excludedSerialNumbers serial numbers of entries that should not be copied
+     * @return the number of entries copied
+     * @throws IOException if the CRL could not be parsed
+     */
+    public long addEntries(final byte[] encodedCrl, final Set<BigInteger> excludedSerialNumbers) throws IOException {
+        if (entriesOut == null) {
+            throw new IllegalStateException("Entries can not be added after the CRL has been signed.");
+        }
+        long copied = 0;
+        try {
+            final ASN1SequenceParser certificateList = (ASN1SequenceParser) new ASN1StreamParser(encodedCrl).readObject();
+            final ASN1SequenceParser tbsCertList = (ASN1SequenceParser) certificateList.readObject();
+            // The optional version is followed by signature, issuer, thisUpdate and the optional nextUpdate, before the optional entries
+            boolean thisUpdateRead = false;
+            ASN1Encodable field;
+            while ((field = tbsCertList.readObject()) != null) {
+                if (field instanceof ASN1UTCTime || field instanceof ASN1GeneralizedTime) {
+                    thisUpdateRead = true;
+                } else if (field instanceof ASN1SequenceParser && !thisUpdateRead) {
+                    // Must be read to get to the next field
+                    ((ASN1SequenceParser) field).toASN1Primitive();
+                } else if (field instanceof ASN1SequenceParser) {
+                    final ASN1SequenceParser entries = (ASN1SequenceParser) field;
+                    ASN1Encodable entry;
+                    while ((entry = entries.readObject()) != null) {
+                        final ASN1Sequence entrySequence = ASN1Sequence.getInstance(entry.toASN1Primitive());
+                        if (!excludedSerialNumbers.contains(ASN1Integer.getInstance(entrySequence.getObjectAt(0)).getValue())) {
+                            final byte[] encoded = entrySequence.getEncoded(ASN1Encoding.DER);
+                            entriesOut.write(encoded);
+                            entriesLength += encoded.length;
+                            entryCount++;
+                            copied++;
+                        }
+                    }
+                    break;
+                } else if (field instanceof ASN1TaggedObjectParser) {
+                    // Extensions, so there are no entries
+                    break;
+                }
+            }
+        } catch (ClassCastException | IllegalArgumentException e) {
+            throw new IOException("Not a valid CRL: " + e.getMessage(), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Copied " + copied + " entries from existing CRL.");
+        }
+        return copied;
+    }
+
+    /** @return the number of entries added so far */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * Signs the CRL. No more entries can be added after this.
+     *
+     * @param signer the signer to use, whose algorithm identifier is written to the CRL
+     */
+    public void sign(final ContentSigner signer) throws IOException {
+        if (entriesOut != null) {
+            entriesOut.close();
+            entriesOut = null;
+        }
+        signatureAlgorithm = signer.getAlgorithmIdentifier();
+        // Everything before and after the list of entries is small, so we encode that part in memory
+        final ASN1EncodableVector header = new ASN1EncodableVector();
+        header.add(new ASN1Integer(1));
+        header.add(signatureAlgorithm);
+        header.add(issuer);
+        header.add(new Time(thisUpdate));
+        if (nextUpdate != null) {
+            header.add(new Time(nextUpdate));
+        }
+        final byte[] headerContent = encodeContent(header);
+        final byte[] entriesHeader = entryCount > 0 ? encodeHeader(BERTags.SEQUENCE | BERTags.CONSTRUCTED, entriesLength) : new byte[0];
+        tbsTrailer = extensions != null ? new DERTaggedObject(0, extensions).getEncoded(ASN1Encoding.DER) : new byte[0];
+        final long tbsContentLength = headerContent.length + entriesHeader.length + (entryCount > 0 ? entriesLength : 0) + tbsTrailer.length;
+        final byte[] tbsTag = encodeHeader(BERTags.SEQUENCE | BERTags.CONSTRUCTED, tbsContentLength);
+        tbsHeader = new byte[tbsTag.length + headerContent.length + entriesHeader.length];
+        System.arraycopy(tbsTag, 0, tbsHeader, 0, tbsTag.length);
+        System.arraycopy(headerContent, 0, tbsHeader, tbsTag.length, headerContent.length);
+        System.arraycopy(entriesHeader, 0, tbsHeader, tbsTag.length + headerContent.length, entriesHeader.length);
+        try (final OutputStream signerOut = signer.getOutputStream()) {
+            writeTbsCertList(signerOut);
+        }
+        signature = signer.getSignature();
+        if (log.isDebugEnabled()) {
+            log.debug("Signed CRL with " + entryCount + " entries, TBSCertList size " + getTbsCertListLength() + " bytes.");
+        }
+    }
+
+    /**
+     * Verifies the signature over the TBSCertList, reading the entries from the temporary file once more.
+     *
+     * @return true if the signature is valid
+     */
+    public boolean isSignatureValid(final ContentVerifierProvider verifierProvider) throws IOException, OperatorCreationException {
+        checkSigned();
+        final ContentVerifier verifier = verifierProvider.get(signatureAlgorithm);
+        try (final OutputStream verifierOut = verifier.getOutputStream()) {
+            writeTbsCertList(verifierOut);
+        }
+        return verifier.verify(signature);
+    }
+
+    /** @return the length in bytes of the DER encoded CRL that {@link #writeTo(OutputStream)} writes */
+    public long getEncodedLength() throws IOException {
+        checkSigned();
+        final long contentLength = getTbsCertListLength() + getTrailer().length;
+        return encodeHeader(BERTags.SEQUENCE | BERTags.CONSTRUCTED, contentLength).length + contentLength;
+    }
+
+    /** Writes the DER encoded and signed CRL. */
+    public void writeTo(final OutputStream out) throws IOException {
+        checkSigned();
+        final byte[] trailer = getTrailer();
+        out.write(encodeHeader(BERTags.SEQUENCE | BERTags.CONSTRUCTED, getTbsCertListLength() + trailer.length));
+        writeTbsCertList(out);
+        out.write(trailer);
+        out.flush();
+    }
+
+    /** @return the DER encoded and signed CRL. The array is allocated once with the exact size of the CRL. */
+    public byte[] getEncoded() throws IOException {
+        final long length = getEncodedLength();
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("CRL of " + length + " bytes is too large to be returned as a byte array.");
+        }
+        final byte[] ret = new byte[(int) length];
+        writeTo(new OutputStream() {
+            private int pos = 0;
+            @Override
+            public void write(final int b) {
+                ret[pos++] = (byte) b;
+            }
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+                System.arraycopy(b, off, ret, pos, len);
+                pos += len;
+            }
+        });
+        return ret;
+    }
+
+    /** Removes the temporary file with the encoded entries. */
+    @Override
+    public void close() throws IOException {
+        if (entriesOut != null) {
+            entriesOut.close();
+            entriesOut = null;
+        }
+        if (entriesFile.exists() && !entriesFile.delete()) {
+            log.warn("Unable to delete temporary CRL entries file " + entriesFile.getAbsolutePath());
+        }
+    }
+
+    private void checkSigned() {
+        if (signature == null) {
+            throw new IllegalStateException("The CRL has not been signed.");
+        }
+    }
+
+    /** @return signatureAlgorithm and signatureValue of the CertificateList */
+    private byte[] getTrailer() throws IOException {
+        final byte[] algorithm = signatureAlgorithm.getEncoded(ASN1Encoding.DER);
+        final byte[] signatureValue = new DERBitString(signature).getEncoded(ASN1Encoding.DER);
+        final byte[] ret = new byte[algorithm.length + signatureValue.length];
+        System.arraycopy(algorithm, 0, ret, 0, algorithm.length);
+        System.arraycopy(signatureValue, 0, ret, algorithm.length, signatureValue.length);
+        return ret;
+    }
+
+    private long getTbsCertListLength() {
+        return tbsHeader.length + (entryCount > 0 ? entriesLength : 0) + tbsTrailer.length;
+    }
+
+    private void writeTbsCertList(final OutputStream out) throws IOException {
+        out.write(tbsHeader);
+        if (entryCount > 0) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            try (final InputStream in = new BufferedInputStream(new FileInputStream(entriesFile), BUFFER_SIZE)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+        out.write(tbsTrailer);
+    }
+
+    /** @return the concatenated DER encodings of the elements in the vector, without an enclosing SEQUENCE */
+    private static byte[] encodeContent(final ASN1EncodableVector vector) throws IOException {
+        final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        for (int i = 0; i < vector.size(); i++) {
+            ret.write(vector.get(i).toASN1Primitive().getEncoded(ASN1Encoding.DER));
+        }
+        return ret.toByteArray();
+    }
+
+    /** @return DER identifier and definite length octets for a value of the given tag and content length */
+    private static byte[] encodeHeader(final int tag, final long length) {
+        if (length < 128) {
+            return new byte[] { (byte) tag, (byte) length };
+        }
+        int size = 1;
+        long remaining = length;
+        while ((remaining >>>= 8) != 0) {
+            size++;
+        }
+        final byte[] ret = new byte[2 + size];
+        ret[0] = (byte) tag;
+        ret[1] = (byte) (0x80 | size);
+        for (int i = size - 1, shift = 0; i >= 0; i--, shift += 8) {
+            ret[2 + i] = (byte) (length >>> shift);
+        }
+        return ret;
+    }
+}
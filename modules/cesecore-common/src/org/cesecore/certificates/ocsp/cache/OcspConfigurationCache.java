@@ -56,6 +56,10 @@ public enum OcspConfigurationCache {
      * If this regex is fulfilled the "revoked" will be return even if {@link #nonExistingIsRevoked} is false;
      */
     private Pattern nonExistingIsRevokedOverideRegex;
+    /*
+     * True if untilNextUpdate or maxAge is configured for any certificate profile, since this is checked on every request
+     */
+    private boolean untilNextUpdateOrMaxAgeConfiguredForAnyProfile;
     
     private OcspConfigurationCache() {
         reloadConfiguration();
@@ -85,6 +89,12 @@ public enum OcspConfigurationCache {
             final String value = OcspConfiguration.getNonExistingIsRevokedOverideRegex();
             nonExistingIsRevokedOverideRegex = value != null ? Pattern.compile(value) : null;
         }
+        untilNextUpdateOrMaxAgeConfiguredForAnyProfile = OcspConfiguration.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile();
+    }
+
+    /** @return true if ocsp.&lt;profileid&gt;.untilNextUpdate or ocsp.&lt;profileid&gt;.maxAge was configured when the configuration was last loaded */
+    public boolean isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile() {
+        return untilNextUpdateOrMaxAgeConfiguredForAnyProfile;
     }
 
     public boolean isNonExistingUnauthorized(OcspKeyBinding ocspKeyBinding) {
@@ -0,0 +1,227 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Bounded store of already signed OCSP responses for single certificate requests without nonce.
+ *
+ * Entries are keyed by the responding OcspKeyBinding (0 for CAs signing their own responses) and the requested CertificateID.
+ * A response is served from the store until its refresh time, which is the configured refresh time after signing, or half the
+ * remaining time to nextUpdate, whichever comes first. A background timer re-signs entries that have been used before they
+ * reach their refresh time and drops the ones that have not.
+ *
+ * All stored responses for a serial number are removed as soon as the revocation status for it changes on this node, and again when
+ * the change has been committed.
+ *
+ * @version $Id$
+ */
+public enum OcspPreSignedResponseCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspPreSignedResponseCache.class);
+
+    /** A signed response and what is needed to decide if it can still be served, or to re-sign it. */
+    public static class OcspPreSignedResponse {
+        private final String key;
+        private final BigInteger serialNumber;
+        private final OCSPResp ocspResponse;
+        private final byte[] ocspRequest;
+        private final int ocspKeyBindingId;
+        private final X509Certificate signerCert;
+        private final CertificateStatus issuerCaCertificateStatus;
+        private final long maxAge;
+        private final long refreshTime;
+        private volatile boolean used = false;
+
+        private OcspPreSignedResponse(final String key, final BigInteger serialNumber, final OCSPResp ocspResponse, final byte[] ocspRequest,
+                final int ocspKeyBindingId, final X509Certificate signerCert, final CertificateStatus issuerCaCertificateStatus, final long maxAge,
+                final long refreshTime) {
+            this.key = key;
+            this.serialNumber = serialNumber;
+            this.ocspResponse = ocspResponse;
+            this.ocspRequest = ocspRequest;
+            this.ocspKeyBindingId = ocspKeyBindingId;
+            this.signerCert = signerCert;
+            this.issuerCaCertificateStatus = issuerCaCertificateStatus;
+            this.maxAge = maxAge;
+            this.refreshTime = refreshTime;
+        }
+
+        public OCSPResp getOcspResponse() { return ocspResponse; }
+        /** @return the DER encoded request this response was produced for, used when re-signing */
+        public byte[] getOcspRequest() { return ocspRequest; }
+        public int getOcspKeyBindingId() { return ocspKeyBindingId; }
+        public X509Certificate getSignerCert() { return signerCert; }
+        public CertificateStatus getIssuerCaCertificateStatus() { return issuerCaCertificateStatus; }
+        public long getMaxAge() { return maxAge; }
+        /** @return the time in epoch milliseconds after which this response should no longer be served */
+        public long getRefreshTime() { return refreshTime; }
+        /** @return true if this response has been served since it was stored */
+        public boolean isUsed() { return used; }
+    }
+
+    /** Stored responses grouped by serial number, so all responses for a certificate can be invalidated at once. */
+    private final ConcurrentHashMap<BigInteger, Map<String, OcspPreSignedResponse>> cache = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    /** Incremented on every invalidation, so responses based on status read before an invalidation are never stored after it. */
+    private final AtomicLong invalidations = new AtomicLong(0L);
+
+    /** @return a lookup key for the CertificateID when answered by the given OcspKeyBinding (0 for CAs) */
+    public String createCacheLookupKey(final int ocspKeyBindingId, final CertificateID certId) {
+        return ocspKeyBindingId + ";" + certId.getHashAlgOID().getId() + ";" + Hex.toHexString(certId.getIssuerNameHash()) + ";"
+                + Hex.toHexString(certId.getIssuerKeyHash()) + ";" + certId.getSerialNumber().toString(16);
+    }
+
+    /** @return a stored response that may still be served, or null if there is none. */
+    public OcspPreSignedResponse getResponse(final String cacheLookupKey, final BigInteger serialNumber) {
+        final Map<String, OcspPreSignedResponse> responses = cache.get(serialNumber);
+        if (responses == null) {
+            return null;
+        }
+        final OcspPreSignedResponse response = responses.get(cacheLookupKey);
+        if (response == null || response.refreshTime <= System.currentTimeMillis()) {
+            return null;
+        }
+        response.used = true;
+        return response;
+    }
+
+    /**
+     * Must be read before the certificate status used for a response is looked up, and passed to
+     * {@link #putResponse} when the response is stored.
+     *
+     * @return the current number of invalidations
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * Stores a signed response. Nothing is stored if the cache is full, or if any invalidation has happened since
+     * invalidationCount was read.
+     *
+     * @param nextUpdate the nextUpdate of the single response, or null if not set
+     * @param invalidationCount the value of {@link #getInvalidationCount()} before the certificate status was looked up
+     */
+    public void putResponse(final String cacheLookupKey, final BigInteger serialNumber, final OCSPResp ocspResponse, final byte[] ocspRequest,
+            final int ocspKeyBindingId, final X509Certificate signerCert, final CertificateStatus issuerCaCertificateStatus, final long maxAge,
+            final Long nextUpdate, final long invalidationCount) {
+        final long now = System.currentTimeMillis();
+        long validity = OcspConfiguration.getPreSignedResponsesRefreshTimeMs();
+        if (nextUpdate != null) {
+            validity = Math.min(validity, (nextUpdate.longValue() - now) / 2);
+        }
+        if (validity <= 0 || invalidations.get() != invalidationCount) {
+            return;
+        }
+        Map<String, OcspPreSignedResponse> responses = cache.get(serialNumber);
+        if (responses == null) {
+            responses = new ConcurrentHashMap<>();
+            final Map<String, OcspPreSignedResponse> existing = cache.putIfAbsent(serialNumber, responses);
+            if (existing != null) {
+                responses = existing;
+            }
+        }
+        final OcspPreSignedResponse response = new OcspPreSignedResponse(cacheLookupKey, serialNumber, ocspResponse, ocspRequest, ocspKeyBindingId,
+                signerCert, issuerCaCertificateStatus, maxAge, now + validity);
+        if (responses.containsKey(cacheLookupKey) || size.get() < OcspConfiguration.getPreSignedResponsesMaxEntries()) {
+            if (responses.put(cacheLookupKey, response) == null) {
+                size.incrementAndGet();
+            }
+            if (invalidations.get() != invalidationCount) {
+                // The status changed while we were storing the response
+                remove(response);
+            }
+        } else if (log.isDebugEnabled()) {
+            log.debug("Pre-signed OCSP response cache is full. Not storing response for serial number " + serialNumber.toString(16));
+        }
+    }
+
+    /** Removes all stored responses for the given certificate serial number, regardless of issuer. */
+    public void invalidate(final BigInteger serialNumber) {
+        invalidations.incrementAndGet();
+        final Map<String, OcspPreSignedResponse> responses = cache.remove(serialNumber);
+        if (responses != null) {
+            size.addAndGet(-responses.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Removed " + responses.size() + " pre-signed OCSP responses for serial number " + serialNumber.toString(16));
+            }
+        }
+    }
+
+    /** Removes a single stored response, if it is the same instance that is currently stored. */
+    public void remove(final OcspPreSignedResponse response) {
+        final Map<String, OcspPreSignedResponse> responses = cache.get(response.serialNumber);
+        if (responses != null && responses.remove(response.key, response)) {
+            size.decrementAndGet();
+            if (responses.isEmpty()) {
+                cache.remove(response.serialNumber, responses);
+            }
+        }
+    }
+
+    /**
+     * Removes all responses that have not been used since they were stored and that will reach their refresh time before the given
+     * time, and returns the used ones so they can be re-signed.
+     *
+     * @param before epoch milliseconds
+     * @return responses that should be re-signed before the given time
+     */
+    public List<OcspPreSignedResponse> getResponsesToRefresh(final long before) {
+        final List<OcspPreSignedResponse> ret = new ArrayList<>();
+        int remaining = 0;
+        for (final Map<String, OcspPreSignedResponse> responses : cache.values()) {
+            for (final OcspPreSignedResponse response : responses.values()) {
+                if (response.refreshTime < before && !response.used) {
+                    remove(response);
+                    continue;
+                }
+                if (response.refreshTime < before) {
+                    ret.add(response);
+                }
+                remaining++;
+            }
+        }
+        // The size is only a soft limit. Concurrent invalidations can make the counter drift slightly, so we correct it here.
+        size.set(remaining);
+        return ret;
+    }
+
+    /** @return the number of stored responses */
+    public int size() {
+        return size.get();
+    }
+
+    /** Clear cache. */
+    public void flush() {
+        invalidations.incrementAndGet();
+        cache.clear();
+        size.set(0);
+    }
+}
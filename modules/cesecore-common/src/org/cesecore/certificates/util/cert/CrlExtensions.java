@@ -32,6 +32,7 @@ import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.DistributionPoint;
 import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
 import org.bouncycastle.x509.extension.X509ExtensionUtil;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 
@@ -118,6 +119,22 @@ public class CrlExtensions {
         return reasonCode;
     }
 
+    /** @return the revocation reason code as defined in RevokedCertInfo.REVOCATION_REASON_..., of an entry read directly from the CRL's ASN.1 structure */
+    public static int extractReasonCode(final TBSCertList.CRLEntry crlEntry) {
+        int reasonCode = RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+        if (crlEntry.hasExtensions()) {
+            final Extension extension = crlEntry.getExtensions().getExtension(Extension.reasonCode);
+            if (extension!=null) {
+                try {
+                    reasonCode = ASN1Enumerated.getInstance(extension.getParsedValue()).getValue().intValue();
+                } catch (IllegalArgumentException e) {
+                    log.debug("Failed to parse reason code of CRLEntry: " + e.getMessage());
+                }
+            }
+        }
+        return reasonCode;
+    }
+
     /** @return a list of URLs in String format with present freshest CRL extensions or an empty List */
     public static List<String> extractFreshestCrlDistributionPoints(final X509CRL crl) {
         final List<String> freshestCdpUrls = new ArrayList<String>();
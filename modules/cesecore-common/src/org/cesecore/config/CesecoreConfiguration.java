@@ -79,6 +79,22 @@ public final class CesecoreConfiguration {
         return ConfigurationHolder.getString("ca.rngalgorithm");
     }
 
+    /**
+     * The number of independently seeded random number generators used for serial numbers, each used by a subset of the threads.
+     */
+    public static int getCaSerialNumberRngInstances() {
+        final String value = ConfigurationHolder.getString("ca.rnginstances");
+        if (StringUtils.isEmpty(value)) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value of ca.rnginstances, using 1 instead: " + value);
+            return 1;
+        }
+    }
+
     /**
      * The date and time from which an expire date of a certificate is to be considered to be too far in the future.
      */
@@ -184,6 +200,14 @@ public final class CesecoreConfiguration {
         return getLongValue("certprofiles.cachetime", 1000L, "milliseconds to cache Certificate profiles");
     }
 
+    /**
+     * Maximum number of parsed certificates, read from the database, that are kept so that the same certificate is not decoded again.
+     * 0 disables the cache. The cache may temporarily overshoot by 50%.
+     */
+    public static long getParsedCertificateCacheMaxEntries() {
+        return getLongValue("certificate.parsedcache.maxentries", 10000L, "number of certificates in cache");
+    }
+
     /**
      * Parameter to specify if retrieving GlobalOcspConfiguration (in GlobalConfigurationSessionBean) should be cached, and in that case for how long.
      */
@@ -362,6 +386,24 @@ public final class CesecoreConfiguration {
         return value!=null && Boolean.parseBoolean(value.trim());
     }
 
+    /** @return true if search tokens should be stored in the CertificateSearchTokenData table for each new certificate. */
+    public static boolean isCertificateSearchIndexEnabled() {
+        return Boolean.parseBoolean(StringUtils.trim(ConfigurationHolder.getString("database.certificatesearchindex.enabled")));
+    }
+
+    /** @return true if certificate searches should use the search tokens in the CertificateSearchTokenData table. */
+    public static boolean isCertificateSearchIndexUsedForSearch() {
+        return isCertificateSearchIndexEnabled() && Boolean.parseBoolean(StringUtils.trim(ConfigurationHolder.getString("database.certificatesearchindex.search")));
+    }
+
+    /**
+     * @return true if the data of CAs, publishers, services, roles, key bindings and profiles should be written in the compact format
+     * instead of XML. Data in both formats can always be read.
+     */
+    public static boolean isDataMapCompactFormat() {
+        return Boolean.parseBoolean(StringUtils.trim(ConfigurationHolder.getString("database.datamap.compactformat")));
+    }
+
     /** If database integrity protection should be used or not. */
     public static boolean useDatabaseIntegrityProtection(final String tableName) {
         // First check if we have explicit configuration for this entity
@@ -384,6 +426,14 @@ public final class CesecoreConfiguration {
         return Boolean.TRUE.toString().equalsIgnoreCase(ConfigurationHolder.getString("databaseprotection.enableverify"));
     }
 
+    /**
+     * @return the maximum number of database rows that are remembered as successfully verified, so that an unchanged row is not verified again
+     * every time it is read. 0 (default) to verify every time.
+     */
+    public static int getDatabaseIntegrityVerifiedRowCacheSize() {
+        return (int) getLongValue("databaseprotection.verifiedrowcache.size", 0L, "rows");
+    }
+
     public static boolean getCaKeepOcspExtendedService() {
         return Boolean.valueOf(ConfigurationHolder.getString("ca.keepocspextendedservice").toLowerCase());
     }
@@ -393,6 +443,55 @@ public final class CesecoreConfiguration {
         return Long.valueOf(getLongValue("database.crlgenfetchsize", 500000L, "rows")).intValue();
     }
 
+    /** @return the number of revoked entries from which CRLs are encoded through a temporary file instead of in memory, or -1 to never do so. */
+    public static long getCrlGenStreamingThreshold() {
+        return getLongValue("database.crlgenstreamingthreshold", 100000L, "rows");
+    }
+
+    /** @return true if scheduled full CRLs should be generated from the previous full CRL and the changes since it, instead of from all revoked certificates. */
+    public static boolean isCrlGenIncremental() {
+        return Boolean.parseBoolean(ConfigurationHolder.getString("database.crlgenincremental"));
+    }
+
+    /** @return true if audit log records in the database should be written in batches shared by concurrent threads, instead of one transaction per record. */
+    public static boolean isAuditLogGroupCommit() {
+        return Boolean.parseBoolean(ConfigurationHolder.getString("securityeventsaudit.groupcommit.enabled"));
+    }
+
+    /** @return the maximum number of audit log records written in one transaction when group commit is enabled. Default 100. */
+    public static int getAuditLogGroupCommitMaxBatchSize() {
+        return (int) getLongValue("securityeventsaudit.groupcommit.maxbatchsize", 100L, "records");
+    }
+
+    /** @return the maximum number of audit log records waiting to be written when group commit is enabled. Default 10000. */
+    public static int getAuditLogGroupCommitQueueSize() {
+        return (int) getLongValue("securityeventsaudit.groupcommit.queuesize", 10000L, "records");
+    }
+
+    /** @return true if an in-memory index of revoked certificates per CA should be used for certificate status lookups. */
+    public static boolean isRevocationIndexEnabled() {
+        return Boolean.parseBoolean(ConfigurationHolder.getString("revocationindex.enabled"));
+    }
+
+    /** @return how often, in milliseconds, the revocation index is refreshed with status changes from the database. Default 60 seconds. */
+    public static long getRevocationIndexRefreshInterval() {
+        return getLongValue("revocationindex.refreshinterval", 60000L, "milliseconds");
+    }
+
+    /**
+     * @return how often, in milliseconds, the revocation index is counted against the database to find revoked certificates that have
+     * been deleted. Default 1 hour.
+     */
+    public static long getRevocationIndexDeletionCheckInterval() {
+        return getLongValue("revocationindex.deletioncheckinterval", 3600000L, "milliseconds");
+    }
+
+    /** @return the directory where snapshots of the revocation index are written, or null if the index should not be persisted. */
+    public static String getRevocationIndexDirectory() {
+        final String value = ConfigurationHolder.getString("revocationindex.directory");
+        return StringUtils.isEmpty(value) ? null : value.trim();
+    }
+
     /**
      * Used just in {@link #getForbiddenCharacters()}. The method is called very
      * often so we declare this String in the class so it does not have to be
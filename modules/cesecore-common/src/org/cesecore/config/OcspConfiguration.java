@@ -16,8 +16,10 @@ package org.cesecore.config;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConversionException;
@@ -34,6 +36,8 @@ import org.cesecore.util.CertTools;
 public class OcspConfiguration {
 
     private static final Logger log = Logger.getLogger(OcspConfiguration.class);
+    /** Matches ocsp.<certificate profile id>.untilNextUpdate and ocsp.<certificate profile id>.maxAge */
+    private static final Pattern PROFILE_UNTIL_NEXT_UPDATE_OR_MAX_AGE = Pattern.compile("ocsp\\.-?[0-9]+\\.(untilNextUpdate|maxAge)");
 
     @Deprecated // Deprecated in 6.2.4, remains to allow migration from previous versions
     public static final String DEFAULT_RESPONDER = "ocsp.defaultresponder";
@@ -61,6 +65,9 @@ public class OcspConfiguration {
     public static final String REVOKED_MAX_AGE = "ocsp.revoked.maxAge";
     public static final String INCLUDE_SIGNING_CERT = "ocsp.includesignercert";
     public static final String INCLUDE_CERT_CHAIN = "ocsp.includecertchain";
+    public static final String PRESIGNED_RESPONSES_ENABLED = "ocsp.presigned.enabled";
+    public static final String PRESIGNED_RESPONSES_MAX_ENTRIES = "ocsp.presigned.maxentries";
+    public static final String PRESIGNED_RESPONSES_REFRESH_TIME = "ocsp.presigned.refreshtime";
     
     @Deprecated //Remove this value once upgrading to 6.7.0 has been dropped
     public static final String RESPONDER_ID_TYPE = "ocsp.responderidtype";
@@ -156,6 +163,40 @@ public class OcspConfiguration {
         return timeInSeconds;
     }
 
+    /**
+     * @return true if signed responses to requests without nonce should be kept and served from the pre-signed response cache
+     */
+    public static boolean isPreSignedResponsesEnabled() {
+        final String value = ConfigurationHolder.getString(PRESIGNED_RESPONSES_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * @return the maximum number of responses kept in the pre-signed response cache. Default 10000.
+     */
+    public static int getPreSignedResponsesMaxEntries() {
+        final int defaultMaxEntries = 10000;
+        try {
+            return Integer.parseInt(ConfigurationHolder.getString(PRESIGNED_RESPONSES_MAX_ENTRIES));
+        } catch (NumberFormatException e) {
+            log.warn(PRESIGNED_RESPONSES_MAX_ENTRIES + " is not a decimal integer. Using default " + defaultMaxEntries + ".");
+            return defaultMaxEntries;
+        }
+    }
+
+    /**
+     * @return the longest time in milliseconds that a pre-signed response is served before it is signed again. Default 5 minutes.
+     */
+    public static long getPreSignedResponsesRefreshTimeMs() {
+        final long defaultTimeInSeconds = 300;
+        try {
+            return 1000L * Long.parseLong(ConfigurationHolder.getString(PRESIGNED_RESPONSES_REFRESH_TIME));
+        } catch (NumberFormatException e) {
+            log.warn(PRESIGNED_RESPONSES_REFRESH_TIME + " is not a decimal long. Using default " + defaultTimeInSeconds + " seconds.");
+            return 1000L * defaultTimeInSeconds;
+        }
+    }
+
     /**
      * If set to true the responder will enforce OCSP request signing
      */
@@ -606,6 +647,17 @@ public class OcspConfiguration {
         }
     }
 
+    /** @return true if Until Next Update or Max Age for good certificates is explicitly configured for any certificate profile */
+    public static boolean isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile() {
+        final Iterator<String> keys = ConfigurationHolder.instance().getKeys("ocsp");
+        while (keys.hasNext()) {
+            if (PROFILE_UNTIL_NEXT_UPDATE_OR_MAX_AGE.matcher(keys.next()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     // Values for stand-alone OCSP
 
@@ -0,0 +1,109 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss, load and eviction counters of a cache. All counters are updated without locking.
+ *
+ * @version $Id$
+ */
+public class CacheStatistics {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void load(final long time, final boolean success) {
+        loads.incrementAndGet();
+        if (!success) {
+            loadFailures.incrementAndGet();
+        }
+        totalLoadTime.addAndGet(time);
+    }
+
+    void eviction() {
+        evictions.incrementAndGet();
+    }
+
+    /** @return the number of lookups that were served from the cache */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return the number of lookups where the object had to be read from the source */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** @return the share of lookups that were served from the cache, or 1 if there were no lookups */
+    public double getHitRatio() {
+        final long hitCount = getHitCount();
+        final long total = hitCount + getMissCount();
+        return total == 0 ? 1.0 : (double) hitCount / total;
+    }
+
+    /** @return the number of times objects were loaded into the cache by the cache itself, including failed loads */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /** @return the number of loads that failed */
+    public long getLoadFailureCount() {
+        return loadFailures.get();
+    }
+
+    /** @return the total time spent loading objects, in milliseconds */
+    public long getTotalLoadTime() {
+        return totalLoadTime.get();
+    }
+
+    /** @return the average time spent loading an object, in milliseconds */
+    public long getAverageLoadTime() {
+        final long loadCount = getLoadCount();
+        return loadCount == 0 ? 0 : getTotalLoadTime() / loadCount;
+    }
+
+    /** @return the number of objects removed because the cache was full or the objects were too old */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /** Set all counters to 0. */
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        loads.set(0);
+        loadFailures.set(0);
+        totalLoadTime.set(0);
+        evictions.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHitCount() + ", misses=" + getMissCount() + ", loads=" + getLoadCount() + ", loadFailures=" + getLoadFailureCount()
+                + ", averageLoadTime=" + getAverageLoadTime() + "ms, evictions=" + getEvictionCount();
+    }
+}
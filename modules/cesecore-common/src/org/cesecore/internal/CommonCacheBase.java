@@ -17,29 +17,28 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 /**
- * Object and name to id lookup cache base implementation.
+ * Object and name to id lookup cache base implementation, built on {@link LoadingCache}.
+ * 
+ * Lookups never lock. Updates are serialized so the name to id map always matches the cached objects.
  * 
  * Note that this type of cache is not optimized for short-lived objects, but
- * will prevent memory leaks to some extent through checking for stale data
- * during updates.
+ * will prevent memory leaks to some extent through purging objects that have
+ * not been updated for {@link #getMaxCacheLifeTime()}.
  * 
  * @version $Id$
  */
 public abstract class CommonCacheBase<T> implements CommonCache<T> {
     
     private class CacheEntry {
-        long lastUpdate;
         final int digest;
         final String name;
         final T object;
-        CacheEntry(long lastUpdate, int digest, String name, T object) {
-            this.lastUpdate = lastUpdate;
+        CacheEntry(int digest, String name, T object) {
             this.digest = digest;
             this.name = name;
             this.object = object;
@@ -47,8 +46,25 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     }
     
     private final Logger log = Logger.getLogger(CommonCacheBase.class);
-    private Map<Integer, CacheEntry> cache = new HashMap<Integer, CacheEntry>();
-    private Map<String, Integer> nameToIdMap = new HashMap<String, Integer>();
+    private final LoadingCache<Integer, CacheEntry> cache = new LoadingCache<Integer, CacheEntry>(0, 0, 0) {
+        @Override
+        protected long getExpireTime() {
+            return getMaxCacheLifeTime();
+        }
+        @Override
+        protected long getRefreshTime() {
+            return getCacheTime();
+        }
+        @Override
+        protected int getMaxSize() {
+            return getMaxCacheSize();
+        }
+        @Override
+        protected void onEviction(final Integer key, final CacheEntry value) {
+            updateNameToIdMap();
+        }
+    };
+    private volatile Map<String, Integer> nameToIdMap = Collections.emptyMap();
 
     /** @return how long to cache objects in milliseconds. */
     protected abstract long getCacheTime();
@@ -56,9 +72,25 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     /** @return the maximum allowed time an object may reside in the cache before it is purged. 0 means live forever. */
     protected abstract long getMaxCacheLifeTime();
 
+    /**
+     * @return the maximum number of objects in the cache, where the least recently used are purged first. 0 means no limit.
+     * Must not be limited for objects that hold state that is not in the database, like activated crypto tokens.
+     */
+    protected int getMaxCacheSize() {
+        return 0;
+    }
+
+    /** @return the hit, miss and eviction counters of this cache. A hit is a call to {@link #shouldCheckForUpdates(int)} returning false. */
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
+    }
+
     @Override
     public T getEntry(final Integer id) {
-        final CacheEntry cacheEntry = getCacheEntry(id);
+        if (id == null) {
+            return null;
+        }
+        final CacheEntry cacheEntry = cache.peek(id);
         if (cacheEntry == null) {
             return null;
         }
@@ -72,7 +104,7 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
 
     public Set<T> getAllEntries() {
         Set<T> result = new HashSet<T>();
-        for(CacheEntry cacheEntry : cache.values()) {
+        for(CacheEntry cacheEntry : cache.getAll().values()) {
             result.add(cacheEntry.object);
         }
         return result;
@@ -80,30 +112,13 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
 
     @Override
     public boolean shouldCheckForUpdates(final int id) {
-        final long now = System.currentTimeMillis();
-        final long cacheTime = getCacheTime();
-        if (cacheTime<0) {
+        if (getCacheTime()<0) {
             // Cache is disabled, caller should check db
             return true;
         }
-        final Integer key = Integer.valueOf(id);
-        final CacheEntry cacheEntry = cache.get(key);
-        if (cacheEntry == null) {
-            // No such object in cache, caller should check db
-            return true;
-        }
-        if (cacheEntry.lastUpdate+cacheTime<now) {
-            // We probably need to update, but re-check using synchronization
-            synchronized (cacheEntry) {
-                if (cacheEntry.lastUpdate+cacheTime<now) {
-                    // Object is present in cache, but cache has expired so the caller should update the cache
-                    // To prevent other threads to ask the database for the same thing, we reset the cache time.
-                    cacheEntry.lastUpdate = now;
-                    return true;
-                }
-            }
-        }
-        return false;
+        // True if there is no such object in cache, or if the cache time has expired for the object and this is the first thread
+        // to ask. Other threads will keep using the cached object meanwhile, to prevent them from asking the database for the same thing.
+        return cache.shouldRefresh(Integer.valueOf(id));
     }
 
 
@@ -115,13 +130,12 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     @Override
     public boolean willUpdate(int id, int digest) {
         // Same version in cache as provided Object?
-        final Integer key = Integer.valueOf(id);
-        final CacheEntry cacheEntry = getCacheEntry(key);
+        final CacheEntry cacheEntry = cache.peek(Integer.valueOf(id));
         if (cacheEntry == null || cacheEntry.digest != digest) {
             return true;
         } else {
             if (log.isDebugEnabled()) {
-                log.debug("Update not needed " + cacheEntry.object.getClass().getSimpleName() + " in cache. Digest was " + digest + ", cacheEntry digest was " + (cacheEntry == null ? "null" : cacheEntry.digest));
+                log.debug("Update not needed " + cacheEntry.object.getClass().getSimpleName() + " in cache. Digest was " + digest + ", cacheEntry digest was " + cacheEntry.digest);
             }
             return false;
         }
@@ -132,14 +146,19 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
         final Integer key = Integer.valueOf(id);
         if (name==null || object == null || getCacheTime()<0) {
             // Remove from cache
-            setCacheEntry(key, null);
+            synchronized (this) {
+                cache.remove(key);
+                updateNameToIdMap();
+            }
         } else {
             // Same version in cache as provided Object?
             if (willUpdate(id, digest)) {
-                final CacheEntry cacheEntry = getCacheEntry(key);
+                final CacheEntry cacheEntry = cache.peek(key);
                 // Create new object and store it in the cache.
-                final CacheEntry newCacheEntry = new CacheEntry(System.currentTimeMillis(), digest, name, object);
-                setCacheEntry(key, newCacheEntry);
+                synchronized (this) {
+                    cache.put(key, new CacheEntry(digest, name, object));
+                    updateNameToIdMap();
+                }
                 if (log.isDebugEnabled()) {
                     log.debug("Updated " + object.getClass().getSimpleName() + " cache. Digest was " + digest + ", cacheEntry digest was " + (cacheEntry == null ? "null" : cacheEntry.digest));
                 }
@@ -149,47 +168,17 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
     
     @Override
     public String getName(int id) {
-        final CacheEntry entry = getCacheEntry(id);
+        final CacheEntry entry = cache.peek(Integer.valueOf(id));
         return entry != null ? entry.name : null;
     }
-    
-    /** @return cache entry for the requested key or null */
-    private CacheEntry getCacheEntry(final Integer key) {
-        return cache.get(key);
-    }
-    
-    /** Set or remove cache entry. */
-    private void setCacheEntry(final Integer key, final CacheEntry cacheEntry) {
-        final Map<Integer, CacheEntry> cacheStage = new HashMap<Integer, CacheEntry>();
+
+    /** Rebuild the name to id map from the cached objects. The new map is published at once, so readers never see a partial map. */
+    private synchronized void updateNameToIdMap() {
         final Map<String, Integer> nameToIdMapStage = new HashMap<String, Integer>();
-        final long maxCacheLifeTime = getMaxCacheLifeTime();
-        final long staleCutOffTime = System.currentTimeMillis()-maxCacheLifeTime;
-        synchronized (this) {
-            // Process all entries except for the one that will change
-            for (final Entry<Integer,CacheEntry> entry : cache.entrySet()) {
-                final Integer currentId = entry.getKey();
-                if (!key.equals(currentId)) {
-                    final CacheEntry currentCacheEntry = entry.getValue();
-                    // By flushing older entries we at least limit how much
-                    // this registry will grow when used for short-lived objects
-                    // in a clustered environment.
-                    if (maxCacheLifeTime<1 || currentCacheEntry.lastUpdate >= staleCutOffTime) {
-                        // Keep using the current entry in the new cache
-                        cacheStage.put(entry.getKey(), currentCacheEntry);
-                        nameToIdMapStage.put(currentCacheEntry.name, entry.getKey());
-                    }
-                }
-            }
-            // Process the one that will change
-            if (cacheEntry == null) {
-                // Don't add if to the new version of the cache if it existed (e.g. remove it)
-            } else {
-                cacheStage.put(key, cacheEntry);
-                nameToIdMapStage.put(cacheEntry.name, key);
-            }
-            cache = cacheStage;
-            nameToIdMap = Collections.unmodifiableMap(nameToIdMapStage);
+        for (final Map.Entry<Integer, CacheEntry> entry : cache.getAll().entrySet()) {
+            nameToIdMapStage.put(entry.getValue().name, entry.getKey());
         }
+        nameToIdMap = Collections.unmodifiableMap(nameToIdMapStage);
     }
 
     @Override
@@ -199,32 +188,17 @@ public abstract class CommonCacheBase<T> implements CommonCache<T> {
 
     @Override
     public void flush() {
-        final Map<Integer, CacheEntry> cacheStage = new HashMap<Integer, CacheEntry>();
-        final Map<String, Integer> nameToIdMapStage = new HashMap<String, Integer>();
-        replaceCache(cacheStage, nameToIdMapStage);
+        synchronized (this) {
+            cache.clear();
+            updateNameToIdMap();
+        }
     }
     
     @Override
     public void replaceCacheWith(List<Integer> keys) {
-        Map<Integer, CacheEntry> cacheStage = new HashMap<Integer, CacheEntry>();
-        Map<String, Integer> nameToIdMapStage = new HashMap<String, Integer>();
-        
-        for(Integer key : keys) {
-            CacheEntry entry = cache.get(key);
-            cacheStage.put(key, entry);
-            
-            String name = entry.name;
-            nameToIdMapStage.put(name, nameToIdMap.get(name));
-        }
-        
-        replaceCache(cacheStage, nameToIdMapStage);
-    }
-    
-    private void replaceCache(Map<Integer, CacheEntry> cacheStage, Map<String, Integer> nameToIdMapStage) {
         synchronized (this) {
-            cache = cacheStage;
-            nameToIdMap = nameToIdMapStage;
+            cache.retainAll(keys);
+            updateNameToIdMap();
         }
     }
-    
-}
\ No newline at end of file
+}
@@ -0,0 +1,341 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Key to object cache that all caches of objects read from the database or other slow sources should be built on, so they
+ * can be tuned in the same way.
+ * <ul>
+ * <li>Reads never lock. Only the thread that adds an object to a full cache does any work to keep the size down.</li>
+ * <li>Objects expire a configurable time after they were last loaded.</li>
+ * <li>The cache can be limited to a maximum number of objects, and then the least recently used objects are evicted first.
+ * A full cache evicts a batch of objects, down to 90% of the maximum size, so the cost of finding them is shared by many additions.
+ * The limit is approximate while several threads are adding objects at the same time.</li>
+ * <li>Refresh-ahead: after a configurable time, the first thread that looks up an object reloads it, while all other threads
+ * keep getting the current object until the reload is done.</li>
+ * <li>Only one thread at the time loads a missing object, other threads looking up the same key wait for it.</li>
+ * <li>Hits, misses, loads and evictions are counted, see {@link #getStatistics()}.</li>
+ * </ul>
+ * The times and the size limit are read on every operation through {@link #getExpireTime()}, {@link #getRefreshTime()} and
+ * {@link #getMaxSize()}, so subclasses may override them to read configuration that can change at runtime.
+ *
+ * @version $Id$
+ */
+public class LoadingCache<K, V> {
+
+    /** A full cache evicts down to the maximum size minus the maximum size divided by this */
+    private static final int EVICTION_BATCH_DIVISOR = 10;
+
+    /** Reads an object from the source when it is missing from the cache, or should be refreshed. */
+    public interface Loader<K, V> {
+        /** @return the object with the given key, or null if it does not exist */
+        V load(K key);
+    }
+
+    private class Entry {
+        final V value;
+        /** Time the object was loaded, or the time a thread started to refresh it */
+        final AtomicLong lastUpdate;
+        volatile long lastAccess;
+
+        Entry(final V value, final long now) {
+            this.value = value;
+            this.lastUpdate = new AtomicLong(now);
+            this.lastAccess = now;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, FutureTask<V>> loading = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final CacheStatistics statistics = new CacheStatistics();
+    private final long expireTime;
+    private final long refreshTime;
+    private final int maxSize;
+
+    /**
+     * @param expireTime milliseconds after which an object is removed from the cache, or 0 to never remove objects because of age
+     * @param refreshTime milliseconds after which an object is refreshed by the next thread that looks it up, or -1 to never refresh
+     * @param maxSize maximum number of objects in the cache, or 0 for no limit
+     */
+    public LoadingCache(final long expireTime, final long refreshTime, final int maxSize) {
+        this.expireTime = expireTime;
+        this.refreshTime = refreshTime;
+        this.maxSize = maxSize;
+    }
+
+    /** @return milliseconds after which an object is removed from the cache, or 0 or less to never remove objects because of age */
+    protected long getExpireTime() {
+        return expireTime;
+    }
+
+    /** @return milliseconds after which an object is refreshed by the next thread that looks it up, or less than 0 to never refresh */
+    protected long getRefreshTime() {
+        return refreshTime;
+    }
+
+    /** @return maximum number of objects in the cache, or 0 or less for no limit */
+    protected int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Called when an object has been removed because it was too old or the cache was full. Not called for objects that are removed
+     * or replaced explicitly.
+     */
+    protected void onEviction(final K key, final V value) {
+        // Nothing to do by default
+    }
+
+    /** @return the counters of this cache */
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Look up an object, loading it if it is not in the cache or should be refreshed.
+     *
+     * @param key the key of the object
+     * @param loader used to read the object if needed. Exceptions thrown by the loader are passed on to all threads that waited for it.
+     * @return the object, or null if the loader did not find it
+     */
+    public V get(final K key, final Loader<K, V> loader) {
+        final long now = System.currentTimeMillis();
+        final Entry entry = getLiveEntry(key, now);
+        if (entry != null && !claimRefresh(entry, now)) {
+            statistics.hit();
+            touch(entry, now);
+            return entry.value;
+        }
+        statistics.miss();
+        return load(key, loader);
+    }
+
+    /** @return the cached object, or null if there is none. Counted as a hit or a miss. */
+    public V getIfPresent(final K key) {
+        final long now = System.currentTimeMillis();
+        final Entry entry = getLiveEntry(key, now);
+        if (entry == null) {
+            statistics.miss();
+            return null;
+        }
+        statistics.hit();
+        touch(entry, now);
+        return entry.value;
+    }
+
+    /** @return the cached object, or null if there is none. Neither counted nor treated as a use of the object. */
+    public V peek(final K key) {
+        final Entry entry = getLiveEntry(key, System.currentTimeMillis());
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * For caches where the caller reads the object itself and then calls {@link #put(Object, Object)}.
+     *
+     * @return true if the object is not in the cache, or if it is time to refresh it and this thread is the one that should do it.
+     */
+    public boolean shouldRefresh(final K key) {
+        final long now = System.currentTimeMillis();
+        final Entry entry = getLiveEntry(key, now);
+        if (entry == null || claimRefresh(entry, now)) {
+            statistics.miss();
+            return true;
+        }
+        statistics.hit();
+        touch(entry, now);
+        return false;
+    }
+
+    /** Add or replace an object. A null value removes the key from the cache. */
+    public void put(final K key, final V value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        entries.put(key, new Entry(value, System.currentTimeMillis()));
+        evictIfNeeded();
+    }
+
+    /** Remove an object from the cache. */
+    public void remove(final K key) {
+        entries.remove(key);
+    }
+
+    /** Remove all objects except the ones with the given keys. */
+    public void retainAll(final Collection<K> keys) {
+        entries.keySet().retainAll(keys);
+    }
+
+    /** Remove all objects from the cache. */
+    public void clear() {
+        entries.clear();
+    }
+
+    /** @return the number of objects in the cache, including any that are too old but have not been removed yet */
+    public int size() {
+        return entries.size();
+    }
+
+    /** @return a copy of the objects in the cache that are not too old */
+    public Map<K, V> getAll() {
+        final long now = System.currentTimeMillis();
+        final Map<K, V> ret = new HashMap<>();
+        for (final Map.Entry<K, Entry> mapEntry : entries.entrySet()) {
+            if (!isExpired(mapEntry.getValue(), now)) {
+                ret.put(mapEntry.getKey(), mapEntry.getValue().value);
+            }
+        }
+        return ret;
+    }
+
+    private Entry getLiveEntry(final K key, final long now) {
+        final Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, now)) {
+            evict(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean isExpired(final Entry entry, final long now) {
+        final long expire = getExpireTime();
+        return expire > 0 && entry.lastUpdate.get() + expire < now;
+    }
+
+    /** @return true if the entry should be refreshed and this thread won the race to do it */
+    private boolean claimRefresh(final Entry entry, final long now) {
+        final long refresh = getRefreshTime();
+        if (refresh < 0) {
+            return false;
+        }
+        final long lastUpdate = entry.lastUpdate.get();
+        // Moving lastUpdate forward makes other threads keep using the current object while this thread refreshes it
+        return lastUpdate + refresh < now && entry.lastUpdate.compareAndSet(lastUpdate, now);
+    }
+
+    private void touch(final Entry entry, final long now) {
+        // Access times are only needed for eviction, so don't write to shared memory on every read unless there is a limit
+        if (getMaxSize() > 0 && entry.lastAccess != now) {
+            entry.lastAccess = now;
+        }
+    }
+
+    private V load(final K key, final Loader<K, V> loader) {
+        final FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() {
+                return loader.load(key);
+            }
+        });
+        final FutureTask<V> existing = loading.putIfAbsent(key, task);
+        if (existing != null) {
+            // Another thread is already loading this object
+            return waitFor(existing);
+        }
+        final long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            task.run();
+            final V value = waitFor(task);
+            put(key, value);
+            success = true;
+            return value;
+        } finally {
+            loading.remove(key, task);
+            statistics.load(System.currentTimeMillis() - start, success);
+        }
+    }
+
+    private V waitFor(final FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for object to be loaded into cache.", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void evictIfNeeded() {
+        final int max = getMaxSize();
+        if (max <= 0 || entries.size() <= max || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final long now = System.currentTimeMillis();
+            // Objects that are too old go first
+            final List<Map.Entry<K, Entry>> live = new ArrayList<>(entries.size());
+            for (final Map.Entry<K, Entry> mapEntry : entries.entrySet()) {
+                if (isExpired(mapEntry.getValue(), now)) {
+                    evict(mapEntry.getKey(), mapEntry.getValue());
+                } else {
+                    live.add(mapEntry);
+                }
+            }
+            final int toEvict = live.size() - (max - max / EVICTION_BATCH_DIVISOR);
+            if (entries.size() <= max || toEvict <= 0) {
+                return;
+            }
+            // Evict a batch of the least recently used objects, so the next additions don't have to look through the cache again
+            final long[] accessTimes = new long[live.size()];
+            for (int i = 0; i < accessTimes.length; i++) {
+                accessTimes[i] = live.get(i).getValue().lastAccess;
+            }
+            Arrays.sort(accessTimes);
+            final long cutoff = accessTimes[toEvict - 1];
+            int evicted = 0;
+            for (final Map.Entry<K, Entry> mapEntry : live) {
+                if (evicted >= toEvict) {
+                    break;
+                }
+                // Objects that have been used since the access times were read are kept
+                if (mapEntry.getValue().lastAccess <= cutoff) {
+                    evict(mapEntry.getKey(), mapEntry.getValue());
+                    evicted++;
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void evict(final K key, final Entry entry) {
+        // Only remove the exact entry we looked at, it might just have been replaced by a fresh one
+        if (entries.remove(key, entry)) {
+            statistics.eviction();
+            onEviction(key, entry.value);
+        }
+    }
+}
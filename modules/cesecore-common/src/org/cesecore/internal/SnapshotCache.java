@@ -0,0 +1,102 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of a single object that is reloaded as a whole, typically a snapshot of all rows of a small table.
+ * <p>
+ * Only one thread at the time reloads the object when it is too old. Other threads keep getting the current object meanwhile,
+ * without locking. The exception is the first load, that all threads wait for. A forced reload, for example when a profile is
+ * edited, always reloads even if another reload is in progress, and the last reload to finish wins.
+ * <p>
+ * Loads and lookups are counted the same way as for {@link LoadingCache}, see {@link #getStatistics()}.
+ *
+ * @version $Id$
+ */
+public abstract class SnapshotCache<T> {
+
+    /** Reads the current object from the source. */
+    public interface Loader<T> {
+        /** @return the current object, never null */
+        T load();
+    }
+
+    private volatile T snapshot = null;
+    private final AtomicLong lastUpdate = new AtomicLong(0);
+    private final CacheStatistics statistics = new CacheStatistics();
+
+    /** @return milliseconds to cache the object, or 0 or less to reload it on every lookup */
+    protected abstract long getCacheTime();
+
+    /** @return the counters of this cache */
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @param loader used to read the object if it is too old
+     * @return the cached object, reloaded first if it is too old
+     */
+    public T get(final Loader<T> loader) {
+        if (snapshot == null) {
+            // All threads wait for the first load
+            synchronized (this) {
+                if (snapshot == null) {
+                    lastUpdate.set(System.currentTimeMillis());
+                    statistics.miss();
+                    return loadAndCount(loader);
+                }
+            }
+        }
+        reload(loader, false);
+        return snapshot;
+    }
+
+    /**
+     * Reload the object unless it is still valid.
+     *
+     * @param loader used to read the object
+     * @param force if true, the object is reloaded even if it is still valid
+     */
+    public void reload(final Loader<T> loader, final boolean force) {
+        final long cacheTime = getCacheTime();
+        final long now = System.currentTimeMillis();
+        if (force || cacheTime <= 0) {
+            lastUpdate.set(now);
+        } else {
+            final long last = lastUpdate.get();
+            // Moving lastUpdate forward makes other threads keep using the current object while this thread reloads it
+            if (last + cacheTime > now || !lastUpdate.compareAndSet(last, now)) {
+                statistics.hit();
+                return;
+            }
+        }
+        statistics.miss();
+        loadAndCount(loader);
+    }
+
+    private T loadAndCount(final Loader<T> loader) {
+        final long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            final T loaded = loader.load();
+            snapshot = loaded;
+            success = true;
+            return loaded;
+        } finally {
+            statistics.load(System.currentTimeMillis() - start, success);
+        }
+    }
+}
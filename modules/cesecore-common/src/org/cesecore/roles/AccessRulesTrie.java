@@ -0,0 +1,190 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.roles;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Immutable, precompiled form of a map of access rules, where each path segment of the resources ("/a/b/" has the segments
+ * "a" and "b") is a node in a tree.
+ *
+ * Checking access to a resource walks the tree along the segments of the resource and uses the state of the deepest node with a
+ * rule, which gives the same result as {@link AccessRulesHelper#hasAccessToResource(HashMap, String)} without creating any
+ * objects. Build it once for a set of access rules that will be used for many checks.
+ *
+ * @version $Id$
+ */
+public final class AccessRulesTrie {
+
+    private static final Logger log = Logger.getLogger(AccessRulesTrie.class);
+    private static final String[] NO_SEGMENTS = new String[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        /** The state of the access rule for this path or null if there is none */
+        Boolean state;
+        /** Sorted segment names of the child nodes */
+        String[] segments = NO_SEGMENTS;
+        Node[] children = NO_CHILDREN;
+    }
+
+    /** Mutable node used while compiling the tree */
+    private static final class Builder {
+        Boolean state;
+        final TreeMap<String, Builder> children = new TreeMap<>();
+    }
+
+    private final Node root;
+    /** The access rules as they were provided, used for resources where the tree can't be used */
+    private final HashMap<String, Boolean> accessRules;
+
+    /** Compile the provided access rules (in normalized form or not) */
+    public AccessRulesTrie(final Map<String, Boolean> accessRules) {
+        this.accessRules = new HashMap<>(accessRules);
+        final Builder builder = new Builder();
+        // A rule without trailing slash takes precedence over the same rule with one, so add those last
+        for (final boolean withTrailingSlash : new boolean[] { true, false }) {
+            for (final Entry<String, Boolean> entry : accessRules.entrySet()) {
+                final String resource = entry.getKey();
+                if (resource == null || entry.getValue() == null || resource.endsWith("/") != withTrailingSlash) {
+                    continue;
+                }
+                if (resource.length() > 0 && resource.charAt(0) != '/') {
+                    // Never matched by any resource
+                    continue;
+                }
+                add(builder, withTrailingSlash ? resource.substring(0, resource.length() - 1) : resource, entry.getValue());
+            }
+        }
+        root = compile(builder);
+    }
+
+    /** @return the access rules this was compiled from */
+    public HashMap<String, Boolean> getAccessRules() {
+        return new HashMap<>(accessRules);
+    }
+
+    /** @return true if the access rules allow access to all the given resources */
+    public boolean hasAccessToResources(final String... resources) {
+        if (resources != null) {
+            for (final String resource : resources) {
+                if (!hasAccessToResource(resource)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** @return true if the access rules allow access to the given resource */
+    public boolean hasAccessToResource(final String resource) {
+        if (resource == null || resource.length() == 0 || resource.charAt(0) != '/') {
+            return false;
+        }
+        if (resource.contains("//")) {
+            // Empty path segments match rules with and without trailing slashes in ways that don't fit a tree
+            return AccessRulesHelper.hasAccessToResource(accessRules, resource);
+        }
+        Node node = root;
+        boolean state = root.state != null && root.state.booleanValue();
+        int start = 1;
+        final int length = resource.length();
+        while (start < length) {
+            int end = resource.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            node = getChild(node, resource, start, end);
+            if (node == null) {
+                break;
+            }
+            if (node.state != null) {
+                state = node.state.booleanValue();
+            }
+            start = end + 1;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("hasAccessToResource: " + resource + ", " + state);
+        }
+        return state;
+    }
+
+    /** @return the child node with the name found between start and end in the resource, or null if there is none */
+    private static Node getChild(final Node node, final String resource, final int start, final int end) {
+        int low = 0;
+        int high = node.segments.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int cmp = compare(node.segments[middle], resource, start, end);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return node.children[middle];
+            }
+        }
+        return null;
+    }
+
+    /** Compare a segment to part of the resource, in the same order as {@link String#compareTo(String)} */
+    private static int compare(final String segment, final String resource, final int start, final int end) {
+        final int length = Math.min(segment.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            final char c1 = segment.charAt(i);
+            final char c2 = resource.charAt(start + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return segment.length() - (end - start);
+    }
+
+    /** Add a rule for a resource path without trailing slash ("" for the root) */
+    private static void add(final Builder root, final String path, final Boolean state) {
+        Builder current = root;
+        if (path.length() > 0) {
+            for (final String segment : path.substring(1).split("/", -1)) {
+                Builder child = current.children.get(segment);
+                if (child == null) {
+                    child = new Builder();
+                    current.children.put(segment, child);
+                }
+                current = child;
+            }
+        }
+        current.state = state;
+    }
+
+    private static Node compile(final Builder builder) {
+        final Node node = new Node();
+        node.state = builder.state;
+        if (!builder.children.isEmpty()) {
+            node.segments = new String[builder.children.size()];
+            node.children = new Node[builder.children.size()];
+            int i = 0;
+            // TreeMap iterates in the same order as the binary search expects
+            for (final Entry<String, Builder> entry : builder.children.entrySet()) {
+                node.segments[i] = entry.getKey();
+                node.children[i] = compile(entry.getValue());
+                i++;
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,329 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Serializes the data maps of UpgradeableDataHashMap objects (CAs, publishers, services, roles, key bindings and profiles) that are stored
+ * in text columns in the database.
+ * <p>
+ * The data has traditionally been stored as java.beans.XMLEncoder XML, which is slow to decode. The compact format is a tagged binary
+ * encoding of the map, Base64 encoded and prefixed with {@link #COMPACT_FORMAT_PREFIX} so it can be told apart from XML. Both formats can
+ * always be read. The compact format is only written if database.datamap.compactformat is true, and only if the map consists of strings,
+ * numbers, booleans, dates, byte arrays and the standard lists, sets and maps of those. Other maps are written as XML.
+ *
+ * @version $Id$
+ */
+public final class DataMapSerializer {
+
+    private static final Logger log = Logger.getLogger(DataMapSerializer.class);
+
+    /** Prefix of data in the compact format. Includes the version of the format. */
+    public static final String COMPACT_FORMAT_PREFIX = "#DM1#";
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_FALSE = 3;
+    private static final byte TAG_INTEGER = 4;
+    private static final byte TAG_LONG = 5;
+    private static final byte TAG_FLOAT = 6;
+    private static final byte TAG_DOUBLE = 7;
+    private static final byte TAG_SHORT = 8;
+    private static final byte TAG_BYTE = 9;
+    private static final byte TAG_CHARACTER = 10;
+    private static final byte TAG_BIGINTEGER = 11;
+    private static final byte TAG_DATE = 12;
+    private static final byte TAG_BYTE_ARRAY = 13;
+    private static final byte TAG_ARRAYLIST = 20;
+    private static final byte TAG_LINKEDLIST = 21;
+    private static final byte TAG_HASHSET = 22;
+    private static final byte TAG_LINKEDHASHSET = 23;
+    private static final byte TAG_HASHMAP = 30;
+    private static final byte TAG_LINKEDHASHMAP = 31;
+
+    /** Thrown when a map contains an object that can not be written in the compact format */
+    private static class NotEncodableException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private NotEncodableException(final String message) {
+            super(message);
+        }
+    }
+
+    private DataMapSerializer() {}
+
+    /** @return true if the data is in the compact format */
+    public static boolean isCompact(final String data) {
+        return data != null && data.startsWith(COMPACT_FORMAT_PREFIX);
+    }
+
+    /**
+     * @param data data in the compact format or XML
+     * @return the decoded map. String values are returned as stored, so Base64 encoded strings should be handled with a Base64GetHashMap.
+     */
+    public static Map<?, ?> decode(final String data) {
+        if (isCompact(data)) {
+            final byte[] bytes = Base64.decode(data.substring(COMPACT_FORMAT_PREFIX.length()).getBytes(StandardCharsets.US_ASCII));
+            try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                final Object dataMap = readObject(in);
+                if (!(dataMap instanceof Map)) {
+                    throw new IOException("Data is not a map");
+                }
+                return (Map<?, ?>) dataMap;
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid data in compact format: " + e.getMessage(), e);
+            }
+        }
+        try (final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))) {
+            return (Map<?, ?>) decoder.readObject();
+        }
+    }
+
+    /**
+     * Encodes the map in the compact format if database.datamap.compactformat is true and the map can be written in it, and as XML otherwise.
+     *
+     * @param dataMap the map to encode. Strings that may not be safe to store in XML should already have been Base64 encoded with a
+     *          Base64PutHashMap.
+     */
+    public static String encode(final Map<?, ?> dataMap) {
+        if (CesecoreConfiguration.isDataMapCompactFormat()) {
+            final String compact = encodeCompact(dataMap);
+            if (compact != null) {
+                return compact;
+            }
+        }
+        return encodeXml(dataMap);
+    }
+
+    /** @return the map encoded with XMLEncoder */
+    public static String encodeXml(final Map<?, ?> dataMap) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final XMLEncoder encoder = new XMLEncoder(baos)) {
+            encoder.writeObject(dataMap);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** @return the map in the compact format, or null if it contains objects that can not be written in the compact format */
+    public static String encodeCompact(final Map<?, ?> dataMap) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(baos)) {
+            writeObject(out, dataMap);
+        } catch (NotEncodableException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Using XML since the data can not be written in the compact format: " + e.getMessage());
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Not possible with a ByteArrayOutputStream
+        }
+        return COMPACT_FORMAT_PREFIX + new String(Base64.encode(baos.toByteArray(), false), StandardCharsets.US_ASCII);
+    }
+
+    private static void writeObject(final DataOutputStream out, final Object value) throws IOException, NotEncodableException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+        // Only exact classes, so that subclasses with other behavior are not decoded as something else
+        final Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (type == Boolean.class) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (type == Integer.class) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (type == Float.class) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Double.class) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Short.class) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(TAG_CHARACTER);
+            out.writeChar((Character) value);
+        } else if (type == BigInteger.class) {
+            out.writeByte(TAG_BIGINTEGER);
+            writeBytes(out, ((BigInteger) value).toByteArray());
+        } else if (type == Date.class) {
+            out.writeByte(TAG_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (type == byte[].class) {
+            out.writeByte(TAG_BYTE_ARRAY);
+            writeBytes(out, (byte[]) value);
+        } else if (type == ArrayList.class) {
+            writeCollection(out, TAG_ARRAYLIST, (Collection<?>) value);
+        } else if (type == LinkedList.class) {
+            writeCollection(out, TAG_LINKEDLIST, (Collection<?>) value);
+        } else if (type == HashSet.class) {
+            writeCollection(out, TAG_HASHSET, (Collection<?>) value);
+        } else if (type == LinkedHashSet.class) {
+            writeCollection(out, TAG_LINKEDHASHSET, (Collection<?>) value);
+        } else if (type == HashMap.class) {
+            writeMap(out, TAG_HASHMAP, (Map<?, ?>) value);
+        } else if (value instanceof LinkedHashMap && (type == LinkedHashMap.class || type == Base64PutHashMap.class || type == Base64GetHashMap.class)) {
+            // Base64 handling only affects put and get, the stored content is the same as in a LinkedHashMap
+            writeMap(out, TAG_LINKEDHASHMAP, (Map<?, ?>) value);
+        } else {
+            throw new NotEncodableException("Unsupported type " + type.getName());
+        }
+    }
+
+    private static void writeCollection(final DataOutputStream out, final byte tag, final Collection<?> collection)
+            throws IOException, NotEncodableException {
+        out.writeByte(tag);
+        out.writeInt(collection.size());
+        for (final Object element : collection) {
+            writeObject(out, element);
+        }
+    }
+
+    private static void writeMap(final DataOutputStream out, final byte tag, final Map<?, ?> map) throws IOException, NotEncodableException {
+        out.writeByte(tag);
+        out.writeInt(map.size());
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            writeObject(out, entry.getKey());
+            writeObject(out, entry.getValue());
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static Object readObject(final DataInputStream in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_STRING:
+            return new String(readBytes(in), StandardCharsets.UTF_8);
+        case TAG_TRUE:
+            return Boolean.TRUE;
+        case TAG_FALSE:
+            return Boolean.FALSE;
+        case TAG_INTEGER:
+            return Integer.valueOf(in.readInt());
+        case TAG_LONG:
+            return Long.valueOf(in.readLong());
+        case TAG_FLOAT:
+            return Float.valueOf(in.readFloat());
+        case TAG_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case TAG_SHORT:
+            return Short.valueOf(in.readShort());
+        case TAG_BYTE:
+            return Byte.valueOf(in.readByte());
+        case TAG_CHARACTER:
+            return Character.valueOf(in.readChar());
+        case TAG_BIGINTEGER:
+            return new BigInteger(readBytes(in));
+        case TAG_DATE:
+            return new Date(in.readLong());
+        case TAG_BYTE_ARRAY:
+            return readBytes(in);
+        case TAG_ARRAYLIST: {
+            final int size = readSize(in);
+            return readCollection(in, new ArrayList<>(size), size);
+        }
+        case TAG_LINKEDLIST:
+            return readCollection(in, new LinkedList<>(), readSize(in));
+        case TAG_HASHSET: {
+            final int size = readSize(in);
+            return readCollection(in, new HashSet<>(size * 4 / 3 + 1), size);
+        }
+        case TAG_LINKEDHASHSET: {
+            final int size = readSize(in);
+            return readCollection(in, new LinkedHashSet<>(size * 4 / 3 + 1), size);
+        }
+        case TAG_HASHMAP: {
+            final int size = readSize(in);
+            return readMap(in, new HashMap<>(size * 4 / 3 + 1), size);
+        }
+        case TAG_LINKEDHASHMAP: {
+            final int size = readSize(in);
+            return readMap(in, new LinkedHashMap<>(size * 4 / 3 + 1), size);
+        }
+        default:
+            throw new IOException("Unknown tag " + tag);
+        }
+    }
+
+    private static Collection<Object> readCollection(final DataInputStream in, final Collection<Object> collection, final int size) throws IOException {
+        for (int i = 0; i < size; i++) {
+            collection.add(readObject(in));
+        }
+        return collection;
+    }
+
+    private static Map<Object, Object> readMap(final DataInputStream in, final Map<Object, Object> map, final int size) throws IOException {
+        for (int i = 0; i < size; i++) {
+            final Object key = readObject(in);
+            map.put(key, readObject(in));
+        }
+        return map;
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[readSize(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /** @return a size read from the stream, checked so that a corrupt size does not allocate more memory than there is data */
+    private static int readSize(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0 || size > in.available()) {
+            throw new IOException("Invalid size " + size);
+        }
+        return size;
+    }
+}
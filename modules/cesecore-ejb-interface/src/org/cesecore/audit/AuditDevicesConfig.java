@@ -201,6 +201,30 @@ public class AuditDevicesConfig {
         return getInt(properties, "validate.fetchsize", 1000);
     }
 
+    /** Parameter to specify the number of threads verifying the logs. More than 1 enables parallel verification. */
+    public static int getAuditLogValidationThreads(final Properties properties) {
+        return getInt(properties, "validate.threads", 1);
+    }
+
+    /** Parameter to specify the number of sequence numbers of a node that each thread verifies at the time during parallel verification. */
+    public static int getAuditLogValidationPartitionSize(final Properties properties) {
+        return getInt(properties, "validate.partitionsize", 100000);
+    }
+
+    /**
+     * @return the directory where the report and checkpoint of a parallel verification are written, or null if the report should be kept
+     * in memory and the verification can't be resumed.
+     */
+    public static File getAuditLogValidationDir(final Properties properties) {
+        final String p = properties.getProperty("validate.dir");
+        return p == null || p.trim().isEmpty() ? null : new File(p.trim());
+    }
+
+    /** @return the file name, without extension, of the report and checkpoint of the verification of logs up until the given date */
+    public static String getAuditLogValidationBaseName(final Date validationDate) {
+        return "cesecore-verify-" + FastDateFormat.getInstance(EXPORTFILE_DATE_FORMAT, ValidityDate.TIMEZONE_UTC).format(validationDate);
+    }
+
     /** Parameter to specify the number of logs to be fetched in each export round trip. */
     public static int getAuditLogExportFetchSize(final Properties properties) {
         return getInt(properties, "export.fetchsize", 1000);
@@ -14,10 +14,12 @@ package org.cesecore.audit.impl.integrityprotected;
 
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
 import org.cesecore.audit.Auditable;
+import org.cesecore.audit.audit.AuditLogValidationReport;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 
@@ -39,4 +41,20 @@ public interface IntegrityProtectedAuditorSessionLocal extends Auditable {
 	 * @throws AuthorizationDeniedException unless token has StandardRules.AUDITLOGEXPORT rights
 	 */
 	int deleteRows(AuthenticationToken token, Date timestamp, Properties properties) throws AuthorizationDeniedException;
+
+    /**
+     * Verify the integrity of one node's log entries in a range of sequence numbers, and that no sequence numbers are missing
+     * within the range. Used for parallel verification, where the caller checks for sequence numbers missing between ranges. The
+     * verification runs asynchronously in a thread managed by the container.
+     * 
+     * @param nodeId the node that wrote the log entries
+     * @param fromSequenceNumber first sequence number of the range
+     * @param toSequenceNumber last sequence number of the range, inclusive
+     * @param timestamp only verify entries up until this time
+     * @param fetchSize number of entries to read from the database at the time
+     * @param report problems are added to this report
+     * @return the first and last sequence number found in the range, or null if there are no entries in the range
+     */
+    Future<long[]> verifyLogsIntegrityRange(String nodeId, long fromSequenceNumber, long toSequenceNumber, Date timestamp, int fetchSize,
+            AuditLogValidationReport report);
 }
@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.cesecore.audit.AuditLogger;
@@ -21,4 +23,12 @@ import org.cesecore.audit.AuditLogger;
  */
 @Local
 public interface IntegrityProtectedLoggerSessionLocal extends AuditLogger {
+
+    /**
+     * Write several audit log records in one new transaction. Used for group commit of audit log records.
+     *
+     * @param auditRecords the records to write
+     * @param merge true if the records might be detached entities from a failed transaction
+     */
+    void persistAuditRecords(List<AuditRecordData> auditRecords, boolean merge);
 }
@@ -16,6 +16,7 @@ import java.math.BigInteger;
 import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ejb.Local;
@@ -33,6 +34,9 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     /** @return the found entity instance or null if the entity does not exist */
     CertificateData findByFingerprint(String fingerprint);
 
+    /** @return the found entities for the given fingerprints, in no particular order */
+    List<CertificateData> findByFingerprints(Collection<String> fingerprints);
+
     /** @return return the query results as a Set. */
     Set<String> findUsernamesBySubjectDNAndIssuerDN(String subjectDN, String issuerDN);
     
@@ -45,6 +49,38 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     /** @return return the query results as a List. */
     List<CertificateData> findByIssuerDNSerialNumber(String issuerDN, String serialNumber);
 
+    /**
+     * Reads the certificate statuses needed to build or refresh a revocation index for a CA.
+     *
+     * @param issuerDN the issuer DN of the CA
+     * @param updatedSince 0 to read all revoked certificates, or epoch milliseconds to read all certificates that have been
+     *     updated since then, whether they are revoked or not
+     * @return a map from serial number to certificate status
+     */
+    Map<BigInteger, CertificateStatus> getRevocationIndexStatuses(String issuerDN, long updatedSince);
+
+    /**
+     * Counts the certificates of a CA that a full revocation index would contain. Used to discover rows that were deleted, which a
+     * refresh of the index can not see.
+     *
+     * @param issuerDN the issuer DN of the CA
+     * @return the number of revoked certificates, including archived certificates that are still revoked
+     */
+    long getRevocationIndexCount(String issuerDN);
+
+    /**
+     * Reads the certificates whose entry on a full CRL may have changed since the previous full CRL was generated.
+     *
+     * @param issuerDN the issuer DN of the CA
+     * @param updatedSince epoch milliseconds, certificates that have been revoked, unrevoked or had their revocation reason changed since then are read
+     * @param expiredBefore epoch milliseconds, revoked certificates that expired before this time are also read. Use -1 to not read expired certificates.
+     * @return changed entries, where certificates that are not revoked any more have reason {@link RevokedCertInfo#REVOCATION_REASON_REMOVEFROMCRL}
+     */
+    Collection<RevokedCertInfo> getChangedRevokedCertInfos(String issuerDN, long updatedSince, long expiredBefore);
+
+    /** @return return the query results as a List, for all given decimal serial numbers issued by issuerDN. */
+    List<CertificateData> findByIssuerDNSerialNumbers(String issuerDN, Collection<String> serialNumbers);
+
     /** @return return the query results as a List. */
     CertificateInfo findFirstCertificateInfo(String issuerDN, String serialNumber);
     
@@ -378,4 +378,17 @@ public interface CertificateStoreSession {
      */
     boolean setStatus(AuthenticationToken admin, String fingerprint, int status) throws AuthorizationDeniedException;
     
+    /**
+     * Stores the search tokens of existing certificates in the certificate search index, replacing any tokens that were
+     * already stored for them. Certificates are processed in order of fingerprint, so call this repeatedly with the returned
+     * fingerprint until null is returned to index all certificates.
+     *
+     * @param admin an authentication token with access to /
+     * @param afterFingerprint the fingerprint returned by the previous call, or null to start from the beginning
+     * @param maxRows the maximum number of certificates to index in this transaction
+     * @return the fingerprint of the last indexed certificate, or null if there are no more certificates to index
+     * @throws AuthorizationDeniedException if the admin is not authorized to /
+     */
+    String indexCertificatesForSearch(AuthenticationToken admin, String afterFingerprint, int maxRows) throws AuthorizationDeniedException;
+
 }
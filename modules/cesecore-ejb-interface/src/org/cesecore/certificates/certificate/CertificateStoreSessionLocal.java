@@ -17,12 +17,14 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.Local;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.certificate.request.RequestMessage;
+import org.cesecore.certificates.crl.RevokedCertInfo;
 
 /**
  * Local interface for CertificateStoreSession.
@@ -83,6 +85,12 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     CertificateDataWrapper getCertificateData(final String fingerprint);
 
+    /**
+     * Retrieve the full wrapped CertificateData and Base64CertData objects for several certificates, with one query per table.
+     * @return map from fingerprint to the certificate, without entries for fingerprints that don't exist
+     */
+    Map<String, CertificateDataWrapper> getCertificateDatas(Collection<String> fingerprints);
+
     /**
      * Update the base64cert column if the database row exists, but the column is empty.
      * @return true if the column was empty and is now populated.
@@ -165,6 +173,15 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     void updateLimitedCertificateDataStatus(AuthenticationToken admin, int caId, String issuerDn, BigInteger serialNumber, Date revocationDate, int reasonCode, String caFingerprint) throws AuthorizationDeniedException;
     
+    /**
+     * Performs the same operation as {@link #updateLimitedCertificateDataStatus(AuthenticationToken, int, String, BigInteger, Date, int, String)}
+     * for several certificates from the same issuer, reading the existing entries with as few database queries as possible.
+     *
+     * @param revokedCertInfos serial numbers, revocation dates and reason codes of the entries to update
+     */
+    void updateLimitedCertificateDataStatuses(AuthenticationToken admin, int caId, String issuerDn, Collection<RevokedCertInfo> revokedCertInfos,
+            String caFingerprint) throws AuthorizationDeniedException;
+
     /**
      * Method for populating the CertificateData table with limited information for example from a CRL, so the OCSP responder can answer if a certificate is revoked.
      * 
@@ -256,6 +273,45 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     boolean existsByIssuerAndSerno(String issuerDN, BigInteger serno);
 
+    /**
+     * Performs the same operation as getStatus for several certificates from the same issuer, using as few database queries as possible.
+     *
+     * @param issuerDN the issuer of the sought certificates
+     * @param sernos the serial numbers of the sought certificates
+     * @return a map from each given serial number to its status, CertificateStatus.NOT_AVAILABLE for certificates that are not found.
+     */
+    Map<BigInteger, CertificateStatus> getStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /**
+     * Performs the same operation as getCertificateAndStatus for several certificates from the same issuer, using as few database queries as possible.
+     *
+     * @param issuerDN the issuer of the sought certificates
+     * @param sernos the serial numbers of the sought certificates
+     * @return a map from each given serial number to a {@link CertificateStatusHolder}, with a null certificate and
+     *     CertificateStatus.NOT_AVAILABLE for certificates that are not found.
+     */
+    Map<BigInteger, CertificateStatusHolder> getCertificatesAndStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /**
+     * Looks up the CertificateData of several certificates from the same issuer, using as few database queries as possible.
+     * Base64CertData is not read, so this is meant for status checks rather than for reading the certificates.
+     *
+     * @param issuerDN the issuer of the sought certificates
+     * @param sernos the serial numbers of the sought certificates
+     * @return a map from serial number to the certificate, without entries for certificates that are not found
+     */
+    Map<BigInteger, CertificateDataWrapper> getCertificateDatasByIssuerAndSernos(String issuerDN, Collection<BigInteger> sernos);
+
+    /**
+     * Answers from the in-memory revocation index only, without any database lookup.
+     *
+     * @param issuerDN the issuer of the sought certificate
+     * @param serno the serial number of the sought certificate
+     * @return the status if the certificate is revoked, CertificateStatus.OK if it is not revoked <b>or does not exist</b>, or null
+     *     if the revocation index is not enabled or can not answer for this certificate right now.
+     */
+    CertificateStatus getIndexedRevocationStatus(String issuerDN, BigInteger serno);
+
     /** Gets the status of the certificate, or -1 if the certificate does not exist. 
      * If more than one certificate exists with the issuerDN/serialNumber, the first one is returned.
      * This query performs limited database read and thus will not verify database integrity protection.
@@ -12,7 +12,9 @@
  *************************************************************************/
 package org.cesecore.certificates.certificate;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 import javax.ejb.Local;
 
@@ -32,4 +34,7 @@ public interface NoConflictCertificateStoreSessionLocal extends NoConflictCertif
     
     /** @see CertificateStoreSessionLocal#getCertificateData(String) */
     public CertificateDataWrapper getCertificateData(final String fingerprint);
+
+    /** @see CertificateStoreSessionLocal#getCertificateDatas(Collection) */
+    Map<String, CertificateDataWrapper> getCertificateDatas(Collection<String> fingerprints);
 }
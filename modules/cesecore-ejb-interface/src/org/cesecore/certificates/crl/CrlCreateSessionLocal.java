@@ -12,8 +12,15 @@
  *************************************************************************/
 package org.cesecore.certificates.crl;
 
+import java.util.Collection;
+
 import javax.ejb.Local;
 
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.keys.token.CryptoTokenOfflineException;
+
 /**
  * Local interface for CrlCreateSession
  * 
@@ -23,4 +30,21 @@ import javax.ejb.Local;
 @Local
 public interface CrlCreateSessionLocal extends CrlCreateSession {
 
+    /**
+     * Generates a new full CRL from the previous full CRL and the changes since it was generated, and stores it. This gives the same CRL as
+     * {@link #generateAndStoreCRL(AuthenticationToken, org.cesecore.certificates.ca.CA, Collection, int, int)} with all revoked certificates,
+     * without reading and encoding the entries that have not changed.
+     *
+     * @param admin administrator performing the task
+     * @param ca the CA this operation regards
+     * @param previousCrl the DER encoded previous full CRL of the CA
+     * @param changes entries to add or replace. Entries with reason {@link RevokedCertInfo#REVOCATION_REASON_REMOVEFROMCRL} are removed.
+     * @param nextCrlNumber The CRL number of the new CRL
+     * @return the bytes of the generated CRL, or null if no CRL was generated
+     * @throws CryptoTokenOfflineException if the crypto token of the CA is not active
+     * @throws AuthorizationDeniedException if the administrator is not authorized to create CRLs
+     */
+    byte[] generateAndStoreIncrementalCRL(AuthenticationToken admin, X509CA ca, byte[] previousCrl, Collection<RevokedCertInfo> changes, int nextCrlNumber)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException;
+
 }
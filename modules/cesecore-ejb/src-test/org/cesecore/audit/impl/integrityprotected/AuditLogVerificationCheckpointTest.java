@@ -0,0 +1,74 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Test of resuming a parallel audit log verification.
+ *
+ * @version $Id$
+ */
+public class AuditLogVerificationCheckpointTest {
+
+    @Test
+    public void testResume() throws Exception {
+        final File file = File.createTempFile("auditverify", ".checkpoint");
+        try {
+            try (final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint(file, 4711L, 1000L)) {
+                assertEquals(0, checkpoint.getCompletedCount());
+                checkpoint.setCompleted("node1", 0, new long[] { 0, 999 });
+                checkpoint.setCompleted("node1", 2000, null);
+                checkpoint.setCompleted("node2", 0, new long[] { 5, 17 });
+            }
+            // Simulate an interruption while writing a line
+            try (final FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write("1000\t10".getBytes(StandardCharsets.UTF_8));
+            }
+            try (final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint(file, 4711L, 1000L)) {
+                assertEquals(3, checkpoint.getCompletedCount());
+                assertArrayEquals(new long[] { 0, 999 }, checkpoint.getResult("node1", 0));
+                assertTrue(checkpoint.isCompleted("node1", 2000));
+                assertNull("Partition without rows should have no result.", checkpoint.getResult("node1", 2000));
+                assertFalse("Partially written partition should be verified again.", checkpoint.isCompleted("node1", 1000));
+                assertArrayEquals(new long[] { 5, 17 }, checkpoint.getResult("node2", 0));
+                checkpoint.setCompleted("node1", 1000, new long[] { 1000, 1999 });
+            }
+            try (final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint(file, 4711L, 1000L)) {
+                assertArrayEquals("Partition verified after resuming should be recorded.", new long[] { 1000, 1999 }, checkpoint.getResult("node1", 1000));
+            }
+            try (final AuditLogVerificationCheckpoint checkpoint = new AuditLogVerificationCheckpoint(file, 4712L, 1000L)) {
+                assertEquals("Checkpoint of a verification up until another time should not be used.", 0, checkpoint.getCompletedCount());
+            }
+        } finally {
+            deleteFile(file);
+        }
+    }
+
+    private void deleteFile(final File file) throws IOException {
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+}
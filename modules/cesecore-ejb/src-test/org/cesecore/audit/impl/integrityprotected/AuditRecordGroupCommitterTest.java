@@ -0,0 +1,114 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.junit.Test;
+
+/**
+ * Test of group commit of audit log records.
+ *
+ * @version $Id$
+ */
+public class AuditRecordGroupCommitterTest {
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final AuditRecordGroupCommitter committer = new AuditRecordGroupCommitter(1000, 10);
+        final List<Long> written = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicInteger transactions = new AtomicInteger();
+        final AuditRecordGroupCommitter.BatchPersister persister = new AuditRecordGroupCommitter.BatchPersister() {
+            @Override
+            public void persist(final List<AuditRecordData> auditRecords, final boolean retry) {
+                assertTrue("Batch size should be limited.", auditRecords.size() <= 10);
+                transactions.incrementAndGet();
+                long last = -1;
+                for (final AuditRecordData auditRecord : auditRecords) {
+                    assertTrue("Records should be written in sequence order.", auditRecord.getSequenceNumber() > last);
+                    last = auditRecord.getSequenceNumber();
+                    written.add(last);
+                }
+                try {
+                    // Simulate a commit, so records pile up for the next batch
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final AtomicInteger sequence = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10; j++) {
+                        try {
+                            committer.write(newAuditRecord(sequence.incrementAndGet()), persister);
+                        } catch (AuditRecordStorageException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("All records should have been written once.", 200, written.size());
+        assertEquals(200, new HashSet<>(written).size());
+        assertTrue("Records should have been written in batches, but were written in " + transactions.get() + " transactions.", transactions.get() < 200);
+        assertEquals(0, committer.getQueueSize());
+    }
+
+    @Test
+    public void testFailedRecord() throws Exception {
+        final AuditRecordGroupCommitter committer = new AuditRecordGroupCommitter(10, 10);
+        final AuditRecordGroupCommitter.BatchPersister persister = new AuditRecordGroupCommitter.BatchPersister() {
+            @Override
+            public void persist(final List<AuditRecordData> auditRecords, final boolean retry) {
+                for (final AuditRecordData auditRecord : auditRecords) {
+                    if (auditRecord.getSequenceNumber() == 13) {
+                        throw new IllegalStateException("Bad record");
+                    }
+                }
+            }
+        };
+        committer.write(newAuditRecord(1), persister);
+        try {
+            committer.write(newAuditRecord(13), persister);
+            fail("Failure to write the record should have been reported.");
+        } catch (AuditRecordStorageException e) {
+            assertEquals("Bad record", e.getMessage());
+        }
+    }
+
+    private AuditRecordData newAuditRecord(final long sequenceNumber) {
+        final AuditRecordData auditRecord = new AuditRecordData();
+        auditRecord.setNodeId("node");
+        auditRecord.setSequenceNumber(sequenceNumber);
+        return auditRecord;
+    }
+}
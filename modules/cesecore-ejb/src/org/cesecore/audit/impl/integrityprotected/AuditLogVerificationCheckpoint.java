@@ -0,0 +1,120 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Progress of a parallel audit log verification, so it can be resumed after an interruption.
+ * <p>
+ * Each verified partition is appended to the file as one line with the first sequence number of the partition, the first and
+ * last sequence numbers found in it and the node identifier. The first line holds the point in time and the partition size, and
+ * a checkpoint written with other values is discarded.
+ *
+ * @version $Id$
+ */
+public class AuditLogVerificationCheckpoint implements Closeable {
+
+    private static final Logger log = Logger.getLogger(AuditLogVerificationCheckpoint.class);
+    /** Marks a partition without any rows */
+    private static final long NONE = -1L;
+
+    private final Map<String, long[]> completed = new HashMap<>();
+    private final Writer writer;
+
+    /**
+     * Read any existing checkpoint for the same verification, and open the file for appending.
+     *
+     * @param file the checkpoint file
+     * @param timestamp the point in time up until which the logs are verified
+     * @param partitionSize the number of sequence numbers in each partition
+     */
+    public AuditLogVerificationCheckpoint(final File file, final long timestamp, final long partitionSize) throws IOException {
+        final String header = timestamp + "\t" + partitionSize;
+        boolean resume = false;
+        if (file.exists()) {
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                resume = header.equals(reader.readLine());
+                String line;
+                while (resume && (line = reader.readLine()) != null) {
+                    final String[] fields = line.split("\t", 4);
+                    if (fields.length != 4) {
+                        continue; // Last line was not fully written
+                    }
+                    try {
+                        completed.put(getKey(fields[3], Long.parseLong(fields[0])), new long[] { Long.parseLong(fields[1]), Long.parseLong(fields[2]) });
+                    } catch (NumberFormatException e) {
+                        log.info("Ignoring invalid line in audit log verification checkpoint " + file + ": " + line);
+                    }
+                }
+            }
+            if (resume) {
+                log.info("Resuming audit log verification with " + completed.size() + " verified partitions from " + file);
+            }
+        }
+        writer = new OutputStreamWriter(new FileOutputStream(file, resume), StandardCharsets.UTF_8);
+        // When resuming, start on a new line in case the last line was not fully written
+        writer.write(resume ? "\n" : header + "\n");
+        writer.flush();
+    }
+
+    /** @return the number of partitions verified before this checkpoint was opened */
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /** @return true if the partition is already verified */
+    public synchronized boolean isCompleted(final String nodeId, final long fromSequenceNumber) {
+        return completed.containsKey(getKey(nodeId, fromSequenceNumber));
+    }
+
+    /** @return the first and last sequence number found in a verified partition, or null if it had no rows */
+    public synchronized long[] getResult(final String nodeId, final long fromSequenceNumber) {
+        final long[] result = completed.get(getKey(nodeId, fromSequenceNumber));
+        return result == null || result[0] == NONE ? null : result;
+    }
+
+    /**
+     * Record that a partition has been verified.
+     *
+     * @param result the first and last sequence number found in the partition, or null if it had no rows
+     */
+    public synchronized void setCompleted(final String nodeId, final long fromSequenceNumber, final long[] result) throws IOException {
+        final long[] value = result == null ? new long[] { NONE, NONE } : result;
+        completed.put(getKey(nodeId, fromSequenceNumber), value);
+        writer.write(fromSequenceNumber + "\t" + value[0] + "\t" + value[1] + "\t" + nodeId + "\n");
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private String getKey(final String nodeId, final long fromSequenceNumber) {
+        return fromSequenceNumber + "\t" + nodeId;
+    }
+}
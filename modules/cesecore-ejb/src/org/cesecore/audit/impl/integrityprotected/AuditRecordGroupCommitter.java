@@ -0,0 +1,175 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.log.AuditRecordStorageException;
+
+/**
+ * Group commit of audit log records: instead of one transaction per record, records from concurrent callers are written
+ * together in one transaction.
+ * <p>
+ * Each caller puts its record on a bounded queue and then waits until the record has been written. One of the waiting callers
+ * at the time becomes the leader, takes up to the maximum batch size of records from the queue and writes them. Meanwhile new
+ * records pile up for the next leader, so the more concurrent callers there are, the larger the batches get. All writes are
+ * done by the calling threads, so the records are written within the container's transaction management.
+ * <p>
+ * A caller only returns successfully when its record has been committed. If a batch fails, its records are written one by one
+ * so that only the callers whose own records could not be written get an error.
+ *
+ * @version $Id$
+ */
+public class AuditRecordGroupCommitter {
+
+    private static final Logger log = Logger.getLogger(AuditRecordGroupCommitter.class);
+
+    /** Writes audit records to the database, in a new transaction */
+    public interface BatchPersister {
+        /**
+         * @param auditRecords the records to write
+         * @param retry true if the records were part of a batch that failed, so they might be detached rather than new entities
+         */
+        void persist(List<AuditRecordData> auditRecords, boolean retry);
+    }
+
+    private static class PendingRecord {
+        final AuditRecordData auditRecord;
+        boolean done = false;
+        RuntimeException failure = null;
+
+        PendingRecord(final AuditRecordData auditRecord) {
+            this.auditRecord = auditRecord;
+        }
+    }
+
+    private static final Comparator<PendingRecord> SEQUENCE_ORDER = new Comparator<PendingRecord>() {
+        @Override
+        public int compare(final PendingRecord pendingRecord1, final PendingRecord pendingRecord2) {
+            return pendingRecord1.auditRecord.getSequenceNumber().compareTo(pendingRecord2.auditRecord.getSequenceNumber());
+        }
+    };
+
+    private final BlockingQueue<PendingRecord> queue;
+    private final int maxBatchSize;
+    /** Guards the done flags and the leader role */
+    private final Object monitor = new Object();
+    private boolean flushing = false;
+
+    /**
+     * @param queueSize maximum number of records waiting to be written. Callers block while the queue is full.
+     * @param maxBatchSize maximum number of records written in one transaction
+     */
+    public AuditRecordGroupCommitter(final int queueSize, final int maxBatchSize) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Write an audit record together with records from other threads, and wait until it has been committed.
+     *
+     * @param auditRecord the record to write
+     * @param persister used to write a batch of records in a new transaction, if this thread becomes the leader
+     * @throws AuditRecordStorageException if the record could not be written, or the thread was interrupted while waiting. In the
+     *     latter case the record might still be written by another thread.
+     */
+    public void write(final AuditRecordData auditRecord, final BatchPersister persister) throws AuditRecordStorageException {
+        final PendingRecord pendingRecord = new PendingRecord(auditRecord);
+        try {
+            queue.put(pendingRecord);
+            while (true) {
+                synchronized (monitor) {
+                    while (flushing && !pendingRecord.done) {
+                        monitor.wait();
+                    }
+                    if (pendingRecord.done) {
+                        break;
+                    }
+                    flushing = true;
+                }
+                try {
+                    flush(persister);
+                } finally {
+                    synchronized (monitor) {
+                        flushing = false;
+                        monitor.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuditRecordStorageException("Interrupted while waiting for audit log record to be written.", e);
+        }
+        if (pendingRecord.failure != null) {
+            throw new AuditRecordStorageException(pendingRecord.failure.getMessage(), pendingRecord.failure);
+        }
+    }
+
+    /** @return the number of records waiting to be written */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /** Write the next batch from the queue. Only called by the current leader. */
+    private void flush(final BatchPersister persister) {
+        final List<PendingRecord> batch = new ArrayList<>();
+        queue.drainTo(batch, maxBatchSize);
+        if (batch.isEmpty()) {
+            return;
+        }
+        // Sequence numbers are taken before the records are queued, so they might be slightly out of order
+        Collections.sort(batch, SEQUENCE_ORDER);
+        final List<AuditRecordData> auditRecords = new ArrayList<>(batch.size());
+        for (final PendingRecord pendingRecord : batch) {
+            auditRecords.add(pendingRecord.auditRecord);
+        }
+        boolean handled = false;
+        try {
+            persister.persist(auditRecords, false);
+            if (log.isDebugEnabled()) {
+                log.debug("Wrote " + auditRecords.size() + " audit log records in one transaction.");
+            }
+            handled = true;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).failure = e;
+            } else {
+                log.info("Failed to write batch of " + batch.size() + " audit log records, writing them one by one: " + e.getMessage());
+                for (final PendingRecord pendingRecord : batch) {
+                    try {
+                        persister.persist(Collections.singletonList(pendingRecord.auditRecord), true);
+                    } catch (RuntimeException e2) {
+                        pendingRecord.failure = e2;
+                    }
+                }
+            }
+            handled = true;
+        } finally {
+            synchronized (monitor) {
+                for (final PendingRecord pendingRecord : batch) {
+                    if (!handled && pendingRecord.failure == null) {
+                        // An Error was thrown, the waiting callers must not believe that their records were written
+                        pendingRecord.failure = new IllegalStateException("Failed to write audit log record.");
+                    }
+                    pendingRecord.done = true;
+                }
+            }
+        }
+    }
+}
@@ -12,17 +12,28 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
@@ -43,6 +54,7 @@ import org.cesecore.audit.audit.AuditLogReportElem;
 import org.cesecore.audit.audit.AuditLogValidationReport;
 import org.cesecore.audit.audit.AuditLogValidatorException;
 import org.cesecore.audit.audit.SigningFileOutputStream;
+import org.cesecore.audit.audit.StreamingAuditLogValidationReport;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.enums.EventTypes;
 import org.cesecore.audit.enums.ModuleTypes;
@@ -74,6 +86,7 @@ import org.cesecore.util.query.QueryGenerator;
 public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedAuditorSessionLocal {
 
 	private static final Logger log = Logger.getLogger(IntegrityProtectedAuditorSessionBean.class);
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
 	
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -98,13 +111,16 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
             final File exportFile = AuditDevicesConfig.getExportFile(properties, timestamp);
             try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(exportFile, cryptoToken, signatureDetails)) {
                 final AuditExporter auditExporter = c.newInstance();
-                auditExporter.setOutputStream(signingFileOutputStream);
+                // Rows are written as they are read, so buffer the small writes before they reach the file and the signature
+                auditExporter.setOutputStream(new BufferedOutputStream(signingFileOutputStream, EXPORT_BUFFER_SIZE));
                 verifyAndOptionalExport(auditExporter, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+                // Flush everything the exporter has buffered, so that the signature covers the whole file
+                auditExporter.close();
                 report.setExportedFile(exportFile.getCanonicalPath());
                 if (log.isDebugEnabled()) {
                     log.debug("Exported " + report.getExportCount() + " rows.");
                 }
-                logVerificationResult(report.errors().size(), timestamp, token);
+                logVerificationResult(report.getErrorCount(), timestamp, token);
                 // Sign the exported file ... it will write the signature on the side
                 final String signatureFilename = signingFileOutputStream.writeSignature();
                 report.setSignatureFile(signatureFilename);
@@ -123,7 +139,6 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
                         log.debug("Deleted " + deletedRowCount + " rows from audit log after export.");
                     }
                 }
-                auditExporter.close();
             }
         } catch (final Exception e) {
             throw new AuditLogExporterException(e.getMessage(), e);
@@ -152,19 +167,163 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	@Override
 	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	public AuditLogValidationReport verifyLogsIntegrity(final AuthenticationToken token, final Date timestamp, final Properties properties) throws AuditLogValidatorException {
+        final int threads = AuditDevicesConfig.getAuditLogValidationThreads(properties);
+        final File validationDir = AuditDevicesConfig.getAuditLogValidationDir(properties);
+        if (threads > 1 || validationDir != null) {
+            return verifyLogsIntegrityParallel(token, timestamp, properties, threads, validationDir);
+        }
         final AuditLogValidationReport report = new AuditLogValidationReport();
         try {
             verifyAndOptionalExport(null, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
         	// Log the success or failure depending on if verification returns error or not
-        	logVerificationResult(report.errors().size(), timestamp, token);
+        	logVerificationResult(report.getErrorCount(), timestamp, token);
         } catch (final Exception e) {
         	throw new AuditLogValidatorException(e.getMessage(), e);
         }
         return report;
 	}
 
+    /**
+     * Verify the logs of all nodes, split into partitions of sequence numbers that are verified in parallel, with at most the given number of
+     * partitions in progress at the time.
+     * 
+     * If a directory is given, the report is written to a file there instead of kept in memory, and each verified partition is
+     * recorded in a checkpoint file. A verification up until the same point in time then skips the partitions that are already
+     * verified and appends to the same report.
+     */
+    private AuditLogValidationReport verifyLogsIntegrityParallel(final AuthenticationToken token, final Date timestamp, final Properties properties,
+            final int threads, final File validationDir) throws AuditLogValidatorException {
+        final int fetchSize = AuditDevicesConfig.getAuditLogValidationFetchSize(properties);
+        final long partitionSize = Math.max(1, AuditDevicesConfig.getAuditLogValidationPartitionSize(properties));
+        final int maxInProgress = Math.max(1, threads);
+        AuditLogVerificationCheckpoint checkpoint = null;
+        Writer reportWriter = null;
+        final List<Future<long[]>> inProgress = new ArrayList<>();
+        try {
+            final AuditLogValidationReport report;
+            if (validationDir == null) {
+                report = new AuditLogValidationReport();
+            } else {
+                final String baseName = AuditDevicesConfig.getAuditLogValidationBaseName(timestamp);
+                checkpoint = new AuditLogVerificationCheckpoint(new File(validationDir, baseName + ".checkpoint"), timestamp.getTime(), partitionSize);
+                final boolean append = checkpoint.getCompletedCount() > 0;
+                reportWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(validationDir, baseName + ".log"), append), StandardCharsets.UTF_8));
+                report = new StreamingAuditLogValidationReport(reportWriter);
+            }
+            // Partitions in the order of the nodes and sequence numbers, with the first and last sequence number of each partition
+            final List<Object[]> partitions = new ArrayList<>();
+            for (final String nodeId : getNodeIds()) {
+                final long[] range = getSequenceNumberRange(nodeId, timestamp);
+                if (range == null) {
+                    continue;
+                }
+                for (long from = range[0]; from <= range[1]; from += partitionSize) {
+                    partitions.add(new Object[] { nodeId, Long.valueOf(from), Long.valueOf(Math.min(from + partitionSize - 1, range[1])) });
+                }
+            }
+            // Verify the partitions asynchronously in that order, and check that the partitions of each node follow each other
+            int started = 0;
+            String previousNodeId = null;
+            long lastSeqNumber = -1L;
+            int nodePartitions = 0;
+            for (final Object[] partition : partitions) {
+                while (started < partitions.size() && inProgress.size() < maxInProgress) {
+                    inProgress.add(startPartitionVerification(partitions.get(started++), timestamp, fetchSize, report, checkpoint));
+                }
+                final String nodeId = (String) partition[0];
+                final long[] result = inProgress.remove(0).get();
+                if (checkpoint != null && !checkpoint.isCompleted(nodeId, ((Long) partition[1]).longValue())) {
+                    checkpoint.setCompleted(nodeId, ((Long) partition[1]).longValue(), result);
+                }
+                if (!nodeId.equals(previousNodeId)) {
+                    logVerifiedPartitions(previousNodeId, nodePartitions);
+                    previousNodeId = nodeId;
+                    lastSeqNumber = -1L;
+                    nodePartitions = 0;
+                }
+                nodePartitions++;
+                if (result == null) {
+                    continue;
+                }
+                if (result[0] != lastSeqNumber + 1) {
+                    report.warn(new AuditLogReportElem(lastSeqNumber, result[0], "missing log with sequence number " + (lastSeqNumber + 1) + " on nodeId " + nodeId));
+                }
+                lastSeqNumber = result[1];
+            }
+            logVerifiedPartitions(previousNodeId, nodePartitions);
+            // Log the success or failure depending on if verification returns error or not
+            logVerificationResult(report.getErrorCount(), timestamp, token);
+            return report;
+        } catch (ExecutionException e) {
+            throw new AuditLogValidatorException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuditLogValidatorException(e.getMessage(), e);
+        } catch (final Exception e) {
+            throw new AuditLogValidatorException(e.getMessage(), e);
+        } finally {
+            // Let partitions that are still in progress after a failure finish before the report is closed
+            for (final Future<long[]> future : inProgress) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    log.debug("Verification of a partition of the audit log failed: " + e.getCause().getMessage());
+                }
+            }
+            try {
+                if (reportWriter != null) {
+                    reportWriter.close();
+                }
+                if (checkpoint != null) {
+                    checkpoint.close();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to close audit log verification report: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Starts the verification of one partition of a node's log, through the asynchronous business method, unless it is already verified according
+     * to the checkpoint.
+     */
+    private Future<long[]> startPartitionVerification(final Object[] partition, final Date timestamp, final int fetchSize,
+            final AuditLogValidationReport report, final AuditLogVerificationCheckpoint checkpoint) {
+        final String nodeId = (String) partition[0];
+        final long fromSequenceNumber = ((Long) partition[1]).longValue();
+        if (checkpoint != null && checkpoint.isCompleted(nodeId, fromSequenceNumber)) {
+            return new AsyncResult<>(checkpoint.getResult(nodeId, fromSequenceNumber));
+        }
+        return integrityProtectedAuditorSession.verifyLogsIntegrityRange(nodeId, fromSequenceNumber, ((Long) partition[2]).longValue(), timestamp,
+                fetchSize, report);
+    }
+
+    private void logVerifiedPartitions(final String nodeId, final int partitions) {
+        if (nodeId != null && log.isDebugEnabled()) {
+            log.debug("Verified " + partitions + " partitions of audit log for nodeId " + nodeId);
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Asynchronous
+    public Future<long[]> verifyLogsIntegrityRange(final String nodeId, final long fromSequenceNumber, final long toSequenceNumber, final Date timestamp,
+            final int fetchSize, final AuditLogValidationReport report) {
+        try {
+            // Whether the first log entry follows the previous partition is checked by the caller
+            return new AsyncResult<>(verifyAndOptionalExportRange(null, report, nodeId, fromSequenceNumber - 1, toSequenceNumber, timestamp, fetchSize,
+                    false));
+        } catch (IOException e) {
+            // Only thrown when exporting
+            throw new IllegalStateException(e);
+        }
+    }
+
 	/**
-	 * Read batches of logs from the database. If the database integrity check fails, the batch will be processed row by row.
+	 * Read batches of logs from the database for each node. If the database integrity check fails, the batch will be processed row by row.
 	 * Results are added to the report.
 	 * @param auditExporter can be null if no export should take place
 	 * @param report is a AuditLogValidationReport or AuditLogExportReport
@@ -176,56 +335,83 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     		if (log.isDebugEnabled()) {
     			log.debug("exportAuditLogs for nodeId " + nodeId);
     		}
-    		// Assuming timeStamp is in UTC
-    		final QueryCriteria queryCriteria = QueryCriteria.create().add((Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())))).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-    		int startIndex = 1;
-    		final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(-1L));
-    		while (true) {
-    			try {
-        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
-    				final int results = queryResult.size();
-    				if (results == 0) {
-    					break;	// No more data for this node
-    				}
-    				startIndex += results;
-					if (auditExporter!=null) {
-						for (final AuditRecordData auditRecordData : queryResult) {
-							writeToExport(auditExporter, auditRecordData);
-        					((AuditLogExportReport) report).incExportCount();
-						}
-					}
-    			} catch (DatabaseProtectionException e) {
-    				// One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
-    				for (int i=0; i<fetchSize; i++) {
-        				try {
-                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, 1, queryCriteria, report, lastSeqNumber, nodeId);
-            				final int results = queryResult.size();
-            				if (results != 1) {
-            					break;	// No more data for this node
-            				}
-        					if (auditExporter!=null) {
-        						writeToExport(auditExporter, queryResult.get(0));
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				} catch (DatabaseProtectionException e2) {
-        					final AuditRecordData auditRecordData = (AuditRecordData) e2.getEntity();
-        					// Add to report
-        					report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
-        					lastSeqNumber.set(auditRecordData.getSequenceNumber());
-        					// We still export it
-        					// TODO: It might make sense to make it configurable to export when verification fails..
-        					if (auditExporter!=null) {
-            					writeToExport(auditExporter, auditRecordData);
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				}
-        				startIndex += 1;
-    				}
-    			}
-    		}
+    		verifyAndOptionalExportRange(auditExporter, report, nodeId, -1L, Long.MAX_VALUE, timestamp, fetchSize, true);
     	}
 	}
 
+    /**
+     * Read batches of a node's logs in sequence order, verify that all sequence numbers are present and optionally export them.
+     * 
+     * Each batch is selected by the sequence number of the last entry in the previous one rather than by position, so reading
+     * far into a large audit log is as fast as reading the first entries, and only one batch at the time is held in memory.
+     * If the database integrity check fails, the batch will be processed row by row.
+     * @param auditExporter can be null if no export should take place
+     * @param report is a AuditLogValidationReport or AuditLogExportReport
+     * @param afterSequenceNumber process the entries with a higher sequence number than this
+     * @param toSequenceNumber process the entries up until and including this sequence number
+     * @param checkFirst true if a warning should be reported when the first entry does not follow directly after afterSequenceNumber
+     * @return the first and last sequence number found, or null if there were no entries
+     */
+    private long[] verifyAndOptionalExportRange(final AuditExporter auditExporter, final AuditLogValidationReport report, final String nodeId,
+            final long afterSequenceNumber, final long toSequenceNumber, final Date timestamp, final int fetchSize, final boolean checkFirst) throws IOException {
+        long firstSeqNumber = -1L;
+        long lastSeqNumber = afterSequenceNumber;
+        // After a failed integrity check, read one row at the time until the failing row has been found
+        int singleRowsLeft = 0;
+        while (true) {
+            final int max = singleRowsLeft > 0 ? 1 : Math.max(1, fetchSize);
+            final List<AuditRecordData> queryResult;
+            try {
+                queryResult = selectAuditLogRange(nodeId, lastSeqNumber, toSequenceNumber, timestamp, max);
+            } catch (DatabaseProtectionException e) {
+                if (singleRowsLeft == 0) {
+                    singleRowsLeft = max;
+                    continue;
+                }
+                singleRowsLeft--;
+                final AuditRecordData auditRecordData = (AuditRecordData) e.getEntity();
+                final long currentSeqNumber = auditRecordData.getSequenceNumber().longValue();
+                report.warn(new AuditLogReportElem(lastSeqNumber, currentSeqNumber, "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
+                if (firstSeqNumber == -1L) {
+                    firstSeqNumber = currentSeqNumber;
+                }
+                lastSeqNumber = currentSeqNumber;
+                // We still export it
+                // TODO: It might make sense to make it configurable to export when verification fails..
+                exportRow(auditExporter, report, auditRecordData);
+                continue;
+            }
+            if (queryResult.isEmpty()) {
+                break;  // No more data for this node
+            }
+            if (singleRowsLeft > 0) {
+                singleRowsLeft--;
+            }
+            for (final AuditRecordData auditRecordData : queryResult) {
+                final long currentSeqNumber = auditRecordData.getSequenceNumber().longValue();
+                if (currentSeqNumber != lastSeqNumber + 1 && (checkFirst || firstSeqNumber != -1L)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Log verification failure for log on node " + nodeId + ". Missing entry. Last sequenceNumber was " + lastSeqNumber + " and current is " + currentSeqNumber);
+                    }
+                    report.warn(new AuditLogReportElem(lastSeqNumber, currentSeqNumber, "missing log with sequence number " + (lastSeqNumber + 1) + " on nodeId " + nodeId));
+                }
+                if (firstSeqNumber == -1L) {
+                    firstSeqNumber = currentSeqNumber;
+                }
+                lastSeqNumber = currentSeqNumber;
+                exportRow(auditExporter, report, auditRecordData);
+            }
+        }
+        return firstSeqNumber == -1L ? null : new long[] { firstSeqNumber, lastSeqNumber };
+    }
+
+    private void exportRow(final AuditExporter auditExporter, final AuditLogValidationReport report, final AuditRecordData auditRecordData) throws IOException {
+        if (auditExporter != null) {
+            writeToExport(auditExporter, auditRecordData);
+            ((AuditLogExportReport) report).incExportCount();
+        }
+    }
+
 	/** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
     private void writeToExport(final AuditExporter auditExporter, final AuditRecordData auditRecordData) throws IOException {
         auditExporter.writeStartObject();
@@ -246,35 +432,6 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         auditExporter.writeEndObject();
     }
     
-    /**
-     * Fetch a batch of log rows from the database (implying database integrity check) and verifies
-     * that all sequence numbers are present.
-     * @param startIndex start batch from this position 
-     * @param max entries per batch
-     * @param queryCriteria where clause
-     * @param report will be updated when a problem is found
-     * @param lastSeqNumber will be updated to the last sequence number processed in this subset
-     * @param nodeId identifier of which node that claims to have written this data
-     * @return the log entries we fetched from the database so the caller may export these
-     * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
-     */
-	private List<AuditRecordData> verifyLogsIntegritySubset(final int startIndex, final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
-		final List<AuditRecordData> queryResult = internalSelectAuditLogs(startIndex, max, queryCriteria);	// Might throw DatabaseProtectionException
-		// Loop through results and verify that the sequence order is correct
-		for (int i=0; i<queryResult.size(); i++) {
-			final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
-			if (currentSeqNumber != lastSeqNumber.get().longValue() + 1) {
-				if (log.isDebugEnabled()) {
-					log.debug("Log verification failure for log on node " + nodeId + ". Missing entry. Last sequenceNumber was " + lastSeqNumber + " and current is " + currentSeqNumber);
-				}
-				// Add to report
-				report.warn(new AuditLogReportElem(lastSeqNumber.get(), Long.valueOf(currentSeqNumber), "missing log with sequence number " + (lastSeqNumber.get().longValue() + 1) + " on nodeId " + nodeId));
-			}
-			lastSeqNumber.set(Long.valueOf(currentSeqNumber));
-		}
-		return queryResult;
-	}
-	
 	/** Log the outcome of the verification to the secure audit log based on the supplied number of errors. */
 	private void logVerificationResult(final int errors, final Date timestamp, final AuthenticationToken token) {
     	final Map<String, Object> details = new LinkedHashMap<String, Object>();
@@ -296,6 +453,32 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return buildConditionalQuery(entityManager, "SELECT a FROM AuditRecordData a", criteria, startIndex, max).getResultList();
 	}
 	
+    /** @return the log entries of a node with sequence numbers after the given one, up until a limit, in sequence order */
+    @SuppressWarnings("unchecked")
+    private List<AuditRecordData> selectAuditLogRange(final String nodeId, final long afterSequenceNumber, final long toSequenceNumber, final Date timestamp,
+            final int max) {
+        final Query query = entityManager.createQuery("SELECT a FROM AuditRecordData a WHERE a.nodeId=:nodeId AND a.sequenceNumber>:afterSequenceNumber"
+                + " AND a.sequenceNumber<=:toSequenceNumber AND a.timeStamp<=:timeStamp ORDER BY a.sequenceNumber");
+        query.setParameter("nodeId", nodeId);
+        query.setParameter("afterSequenceNumber", afterSequenceNumber);
+        query.setParameter("toSequenceNumber", toSequenceNumber);
+        query.setParameter("timeStamp", timestamp.getTime());
+        query.setMaxResults(max);
+        return query.getResultList();
+    }
+
+    /** @return the lowest and highest sequence number of a node's log entries up until the given time, or null if there are none */
+    private long[] getSequenceNumberRange(final String nodeId, final Date timestamp) {
+        final Query query = entityManager.createQuery("SELECT MIN(a.sequenceNumber), MAX(a.sequenceNumber) FROM AuditRecordData a WHERE a.nodeId=:nodeId AND a.timeStamp<=:timeStamp");
+        query.setParameter("nodeId", nodeId);
+        query.setParameter("timeStamp", timestamp.getTime());
+        final Object[] result = (Object[]) query.getSingleResult();
+        if (result == null || result[0] == null || result[1] == null) {
+            return null;
+        }
+        return new long[] { ((Number) result[0]).longValue(), ((Number) result[1]).longValue() };
+    }
+
 	/** @return a unique list of node identifiers that have been writing audit log to the database. */
 	@SuppressWarnings("unchecked")
 	private List<String> getNodeIds() {
@@ -327,12 +510,4 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         }
         return query;
     }
-    
-    /** Class used internally for holding an object that can updated by a method. */
-    private class Holder<T> {
-    	private T object;
-    	Holder(final T object) { set(object); }
-		public void set(final T object) { this.object = object; }
-		public T get() { return object; }
-    }
 }
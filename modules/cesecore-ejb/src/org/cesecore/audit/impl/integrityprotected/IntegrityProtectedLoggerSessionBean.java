@@ -12,10 +12,13 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -47,12 +50,29 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
 
     private static final Logger log = Logger.getLogger(IntegrityProtectedLoggerSessionBean.class);
 
+    /** Shared by all bean instances, so records from all threads on this node can be written together */
+    private static final AuditRecordGroupCommitter groupCommitter = new AuditRecordGroupCommitter(
+            CesecoreConfiguration.getAuditLogGroupCommitQueueSize(), CesecoreConfiguration.getAuditLogGroupCommitMaxBatchSize());
+
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
+    @Resource
+    private SessionContext sessionContext;
+    // Myself needs to be looked up in postConstruct
+    private IntegrityProtectedLoggerSessionLocal integrityProtectedLoggerSession;
+
+    /** Writes batches of records through the business interface, so each batch gets a new transaction */
+    private final AuditRecordGroupCommitter.BatchPersister batchPersister = new AuditRecordGroupCommitter.BatchPersister() {
+        @Override
+        public void persist(final List<AuditRecordData> auditRecords, final boolean retry) {
+            integrityProtectedLoggerSession.persistAuditRecords(auditRecords, retry);
+        }
+    };
 
     @PostConstruct
     public void postConstruct() {
         CryptoProviderTools.installBCProviderIfNotAvailable();
+        integrityProtectedLoggerSession = sessionContext.getBusinessObject(IntegrityProtectedLoggerSessionLocal.class);
     }
 
     /**
@@ -94,7 +114,16 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             final Long timeStamp = Long.valueOf(trustedTime.getTime().getTime());
             final AuditRecordData auditRecordData = new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, authToken,
                     service, module, customId, searchDetail1, searchDetail2, additionalDetails);
-            entityManager.persist(auditRecordData);
+            if (CesecoreConfiguration.isAuditLogGroupCommit()) {
+                // Wait until the record has been committed together with records from other threads. This transaction has no
+                // writes of its own, so committing it does not involve the database.
+                groupCommitter.write(auditRecordData, batchPersister);
+            } else {
+                entityManager.persist(auditRecordData);
+            }
+        } catch (AuditRecordStorageException e) {
+            log.error(e.getMessage(), e);
+            throw e;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             throw new AuditRecordStorageException(e.getMessage(), e);
@@ -104,4 +133,16 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             }
         }
     }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void persistAuditRecords(final List<AuditRecordData> auditRecords, final boolean merge) {
+        for (final AuditRecordData auditRecordData : auditRecords) {
+            if (merge) {
+                entityManager.merge(auditRecordData);
+            } else {
+                entityManager.persist(auditRecordData);
+            }
+        }
+    }
 }
@@ -51,6 +51,7 @@ import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.roles.AccessRulesHelper;
+import org.cesecore.roles.AccessRulesTrie;
 import org.cesecore.roles.management.RoleDataSessionLocal;
 import org.cesecore.roles.member.RoleMemberDataSessionLocal;
 import org.cesecore.time.TrustedTime;
@@ -126,11 +127,11 @@ public class AuthorizationSessionBean implements AuthorizationSessionLocal, Auth
 
     private boolean isAuthorized(final AuthenticationToken authenticationToken, final boolean doLogging, final String... resources) {
         try {
-            final HashMap<String, Boolean> accessRules = getAccessAvailableToAuthenticationToken(authenticationToken);
+            final AccessRulesTrie accessRules = AuthorizationCache.INSTANCE.getAccessRulesTrie(authenticationToken, authorizationCacheCallback);
             final Map<String, Object> details = doLogging ? new LinkedHashMap<String, Object>() : null;
             for (int i=0; i<resources.length; i++) {
                 final String resource = resources[i];
-                final boolean authorizedToResource = AccessRulesHelper.hasAccessToResource(accessRules, resource);
+                final boolean authorizedToResource = accessRules.hasAccessToResource(resource);
                 if (authorizedToResource) {
                     if (doLogging) {
                         details.put("resource"+i, resource);
@@ -14,10 +14,13 @@ package org.cesecore.certificates.certificate;
 
 import java.math.BigInteger;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -31,6 +34,7 @@ import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang.time.FastDateFormat;
 import org.apache.log4j.Logger;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.util.QueryResultWrapper;
@@ -71,6 +75,14 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return entityManager.find(CertificateData.class, fingerprint);
     }
 
+    @Override
+    public List<CertificateData> findByFingerprints(final Collection<String> fingerprints) {
+        final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)",
+                CertificateData.class);
+        query.setParameter("fingerprints", fingerprints);
+        return query.getResultList();
+    }
+
     /** @return return the query results as a Set. */
     @Override
     public Set<String> findUsernamesBySubjectDNAndIssuerDN(final String subjectDN, final String issuerDN) {
@@ -105,6 +117,16 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return query.getResultList();
     }
 
+    /** @return return the query results as a List. */
+    @Override
+    public List<CertificateData> findByIssuerDNSerialNumbers(final String issuerDN, final Collection<String> serialNumbers) {
+        final TypedQuery<CertificateData> query = entityManager.createQuery(
+                "SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN (:serialNumbers)", CertificateData.class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("serialNumbers", serialNumbers);
+        return query.getResultList();
+    }
+
     @Override
     public CertificateInfo findFirstCertificateInfo(final String issuerDN, final String serialNumber) {
         CertificateInfo ret = null;
@@ -240,6 +262,100 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return getRevokedCertInfosInternal(issuerDN, lastbasecrldate, false);
     }
 
+    @Override
+    public Map<BigInteger, CertificateStatus> getRevocationIndexStatuses(final String issuerDN, final long updatedSince) {
+        final TypedQuery<Object[]> query;
+        if (updatedSince > 0) {
+            // Every status change sets the update time, also when a revocation is lifted, so rows can not be filtered on revocation date
+            query = entityManager.createQuery("SELECT a.serialNumber, a.status, a.revocationDate, a.revocationReason, a.certificateProfileId "
+                    + "FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.updateTime>=:updateTime", Object[].class);
+            query.setParameter("updateTime", updatedSince);
+        } else {
+            query = entityManager.createQuery("SELECT a.serialNumber, a.status, a.revocationDate, a.revocationReason, a.certificateProfileId "
+                    + "FROM CertificateData a WHERE a.issuerDN=:issuerDN AND (a.status=:status1 OR a.status=:status2)", Object[].class);
+            query.setParameter("status1", CertificateConstants.CERT_REVOKED);
+            query.setParameter("status2", CertificateConstants.CERT_ARCHIVED);
+        }
+        query.setParameter("issuerDN", issuerDN);
+        final int maxResults = CesecoreConfiguration.getDatabaseRevokedCertInfoFetchSize();
+        query.setMaxResults(maxResults);
+        int firstResult = 0;
+        final Map<BigInteger, CertificateStatus> ret = new HashMap<>();
+        while (true) {
+            query.setFirstResult(firstResult);
+            final List<Object[]> rows = query.getResultList();
+            if (rows.isEmpty()) {
+                break;
+            }
+            for (final Object[] row : rows) {
+                final Integer certificateProfileId = (Integer) row[4];
+                final CertificateStatus status = CertificateStatusHelper.getCertificateStatus(ValueExtractor.extractIntValue(row[1]),
+                        ValueExtractor.extractIntValue(row[3]), ValueExtractor.extractLongValue(row[2]),
+                        certificateProfileId == null ? CertificateProfileConstants.CERTPROFILE_NO_PROFILE : certificateProfileId.intValue());
+                // Archived certificates that were never revoked are not part of a full index
+                if (updatedSince > 0 || status.equals(CertificateStatus.REVOKED)) {
+                    ret.put(new BigInteger((String) row[0]), status);
+                }
+            }
+            if (rows.size() < maxResults) {
+                break;
+            }
+            firstResult += maxResults;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Read " + ret.size() + " revocation index entries for '" + issuerDN + "' updated since " + updatedSince + ".");
+        }
+        return ret;
+    }
+
+    @Override
+    public Collection<RevokedCertInfo> getChangedRevokedCertInfos(final String issuerDN, final long updatedSince, final long expiredBefore) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.fingerprint, a.serialNumber, a.status, a.expireDate, a.revocationDate, a.revocationReason "
+                + "FROM CertificateData a WHERE a.issuerDN=:issuerDN AND ((a.updateTime>=:updateTime AND a.revocationDate>0) "
+                + "OR (a.status=:status AND a.expireDate<:expireDate))", Object[].class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("updateTime", updatedSince);
+        query.setParameter("status", CertificateConstants.CERT_REVOKED);
+        query.setParameter("expireDate", expiredBefore);
+        final int maxResults = CesecoreConfiguration.getDatabaseRevokedCertInfoFetchSize();
+        query.setMaxResults(maxResults);
+        int firstResult = 0;
+        final List<RevokedCertInfo> ret = new ArrayList<>();
+        while (true) {
+            query.setFirstResult(firstResult);
+            final List<Object[]> rows = query.getResultList();
+            for (final Object[] row : rows) {
+                int revocationReason = ValueExtractor.extractIntValue(row[5]);
+                if (ValueExtractor.extractIntValue(row[2]) != CertificateConstants.CERT_REVOKED || revocationReason == RevokedCertInfo.NOT_REVOKED) {
+                    revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+                }
+                ret.add(new RevokedCertInfo(((String) row[0]).getBytes(), new BigInteger((String) row[1]).toByteArray(), ValueExtractor.extractLongValue(row[4]),
+                        revocationReason, ValueExtractor.extractLongValue(row[3])));
+            }
+            if (rows.size() < maxResults) {
+                break;
+            }
+            firstResult += maxResults;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Read " + ret.size() + " changed CRL entries for '" + issuerDN + "' updated since " + updatedSince + ".");
+        }
+        return ret;
+    }
+
+    @Override
+    public long getRevocationIndexCount(final String issuerDN) {
+        // Same certificates as CertificateStatusHelper.getCertificateStatus reports as revoked
+        final TypedQuery<Long> query = entityManager.createQuery("SELECT COUNT(a) FROM CertificateData a WHERE a.issuerDN=:issuerDN AND "
+                + "(a.status=:status1 OR (a.status=:status2 AND a.revocationReason<>:reason1 AND a.revocationReason<>:reason2))", Long.class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("status1", CertificateConstants.CERT_REVOKED);
+        query.setParameter("status2", CertificateConstants.CERT_ARCHIVED);
+        query.setParameter("reason1", RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL);
+        query.setParameter("reason2", RevokedCertInfo.NOT_REVOKED);
+        return query.getSingleResult().longValue();
+    }
+
     @Override
     public List<CertificateData> findByExpireDateWithLimit(final long expireDate, final int maxNumberOfResults) {
         final long now = System.currentTimeMillis();
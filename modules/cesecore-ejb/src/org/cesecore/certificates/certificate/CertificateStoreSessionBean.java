@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.cesecore.certificates.certificate;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.PublicKey;
 import java.security.cert.CertPathValidatorException;
@@ -24,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -46,6 +49,10 @@ import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -66,6 +73,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfile;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache;
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.GlobalCesecoreConfiguration;
@@ -92,6 +100,11 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     /** Internal localization of logs and errors */
     private static final InternalResources INTRES = InternalResources.getInstance();
     private static final int TIMERID_CACERTIFICATECACHE = 1;
+    private static final int TIMERID_REVOCATIONINDEX = 2;
+    /** How far back each revocation index refresh reads, in addition to the time since the last refresh */
+    private static final long REVOCATION_INDEX_REFRESH_MARGIN = 5 * 60 * 1000L;
+    /** Max number of serial numbers in a single IN clause, well below the limit of any supported database */
+    private static final int MAX_SERIAL_NUMBERS_PER_QUERY = 100;
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -109,6 +122,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     // Myself needs to be looked up in postConstruct
     @Resource
     private SessionContext sessionContext;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
     private CertificateStoreSessionLocal certificateStoreSession;
     /* When the sessionContext is injected, the timerService should be looked up.
      * This is due to the Glassfish EJB verifier complaining.
@@ -135,6 +150,10 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         } else {
             log.info("Not initing CaCertificateCache reload timers, there are already some.");
         }
+        if (CesecoreConfiguration.isRevocationIndexEnabled() && getTimerCount(TIMERID_REVOCATIONINDEX)==0) {
+            timerService.createSingleActionTimer(CesecoreConfiguration.getRevocationIndexRefreshInterval(),
+                    new TimerConfig(Integer.valueOf(TIMERID_REVOCATIONINDEX), false));
+        }
     }
 
     private GlobalCesecoreConfiguration getGlobalCesecoreConfiguration() {
@@ -212,6 +231,11 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final CertificateData certificateData = new CertificateData(incert, pubk, username, cafp, certificateRequest, status, type, certificateProfileId, endEntityProfileId, tag, updateTime,
                 !useBase64CertTable && storeCertificateData, storeSubjectAlternativeName);
         entityManager.persist(certificateData);
+        if (CesecoreConfiguration.isCertificateSearchIndexEnabled()) {
+            for (final CertificateSearchTokenData certificateSearchTokenData : CertificateSearchTokenData.createTokens(certificateData)) {
+                entityManager.persist(certificateSearchTokenData);
+            }
+        }
         if (doAuditLog) {
             final String serialNo = CertTools.getSerialNumberAsString(incert);
             final String msg = INTRES.getLocalizedMessage("store.storecert", username, certificateData.getFingerprint(), certificateData.getSubjectDnNeverNull(), certificateData.getIssuerDN(), serialNo);
@@ -239,6 +263,24 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return new CertificateDataWrapper(certificateData, base64CertData);
     }
 
+    @Override
+    public Map<String, CertificateDataWrapper> getCertificateDatas(final Collection<String> fingerprints) {
+        final Map<String, CertificateDataWrapper> ret = new HashMap<>();
+        if (fingerprints.isEmpty()) {
+            return ret;
+        }
+        final Map<String, Base64CertData> base64CertDatas = new HashMap<>();
+        if (CesecoreConfiguration.useBase64CertTable()) {
+            for (final Base64CertData base64CertData : Base64CertData.findByFingerprints(entityManager, fingerprints)) {
+                base64CertDatas.put(base64CertData.getFingerprint(), base64CertData);
+            }
+        }
+        for (final CertificateData certificateData : certificateDataSession.findByFingerprints(fingerprints)) {
+            ret.put(certificateData.getFingerprint(), new CertificateDataWrapper(certificateData, base64CertDatas.get(certificateData.getFingerprint())));
+        }
+        return ret;
+    }
+
     /**
      * We need special handling here of CVC certificate with EC keys, because they lack EC parameters in all certs
      * except the Root certificate (CVCA)
@@ -1116,6 +1158,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             } else {
                 entityManager.merge(certificateData);
             }
+            certificateStatusChanged(certificateData.getIssuerDN(), certificateData.getSerialNumber());
         }
         if (log.isTraceEnabled()) {
             log.trace("<private setRevokeStatusNoAuth(), issuerdn=" + issuerDn + ", serno=" + serialNumber);
@@ -1146,11 +1189,20 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 	d.setStatus(CertificateConstants.CERT_REVOKED);
                 	d.setRevocationDate(System.currentTimeMillis());
                 	d.setRevocationReason(reason);
+                	d.setUpdateTime(System.currentTimeMillis());
                 	revoked++;
             	}
             	firstResult += maxRows;
             	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
             }
+            OcspPreSignedResponseCache.INSTANCE.flush();
+            afterCompletion(new Runnable() {
+                @Override
+                public void run() {
+                    OcspPreSignedResponseCache.INSTANCE.flush();
+                }
+            });
+            RevocationIndex.INSTANCE.remove(bcdn);
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, Integer.valueOf(revoked), Integer.valueOf(reason));
     		Map<String, Object> details = new LinkedHashMap<>();
     		details.put("msg", msg);
@@ -1226,7 +1278,16 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         // First make a DN in our well-known format
         final String dn = CertTools.stringToBCDNString(issuerDN);
-
+        final CaRevocationIndex revocationIndex = getLoadedRevocationIndex(dn);
+        if (revocationIndex != null && revocationIndex.isAuthoritative(serno)) {
+            final CertificateStatus revokedStatus = revocationIndex.getRevokedStatus(serno);
+            if (revokedStatus != null) {
+                if (log.isTraceEnabled()) {
+                    log.trace("<getStatus() returned " + revokedStatus + " from revocation index for cert number " + serno.toString(16));
+                }
+                return revokedStatus;
+            }
+        }
         try {
             Collection<CertificateData> coll = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
 
@@ -1277,6 +1338,208 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return new CertificateStatusHolder(null, CertificateStatus.NOT_AVAILABLE);
     }
 
+    @Override
+    public Map<BigInteger, CertificateStatus> getStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        final Map<BigInteger, CertificateStatus> ret = new HashMap<>();
+        try {
+            final Map<BigInteger, CertificateData> found = findByIssuerDNSerialNumbers(issuerDN, sernos);
+            for (final BigInteger serno : sernos) {
+                final CertificateData data = found.get(serno);
+                ret.put(serno, data == null ? CertificateStatus.NOT_AVAILABLE : CertificateStatusHelper.getCertificateStatus(data));
+            }
+        } catch (Exception e) {
+            throw new EJBException(e);
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<BigInteger, CertificateStatusHolder> getCertificatesAndStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        final Map<BigInteger, CertificateStatusHolder> ret = new HashMap<>();
+        final Map<BigInteger, CertificateData> found = findByIssuerDNSerialNumbers(issuerDN, sernos);
+        for (final BigInteger serno : sernos) {
+            final CertificateData data = found.get(serno);
+            if (data == null) {
+                ret.put(serno, new CertificateStatusHolder(null, CertificateStatus.NOT_AVAILABLE));
+            } else {
+                ret.put(serno, new CertificateStatusHolder(data.getCertificate(entityManager), CertificateStatusHelper.getCertificateStatus(data)));
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<BigInteger, CertificateDataWrapper> getCertificateDatasByIssuerAndSernos(final String issuerDN, final Collection<BigInteger> sernos) {
+        final Map<BigInteger, CertificateDataWrapper> ret = new HashMap<>();
+        for (final Map.Entry<BigInteger, CertificateData> entry : findByIssuerDNSerialNumbers(issuerDN, sernos).entrySet()) {
+            ret.put(entry.getKey(), new CertificateDataWrapper(entry.getValue(), null));
+        }
+        return ret;
+    }
+
+    /**
+     * Looks up the certificates with the given serial numbers from one issuer, with one query per
+     * {@link #MAX_SERIAL_NUMBERS_PER_QUERY} serial numbers.
+     *
+     * @return a map from serial number to the first certificate found, without entries for certificates that were not found
+     */
+    private Map<BigInteger, CertificateData> findByIssuerDNSerialNumbers(final String issuerDN, final Collection<BigInteger> sernos) {
+        if (log.isTraceEnabled()) {
+            log.trace(">findByIssuerDNSerialNumbers(), dn:" + issuerDN + ", " + sernos.size() + " serial numbers");
+        }
+        // First make a DN in our well-known format
+        final String dn = CertTools.stringToBCDNString(issuerDN);
+        final Map<BigInteger, CertificateData> ret = new HashMap<>();
+        final List<String> batch = new ArrayList<>();
+        final Iterator<BigInteger> iterator = new HashSet<>(sernos).iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next().toString());
+            if (batch.size() == MAX_SERIAL_NUMBERS_PER_QUERY || !iterator.hasNext()) {
+                for (final CertificateData data : certificateDataSession.findByIssuerDNSerialNumbers(dn, batch)) {
+                    final BigInteger serno = new BigInteger(data.getSerialNumber());
+                    if (ret.containsKey(serno)) {
+                        final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
+                        log.error(msg);
+                    } else {
+                        ret.put(serno, data);
+                    }
+                }
+                batch.clear();
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<findByIssuerDNSerialNumbers() found " + ret.size() + " of " + sernos.size() + " certificates.");
+        }
+        return ret;
+    }
+
+    @Override
+    public CertificateStatus getIndexedRevocationStatus(final String issuerDN, final BigInteger serno) {
+        final CaRevocationIndex revocationIndex = getLoadedRevocationIndex(CertTools.stringToBCDNString(issuerDN));
+        if (revocationIndex == null || !revocationIndex.isAuthoritative(serno)) {
+            return null;
+        }
+        final CertificateStatus revokedStatus = revocationIndex.getRevokedStatus(serno);
+        return revokedStatus == null ? CertificateStatus.OK : revokedStatus;
+    }
+
+    /** @return the revocation index for the issuer DN (in BC DN format), loading it if needed, or null if the index is not enabled */
+    private CaRevocationIndex getLoadedRevocationIndex(final String dn) {
+        if (!CesecoreConfiguration.isRevocationIndexEnabled()) {
+            return null;
+        }
+        final CaRevocationIndex revocationIndex = RevocationIndex.INSTANCE.getIndex(dn);
+        if (!revocationIndex.isLoaded()) {
+            synchronized (revocationIndex) {
+                if (!revocationIndex.isLoaded()) {
+                    loadRevocationIndex(revocationIndex);
+                }
+            }
+        }
+        return revocationIndex;
+    }
+
+    /** Fills the index from its snapshot file, if there is one, and otherwise with all revoked certificates from the database. */
+    private void loadRevocationIndex(final CaRevocationIndex revocationIndex) {
+        final File snapshot = RevocationIndex.INSTANCE.getSnapshotFile(revocationIndex.getIssuerDn());
+        if (snapshot != null && snapshot.exists()) {
+            try {
+                if (revocationIndex.readSnapshot(snapshot)) {
+                    // The snapshot may be old, so catch up with everything that changed since it was written
+                    refreshRevocationIndex(revocationIndex);
+                    log.info("Loaded revocation index with " + revocationIndex.size() + " revoked certificates for '" + revocationIndex.getIssuerDn()
+                            + "' from " + snapshot.getAbsolutePath());
+                    return;
+                }
+            } catch (IOException e) {
+                log.info("Unable to read revocation index snapshot " + snapshot.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+        final long refreshTime = System.currentTimeMillis();
+        revocationIndex.load(certificateDataSession.getRevocationIndexStatuses(revocationIndex.getIssuerDn(), 0), refreshTime);
+        revocationIndex.setLastDeletionCheckTime(refreshTime);
+        log.info("Loaded revocation index with " + revocationIndex.size() + " revoked certificates for '" + revocationIndex.getIssuerDn() + "'.");
+        writeRevocationIndexSnapshot(revocationIndex);
+    }
+
+    /**
+     * Applies all revocations and unrevocations since the last refresh, with a margin for transactions that were committed late or
+     * clocks that differ between nodes, and resolves serial numbers whose status was changed on this node. Every deletion check
+     * interval, and on the first refresh after the index was restored from a snapshot, the index is also counted against the database
+     * and loaded again if revoked certificates have been deleted on any node.
+     */
+    private void refreshRevocationIndex(final CaRevocationIndex revocationIndex) {
+        final long refreshTime = System.currentTimeMillis();
+        final String dn = revocationIndex.getIssuerDn();
+        final Map<BigInteger, CertificateStatus> statuses = certificateDataSession.getRevocationIndexStatuses(dn,
+                Math.max(1L, revocationIndex.getLastRefreshTime() - REVOCATION_INDEX_REFRESH_MARGIN));
+        final List<BigInteger> pending = revocationIndex.getPendingBefore(refreshTime);
+        if (!pending.isEmpty()) {
+            statuses.putAll(getStatuses(dn, pending));
+        }
+        int changes = revocationIndex.update(statuses, refreshTime);
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed revocation index for '" + dn + "' with " + changes + " changes.");
+        }
+        // Deleted rows are not seen by the refresh above, also not when they were deleted before a snapshot was written
+        if (refreshTime - revocationIndex.getLastDeletionCheckTime() >= CesecoreConfiguration.getRevocationIndexDeletionCheckInterval()) {
+            if (revocationIndex.hasDeletedEntries(certificateDataSession.getRevocationIndexCount(dn))) {
+                final long reloadTime = System.currentTimeMillis();
+                revocationIndex.load(certificateDataSession.getRevocationIndexStatuses(dn, 0), reloadTime);
+                log.info("Reloaded revocation index with " + revocationIndex.size() + " revoked certificates for '" + dn
+                        + "', since revoked certificates have been deleted.");
+                changes++;
+            }
+            revocationIndex.setLastDeletionCheckTime(refreshTime);
+        }
+        if (changes > 0) {
+            writeRevocationIndexSnapshot(revocationIndex);
+        }
+    }
+
+    private void writeRevocationIndexSnapshot(final CaRevocationIndex revocationIndex) {
+        final File snapshot = RevocationIndex.INSTANCE.getSnapshotFile(revocationIndex.getIssuerDn());
+        if (snapshot != null) {
+            try {
+                revocationIndex.writeSnapshot(snapshot);
+            } catch (IOException e) {
+                log.warn("Unable to write revocation index snapshot " + snapshot.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Refreshes all loaded revocation indexes and schedules the next refresh. */
+    private void refreshRevocationIndexesAndSetTimeout() {
+        cancelTimers(TIMERID_REVOCATIONINDEX);
+        try {
+            for (final CaRevocationIndex revocationIndex : RevocationIndex.INSTANCE.getLoadedIndexes()) {
+                try {
+                    refreshRevocationIndex(revocationIndex);
+                } catch (RuntimeException e) {
+                    // Drop the index rather than serving statuses that can not be kept current
+                    log.warn("Unable to refresh revocation index for '" + revocationIndex.getIssuerDn() + "': " + e.getMessage());
+                    RevocationIndex.INSTANCE.remove(revocationIndex.getIssuerDn());
+                }
+            }
+        } finally {
+            if (CesecoreConfiguration.isRevocationIndexEnabled()) {
+                timerService.createSingleActionTimer(CesecoreConfiguration.getRevocationIndexRefreshInterval(),
+                        new TimerConfig(Integer.valueOf(TIMERID_REVOCATIONINDEX), false));
+            } else {
+                RevocationIndex.INSTANCE.flush();
+            }
+        }
+    }
+
+    /** Cancels all timers where TimerInfo is an Integer and holds the specified value */
+    private void cancelTimers(final int id) {
+        for (final Timer timer : timerService.getTimers()) {
+            if (timer.getInfo() instanceof Integer && ((Integer) timer.getInfo()).intValue() == id) {
+                timer.cancel();
+            }
+        }
+    }
+
     @Override
     public List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin,
             long activeNotifiedExpireDateMax, long activeExpireDateMin) {
@@ -1284,6 +1547,52 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 activeExpireDateMin);
     }
 
+    /** Same as {@link #certificateStatusChanged(String, BigInteger)} for a decimal serial number from CertificateData. */
+    private void certificateStatusChanged(final String issuerDn, final String serialNumber) {
+        try {
+            certificateStatusChanged(issuerDn, new BigInteger(serialNumber, 10));
+        } catch (NumberFormatException e) {
+            // Not an X.509 serial number, so there can not be any OCSP responses or index entries for it
+        }
+    }
+
+    /**
+     * Removes any pre-signed OCSP responses for the certificate, and makes status lookups bypass the revocation index for it until the
+     * change has been read back from the database.
+     *
+     * The responses are removed again when the transaction has completed, since until it is committed, OCSP requests can still read the
+     * old status and store new responses with it.
+     */
+    private void certificateStatusChanged(final String issuerDn, final BigInteger serialNumber) {
+        OcspPreSignedResponseCache.INSTANCE.invalidate(serialNumber);
+        afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                OcspPreSignedResponseCache.INSTANCE.invalidate(serialNumber);
+            }
+        });
+        if (CesecoreConfiguration.isRevocationIndexEnabled()) {
+            RevocationIndex.INSTANCE.getIndex(CertTools.stringToBCDNString(issuerDn)).markPending(serialNumber);
+        }
+    }
+
+    /** Runs the task when the current transaction has been committed or rolled back, or right away if there is no transaction. */
+    private void afterCompletion(final Runnable task) {
+        if (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+            task.run();
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(final int status) {
+                task.run();
+            }
+        });
+    }
+
     private void changeStatus(AuthenticationToken admin, CertificateData certificateData, int status) throws AuthorizationDeniedException {
         if (log.isDebugEnabled()) {
             log.debug("Set status " + status + " for certificate with fp: " + certificateData.getFingerprint());
@@ -1295,6 +1604,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         authorizedToCA(admin, caid);
 
         certificateData.setStatus(status);
+        certificateData.setUpdateTime(System.currentTimeMillis());
+        certificateStatusChanged(certificateData.getIssuerDN(), certificateData.getSerialNumber());
         final Certificate certificate = certificateData.getCertificate(this.entityManager);
         String serialNo;
         if (certificate==null) {
@@ -1498,6 +1809,39 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final String fingerprint2 = CertTools.getFingerprintAsString(x509Certificate2);
         entityManager.createNativeQuery("DELETE FROM Base64CertData WHERE fingerprint IN ('"+fingerprint1+"', '"+fingerprint2+"')").executeUpdate();
         entityManager.createNativeQuery("DELETE FROM CertificateData WHERE fingerprint IN ('"+fingerprint1+"', '"+fingerprint2+"')").executeUpdate();
+        if (CesecoreConfiguration.isCertificateSearchIndexEnabled()) {
+            entityManager.createNativeQuery("DELETE FROM CertificateSearchTokenData WHERE fingerprint IN ('"+fingerprint1+"', '"+fingerprint2+"')").executeUpdate();
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public String indexCertificatesForSearch(final AuthenticationToken admin, final String afterFingerprint, final int maxRows) throws AuthorizationDeniedException {
+        if (!authorizationSession.isAuthorized(admin, StandardRules.ROLE_ROOT.resource())) {
+            final String msg = INTRES.getLocalizedMessage("authorization.notauthorizedtoresource", StandardRules.ROLE_ROOT.resource(), admin.toString());
+            throw new AuthorizationDeniedException(msg);
+        }
+        // Limited CertificateData entries (without subjectKeyId) only exist for revocation checks and are not searched for
+        final TypedQuery<CertificateData> query = entityManager.createQuery(
+                "SELECT a FROM CertificateData a WHERE a.fingerprint>:afterFingerprint AND a.subjectKeyId IS NOT NULL ORDER BY a.fingerprint ASC", CertificateData.class);
+        query.setParameter("afterFingerprint", afterFingerprint == null ? "" : afterFingerprint);
+        query.setMaxResults(maxRows);
+        final List<CertificateData> certificateDatas = query.getResultList();
+        String lastFingerprint = null;
+        for (final CertificateData certificateData : certificateDatas) {
+            lastFingerprint = certificateData.getFingerprint();
+            // Replace any tokens stored with an earlier version, or while the index was enabled
+            final Query deleteQuery = entityManager.createQuery("DELETE FROM CertificateSearchTokenData a WHERE a.fingerprint=:fingerprint");
+            deleteQuery.setParameter("fingerprint", lastFingerprint);
+            deleteQuery.executeUpdate();
+            for (final CertificateSearchTokenData certificateSearchTokenData : CertificateSearchTokenData.createTokens(certificateData)) {
+                entityManager.persist(certificateSearchTokenData);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Indexed " + certificateDatas.size() + " certificates for search after fingerprint " + afterFingerprint + ".");
+        }
+        return certificateDatas.size() < maxRows ? null : lastFingerprint;
     }
 
     @Override
@@ -1519,9 +1863,48 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             final String msg = INTRES.getLocalizedMessage("caadmin.notauthorizedtoca", admin.toString(), caId);
             throw new AuthorizationDeniedException(msg);
         }
-        final String limitedFingerprint = getLimitedCertificateDataFingerprint(issuerDn, serialNumber);
         final CertificateDataWrapper cdw = getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
-        if (cdw==null) {
+        updateLimitedCertificateData(issuerDn, subjectDn, username, serialNumber, status, revocationDate, reasonCode, caFingerprint,
+                cdw == null ? null : cdw.getCertificateData());
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void updateLimitedCertificateDataStatuses(final AuthenticationToken admin, final int caId, final String issuerDn,
+            final Collection<RevokedCertInfo> revokedCertInfos, final String caFingerprint) throws AuthorizationDeniedException {
+        if (!authorizationSession.isAuthorizedNoLogging(admin, StandardRules.CAACCESS.resource() + caId)) {
+            final String msg = INTRES.getLocalizedMessage("caadmin.notauthorizedtoca", admin.toString(), caId);
+            throw new AuthorizationDeniedException(msg);
+        }
+        final List<BigInteger> sernos = new ArrayList<>(revokedCertInfos.size());
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            sernos.add(revokedCertInfo.getUserCertificate());
+        }
+        final Map<BigInteger, CertificateData> found = findByIssuerDNSerialNumbers(issuerDn, sernos);
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            final BigInteger serialNumber = revokedCertInfo.getUserCertificate();
+            final CertificateData updated = updateLimitedCertificateData(issuerDn, "CN=limited", null, serialNumber, CertificateConstants.CERT_REVOKED,
+                    revokedCertInfo.getRevocationDate(), revokedCertInfo.getReason(), caFingerprint, found.get(serialNumber));
+            // A later entry with the same serial number, for example a duplicate entry in the CRL, must see what this entry did
+            if (updated == null) {
+                found.remove(serialNumber);
+            } else {
+                found.put(serialNumber, updated);
+            }
+        }
+    }
+
+    /**
+     * Creates, updates or removes a limited entry.
+     *
+     * @param existing the existing entry for the issuer and serial number, or null if there is none
+     * @return the entry for the issuer and serial number after the update, or null if there is none
+     */
+    private CertificateData updateLimitedCertificateData(final String issuerDn, final String subjectDn, final String username, final BigInteger serialNumber,
+            final int status, final Date revocationDate, final int reasonCode, final String caFingerprint, final CertificateData existing) {
+        final String limitedFingerprint = getLimitedCertificateDataFingerprint(issuerDn, serialNumber);
+        certificateStatusChanged(issuerDn, serialNumber);
+        if (existing==null) {
             if (reasonCode==RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
                 deleteLimitedCertificateData(limitedFingerprint);
             } else {
@@ -1540,13 +1923,14 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 limitedCertificateData.setCaFingerprint(caFingerprint);
                 log.info("Adding limited CertificateData entry with fingerprint=" + limitedFingerprint + ", serialNumber=" + serialNumber.toString(16).toUpperCase()+", issuerDn='"+issuerDn+"'");
                 entityManager.persist(limitedCertificateData);
+                return limitedCertificateData;
             }
-        } else if (limitedFingerprint.equals(cdw.getCertificateData().getFingerprint())) {
+        } else if (limitedFingerprint.equals(existing.getFingerprint())) {
         	if (reasonCode==RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
                 deleteLimitedCertificateData(limitedFingerprint);
         	} else {
-        	    final CertificateData limitedCertificateData = cdw.getCertificateData();
-        	    if (cdw.getCertificateData().getRevocationDate()!=revocationDate.getTime() || cdw.getCertificateData().getRevocationReason()!=reasonCode) {
+        	    final CertificateData limitedCertificateData = existing;
+        	    if (existing.getRevocationDate()!=revocationDate.getTime() || existing.getRevocationReason()!=reasonCode) {
                     // Update the limited entry
                     log.info("Updating limited CertificateData entry with fingerprint=" + limitedFingerprint + ", serialNumber=" + serialNumber.toString(16).toUpperCase()+", issuerDn='"+issuerDn+"'");
                     limitedCertificateData.setStatus(CertificateConstants.CERT_REVOKED);
@@ -1559,11 +1943,13 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                         log.debug("Limited CertificateData entry with fingerprint=" + limitedFingerprint + ", serialNumber=" + serialNumber.toString(16).toUpperCase()+", issuerDn='"+issuerDn+"' was already up to date.");
         	        }
         	    }
+        	    return limitedCertificateData;
         	}
         } else {
             // Refuse to update a normal entry with this method
         	throw new UnsupportedOperationException("Only limited certificate entries can be updated using this method.");
         }
+        return null;
     }
 
     @Override
@@ -1574,6 +1960,11 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 CertificateConstants.CERTTYPE_ROOTCA, null));
         CaCertificateCache.INSTANCE.loadCertificates(certs);
         log.info("Reloaded CA certificate cache with "+certs.size()+" certificates");
+        if (log.isDebugEnabled()) {
+            final ParsedCertificateCache parsedCertificateCache = ParsedCertificateCache.INSTANCE;
+            log.debug("Parsed certificate cache: " + parsedCertificateCache.getHits() + " hits, " + parsedCertificateCache.getMisses() + " misses, hit ratio "
+                    + parsedCertificateCache.getHitRatio());
+        }
     }
 
     /**
@@ -1597,6 +1988,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             final int currentTimerId = ((Integer)timer.getInfo()).intValue();
             if (currentTimerId==TIMERID_CACERTIFICATECACHE) {
             	reloadCaCertificateCacheAndSetTimeout();
+            } else if (currentTimerId==TIMERID_REVOCATIONINDEX) {
+                refreshRevocationIndexesAndSetTimeout();
             }
         }
         if (log.isTraceEnabled()) {
@@ -194,6 +194,21 @@ public class NoConflictCertificateStoreSessionBean implements NoConflictCertific
         final Collection<NoConflictCertificateData> certDatas = noConflictCertificateDataSession.findByFingerprint(fingerprint);
         return new CertificateDataWrapper(filterMostRecentCertData(certDatas));
     }
+
+    @Override
+    public Map<String, CertificateDataWrapper> getCertificateDatas(final Collection<String> fingerprints) {
+        final Map<String, CertificateDataWrapper> ret = certificateStoreSession.getCertificateDatas(fingerprints);
+        // Certificates of throw away CAs are rare, so look them up one by one
+        for (final String fingerprint : fingerprints) {
+            if (!ret.containsKey(fingerprint)) {
+                final Collection<NoConflictCertificateData> certDatas = noConflictCertificateDataSession.findByFingerprint(fingerprint);
+                if (!certDatas.isEmpty()) {
+                    ret.put(fingerprint, new CertificateDataWrapper(filterMostRecentCertData(certDatas)));
+                }
+            }
+        }
+        return ret;
+    }
     
     @Override
     public Collection<RevokedCertInfo> listRevokedCertInfo(String issuerdn, long lastbasecrldate) {
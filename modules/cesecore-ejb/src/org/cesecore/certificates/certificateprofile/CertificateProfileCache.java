@@ -15,12 +15,13 @@ package org.cesecore.certificates.certificateprofile;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.persistence.EntityManager;
 
 import org.apache.log4j.Logger;
 import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.internal.CacheStatistics;
+import org.cesecore.internal.SnapshotCache;
 
 /**
  * Class Holding cache variable. Needed because EJB spec does not allow volatile, non-final fields
@@ -44,27 +45,39 @@ public enum CertificateProfileCache {
 
     private final Logger LOG = Logger.getLogger(CertificateProfileCache.class);
 
+    /** All profiles and name mappings read at the same time, so they are always replaced together */
+    private static class Profiles {
+        /** Cache of mappings between profileId and profileName */
+        final Map<Integer, String> idNameMapCache;
+        /** Cache of mappings between profileName and profileId */
+        final Map<String, Integer> nameIdMapCache;
+        /** Cache of certificate profiles, with Id as keys */
+        final Map<Integer, CertificateProfile> profileCache;
+
+        Profiles(final Map<Integer, String> idNameMapCache, final Map<String, Integer> nameIdMapCache,
+                final Map<Integer, CertificateProfile> profileCache) {
+            this.idNameMapCache = idNameMapCache;
+            this.nameIdMapCache = nameIdMapCache;
+            this.profileCache = profileCache;
+        }
+    }
+
     /*
      * Cache of profiles, with Id as keys. This cache may be
      * unsynchronized between multiple instances of EJBCA, but is common to all
-     * threads in the same VM. Set volatile to make it thread friendly.
+     * threads in the same VM.
      */
-
-    /** Cache of mappings between profileId and profileName */
-    private volatile Map<Integer, String> idNameMapCache = null;
-    /** Cache of mappings between profileName and profileId */
-    private volatile Map<String, Integer> nameIdMapCache = null;
-    /** Cache of certificate profiles, with Id as keys */
-    private volatile Map<Integer, CertificateProfile> profileCache = null;
-
-    private volatile long lastUpdate = 0;
+    private final SnapshotCache<Profiles> cache = new SnapshotCache<Profiles>() {
+        @Override
+        protected long getCacheTime() {
+            return CesecoreConfiguration.getCacheCertificateProfileTime();
+        }
+    };
 
     /* Create template maps with all static constants */
     private final HashMap<Integer, String> idNameMapCacheTemplate = new HashMap<Integer, String>();
     private final HashMap<String, Integer> nameIdMapCacheTemplate = new HashMap<String, Integer>();
 
-    private final ReentrantLock lock = new ReentrantLock(false);
-
     private CertificateProfileCache() {
         idNameMapCacheTemplate.put(Integer.valueOf(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER), CertificateProfile.ENDUSERPROFILENAME);
         idNameMapCacheTemplate.put(Integer.valueOf(CertificateProfileConstants.CERTPROFILE_FIXED_SUBCA), CertificateProfile.SUBCAPROFILENAME);
@@ -96,59 +109,53 @@ public enum CertificateProfileCache {
         if (LOG.isTraceEnabled()) {
             LOG.trace(">updateProfileCache");
         }
-        final long cacheCertificateProfileTime = CesecoreConfiguration.getCacheCertificateProfileTime();
-        final long now = System.currentTimeMillis();
-        // Check before acquiring lock
-        if (!force && cacheCertificateProfileTime != 0 && lastUpdate + cacheCertificateProfileTime > now) {
-            return; // We don't need to update cache
-        }
-        try {
-            lock.lock();
-            if (!force && cacheCertificateProfileTime != 0 && lastUpdate + cacheCertificateProfileTime > now) {
-                return; // We don't need to update cache
-            }
-            lastUpdate = now; // make sure next thread does not also pass the update test
-        } finally {
-            lock.unlock();
-        }
-        final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
-        final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
-        final Map<Integer, CertificateProfile> profCache = new HashMap<Integer, CertificateProfile>();
-        try {
-            final List<CertificateProfileData> result = CertificateProfileData.findAll(entityManager);
-            for (final CertificateProfileData current : result) {
-                final Integer id = Integer.valueOf(current.getId());
-                final String certificateProfileName = current.getCertificateProfileName();
-                idNameCache.put(id, certificateProfileName);
-                nameIdCache.put(certificateProfileName, id);
-                profCache.put(id, current.getCertificateProfile());
-            }
-        } catch (Exception e) {
-            LOG.error("Error reading certificate profiles: ", e);
-        }
-        idNameMapCache = idNameCache;
-        nameIdMapCache = nameIdCache;
-        profileCache = profCache;
+        cache.reload(getLoader(entityManager), force);
         if (LOG.isTraceEnabled()) {
             LOG.trace("<updateProfileCache");
         }
     }
 
+    private SnapshotCache.Loader<Profiles> getLoader(final EntityManager entityManager) {
+        return new SnapshotCache.Loader<Profiles>() {
+            @Override
+            public Profiles load() {
+                final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
+                final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
+                final Map<Integer, CertificateProfile> profCache = new HashMap<Integer, CertificateProfile>();
+                try {
+                    final List<CertificateProfileData> result = CertificateProfileData.findAll(entityManager);
+                    for (final CertificateProfileData current : result) {
+                        final Integer id = Integer.valueOf(current.getId());
+                        final String certificateProfileName = current.getCertificateProfileName();
+                        idNameCache.put(id, certificateProfileName);
+                        nameIdCache.put(certificateProfileName, id);
+                        profCache.put(id, current.getCertificateProfile());
+                    }
+                } catch (Exception e) {
+                    LOG.error("Error reading certificate profiles: ", e);
+                }
+                return new Profiles(idNameCache, nameIdCache, profCache);
+            }
+        };
+    }
+
     /** @return the latest object from the cache or a current database representation if no caching is used. */
     public Map<Integer, CertificateProfile> getProfileCache(final EntityManager entityManager) {
-        updateProfileCache(entityManager, false);
-        return profileCache;
+        return cache.get(getLoader(entityManager)).profileCache;
     }
 
     /** @return the latest object from the cache or a current database representation if no caching is used. */
     public Map<Integer, String> getIdNameMapCache(final EntityManager entityManager) {
-        updateProfileCache(entityManager, false);
-        return idNameMapCache;
+        return cache.get(getLoader(entityManager)).idNameMapCache;
     }
 
     /** @return the latest object from the cache or a current database representation if no caching is used. */
     public Map<String, Integer> getNameIdMapCache(final EntityManager entityManager) {
-        updateProfileCache(entityManager, false);
-        return nameIdMapCache;
+        return cache.get(getLoader(entityManager)).nameIdMapCache;
+    }
+
+    /** @return the hit, miss and load counters of this cache */
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
     }
 }
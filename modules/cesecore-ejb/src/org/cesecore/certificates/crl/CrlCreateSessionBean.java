@@ -13,6 +13,7 @@
 package org.cesecore.certificates.crl;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -36,6 +37,8 @@ import org.cesecore.authorization.AuthorizationSessionLocal;
 import org.cesecore.authorization.control.StandardRules;
 import org.cesecore.certificates.ca.CA;
 import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.CryptoToken;
@@ -74,6 +77,18 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
         
     @Override
     public byte[] generateAndStoreCRL(AuthenticationToken admin, CA ca, Collection<RevokedCertInfo> certs, int basecrlnumber, int nextCrlNumber) throws CryptoTokenOfflineException, AuthorizationDeniedException {
+        return generateAndStoreCRL(admin, ca, null, certs, basecrlnumber, nextCrlNumber);
+    }
+
+    @Override
+    public byte[] generateAndStoreIncrementalCRL(AuthenticationToken admin, X509CA ca, byte[] previousCrl, Collection<RevokedCertInfo> changes, int nextCrlNumber)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException {
+        return generateAndStoreCRL(admin, ca, previousCrl, changes, -1, nextCrlNumber);
+    }
+
+    /** @param previousCrl the previous full CRL that the entries in certs are changes to, or null if certs are all entries of the CRL */
+    private byte[] generateAndStoreCRL(AuthenticationToken admin, CA ca, byte[] previousCrl, Collection<RevokedCertInfo> certs, int basecrlnumber, int nextCrlNumber)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException {
     	if (log.isTraceEnabled()) {
     		log.trace(">createCRL(Collection)");
     	}
@@ -89,8 +104,6 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     			String msg = intres.getLocalizedMessage("createcert.canotactive", ca.getSubjectDN());
     			throw new CryptoTokenOfflineException(msg);
     		}
-    		final X509CRLHolder crl;
-    		
     		boolean deltaCRL = (basecrlnumber > -1);
     		final CryptoToken cryptoToken = cryptoTokenManagementSession.getCryptoToken(ca.getCAToken().getCryptoTokenId());
     		if (cryptoToken==null) {
@@ -101,28 +114,38 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     			if (nextCrlNumber == basecrlnumber) {
     				nextCrlNumber++;
     			}
-    			crl = ca.generateDeltaCRL(cryptoToken, certs, nextCrlNumber, basecrlnumber);       
-    		} else {
-    			crl = ca.generateCRL(cryptoToken, certs, nextCrlNumber);
     		}
-    		if (crl != null) {
-    			// Store CRL in the database, this can still fail so the whole thing is rolled back
-    			String cafp = CertTools.getFingerprintAsString(ca.getCACertificate());
-    			if (log.isDebugEnabled()) {
-    			    log.debug("Encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
-    			}          
-    			byte[] tmpcrlBytes = crl.getEncoded();                    
-    			if (log.isDebugEnabled()) {
-    			    log.debug("Finished encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
-    				log.debug("Storing CRL in certificate store.");
+    		final long streamingThreshold = CesecoreConfiguration.getCrlGenStreamingThreshold();
+    		if (previousCrl != null || (ca instanceof X509CA && certs != null && streamingThreshold >= 0 && certs.size() >= streamingThreshold)) {
+    			// Large or incremental CRL, encode the entries through a temporary file instead of building the whole CRL in memory
+    			try (final X509CrlStreamWriter crlWriter = previousCrl != null ? ((X509CA) ca).generateIncrementalCRLStream(cryptoToken, previousCrl, certs, nextCrlNumber)
+    					: ((X509CA) ca).generateCRLStream(cryptoToken, certs, nextCrlNumber, deltaCRL, basecrlnumber)) {
+    				if (log.isDebugEnabled()) {
+    					log.debug("Encoding streamed CRL of " + crlWriter.getEncodedLength() + " bytes to byte array. Free memory="+Runtime.getRuntime().freeMemory());
+    				}
+    				final byte[] tmpcrlBytes = crlWriter.getEncoded();
+    				storeCRL(admin, ca, tmpcrlBytes, nextCrlNumber, crlWriter.getIssuer().toString(), crlWriter.getThisUpdate(), crlWriter.getNextUpdate(), deltaCRL);
+    				crlBytes = tmpcrlBytes;
+    			}
+    		} else {
+    			final X509CRLHolder crl;
+    			if (deltaCRL) {
+    				crl = ca.generateDeltaCRL(cryptoToken, certs, nextCrlNumber, basecrlnumber);
+    			} else {
+    				crl = ca.generateCRL(cryptoToken, certs, nextCrlNumber);
+    			}
+    			if (crl != null) {
+    				if (log.isDebugEnabled()) {
+    					log.debug("Encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
+    				}
+    				final byte[] tmpcrlBytes = crl.getEncoded();
+    				if (log.isDebugEnabled()) {
+    					log.debug("Finished encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
+    				}
+    				storeCRL(admin, ca, tmpcrlBytes, nextCrlNumber, crl.getIssuer().toString(), crl.toASN1Structure().getThisUpdate().getDate(),
+    						crl.toASN1Structure().getNextUpdate().getDate(), deltaCRL);
+    				crlBytes = tmpcrlBytes;
     			}
-    			crlSession.storeCRL(admin, tmpcrlBytes, cafp, nextCrlNumber, crl.getIssuer().toString(), crl.toASN1Structure().getThisUpdate().getDate(), crl.toASN1Structure().getNextUpdate().getDate(), (deltaCRL ? 1 : -1));
-    			String msg = intres.getLocalizedMessage("createcrl.createdcrl", Integer.valueOf(nextCrlNumber), ca.getName(), ca.getSubjectDN());
-    			Map<String, Object> details = new LinkedHashMap<String, Object>();
-    			details.put("msg", msg);
-    			logSession.log(EventTypes.CRL_CREATION, EventStatus.SUCCESS, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);	                	
-    			// Now all is finished and audit logged, now we are ready to "really" set the return value
-    			crlBytes = tmpcrlBytes; 
     		}
     	} catch (CryptoTokenOfflineException ctoe) {
     		String msg = intres.getLocalizedMessage("error.catokenoffline", ca.getSubjectDN());
@@ -149,6 +172,20 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     	return crlBytes;
     }
 
+    /** Stores the CRL in the database and audit logs the creation. This can still fail so the whole thing is rolled back. */
+    private void storeCRL(final AuthenticationToken admin, final CA ca, final byte[] crlBytes, final int crlNumber, final String issuerDN, final Date thisUpdate,
+            final Date nextUpdate, final boolean deltaCRL) throws CrlStoreException, AuthorizationDeniedException {
+    	final String cafp = CertTools.getFingerprintAsString(ca.getCACertificate());
+    	if (log.isDebugEnabled()) {
+    		log.debug("Storing CRL in certificate store.");
+    	}
+    	crlSession.storeCRL(admin, crlBytes, cafp, crlNumber, issuerDN, thisUpdate, nextUpdate, (deltaCRL ? 1 : -1));
+    	String msg = intres.getLocalizedMessage("createcrl.createdcrl", Integer.valueOf(crlNumber), ca.getName(), ca.getSubjectDN());
+    	Map<String, Object> details = new LinkedHashMap<String, Object>();
+    	details.put("msg", msg);
+    	logSession.log(EventTypes.CRL_CREATION, EventStatus.SUCCESS, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(ca.getCAId()), null, null, details);
+    }
+
     private void authorizedToCreateCRL(final AuthenticationToken admin, final int caid) throws AuthorizationDeniedException {
     	if (!authorizationSession.isAuthorized(admin, StandardRules.CREATECRL.resource())) {
     		final String msg = intres.getLocalizedMessage("createcrl.notauthorized", admin.toString(), caid);
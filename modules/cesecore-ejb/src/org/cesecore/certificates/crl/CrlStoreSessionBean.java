@@ -16,6 +16,7 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.Stateless;
@@ -23,6 +24,9 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -61,6 +65,8 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
     private AuthorizationSessionLocal authorizationSession;
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
 
     @Override
     public void storeCRL(AuthenticationToken admin, byte[] incrl, String cafp, int number, String issuerDN, Date thisUpdate, Date nextUpdate,
@@ -83,6 +89,7 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
             }
             CRLData data = new CRLData(incrl, number, issuerDN, thisUpdate, nextUpdate, cafp, deltaCRLIndicator);
             this.entityManager.persist(data);
+            crlStoredAfterCommit(issuerDN, deltaCRL);
             String msg = intres.getLocalizedMessage("store.storecrl", Integer.valueOf(number), data.getFingerprint(), data.getIssuerDN());
             Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", msg);
@@ -98,6 +105,28 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
     }
 
 
+    /**
+     * Counts the CRL as stored when the current transaction has been committed, or right away if there is no transaction. Counting it earlier
+     * would let a cache read the new count, load the previous CRL, and keep it as up to date.
+     */
+    private void crlStoredAfterCommit(final String issuerDN, final boolean deltaCRL) {
+        if (transactionSynchronizationRegistry.getTransactionStatus() == Status.STATUS_NO_TRANSACTION) {
+            CrlUpdateCounter.INSTANCE.crlStored(issuerDN, deltaCRL);
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(final int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    CrlUpdateCounter.INSTANCE.crlStored(issuerDN, deltaCRL);
+                }
+            }
+        });
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public byte[] getLastCRL(String issuerdn, boolean deltaCRL) {
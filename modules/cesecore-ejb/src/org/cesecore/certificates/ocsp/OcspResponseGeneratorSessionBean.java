@@ -43,9 +43,11 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -126,6 +128,8 @@ import org.cesecore.certificates.certificatetransparency.CertificateTransparency
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.ocsp.cache.OcspConfigurationCache;
 import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache.OcspPreSignedResponse;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
@@ -137,7 +141,9 @@ import org.cesecore.certificates.ocsp.extension.OCSPExtension;
 import org.cesecore.certificates.ocsp.extension.OCSPExtensionType;
 import org.cesecore.certificates.ocsp.keys.CardKeys;
 import org.cesecore.certificates.ocsp.logging.AuditLogger;
+import org.cesecore.certificates.ocsp.logging.GuidHolder;
 import org.cesecore.certificates.ocsp.logging.PatternLogger;
+import org.cesecore.certificates.ocsp.logging.TransactionCounter;
 import org.cesecore.certificates.ocsp.logging.TransactionLogger;
 import org.cesecore.certificates.util.AlgorithmTools;
 import org.cesecore.config.AvailableExtendedKeyUsagesConfiguration;
@@ -187,6 +193,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     private static final int MAX_REQUEST_SIZE = 100000;
     /** Timer identifiers */
     private static final int TIMERID_OCSPSIGNINGCACHE = 1;
+    private static final int TIMERID_PRESIGNEDRESPONSES = 2;
 
     private static final String hardTokenClassName = OcspConfiguration.getHardTokenClassName();
 
@@ -238,6 +245,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             log.info("Not initing OCSP reload timers, there are already some.");
         }
+        cancelTimers(TIMERID_PRESIGNEDRESPONSES);
+        if (OcspConfiguration.isPreSignedResponsesEnabled()) {
+            addTimer(getPreSignedResponsesRefreshInterval(), TIMERID_PRESIGNEDRESPONSES);
+        }
     }
     
     @Override
@@ -994,13 +1005,57 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (log.isTraceEnabled()) {
             log.trace(">timeoutHandler: " + timer.getInfo().toString());
         }
-        // reloadTokenAndChainCache cancels old timers and adds a new timer
-        reloadOcspSigningCache();
+        if (Integer.valueOf(TIMERID_PRESIGNEDRESPONSES).equals(timer.getInfo())) {
+            refreshPreSignedResponses();
+        } else {
+            // reloadTokenAndChainCache cancels old timers and adds a new timer
+            reloadOcspSigningCache();
+        }
         if (log.isTraceEnabled()) {
             log.trace("<timeoutHandler");
         }
     }
 
+    /** @return how often the pre-signed response cache is checked for responses to re-sign, in milliseconds */
+    private long getPreSignedResponsesRefreshInterval() {
+        return Math.max(1000L, OcspConfiguration.getPreSignedResponsesRefreshTimeMs() / 4);
+    }
+
+    /**
+     * Signs new responses for all pre-signed responses that have been used and will reach their refresh time before the next run,
+     * drops the ones that have not been used, and schedules the next run.
+     */
+    private void refreshPreSignedResponses() {
+        final long interval = getPreSignedResponsesRefreshInterval();
+        try {
+            if (!OcspConfiguration.isPreSignedResponsesEnabled()) {
+                OcspPreSignedResponseCache.INSTANCE.flush();
+                return;
+            }
+            final List<OcspPreSignedResponse> responses = OcspPreSignedResponseCache.INSTANCE.getResponsesToRefresh(System.currentTimeMillis() + interval);
+            if (log.isDebugEnabled()) {
+                log.debug("Refreshing " + responses.size() + " of " + OcspPreSignedResponseCache.INSTANCE.size() + " pre-signed OCSP responses.");
+            }
+            for (final OcspPreSignedResponse response : responses) {
+                // Removing the old response makes the lookup below produce and store a freshly signed one
+                OcspPreSignedResponseCache.INSTANCE.remove(response);
+                final Integer localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
+                final TransactionLogger transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), "127.0.0.1");
+                final AuditLogger auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), "127.0.0.1");
+                try {
+                    getOcspResponse(response.getOcspRequest(), null, "127.0.0.1", null, null, auditLogger, transactionLogger);
+                } catch (MalformedRequestException | OCSPException e) {
+                    log.info("Unable to refresh pre-signed OCSP response: " + e.getMessage());
+                }
+            }
+        } finally {
+            cancelTimers(TIMERID_PRESIGNEDRESPONSES);
+            if (OcspConfiguration.isPreSignedResponsesEnabled()) {
+                addTimer(interval, TIMERID_PRESIGNEDRESPONSES);
+            }
+        }
+    }
+
     /**
      * This method cancels all timers associated with this bean.
      */
@@ -1126,6 +1181,13 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             List<OCSPResponseItem> responseList = new ArrayList<OCSPResponseItem>();
             boolean addExtendedRevokedExtension = false;
             Date producedAt = null;
+            // Set when the response to this request may be served from, or stored in, the pre-signed response cache
+            String preSignedResponseKey = null;
+            OcspPreSignedResponse preSignedResponse = null;
+            long preSignedInvalidationCount = 0;
+            boolean preSignedStatusFound = false;
+            // Statuses for requests with several certificate IDs are looked up with one database query per issuer
+            final Map<String, Map<BigInteger, CertificateStatusHolder>> prefetchedStatuses = prefetchCertificateStatuses(ocspRequests);
             for (Req ocspRequest : ocspRequests) {
                 CertificateID certId = ocspRequest.getCertID();
                 ASN1ObjectIdentifier certIdhash = certId.getHashAlgOID();
@@ -1212,7 +1274,25 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 if (alwaysUseOid != null && !extensionOids.contains(alwaysUseOid)) {
                     extensionOids.add(alwaysUseOid);
                 }
-                
+
+                if (ocspRequests.length == 1 && extensionOids.isEmpty() && !req.hasExtensions() && ocspRequest.getSingleRequestExtensions() == null
+                        && OcspConfiguration.isPreSignedResponsesEnabled()) {
+                    final int ocspKeyBindingId = ocspSigningCacheEntry.getOcspKeyBinding() == null ? 0 : ocspSigningCacheEntry.getOcspKeyBinding().getId();
+                    preSignedResponseKey = OcspPreSignedResponseCache.INSTANCE.createCacheLookupKey(ocspKeyBindingId, certId);
+                    preSignedResponse = OcspPreSignedResponseCache.INSTANCE.getResponse(preSignedResponseKey, certId.getSerialNumber());
+                    if (preSignedResponse != null && preSignedResponse.getSignerCert().equals(ocspSigningCacheEntry.getSigningCertificate())
+                            && preSignedResponse.getIssuerCaCertificateStatus().equals(ocspSigningCacheEntry.getIssuerCaCertificateStatus())) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Using pre-signed OCSP response for certificate with serial '" + certId.getSerialNumber().toString(16) + "'.");
+                        }
+                        break;
+                    }
+                    // The responder or its issuer has changed since the response was stored
+                    preSignedResponse = null;
+                    // Must be read before the status lookup, so that a concurrent revocation prevents the response from being stored
+                    preSignedInvalidationCount = OcspPreSignedResponseCache.INSTANCE.getInvalidationCount();
+                }
+
                 final org.bouncycastle.cert.ocsp.CertificateStatus certStatus;
                 // Check if the cacert (or the default responderid) is revoked
                 X509Certificate caCertificate = ocspSigningCacheEntry.getIssuerCaCertificate();
@@ -1244,7 +1324,26 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                      * the certificate in the same transaction.
                      */
                     final CertificateStatus status;
-                    if (extensionOids.isEmpty()) {
+                    final Map<BigInteger, CertificateStatusHolder> issuerStatuses = prefetchedStatuses.get(caCertificateSubjectDn);
+                    final CertificateStatusHolder prefetchedStatus = issuerStatuses == null ? null : issuerStatuses.get(certId.getSerialNumber());
+                    CertificateStatus indexedStatus = null;
+                    if (extensionOids.isEmpty() && prefetchedStatus == null && OcspConfiguration.getExpiredArchiveCutoff() == -1
+                            && OcspConfigurationCache.INSTANCE.isNonExistingGood(requestUrl, ocspSigningCacheEntry.getOcspKeyBinding())) {
+                        // Certificates that are not revoked are answered as good whether they exist or not, so the revocation index is enough
+                        indexedStatus = certificateStoreSession.getIndexedRevocationStatus(caCertificateSubjectDn, certId.getSerialNumber());
+                        if (indexedStatus != null && indexedStatus.equals(CertificateStatus.OK)
+                                && OcspConfigurationCache.INSTANCE.isUntilNextUpdateOrMaxAgeConfiguredForAnyProfile()) {
+                            // The index does not know the certificate profile of good certificates, which is needed for the overrides below
+                            indexedStatus = null;
+                        }
+                    }
+                    if (indexedStatus != null) {
+                        status = indexedStatus;
+                    } else if (prefetchedStatus != null) {
+                        // Prefetched together with the certificate if it is needed for the extensions
+                        certificateStatusHolder = prefetchedStatus;
+                        status = prefetchedStatus.getCertificateStatus();
+                    } else if (extensionOids.isEmpty()) {
                         status = certificateStoreSession.getStatus(caCertificateSubjectDn, certId.getSerialNumber());
                     } else {
                         certificateStatusHolder = certificateStoreSession.getCertificateAndStatus(caCertificateSubjectDn, certId.getSerialNumber());
@@ -1352,6 +1451,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         }
                         addArchiveCutoff = checkAddArchiveCuttoff(caCertificateSubjectDn, certId);
                     }
+                    // A good status from the revocation index does not tell that the certificate exists, and the answer for a certificate
+                    // that does not exist depends on the request URL, which is not part of the pre-signed response cache key
+                    preSignedStatusFound = !status.equals(CertificateStatus.NOT_AVAILABLE)
+                            && (indexedStatus == null || indexedStatus.equals(CertificateStatus.REVOKED));
                     if (log.isDebugEnabled()) {
                         log.debug("Set nextUpdate=" + nextUpdate + ", and maxAge=" + maxAge + " for certificateProfileId="
                                 + status.certificateProfileId);
@@ -1420,7 +1523,11 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     throw new IllegalStateException("Could not get encoding from DERNull.", e);
                 }
             }
-            if (ocspSigningCacheEntry != null) {
+            if (preSignedResponse != null) {
+                ocspResponse = preSignedResponse.getOcspResponse();
+                maxAge = preSignedResponse.getMaxAge();
+                signerCert = preSignedResponse.getSignerCert();
+            } else if (ocspSigningCacheEntry != null) {
                 // Add standard response extensions
                 responseExtensions.putAll(getStandardResponseExtensions(req, ocspSigningCacheEntry));
                 
@@ -1430,6 +1537,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 BasicOCSPResp basicresp = signOcspResponse(req, responseList, exts, ocspSigningCacheEntry, producedAt);
                 signerCert = ocspSigningCacheEntry.getSigningCertificate();
                 ocspResponse = responseGenerator.build(OCSPRespBuilder.SUCCESSFUL, basicresp);
+                // Only responses based on an actual database lookup, without archive cutoff or any response extensions, are kept
+                if (preSignedResponseKey != null && preSignedStatusFound && producedAt == null && responseExtensions.isEmpty()) {
+                    final int ocspKeyBindingId = ocspSigningCacheEntry.getOcspKeyBinding() == null ? 0 : ocspSigningCacheEntry.getOcspKeyBinding().getId();
+                    final Date singleNextUpdate = responseList.get(0).getNextUpdate();
+                    OcspPreSignedResponseCache.INSTANCE.putResponse(preSignedResponseKey, ocspRequests[0].getCertID().getSerialNumber(), ocspResponse,
+                            request, ocspKeyBindingId, signerCert, ocspSigningCacheEntry.getIssuerCaCertificateStatus(), maxAge,
+                            singleNextUpdate == null ? null : Long.valueOf(singleNextUpdate.getTime()), preSignedInvalidationCount);
+                }
                 if (auditLogger.isEnabled()) {
                     auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
                 }
@@ -1547,6 +1662,59 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
     }
     
+    /**
+     * Looks up the status of all certificates in a request with several certificate IDs, with one database query per issuer instead of one
+     * per certificate. Where OCSP extensions are used, the certificates are read in the same query, since the extensions may need them.
+     * Requests for unknown CAs or for CAs whose certificate is revoked are left for the ordinary per certificate lookup.
+     *
+     * @return a map from CA subject DN to a map from serial number to status, empty if there was nothing to look up in bulk
+     */
+    private Map<String, Map<BigInteger, CertificateStatusHolder>> prefetchCertificateStatuses(final Req[] ocspRequests) {
+        if (ocspRequests.length < 2) {
+            return Collections.emptyMap();
+        }
+        final Map<String, List<BigInteger>> serialNumbersByIssuer = new HashMap<>();
+        final Set<String> issuersWithExtensions = new HashSet<>();
+        for (final Req ocspRequest : ocspRequests) {
+            final CertificateID certId = ocspRequest.getCertID();
+            final OcspSigningCacheEntry ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
+            if (ocspSigningCacheEntry == null || ocspSigningCacheEntry.getIssuerCaCertificateStatus().equals(CertificateStatus.REVOKED)) {
+                continue;
+            }
+            final String caCertificateSubjectDn = CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate());
+            if (OcspConfiguration.getAlwaysSendCustomOCSPExtension() != null
+                    || (ocspSigningCacheEntry.getOcspKeyBinding() != null && !ocspSigningCacheEntry.getOcspKeyBinding().getOcspExtensions().isEmpty())) {
+                issuersWithExtensions.add(caCertificateSubjectDn);
+            }
+            List<BigInteger> serialNumbers = serialNumbersByIssuer.get(caCertificateSubjectDn);
+            if (serialNumbers == null) {
+                serialNumbers = new ArrayList<>();
+                serialNumbersByIssuer.put(caCertificateSubjectDn, serialNumbers);
+            }
+            serialNumbers.add(certId.getSerialNumber());
+        }
+        final Map<String, Map<BigInteger, CertificateStatusHolder>> ret = new HashMap<>();
+        for (final Map.Entry<String, List<BigInteger>> entry : serialNumbersByIssuer.entrySet()) {
+            // A single certificate from an issuer gains nothing from a bulk lookup
+            if (entry.getValue().size() < 2) {
+                continue;
+            }
+            if (issuersWithExtensions.contains(entry.getKey())) {
+                ret.put(entry.getKey(), certificateStoreSession.getCertificatesAndStatuses(entry.getKey(), entry.getValue()));
+            } else {
+                final Map<BigInteger, CertificateStatusHolder> statuses = new HashMap<>();
+                for (final Map.Entry<BigInteger, CertificateStatus> status : certificateStoreSession.getStatuses(entry.getKey(), entry.getValue()).entrySet()) {
+                    statuses.put(status.getKey(), new CertificateStatusHolder(null, status.getValue()));
+                }
+                ret.put(entry.getKey(), statuses);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Looked up status for certificates from " + ret.size() + " issuers in bulk.");
+        }
+        return ret;
+    }
+
     private boolean checkAddArchiveCuttoff(String caCertificateSubjectDn, CertificateID certId) {
         if (OcspConfiguration.getExpiredArchiveCutoff() == -1) {
             return false;
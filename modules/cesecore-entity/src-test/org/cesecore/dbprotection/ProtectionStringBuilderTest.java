@@ -0,0 +1,72 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.cesecore.certificates.crl.CRLData;
+import org.junit.Test;
+
+/**
+ * Tests that the digest of a protection string is the same whether it's built as a string or hashed while it's appended.
+ *
+ * @version $Id$
+ */
+public class ProtectionStringBuilderTest {
+
+    @Test
+    public void testDigestSameAsString() throws NoSuchAlgorithmException {
+        final Object[][] elementLists = {
+                {},
+                { "abc" },
+                { null, "", "abc", null, 4711, "åäö €" },
+                { "", null, Long.valueOf(1L) },
+        };
+        for (final Object[] elements : elementLists) {
+            final ProtectionStringBuilder stringBuilder = new ProtectionStringBuilder();
+            final ProtectionStringBuilder digestBuilder = new ProtectionStringBuilder(MessageDigest.getInstance("SHA-256"));
+            for (final Object element : elements) {
+                stringBuilder.append(element);
+                digestBuilder.append(element);
+            }
+            assertEquals("Length should be the same.", stringBuilder.length(), digestBuilder.length());
+            assertArrayEquals("Digest should be the same as the digest of the string.", sha256(stringBuilder.toString()), digestBuilder.digest());
+        }
+    }
+
+    @Test
+    public void testEntityProtectStringDigest() throws NoSuchAlgorithmException {
+        final CRLData crlData = new CRLData();
+        final ProtectedData protectedData = crlData;
+        crlData.setFingerprint("abc123");
+        crlData.setCrlNumber(17);
+        crlData.setIssuerDN("CN=Test CA");
+        crlData.setBase64Crl("MIIB...");
+        assertArrayEquals("Streamed digest should be the digest of the protection string.", sha256(protectedData.getProtectString(1)),
+                crlData.getProtectStringDigest(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoStringWhenDigesting() throws NoSuchAlgorithmException {
+        new ProtectionStringBuilder(MessageDigest.getInstance("SHA-256")).append("abc").toString();
+    }
+
+    private static byte[] sha256(final String value) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
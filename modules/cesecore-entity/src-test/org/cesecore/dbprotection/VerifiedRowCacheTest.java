@@ -0,0 +1,161 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.config.ConfigurationHolder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that a row remembered as verified is verified again once it has been updated, and that a lookup in the cache is cheaper
+ * than verifying the row.
+ *
+ * @version $Id$
+ */
+public class VerifiedRowCacheTest {
+
+    private static final Logger log = Logger.getLogger(VerifiedRowCacheTest.class);
+    private static final int CACHE_SIZE = 100;
+
+    @BeforeClass
+    public static void beforeClass() {
+        // Must be set before the cache is first used, since the size is read when it is created
+        ConfigurationHolder.updateConfiguration("databaseprotection.verifiedrowcache.size", String.valueOf(CACHE_SIZE));
+        assertTrue("The cache should be enabled for this test.", VerifiedRowCache.INSTANCE.isEnabled());
+    }
+
+    @Test
+    public void testUnchangedRowIsVerified() {
+        final TestRow row = new TestRow("1", "data", 0, "protection");
+        assertFalse("A row that has not been verified should not be in the cache.", VerifiedRowCache.INSTANCE.isVerified(row));
+        VerifiedRowCache.INSTANCE.setVerified(row);
+        assertTrue(VerifiedRowCache.INSTANCE.isVerified(row));
+        assertTrue("A new instance of the same unchanged row should not be verified again.",
+                VerifiedRowCache.INSTANCE.isVerified(new TestRow("1", "data", 0, "protection")));
+        assertFalse("Another row should not be affected.", VerifiedRowCache.INSTANCE.isVerified(new TestRow("2", "data", 0, "protection")));
+    }
+
+    @Test
+    public void testUpdatedRowIsVerifiedAgain() {
+        final TestRow row = new TestRow("3", "data", 0, "protection");
+        VerifiedRowCache.INSTANCE.setVerified(row);
+        assertFalse("A row with a new row version should be verified again.", VerifiedRowCache.INSTANCE.isVerified(new TestRow("3", "data", 1, "protection")));
+        assertFalse("A row with changed row protection should be verified again.",
+                VerifiedRowCache.INSTANCE.isVerified(new TestRow("3", "data", 0, "tampered protection")));
+        assertFalse("A row with removed row protection should be verified again.", VerifiedRowCache.INSTANCE.isVerified(new TestRow("3", "data", 0, null)));
+        assertFalse("A row updated with a new valid protection should be verified again.",
+                VerifiedRowCache.INSTANCE.isVerified(new TestRow("3", "new data", 1, "new protection")));
+        assertTrue(VerifiedRowCache.INSTANCE.isVerified(row));
+    }
+
+    @Test
+    public void testRowWithoutProtectionIsNotRemembered() {
+        final TestRow row = new TestRow("4", "data", 0, null);
+        VerifiedRowCache.INSTANCE.setVerified(row);
+        assertFalse(VerifiedRowCache.INSTANCE.isVerified(row));
+    }
+
+    @Test
+    public void testBoundedSize() {
+        for (int i = 0; i < CACHE_SIZE * 3; i++) {
+            VerifiedRowCache.INSTANCE.setVerified(new TestRow("bounded" + i, "data", 0, "protection"));
+            assertTrue("The cache should not grow beyond its maximum size.", VerifiedRowCache.INSTANCE.size() <= CACHE_SIZE);
+        }
+        assertTrue("The last verified row should be remembered.",
+                VerifiedRowCache.INSTANCE.isVerified(new TestRow("bounded" + (CACHE_SIZE * 3 - 1), "data", 0, "protection")));
+    }
+
+    /**
+     * Compares a cache lookup with the least work a verification does, building the protection string of a certificate sized row and
+     * computing a HMAC over it. Real verification also has to look up the key, and may verify a signature instead.
+     */
+    @Test
+    public void testLookupIsCheaperThanVerification() throws Exception {
+        final int iterations = 20000;
+        final TestRow row = new TestRow("5", StringUtils.repeat("MIIB", 750), 0, "1:hmac:protection");
+        VerifiedRowCache.INSTANCE.setVerified(row);
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        long lookupTime = Long.MAX_VALUE;
+        long verificationTime = Long.MAX_VALUE;
+        // Take the best of a few rounds, the first ones include JIT compilation
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                assertTrue(VerifiedRowCache.INSTANCE.isVerified(row));
+            }
+            lookupTime = Math.min(lookupTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                mac.doFinal(row.getProtectString(1).getBytes(StandardCharsets.UTF_8));
+            }
+            verificationTime = Math.min(verificationTime, System.nanoTime() - start);
+        }
+        log.info("Cache lookup: " + lookupTime / iterations + " ns, HMAC verification: " + verificationTime / iterations + " ns per row.");
+        assertTrue("A cache lookup should be cheaper than verifying the row.", lookupTime < verificationTime);
+    }
+
+    private static class TestRow extends ProtectedData {
+        private final String id;
+        private final String data;
+        private final int rowVersion;
+        private String rowProtection;
+
+        private TestRow(final String id, final String data, final int rowVersion, final String rowProtection) {
+            this.id = id;
+            this.data = data;
+            this.rowVersion = rowVersion;
+            this.rowProtection = rowProtection;
+        }
+
+        @Override
+        protected String getProtectString(final int rowversion) {
+            return new ProtectionStringBuilder().append(id).append(data).toString();
+        }
+
+        @Override
+        protected int getProtectVersion() {
+            return 1;
+        }
+
+        @Override
+        public void setRowProtection(final String rowProtection) {
+            this.rowProtection = rowProtection;
+        }
+
+        @Override
+        public String getRowProtection() {
+            return rowProtection;
+        }
+
+        @Override
+        public int getRowVersion() {
+            return rowVersion;
+        }
+
+        @Override
+        protected String getRowId() {
+            return id;
+        }
+    }
+}
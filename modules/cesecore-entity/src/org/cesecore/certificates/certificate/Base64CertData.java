@@ -15,6 +15,8 @@ package org.cesecore.certificates.certificate;
 import java.io.Serializable;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
+import java.util.Collection;
+import java.util.List;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -24,6 +26,7 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -207,6 +210,14 @@ public class Base64CertData extends ProtectedData implements Serializable {
         return entityManager.find(Base64CertData.class, fingerprint);
     }
 
+    /** @return the found entities for the given fingerprints, in no particular order */
+    public static List<Base64CertData> findByFingerprints(EntityManager entityManager, Collection<String> fingerprints) {
+        final TypedQuery<Base64CertData> query = entityManager.createQuery("SELECT a FROM Base64CertData a WHERE a.fingerprint IN (:fingerprints)",
+                Base64CertData.class);
+        query.setParameter("fingerprints", fingerprints);
+        return query.getResultList();
+    }
+
     /** @return the number of entries with the given parameter */
     public static long getCount(EntityManager entityManager) {
         final Query countQuery = entityManager.createQuery("SELECT COUNT(a) FROM Base64CertData a");
@@ -221,9 +232,7 @@ public class Base64CertData extends ProtectedData implements Serializable {
     @Override
     protected String getProtectString(final int version) {
         final ProtectionStringBuilder build = new ProtectionStringBuilder(3000);
-        // What is important to protect here is the data that we define, id, name and certificate profile data
-        // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
-        build.append(getFingerprint()).append(getBase64Cert());
+        appendProtectString(version, build);
         if (log.isDebugEnabled()) {
             // Some profiling
             if (build.length() > 3000) {
@@ -233,6 +242,14 @@ public class Base64CertData extends ProtectedData implements Serializable {
         return build.toString();
     }
 
+    @Transient
+    @Override
+    protected void appendProtectString(final int version, final ProtectionStringBuilder build) {
+        // What is important to protect here is the data that we define, id, name and certificate profile data
+        // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
+        build.append(getFingerprint()).append(getBase64Cert());
+    }
+
     @Transient
     @Override
     protected int getProtectVersion() {
@@ -25,8 +25,6 @@ import org.apache.log4j.Logger;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.dbprotection.ProtectedData;
-import org.cesecore.util.Base64;
-import org.cesecore.util.CertTools;
 
 /**
  * Used as base class for NoConflictCertificateData and CertificateData to group the common logic for those entites
@@ -351,7 +349,7 @@ public abstract class BaseCertificateData extends ProtectedData {
                 }
                 return null;
             }
-            return CertTools.getCertfromByteArray(Base64.decode(certEncoded.getBytes()), Certificate.class);
+            return ParsedCertificateCache.INSTANCE.getCertificate(getFingerprint(), certEncoded);
         } catch (CertificateException ce) {
             log.error("Can't decode certificate.", ce);
             return null;
@@ -379,7 +377,7 @@ public abstract class BaseCertificateData extends ProtectedData {
                 }
                 return null;
             }
-            return CertTools.getCertfromByteArray(Base64.decode(certEncoded.getBytes()), Certificate.class);
+            return ParsedCertificateCache.INSTANCE.getCertificate(getFingerprint(), certEncoded);
         } catch (CertificateException ce) {
             log.error("Can't decode " + getClassName() + ".", ce);
             return null;
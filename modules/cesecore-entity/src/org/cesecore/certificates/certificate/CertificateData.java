@@ -698,6 +698,19 @@ public class CertificateData extends BaseCertificateData implements Serializable
     @Override
     protected String getProtectString(final int version) {
     	final ProtectionStringBuilder protectionStringBuilder = new ProtectionStringBuilder(3000);
+    	appendProtectString(version, protectionStringBuilder);
+        if (log.isDebugEnabled()) {
+            // Some profiling
+            if (protectionStringBuilder.length() > 3000) {
+                log.debug("CertificateData.getProtectString gives size: " + protectionStringBuilder.length());
+            }
+        }
+        return protectionStringBuilder.toString();
+    }
+
+    @Transient
+    @Override
+    protected void appendProtectString(final int version, final ProtectionStringBuilder protectionStringBuilder) {
         // What is important to protect here is the data that we define, id, name and certificate profile data
         // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
         protectionStringBuilder.append(getFingerprint()).append(getIssuerDN());
@@ -725,13 +738,6 @@ public class CertificateData extends BaseCertificateData implements Serializable
                 protectionStringBuilder.append(String.valueOf(getSubjectAltName()));
             }
         }
-        if (log.isDebugEnabled()) {
-            // Some profiling
-            if (protectionStringBuilder.length() > 3000) {
-                log.debug("CertificateData.getProtectString gives size: " + protectionStringBuilder.length());
-            }
-        }
-        return protectionStringBuilder.toString();
     }
 
     @Transient
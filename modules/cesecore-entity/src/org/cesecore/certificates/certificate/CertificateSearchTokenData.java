@@ -0,0 +1,182 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Entity;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.cesecore.dbprotection.ProtectedData;
+import org.cesecore.dbprotection.ProtectionStringBuilder;
+
+/**
+ * One search token of a certificate in {@link CertificateData}.<br>
+ * If the property "database.certificatesearchindex.enabled" is true then there will be one row in this table for each token
+ * created by {@link CertificateSearchTokens} when a certificate is stored, so that certificates can be searched for using the
+ * database index on the token instead of scanning the subject DN of every certificate.
+ *
+ * @version $Id$
+ */
+@Entity
+@Table(name = "CertificateSearchTokenData")
+public class CertificateSearchTokenData extends ProtectedData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+    private String fingerprint;
+    private int tokenType;
+    private String searchToken;
+    private int rowVersion = 0;
+    private String rowProtection;
+
+    /**
+     * @param fingerprint fingerprint of the certificate
+     * @param index number of the token among the certificate's tokens, used to create a unique id
+     * @param tokenType one of the CertificateSearchTokens.TYPE_ constants
+     * @param searchToken the token
+     */
+    public CertificateSearchTokenData(final String fingerprint, final int index, final int tokenType, final String searchToken) {
+        setId(fingerprint + ";" + index);
+        setFingerprint(fingerprint);
+        setTokenType(tokenType);
+        setSearchToken(searchToken);
+    }
+
+    public CertificateSearchTokenData() {
+    }
+
+    // @Id @Column
+    public String getId() {
+        return id;
+    }
+
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    /** @return fingerprint of the certificate */
+    // @Column
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(final String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /** @return one of the CertificateSearchTokens.TYPE_ constants */
+    // @Column
+    public int getTokenType() {
+        return tokenType;
+    }
+
+    public void setTokenType(final int tokenType) {
+        this.tokenType = tokenType;
+    }
+
+    // @Column
+    public String getSearchToken() {
+        return searchToken;
+    }
+
+    public void setSearchToken(final String searchToken) {
+        this.searchToken = searchToken;
+    }
+
+    // @Version @Column
+    public int getRowVersion() {
+        return rowVersion;
+    }
+
+    public void setRowVersion(final int rowVersion) {
+        this.rowVersion = rowVersion;
+    }
+
+    // @Column @Lob
+    @Override
+    public String getRowProtection() {
+        return rowProtection;
+    }
+
+    @Override
+    public void setRowProtection(final String rowProtection) {
+        this.rowProtection = rowProtection;
+    }
+
+    /** @return all search tokens for a certificate */
+    public static List<CertificateSearchTokenData> createTokens(final BaseCertificateData certificateData) {
+        final List<CertificateSearchTokenData> ret = new ArrayList<>();
+        final String fingerprint = certificateData.getFingerprint();
+        addTokens(ret, fingerprint, CertificateSearchTokens.TYPE_SUBJECTDN, CertificateSearchTokens.getSubjectDnTokens(certificateData.getSubjectDN()));
+        addTokens(ret, fingerprint, CertificateSearchTokens.TYPE_SUBJECTALTNAME, CertificateSearchTokens.getSubjectAltNameTokens(certificateData.getSubjectAltName()));
+        addTokens(ret, fingerprint, CertificateSearchTokens.TYPE_USERNAME, CertificateSearchTokens.getUsernameTokens(certificateData.getUsername()));
+        addTokens(ret, fingerprint, CertificateSearchTokens.TYPE_SERIALNUMBER, CertificateSearchTokens.getSerialNumberTokens(certificateData.getSerialNumber()));
+        return ret;
+    }
+
+    private static void addTokens(final List<CertificateSearchTokenData> ret, final String fingerprint, final int tokenType, final Set<String> tokens) {
+        for (final String token : tokens) {
+            ret.add(new CertificateSearchTokenData(fingerprint, ret.size(), tokenType, token));
+        }
+    }
+
+    //
+    // Start Database integrity protection methods
+    //
+
+    @Transient
+    @Override
+    protected String getProtectString(final int version) {
+        final ProtectionStringBuilder build = new ProtectionStringBuilder();
+        // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
+        build.append(getId()).append(getFingerprint()).append(getTokenType()).append(getSearchToken());
+        return build.toString();
+    }
+
+    @Transient
+    @Override
+    protected int getProtectVersion() {
+        return 1;
+    }
+
+    @PrePersist
+    @PreUpdate
+    @Override
+    protected void protectData() {
+        super.protectData();
+    }
+
+    @PostLoad
+    @Override
+    protected void verifyData() {
+        super.verifyData();
+    }
+
+    @Override
+    @Transient
+    protected String getRowId() {
+        return getId();
+    }
+    //
+    // End Database integrity protection methods
+    //
+}
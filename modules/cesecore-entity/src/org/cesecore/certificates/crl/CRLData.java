@@ -305,11 +305,17 @@ public class CRLData extends ProtectedData implements Serializable {
     @Override
     protected String getProtectString(final int version) {
     	final ProtectionStringBuilder build = new ProtectionStringBuilder(3000);
+    	appendProtectString(version, build);
+        return build.toString();
+    }
+
+    @Transient
+    @Override
+    protected void appendProtectString(final int version, final ProtectionStringBuilder build) {
         // What is important to protect here is the data that we define
         // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
         build.append(getFingerprint()).append(getCrlNumber()).append(getDeltaCRLIndicator()).append(getIssuerDN()).append(getCaFingerprint())
                 .append(getThisUpdate()).append(getNextUpdate()).append(getBase64Crl());
-        return build.toString();
     }
 
     @Transient
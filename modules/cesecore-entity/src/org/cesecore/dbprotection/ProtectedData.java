@@ -12,7 +12,11 @@
  *************************************************************************/
 package org.cesecore.dbprotection;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
 
 
 /**
@@ -115,6 +119,36 @@ public abstract class ProtectedData {
      */
     protected abstract String getProtectString(int rowversion);
 
+    /**
+     * Appends the string to be integrity protected to a builder. Data classes with long protection strings can override this method and
+     * build {@link #getProtectString(int)} with it, so that the protection string can be hashed without being built.
+     *
+     * @param version the version of the protection string, see {@link #getProtectString(int)}
+     * @param builder the builder to append the protection string to
+     */
+    protected void appendProtectString(final int version, final ProtectionStringBuilder builder) {
+        builder.append(getProtectString(version));
+    }
+
+    /**
+     * @param version the version of the protection string, see {@link #getProtectString(int)}
+     * @return SHA-256 digest of the UTF-8 encoded protection string, computed without building the string if the data class overrides
+     *          {@link #appendProtectString(int, ProtectionStringBuilder)}
+     */
+    public byte[] getProtectStringDigest(final int version) {
+        final ProtectionStringBuilder builder = new ProtectionStringBuilder(getMessageDigest());
+        appendProtectString(version, builder);
+        return builder.digest();
+    }
+
+    private static MessageDigest getMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
     /**
      * asks the data class for the version of the string that is protected, used as input to getProtectString() when verifying data. This is used so
      * that the data class can alter itself with new fields, but still be backwards compatible and verify older database data. Called when getting the
@@ -131,6 +165,11 @@ public abstract class ProtectedData {
 
     abstract public String getRowProtection();
 
+    /**
+     * The extending class must have a JPA version column "rowVersion", that is incremented every time the row is updated.
+     */
+    abstract public int getRowVersion();
+
     /**
      * Returns id of the row in the database, in case of failure we can see in the log which row failed to verify
      *
@@ -155,11 +194,20 @@ public abstract class ProtectedData {
     /**
      * Overridden by extending class to be able to use @PostLoad, overriding class calls super.verifyData().
      * This method verifies integrity protection for the specific entity in the database. If the data verification
-     * failed, it invokes {@link #onDataVerificationError(DatabaseProtectionException)}.
+     * failed, it invokes {@link #onDataVerificationError(DatabaseProtectionException)}. Rows that have already been
+     * verified, and are unchanged since, are not verified again if the {@link VerifiedRowCache} is enabled.
      */
     protected void verifyData() {
         try {
-            impl.verifyData(this);
+            if (integrityExists && VerifiedRowCache.INSTANCE.isEnabled() && CesecoreConfiguration.useDatabaseIntegrityVerification(getTableName())) {
+                if (VerifiedRowCache.INSTANCE.isVerified(this)) {
+                    return;
+                }
+                impl.verifyData(this);
+                VerifiedRowCache.INSTANCE.setVerified(this);
+            } else {
+                impl.verifyData(this);
+            }
         } catch (final DatabaseProtectionException e) {
             onDataVerificationError(e);
         }
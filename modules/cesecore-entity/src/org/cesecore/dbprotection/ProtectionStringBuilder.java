@@ -12,25 +12,56 @@
  *************************************************************************/
 package org.cesecore.dbprotection;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /**
  * Wrapper for StringBuilder that inserts a separator between elements.
+ * <p>
+ * A builder created with a {@link MessageDigest} does not keep the string, but hashes each element as it is appended, so that a
+ * digest of a long protection string can be computed without concatenating it.
+ * 
  * @version $Id$
  */
 public class ProtectionStringBuilder {
 
 	private static final String SEPARATOR_TAG = "<sep/>";
+	private static final byte[] SEPARATOR_TAG_BYTES = SEPARATOR_TAG.getBytes(StandardCharsets.UTF_8);
 	
 	private final StringBuilder sb;
+	private final MessageDigest digest;
+	/** Length of the hashed string, when hashing */
+	private int digestedLength = 0;
 
 	public ProtectionStringBuilder() {
 		sb = new StringBuilder();
+		digest = null;
 	}
 
 	public ProtectionStringBuilder(final int initialCapacity) {
 		sb = new StringBuilder(initialCapacity);
+		digest = null;
+	}
+
+	/** Creates a builder that hashes the UTF-8 encoded protection string with the given digest, see {@link #digest()}. */
+	public ProtectionStringBuilder(final MessageDigest digest) {
+		sb = null;
+		this.digest = digest;
 	}
 
 	public ProtectionStringBuilder append(final Object o) {
+		if (digest != null) {
+			if (digestedLength>0) {
+				digest.update(SEPARATOR_TAG_BYTES);
+				digestedLength += SEPARATOR_TAG.length();
+			}
+			if (o != null) {
+				final String value = o.toString();
+				digest.update(value.getBytes(StandardCharsets.UTF_8));
+				digestedLength += value.length();
+			}
+			return this;
+		}
 		if (sb.length()>0) {
 			sb.append(SEPARATOR_TAG);
 		}
@@ -42,11 +73,26 @@ public class ProtectionStringBuilder {
 	}
 
 	public int length() {
-		return sb.length();
+		return digest != null ? digestedLength : sb.length();
+	}
+
+	/**
+	 * @return the digest of the appended elements, the same as the digest of the UTF-8 encoding of {@link #toString()} for a builder without digest
+	 * @throws IllegalStateException if the builder was not created with a digest
+	 */
+	public byte[] digest() {
+		if (digest == null) {
+			throw new IllegalStateException("ProtectionStringBuilder was not created with a MessageDigest.");
+		}
+		return digest.digest();
 	}
 	
+	/** @throws IllegalStateException if the builder was created with a digest, and does not keep the string */
 	@Override
 	public String toString() {
+		if (sb == null) {
+			throw new IllegalStateException("ProtectionStringBuilder created with a MessageDigest does not keep the protection string.");
+		}
 		return sb.toString();
 	}
 }
@@ -0,0 +1,90 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Remembers database rows that have passed integrity verification, so that rows that are read often (CA certificates, OCSP signers,
+ * profiles) are not verified again every time they are loaded.
+ * <p>
+ * A row is only considered verified if its row version and row protection are the same as when it was verified. Every update made by the
+ * application increments the row version and creates a new row protection, so a row updated on any node is verified again. The row
+ * content is not compared, so a remembered row that is modified directly in the database, keeping its version and row protection, is
+ * not detected on this node until it has been forgotten. The cache is emptied when it is full. Disabled if
+ * databaseprotection.verifiedrowcache.size is 0.
+ *
+ * @version $Id$
+ */
+public enum VerifiedRowCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(VerifiedRowCache.class);
+
+    private final int maxSize;
+    /** Table and row id to the row version and row protection that were verified */
+    private final ConcurrentHashMap<String, VerifiedRow> verifiedRows = new ConcurrentHashMap<>();
+
+    private VerifiedRowCache() {
+        maxSize = CesecoreConfiguration.getDatabaseIntegrityVerifiedRowCacheSize();
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /** @return true if the row has been verified with the same row version and row protection as it has now */
+    public boolean isVerified(final ProtectedData row) {
+        final VerifiedRow verified = verifiedRows.get(getKey(row));
+        return verified != null && verified.rowVersion == row.getRowVersion() && verified.rowProtection.equals(row.getRowProtection());
+    }
+
+    /** Remember that the row passed verification, with its current row version and row protection */
+    public void setVerified(final ProtectedData row) {
+        final String rowProtection = row.getRowProtection();
+        if (rowProtection == null) {
+            // Nothing to compare with the next time the row is loaded
+            return;
+        }
+        if (verifiedRows.size() >= maxSize) {
+            // Cheaper than keeping track of usage on every lookup, frequently read rows are soon verified again
+            verifiedRows.clear();
+            if (log.isDebugEnabled()) {
+                log.debug("Verified row cache was full with " + maxSize + " rows and has been emptied.");
+            }
+        }
+        verifiedRows.put(getKey(row), new VerifiedRow(row.getRowVersion(), rowProtection));
+    }
+
+    /** @return the number of remembered rows */
+    int size() {
+        return verifiedRows.size();
+    }
+
+    private String getKey(final ProtectedData row) {
+        return row.getTableName() + ";" + row.getRowId();
+    }
+
+    private static final class VerifiedRow {
+        private final int rowVersion;
+        private final String rowProtection;
+
+        private VerifiedRow(final int rowVersion, final String rowProtection) {
+            this.rowVersion = rowVersion;
+            this.rowProtection = rowProtection;
+        }
+    }
+}
@@ -14,7 +14,6 @@
 package org.cesecore.keybind;
 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -30,6 +29,7 @@ import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
 
 /**
  * Database representation of an InternalKeyBinding.
@@ -175,34 +175,19 @@ public class InternalKeyBindingData extends ProtectedData implements Serializabl
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try {
-            java.beans.XMLDecoder decoder = new  java.beans.XMLDecoder(new java.io.ByteArrayInputStream(getRawData().getBytes("UTF8")));
-            final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
-            decoder.close();
-            // Handle Base64 encoded string values
-            final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
-            return dataMap;
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);  // No UTF8 would be real trouble
-        }
+        final Map<?, ?> h = DataMapSerializer.decode(getRawData());
+        // Handle Base64 encoded string values
+        final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
+        return dataMap;
     }
 
     @Transient
     @SuppressWarnings({"rawtypes", "unchecked"})
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        try {
-            // We must base64 encode string for UTF safety
-            final LinkedHashMap<?, ?> a = new Base64PutHashMap();
-            a.putAll((LinkedHashMap)dataMap);
-            final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-            final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-            encoder.writeObject(a);
-            encoder.close();
-            final String data = baos.toString("UTF8");
-            setRawData(data);
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);
-        }
+        // We must base64 encode string for UTF safety
+        final LinkedHashMap<?, ?> a = new Base64PutHashMap();
+        a.putAll((LinkedHashMap)dataMap);
+        setRawData(DataMapSerializer.encode(a));
     }
     
     @Transient
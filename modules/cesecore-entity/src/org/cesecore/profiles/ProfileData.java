@@ -12,12 +12,7 @@
  *************************************************************************/
 package org.cesecore.profiles;
 
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -30,6 +25,7 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.profiles.Profile;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
 
 /**
  * Implementation of the "ProfileData" table in the database
@@ -91,34 +87,19 @@ public class ProfileData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try {
-            XMLDecoder decoder = new  XMLDecoder(new ByteArrayInputStream(getRawData().getBytes("UTF8")));
-            final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
-            decoder.close();
-            // Handle Base64 encoded string values
-            final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
-            return dataMap;
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);  // No UTF8 would be real trouble
-        }
+        final Map<?, ?> h = DataMapSerializer.decode(getRawData());
+        // Handle Base64 encoded string values
+        final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(h);
+        return dataMap;
     }
 
     @Transient
     @SuppressWarnings({"rawtypes", "unchecked"})
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        try {
-            // We must base64 encode string for UTF safety
-            final LinkedHashMap<?, ?> a = new Base64PutHashMap();
-            a.putAll((LinkedHashMap)dataMap);
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            final XMLEncoder encoder = new XMLEncoder(baos);
-            encoder.writeObject(a);
-            encoder.close();
-            final String data = baos.toString("UTF8");
-            setRawData(data);
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException(e);
-        }
+        // We must base64 encode string for UTF safety
+        final LinkedHashMap<?, ?> a = new Base64PutHashMap();
+        a.putAll((LinkedHashMap)dataMap);
+        setRawData(DataMapSerializer.encode(a));
     }
     
     //
@@ -12,14 +12,8 @@
  *************************************************************************/
 package org.cesecore.roles;
 
-import java.beans.XMLDecoder;
-import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
-import java.util.Map;
 
 import javax.persistence.Entity;
 import javax.persistence.PostLoad;
@@ -33,6 +27,7 @@ import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
 
 /**
  * Represents a role.
@@ -96,20 +91,14 @@ public class RoleData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
-        try (final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(getRawData().getBytes(StandardCharsets.UTF_8)));) {
-            // Handle Base64 encoded string values
-            return new Base64GetHashMap((Map<?, ?>)decoder.readObject());
-        }
+        // Handle Base64 encoded string values
+        return new Base64GetHashMap(DataMapSerializer.decode(getRawData()));
     }
 
     @Transient
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (final XMLEncoder encoder = new XMLEncoder(baos);){
-            // We must base64 encode string for UTF safety
-            encoder.writeObject(new Base64PutHashMap(dataMap));
-        }
-        setRawData(new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        // We must base64 encode string for UTF safety
+        setRawData(DataMapSerializer.encode(new Base64PutHashMap(dataMap)));
     }
 
     @Transient
@@ -14,8 +14,8 @@
 package org.ejbca.core.protocol.crlstore;
 
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -24,7 +24,9 @@ import org.cesecore.certificates.ca.internal.CaCertificateCache;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CRLInfo;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlUpdateCounter;
 import org.cesecore.util.CertTools;
+import org.ejbca.config.WebConfiguration;
 
 /**
  * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the 
@@ -40,24 +42,50 @@ public class CRLCache {
 	
 	private final CrlStoreSessionLocal crlSession;
 	private final CaCertificateCache certCache;
-	final private Map<Integer, CRLEntity> crls = new HashMap<Integer, CRLEntity>();
-	final private Map<Integer, CRLEntity> deltaCrls = new HashMap<Integer, CRLEntity>();
-	private class CRLEntity {
-		final CRLInfo crlInfo;
-		final byte encoded[];
-		/**
-		 * @param crlInfo
-		 * @param encoded
-		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
+	final private Map<Integer, CRLEntity> crls = new ConcurrentHashMap<Integer, CRLEntity>();
+	final private Map<Integer, CRLEntity> deltaCrls = new ConcurrentHashMap<Integer, CRLEntity>();
+
+	/** A CRL with what is needed to answer conditional requests for it. */
+	public static class CRLEntity {
+		private final byte encoded[];
+		private final String eTag;
+		private final long lastModified;
+		/** The {@link CrlUpdateCounter} count when the database was checked */
+		private final long updateCount;
+		/** When the database was checked */
+		private final long checkedTime;
+
+		CRLEntity(byte[] encoded, String eTag, long lastModified, long updateCount) {
 			super();
-			this.crlInfo = crlInfo;
 			this.encoded = encoded;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.updateCount = updateCount;
+			this.checkedTime = System.currentTimeMillis();
+		}
+
+		/** @return the DER encoded CRL */
+		public byte[] getEncoded() {
+			return this.encoded;
+		}
+
+		/** @return a strong entity tag for the CRL, including quotes */
+		public String getETag() {
+			return this.eTag;
+		}
+
+		/** @return this update of the CRL in epoch milliseconds, or -1 if it is not known */
+		public long getLastModified() {
+			return this.lastModified;
+		}
+
+		private boolean isUpToDate(long currentUpdateCount) {
+			return this.updateCount == currentUpdateCount && System.currentTimeMillis() - this.checkedTime < WebConfiguration.getCrlStoreCacheTime();
 		}
 	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
+
+	/** Only one thread at a time checks the database for a newer CRL, so that requests arriving when a cached CRL has become stale do
+	 * not all read the same CRL. Requests that are answered from the cache do not take the lock.
 	 */
 	final private Lock rebuildlock = new ReentrantLock();
 
@@ -93,9 +121,9 @@ public class CRLCache {
      * @param id The ID of the subject key identifier.
      * @param isDelta true if delta CRL
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
-     * @return CRL or null if the CRL does not exist in the cache.
+     * @return CRL or null if the CRL does not exist.
      */
-	public byte[] findBySubjectKeyIdentifier(HashID id, boolean isDelta, int crlNumber) {
+	public CRLEntity findBySubjectKeyIdentifier(HashID id, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findBySubjectKeyIdentifier(id), isDelta, crlNumber);
 	}
 
@@ -103,13 +131,13 @@ public class CRLCache {
      * @param id The ID of the issuer DN.
      * @param isDelta true if delta CRL
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
-     * @return CRL or null if the CRL does not exist in the cache.
+     * @return CRL or null if the CRL does not exist.
      */
-	public byte[] findByIssuerDN(HashID id, boolean isDelta, int crlNumber) {
+	public CRLEntity findByIssuerDN(HashID id, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findLatestBySubjectDN(id), isDelta, crlNumber);
 	}
 
-	private byte[] findCRL(X509Certificate caCert, boolean isDelta, int crlNumber) {
+	private CRLEntity findCRL(X509Certificate caCert, boolean isDelta, int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
 				log.debug("No CA certificate, returning null.");
@@ -118,41 +146,62 @@ public class CRLCache {
 		}
 		final HashID id = HashID.getFromSubjectDN(caCert);
 		final String issuerDN = CertTools.getSubjectDN(caCert);
+		if (crlNumber > -1) {
+		    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+		    if (log.isDebugEnabled()) {
+		        log.debug("Getting CRL with CRL number "+crlNumber);
+		    }
+		    final byte[] encoded = this.crlSession.getCRL(issuerDN, crlNumber);
+		    if (encoded==null) {
+		        return null;
+		    }
+		    // A CRL with a given number never changes
+		    return new CRLEntity(encoded, "\"" + crlNumber + "\"", -1, 0);
+		}
+		final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
+		// Read before the database is checked, so that a CRL stored while the database is read makes the next request check again
+		final long updateCount = CrlUpdateCounter.INSTANCE.getCount(issuerDN, isDelta);
+		{
+			final CRLEntity cachedCRL = usedCrls.get(id.getKey());
+			if ( cachedCRL!=null && cachedCRL.isUpToDate(updateCount) ) {
+				if (log.isDebugEnabled()) {
+					log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"'.");
+				}
+				return cachedCRL;
+			}
+		}
 		this.rebuildlock.lock();
 		try {
+			final CRLEntity cachedCRL = usedCrls.get(id.getKey());
+			if ( cachedCRL!=null && cachedCRL.isUpToDate(updateCount) ) {
+				// Another thread checked the database while this one waited for the lock
+				return cachedCRL;
+			}
 			final CRLInfo crlInfo = this.crlSession.getLastCRLInfo(issuerDN, isDelta);
 			if ( crlInfo==null ) {
 				if (log.isDebugEnabled()) {
 					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
 				}
+				usedCrls.remove(id.getKey());
 				return null;
 			}
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(id.getKey());
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
-			        }
-			        return cachedCRL.encoded;
-			    }
-			}
+			final String eTag = "\"" + crlInfo.getLastCRLNumber() + "-" + crlInfo.getCreateDate().getTime() + "\"";
 			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlSession.getCRL(issuerDN, crlNumber) );			    
+			if ( cachedCRL!=null && cachedCRL.getETag().equals(eTag) ) {
+				// Still the latest CRL
+				entry = new CRLEntity(cachedCRL.getEncoded(), eTag, cachedCRL.getLastModified(), updateCount);
 			} else {
-			    entry = new CRLEntity( crlInfo, this.crlSession.getLastCRL(issuerDN, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(id.getKey(), entry);
-			}
-			if (log.isDebugEnabled()) {
-				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
+				final byte[] encoded = this.crlSession.getLastCRL(issuerDN, isDelta);
+				if (encoded==null) {
+					return null;
+				}
+				entry = new CRLEntity(encoded, eTag, crlInfo.getCreateDate().getTime(), updateCount);
+				if (log.isDebugEnabled()) {
+					log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
+				}
 			}
-			return entry.encoded;
+			usedCrls.put(id.getKey(), entry);
+			return entry;
 		} finally {
 			this.rebuildlock.unlock();
 		}
@@ -28,6 +28,7 @@ import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.cesecore.util.StringTools;
 import org.ejbca.core.protocol.crlstore.CRLCache;
+import org.ejbca.core.protocol.crlstore.CRLCache.CRLEntity;
 import org.ejbca.util.HTMLTools;
 
 /** 
@@ -61,7 +62,7 @@ public class CRLStoreServlet extends StoreServletBase {
 
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
-		returnCrl( this.crlCache.findByIssuerDN(HashID.getFromB64(iHash), isDelta(req), getCrlNumber(req, resp)), resp, iHash, isDelta(req) );		
+		returnCrl( this.crlCache.findByIssuerDN(HashID.getFromB64(iHash), isDelta(req), getCrlNumber(req, resp)), req, resp, iHash, isDelta(req) );		
 	}
 
 	@Override
@@ -71,7 +72,7 @@ public class CRLStoreServlet extends StoreServletBase {
 
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
-		returnCrl( this.crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), isDelta(req), getCrlNumber(req, resp)), resp, name, isDelta(req) );
+		returnCrl( this.crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), isDelta(req), getCrlNumber(req, resp)), req, resp, name, isDelta(req) );
 	}
 
 	@Override
@@ -101,11 +102,16 @@ public class CRLStoreServlet extends StoreServletBase {
         return -1;
 	}
 
-	private void returnCrl( byte crl[], HttpServletResponse resp, String name, boolean isDelta ) throws IOException {
-		if ( crl==null || crl.length<1 ) {
+	private void returnCrl( CRLEntity crlEntity, HttpServletRequest req, HttpServletResponse resp, String name, boolean isDelta ) throws IOException {
+		if ( crlEntity==null || crlEntity.getEncoded().length<1 ) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
 			return;
 		}
+		if ( isNotModified(req, resp, crlEntity.getETag(), crlEntity.getLastModified()) ) {
+			return;
+		}
+		// The cached encoding is written as it is, without copying it for each request
+		final byte crl[] = crlEntity.getEncoded();
 		resp.setContentType("application/pkix-crl");
 		resp.setHeader("Content-disposition", "attachment; filename=\""+(isDelta?"delta":"") + StringTools.stripFilename(name) + ".crl\"");
 		resp.setContentLength(crl.length);
@@ -0,0 +1,158 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the framing of CMP over TCP messages in the NIO server, using a handler that echoes the CMP message back to the client.
+ *
+ * This is a unit test and does not require EJBCA to be running.
+ *
+ * @version $Id$
+ */
+public class CmpTcpServerUnitTest {
+
+    private static final int TIMEOUT = 10000;
+
+    private final AtomicInteger handledMessages = new AtomicInteger();
+    private CmpTcpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new CmpTcpServer(new CmpTcpCommandHandler() {
+            @Override
+            public TcpReturnMessage handleMessage(final String hostAddress, final byte[] command) throws IOException {
+                handledMessages.incrementAndGet();
+                final TcpReceivedMessage received = TcpReceivedMessage.getTcpMessage(command);
+                return TcpReturnMessage.createMessage(received.message, received.doClose);
+            }
+        });
+        server.start("127.0.0.1", 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testPartialReads() throws Exception {
+        final byte[] message = createMessage(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, false);
+        final Socket socket = connect();
+        try {
+            final OutputStream out = socket.getOutputStream();
+            // Split the message inside the length field and inside the message
+            final int[] splits = { 0, 2, 6, message.length };
+            for (int i = 1; i < splits.length; i++) {
+                out.write(message, splits[i - 1], splits[i] - splits[i - 1]);
+                out.flush();
+                Thread.sleep(50);
+            }
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, readResponse(in, false));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testPipelinedMessages() throws Exception {
+        final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        messages.write(createMessage(new byte[] { 1 }, false));
+        messages.write(createMessage(new byte[] { 2, 2 }, false));
+        messages.write(createMessage(new byte[] { 3, 3, 3 }, true));
+        final Socket socket = connect();
+        try {
+            socket.getOutputStream().write(messages.toByteArray());
+            socket.getOutputStream().flush();
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertArrayEquals("Responses should be returned in the order the messages were sent.", new byte[] { 1 }, readResponse(in, false));
+            assertArrayEquals(new byte[] { 2, 2 }, readResponse(in, false));
+            assertArrayEquals(new byte[] { 3, 3, 3 }, readResponse(in, true));
+            assertEquals("The connection should be closed after a response with the close flag.", -1, in.read());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testOversizeMessage() throws Exception {
+        assertRejected(5000);
+    }
+
+    @Test
+    public void testTooShortMessage() throws Exception {
+        // Version, flags and message type, but no CMP message
+        assertRejected(3);
+    }
+
+    /** Sends a length field with the given value and checks that the server closes the connection without handling a message. */
+    private void assertRejected(final int length) throws Exception {
+        final Socket socket = connect();
+        try {
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(length);
+            out.write(new byte[] { 10, 0, 0 });
+            out.flush();
+            assertEquals("The connection should be closed.", -1, socket.getInputStream().read());
+            assertEquals("The message should not reach the handler.", 0, handledMessages.get());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.setSoTimeout(TIMEOUT);
+        return socket;
+    }
+
+    /** @return a pkiReq message with version 10 */
+    private static byte[] createMessage(final byte[] cmpMessage, final boolean close) throws IOException {
+        final ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(bao);
+        dos.writeInt(cmpMessage.length + 3);
+        dos.writeByte(10);
+        dos.writeByte(close ? 1 : 0);
+        dos.writeByte(0);
+        dos.write(cmpMessage);
+        dos.flush();
+        return bao.toByteArray();
+    }
+
+    /** Reads a pkiRep message and returns the CMP message in it. */
+    private static byte[] readResponse(final DataInputStream in, final boolean close) throws IOException {
+        final int length = in.readInt();
+        assertEquals("Version", 10, in.readByte());
+        assertEquals("Flags", close ? 1 : 0, in.readByte());
+        assertEquals("Message type", 5, in.readByte());
+        final byte[] cmpMessage = new byte[length - 3];
+        in.readFully(cmpMessage);
+        return cmpMessage;
+    }
+}
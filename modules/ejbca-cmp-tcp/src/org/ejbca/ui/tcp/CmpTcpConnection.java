@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.apache.log4j.Logger;
+import org.ejbca.core.model.InternalEjbcaResources;
+
+/**
+ * State of one non-blocking CMP TCP client connection. Reads messages framed as in the CMP TCP transport (a 4 byte length
+ * followed by the version, flags, message type and CMP message) and writes the responses.
+ * <p>
+ * Only used by the {@link CmpTcpSelector} thread that the connection is registered with.
+ *
+ * @version $Id$
+ */
+final class CmpTcpConnection {
+
+    private static final Logger log = Logger.getLogger(CmpTcpConnection.class);
+    private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
+
+    /** Size of the length field that starts each message */
+    private static final int LENGTH_FIELD_SIZE = 4;
+    /** Version, flags and message type follow the length field, and then at least one byte of message, as required by {@link TcpReceivedMessage} */
+    private static final int MIN_MESSAGE_LENGTH = 4;
+    /** Longer messages are rejected by {@link TcpReceivedMessage} */
+    private static final int MAX_MESSAGE_LENGTH = 5000;
+
+    private final SocketChannel channel;
+    private final String hostAddress;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_FIELD_SIZE);
+    /** The message being read, including the length field, or null while reading the length field */
+    private ByteBuffer messageBuffer;
+    /** The response being written, or null */
+    private ByteBuffer responseBuffer;
+    private boolean closeAfterResponse;
+    /** true while a message is processed, when no more messages are read from the client */
+    private boolean processing;
+    private long lastActivityTime = System.currentTimeMillis();
+
+    CmpTcpConnection(final SocketChannel channel) {
+        this.channel = channel;
+        final SocketAddress remoteAddress = channel.socket().getRemoteSocketAddress();
+        if (remoteAddress instanceof InetSocketAddress) {
+            final InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+            this.hostAddress = address == null ? ((InetSocketAddress) remoteAddress).getHostString() : address.getHostAddress();
+        } else {
+            this.hostAddress = String.valueOf(remoteAddress);
+        }
+    }
+
+    String getHostAddress() {
+        return hostAddress;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    boolean isProcessing() {
+        return processing;
+    }
+
+    void setProcessing(final boolean processing) {
+        this.processing = processing;
+        this.lastActivityTime = System.currentTimeMillis();
+    }
+
+    long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    /**
+     * Read the bytes that are available from the client.
+     *
+     * @return a complete message including the length field, or null if more bytes are needed
+     * @throws IOException if the client closed the connection or sent a message with an invalid length
+     */
+    byte[] read() throws IOException {
+        if (messageBuffer == null) {
+            if (channel.read(lengthBuffer) < 0) {
+                throw new EOFException("Connection closed by client " + hostAddress);
+            }
+            lastActivityTime = System.currentTimeMillis();
+            if (lengthBuffer.hasRemaining()) {
+                return null;
+            }
+            final int length = lengthBuffer.getInt(0);
+            if (length >= MAX_MESSAGE_LENGTH) {
+                log.error(intres.getLocalizedMessage("cmp.errortcptoolongmsg", Integer.valueOf(length)));
+                throw new IOException("Message from " + hostAddress + " is too long.");
+            }
+            if (length < MIN_MESSAGE_LENGTH) {
+                throw new IOException("Message from " + hostAddress + " has an invalid length: " + length);
+            }
+            messageBuffer = ByteBuffer.allocate(LENGTH_FIELD_SIZE + length);
+            lengthBuffer.flip();
+            messageBuffer.put(lengthBuffer);
+            lengthBuffer.clear();
+        }
+        if (channel.read(messageBuffer) < 0) {
+            throw new EOFException("Connection closed by client " + hostAddress + " in the middle of a message.");
+        }
+        lastActivityTime = System.currentTimeMillis();
+        if (messageBuffer.hasRemaining()) {
+            return null;
+        }
+        final byte[] message = messageBuffer.array();
+        messageBuffer = null;
+        return message;
+    }
+
+    /** Set the response to write to the client */
+    void setResponse(final byte[] response, final boolean closeAfterResponse) {
+        this.responseBuffer = ByteBuffer.wrap(response);
+        this.closeAfterResponse = closeAfterResponse;
+    }
+
+    /**
+     * Write as much of the response as the socket accepts.
+     *
+     * @return true if the whole response has been written
+     */
+    boolean write() throws IOException {
+        channel.write(responseBuffer);
+        lastActivityTime = System.currentTimeMillis();
+        if (responseBuffer.hasRemaining()) {
+            return false;
+        }
+        responseBuffer = null;
+        return true;
+    }
+
+    /** @return true if the connection should be closed now that the response has been written */
+    boolean isCloseAfterResponse() {
+        return closeAfterResponse;
+    }
+}
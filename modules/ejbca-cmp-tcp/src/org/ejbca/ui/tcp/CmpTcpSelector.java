@@ -0,0 +1,225 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.tcp;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A thread that reads and writes all the CMP TCP connections registered with it, using one {@link Selector}.
+ * <p>
+ * While a message from a connection is processed by a worker thread, nothing more is read from that connection. The worker hands
+ * the response back to this thread with {@link #respond(SelectionKey, TcpReturnMessage)}, so the connection state is only ever
+ * changed by this thread. Connections that have been idle longer than the idle timeout are closed.
+ *
+ * @version $Id$
+ */
+final class CmpTcpSelector implements Runnable {
+
+    private static final Logger log = Logger.getLogger(CmpTcpSelector.class);
+    /** How often idle connections are looked for */
+    private static final long IDLE_CHECK_INTERVAL = 1000L;
+
+    private final CmpTcpServer server;
+    private final Selector selector;
+    private final long idleTimeout;
+    /** Tasks from other threads that must run in this thread, since channels can't be registered or changed during select() */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    CmpTcpSelector(final CmpTcpServer server, final long idleTimeout) throws IOException {
+        this.server = server;
+        this.idleTimeout = idleTimeout;
+        this.selector = Selector.open();
+    }
+
+    /** Register a newly accepted connection, from any thread */
+    void register(final SocketChannel channel) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.configureBlocking(false);
+                    final CmpTcpConnection connection = new CmpTcpConnection(channel);
+                    channel.register(selector, SelectionKey.OP_READ, connection);
+                    if (log.isDebugEnabled()) {
+                        log.debug("CMP connection opened: " + connection.getHostAddress());
+                    }
+                } catch (IOException e) {
+                    log.info("Failed to register CMP TCP connection: " + e.getMessage());
+                    closeQuietly(channel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send the response of a processed message, from any thread.
+     *
+     * @param response the response, or null to close the connection without a response
+     */
+    void respond(final SelectionKey key, final TcpReturnMessage response) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                final CmpTcpConnection connection = (CmpTcpConnection) key.attachment();
+                connection.setProcessing(false);
+                if (!key.isValid()) {
+                    return;
+                }
+                if (response == null) {
+                    close(key);
+                    return;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Sending " + response.message.length + " bytes to client");
+                }
+                connection.setResponse(response.message, response.doClose);
+                // Most responses fit in the socket send buffer, so try to write it directly before waiting for the socket
+                writeResponse(key, connection);
+            }
+        });
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(IDLE_CHECK_INTERVAL);
+                runTasks();
+                final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    handle(key);
+                }
+                closeIdleConnections();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("CMP TCP selector failed: " + e.getMessage(), e);
+        } finally {
+            for (final SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.debug("Failed to close selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void submit(final Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void handle(final SelectionKey key) {
+        final CmpTcpConnection connection = (CmpTcpConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                final byte[] message = connection.read();
+                if (message != null) {
+                    // Stop reading until the response has been sent, so responses are sent in the same order as the requests
+                    key.interestOps(0);
+                    connection.setProcessing(true);
+                    if (!server.process(this, key, connection, message)) {
+                        close(key);
+                    }
+                }
+            } else if (key.isWritable()) {
+                writeResponse(key, connection);
+            }
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Closing CMP TCP connection: " + e.getMessage());
+            }
+            close(key);
+        }
+    }
+
+    private void writeResponse(final SelectionKey key, final CmpTcpConnection connection) {
+        try {
+            if (!connection.write()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (connection.isCloseAfterResponse()) {
+                close(key); // It's time to say good bye
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to write CMP TCP response: " + e.getMessage());
+            }
+            close(key);
+        }
+    }
+
+    private void closeIdleConnections() {
+        final long now = System.currentTimeMillis();
+        if (idleTimeout <= 0 || now - lastIdleCheck < IDLE_CHECK_INTERVAL) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (final SelectionKey key : selector.keys()) {
+            final CmpTcpConnection connection = (CmpTcpConnection) key.attachment();
+            if (connection != null && !connection.isProcessing() && now - connection.getLastActivityTime() > idleTimeout) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing idle CMP TCP connection: " + connection.getHostAddress());
+                }
+                close(key);
+            }
+        }
+    }
+
+    private void close(final SelectionKey key) {
+        key.cancel();
+        final CmpTcpConnection connection = (CmpTcpConnection) key.attachment();
+        if (connection != null) {
+            closeQuietly(connection.getChannel());
+            if (log.isDebugEnabled()) {
+                log.debug("Connection closed: " + connection.getHostAddress());
+            }
+        }
+    }
+
+    private static void closeQuietly(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close channel: " + e.getMessage());
+        }
+    }
+}
@@ -13,101 +13,186 @@
 
 package org.ejbca.ui.tcp;
 
-import java.io.File;
-import java.net.UnknownHostException;
-import java.util.logging.FileHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.ejbca.config.CmpTcpConfiguration;
-import org.quickserver.net.AppException;
-import org.quickserver.net.server.QuickServer;
 
 /**
  * Starts and stops the CMP TCP listener service
- * 
+ * <p>
+ * Connections are accepted by one thread and spread over a few selector threads, that read and write all connections without
+ * blocking. Complete messages are processed by a bounded pool of worker threads, so the number of connections is not limited
+ * by the number of threads, and idle clients don't use any thread.
+ *
  * @version $Id$
  */
 public class CmpTcpServer {
 
-	private static final org.apache.log4j.Logger LOG = org.apache.log4j.Logger.getLogger(CmpTcpServer.class);
-	private static final String VER = "1.0";
-
-	private transient QuickServer myServer = null;
-	
-	public void start() throws UnknownHostException	{
-		final String cmdHandle = org.ejbca.ui.tcp.CmpTcpCommandHandler.class.getName();
-
-		myServer = new QuickServer();
-		myServer.setClientAuthenticationHandler(null);
-		myServer.setBindAddr(CmpTcpConfiguration.getTCPBindAdress());
-		myServer.setPort(CmpTcpConfiguration.getTCPPortNumber());
-		myServer.setName("CMP TCP Server v " + VER);
-		if(QuickServer.getVersionNo() >= 1.2) {
-			LOG.info("Using 1.2 feature");
-			myServer.setClientBinaryHandler(cmdHandle);
-			myServer.setClientEventHandler(cmdHandle);
-
-			//reduce info to Console
-			myServer.setConsoleLoggingToMicro();
-		}
-
-		//setup logger to log to file
-		Logger logger = null;
-		FileHandler txtLog = null;
-		final String logDir = CmpTcpConfiguration.getTCPLogDir();
-		final File logFile = new File(logDir + "/");
-		if(!logFile.canRead()) {
-			logFile.mkdir();
-		}
-		try	{
-			logger = Logger.getLogger("");
-			logger.setLevel(Level.INFO);
-
-			logger = Logger.getLogger("cmptcpserver");
-			logger.setLevel(Level.FINEST); 
-			txtLog = new FileHandler(logDir+"/cmptcpserver.log");
-			//reduce info 
-			txtLog.setFormatter(new org.quickserver.util.logging.MicroFormatter());
-			logger.addHandler(txtLog);
-
-			myServer.setAppLogger(logger); //imp
-
-			//myServer.setConsoleLoggingToMicro();
-			myServer.setConsoleLoggingFormatter("org.quickserver.util.logging.SimpleTextFormatter");
-			myServer.setConsoleLoggingLevel(Level.INFO);
-		} catch(Exception e){
-			LOG.error("Could not create xmlLog FileHandler : ", e);
-		}
-		try	{
-			final String confFile = CmpTcpConfiguration.getTCPConfigFile();
-			if (!StringUtils.isEmpty(confFile)) {
-				final Object config[] = new Object[] {confFile};
-				if (!myServer.initService(config)) {
-					LOG.error("Configuration from config file "+confFile+" failed!");
-				}
-			}
-			myServer.startServer();	
-			//myServer.getQSAdminServer().setShellEnable(true);
-			//myServer.startQSAdminServer();			
-		} catch(AppException e){
-			LOG.error("Error in server : ", e);
-		}
-	}
-
-	public void stop() {
-		if (myServer != null) {
-			try {
-				myServer.stopService();
-				myServer.closeAllPools();
-			} catch (AppException e) {
-				LOG.error("Error in server : ", e);
-			} catch (Exception e) {
-				LOG.error("Error in server : ", e);
-			}
-		}
-	}
-}
+    private static final Logger LOG = Logger.getLogger(CmpTcpServer.class);
+    /** Connections waiting to be accepted, large enough for many devices that connect at the same time */
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final CmpTcpCommandHandler handler;
+    private ServerSocketChannel serverChannel = null;
+    private CmpTcpSelector[] selectors = null;
+    private volatile ThreadPoolExecutor workers = null;
+
+    public CmpTcpServer() {
+        this(new CmpTcpCommandHandler());
+    }
+
+    /** @param handler processes the messages received from clients */
+    public CmpTcpServer(final CmpTcpCommandHandler handler) {
+        this.handler = handler;
+    }
+
+    public void start() throws IOException {
+        start(CmpTcpConfiguration.getTCPBindAdress(), CmpTcpConfiguration.getTCPPortNumber());
+    }
+
+    /** Start listening on the given address and port (0 for any free port) */
+    public synchronized void start(final String bindAddress, final int port) throws IOException {
+        final int selectorThreads = CmpTcpConfiguration.getTCPSelectorThreads();
+        final int workerThreads = CmpTcpConfiguration.getTCPWorkerThreads();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(CmpTcpConfiguration.getTCPWorkerQueueSize()), new NamedThreadFactory("CmpTcpWorker"));
+        selectors = new CmpTcpSelector[selectorThreads];
+        final ThreadFactory selectorThreadFactory = new NamedThreadFactory("CmpTcpSelector");
+        for (int i = 0; i < selectorThreads; i++) {
+            selectors[i] = new CmpTcpSelector(this, CmpTcpConfiguration.getTCPIdleTimeout());
+            selectorThreadFactory.newThread(selectors[i]).start();
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(bindAddress, port), ACCEPT_BACKLOG);
+        final ServerSocketChannel acceptingChannel = serverChannel;
+        final CmpTcpSelector[] acceptingSelectors = selectors;
+        new NamedThreadFactory("CmpTcpAcceptor").newThread(new Runnable() {
+            @Override
+            public void run() {
+                accept(acceptingChannel, acceptingSelectors);
+            }
+        }).start();
+        LOG.info("CMP TCP Server listening on " + serverChannel.socket().getLocalSocketAddress() + " with " + selectorThreads + " selector threads and "
+                + workerThreads + " worker threads.");
+    }
 
+    /** @return the port the server listens on, or -1 if it has not been started */
+    public synchronized int getLocalPort() {
+        return serverChannel == null ? -1 : serverChannel.socket().getLocalPort();
+    }
 
+    public synchronized void stop() {
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                LOG.error("Error in server : ", e);
+            }
+            serverChannel = null;
+        }
+        if (selectors != null) {
+            for (final CmpTcpSelector selector : selectors) {
+                selector.stop();
+            }
+            selectors = null;
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            workers = null;
+        }
+    }
+
+    /** Accept connections until the server channel is closed, and spread them over the selectors */
+    private void accept(final ServerSocketChannel channel, final CmpTcpSelector[] selectors) {
+        int next = 0;
+        while (channel.isOpen()) {
+            try {
+                final SocketChannel socketChannel = channel.accept();
+                selectors[next].register(socketChannel);
+                next = (next + 1) % selectors.length;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                // For example too many open files, so don't retry at once
+                LOG.error("Failed to accept CMP TCP connection: " + e.getMessage());
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        LOG.debug("CMP TCP Server stopped accepting connections.");
+    }
+
+    /**
+     * Process a received message in a worker thread, and hand the response back to the selector.
+     *
+     * @return false if there was no free worker, and the connection should be closed
+     */
+    boolean process(final CmpTcpSelector selector, final SelectionKey key, final CmpTcpConnection connection, final byte[] message) {
+        final String hostAddress = connection.getHostAddress();
+        final ThreadPoolExecutor workers = this.workers;
+        if (workers == null) {
+            return false;
+        }
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TcpReturnMessage response = null;
+                    try {
+                        response = handler.handleMessage(hostAddress, message);
+                    } catch (Exception e) { // NOPMD: the selector must always get an answer, or the connection would hang
+                        LOG.error("Failed to process CMP TCP message from " + hostAddress + ": " + e.getMessage(), e);
+                    } finally {
+                        selector.respond(key, response);
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOG.warn("All CMP TCP workers are busy and the queue is full, closing connection from " + hostAddress + ".");
+            return false;
+        }
+    }
+
+    /** Creates daemon threads with numbered names */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
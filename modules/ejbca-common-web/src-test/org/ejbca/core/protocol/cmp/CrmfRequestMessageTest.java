@@ -151,6 +151,25 @@ public class CrmfRequestMessageTest {
 	    }
 	}
 
+    @Test
+    public void testMultipleCertReqMsgs() throws InvalidAlgorithmParameterException, IOException {
+        final PKIMessage first = createPKIMessage("CN=bogusIssuer", "CN=first");
+        final PKIMessage second = createPKIMessage("CN=bogusIssuer", "CN=second");
+        final CertReqMsg firstReq = CertReqMessages.getInstance(first.getBody().getContent()).toCertReqMsgArray()[0];
+        final CertReqMsg secondReq = CertReqMessages.getInstance(second.getBody().getContent()).toCertReqMsgArray()[0];
+        final CertReqMsg renumbered = new CertReqMsg(new CertRequest(5, secondReq.getCertReq().getCertTemplate(), null), secondReq.getPopo(), null);
+        final PKIMessage both = new PKIMessage(first.getHeader(), new PKIBody(0, new CertReqMessages(new CertReqMsg[] { firstReq, renumbered })));
+        assertEquals("Wrong number of certificate requests.", 1, CrmfRequestMessage.getCertReqMsgCount(first));
+        assertEquals("Wrong number of certificate requests.", 2, CrmfRequestMessage.getCertReqMsgCount(both));
+        final CrmfRequestMessage crmf0 = new CrmfRequestMessage(both, "CN=SomeCA", true, null);
+        assertEquals("The first request should be handled by default.", 4, crmf0.getRequestId());
+        assertEquals("CN=first", crmf0.getRequestDN());
+        final CrmfRequestMessage crmf1 = new CrmfRequestMessage(both, "CN=SomeCA", true, null, 1);
+        assertEquals("The second request should be handled.", 5, crmf1.getRequestId());
+        assertEquals("CN=second", crmf1.getRequestDN());
+        assertEquals(1, crmf1.getRequestIndex());
+    }
+
     private PKIMessage createPKIMessage(final String issuerDN, final String subjectDN) throws InvalidAlgorithmParameterException, IOException {
 		KeyPair keys = KeyTools.genKeys("1024", "RSA");
 		ASN1EncodableVector optionalValidityV = new ASN1EncodableVector();
@@ -34,6 +34,7 @@ import org.cesecore.keys.validation.ValidationException;
 import org.cesecore.profiles.Profile;
 import org.cesecore.util.ui.DynamicUiModel;
 import org.cesecore.util.ui.DynamicUiProperty;
+import org.ejbca.core.ejb.ca.validation.BlacklistSessionLocal;
 import org.ejbca.core.model.util.EjbLocalHelper;
 
 /**
@@ -163,12 +164,15 @@ public class PublicKeyBlacklistKeyValidator extends KeyValidatorBase {
         final String fingerprint = PublicKeyBlacklistEntry.createFingerprint(publicKey);
         log.info("Matching public key with blacklist fingerprint " + fingerprint + " with public key blacklist.");
         if (!useOnlyCache) {
+            final BlacklistSessionLocal blacklistSession = new EjbLocalHelper().getBlacklistSession();
+            // The in memory filter of all blacklisted fingerprints tells us when the key is definitely not blacklisted, which is
+            // the common case, so we only have to look for the entry in the database when it might be
+            if (!blacklistSession.isPublicKeyPossiblyBlacklisted(fingerprint)) {
+                log.trace("publicKeyBlacklist passed");
+                return messages;
+            }
             // A bit hackish, make a call to blacklist session to ensure that blacklist cache has this entry loaded
-            // TODO: if the key is not in the cache (which it hopefully is not) this is a database lookup for each key. Huuge performance hit
-            // should better be implemented as a full in memory cache with a state so we know if it's loaded or not, with background updates. See ECA-5951
-            // We could simply add a call to load the whole map into cache, when the cache needs updating
-            // See BlacklistSessionBean.getBlacklistEntryIdToFingerprintMap (and add cache there)
-            new EjbLocalHelper().getBlacklistSession().getBlacklistEntryId(PublicKeyBlacklistEntry.TYPE, fingerprint);
+            blacklistSession.getBlacklistEntryId(PublicKeyBlacklistEntry.TYPE, fingerprint);
         }
         Integer idValue = PublicKeyBlacklistEntryCache.INSTANCE.getNameToIdMap().get(fingerprint);
         final PublicKeyBlacklistEntry entry = PublicKeyBlacklistEntryCache.INSTANCE.getEntry(idValue);
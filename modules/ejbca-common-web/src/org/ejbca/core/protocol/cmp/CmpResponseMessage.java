@@ -143,6 +143,12 @@ public class CmpResponseMessage implements CertificateResponseMessage {
     private transient String pbeKeyId = null;
     private transient String pbeKey = null;
     private transient boolean implicitConfirm = false;
+    /** True if the request asked for the response to be left unprotected, since the caller protects it together with other responses */
+    private transient boolean protectionDeferred = false;
+    /** The CertResponse created for the request, when the response is a CertRepMessage */
+    private transient CertResponse certResponse = null;
+    /** Responses to all certificate requests of a message with several, in request order, included in the same CertRepMessage */
+    private transient List<CertResponse> certResponses = null;
     private transient CertificateData certificateData;
     private transient Base64CertData base64CertData;
 
@@ -307,8 +313,8 @@ public class CmpResponseMessage implements CertificateResponseMessage {
                                 myCertifiedKeyPair = new CertifiedKeyPair(retCert);                                
                             }
                             // If we have server generated keys, add privateKey
-                            final CertResponse certResponse = new CertResponse(new ASN1Integer(requestId), myPKIStatusInfo, myCertifiedKeyPair, null);
-                            final CertResponse[] certResponses = { certResponse };
+                            certResponse = new CertResponse(new ASN1Integer(requestId), myPKIStatusInfo, myCertifiedKeyPair, null);
+                            final CertResponse[] certResponses = getCertResponses();
                             
                             // Add the user certificates signing CA certificate (at index 0) and the others by the CMP configuration to the CMP 
                             // response 'caPubs' field (added previously to the response with CertificateResponseMessage.addAdditionalCaCertificates().
@@ -352,7 +358,12 @@ public class CmpResponseMessage implements CertificateResponseMessage {
                 }
                 statusInfoV.add(CmpMessageHelper.getPKIFailureInfo(failInfo.intValue()));
                 PKIStatusInfo myPKIStatusInfo = PKIStatusInfo.getInstance(ASN1Sequence.getInstance(new DERSequence(statusInfoV)));
-                myPKIBody = CmpMessageHelper.createCertRequestRejectBody(myPKIStatusInfo, requestId, requestType);
+                certResponse = new CertResponse(new ASN1Integer(requestId), myPKIStatusInfo);
+                if (certResponses == null) {
+                    myPKIBody = CmpMessageHelper.createCertRequestRejectBody(myPKIStatusInfo, requestId, requestType);
+                } else {
+                    myPKIBody = new PKIBody(requestType + 1, new CertRepMessage(null, getCertResponses()));
+                }
                 
             } else {
                 if (log.isDebugEnabled()) {
@@ -372,7 +383,11 @@ public class CmpResponseMessage implements CertificateResponseMessage {
                 myPKIBody = new PKIBody(23, myErrorContent); // 23 = error                
             }
             
-            if ((pbeKeyId != null) && (pbeKey != null) && (pbeDigestAlg != null) && (pbeMacAlg != null)) {
+            if (protectionDeferred && certResponses == null) {
+                // Only the CertResponse is used, the caller protects the combined response
+                myPKIMessage = new PKIMessage(myPKIHeader.build(), myPKIBody);
+                responseMessage = myPKIMessage.getEncoded();
+            } else if ((pbeKeyId != null) && (pbeKey != null) && (pbeDigestAlg != null) && (pbeMacAlg != null)) {
                 myPKIHeader.setProtectionAlg(new AlgorithmIdentifier(CMPObjectIdentifiers.passwordBasedMac));
                 PKIHeader header = myPKIHeader.build();
                 myPKIMessage = new PKIMessage(header, myPKIBody);
@@ -412,11 +427,35 @@ public class CmpResponseMessage implements CertificateResponseMessage {
             log.error("Error creating CertRepMessage: ", e);
         } catch (CRMFException e) {
             log.error("Error creating CertRepMessage: ", e);
+        } catch (IOException e) {
+            log.error("Error creating CertRepMessage: ", e);
         }
 
         return ret;
     }
 
+    private CertResponse[] getCertResponses() {
+        if (certResponses == null) {
+            return new CertResponse[] { certResponse };
+        }
+        return certResponses.toArray(new CertResponse[certResponses.size()]);
+    }
+
+    /** @return the CertResponse for the request, or null if the message has not been created or is not a CertRepMessage */
+    public CertResponse getCertResponse() {
+        return certResponse;
+    }
+
+    /**
+     * Set the responses to all certificate requests of a CMP message with several CertReqMsg, so that all of them are returned
+     * in the same CertRepMessage, in place of the response to this request only, when the message is created.
+     * 
+     * @param certResponses responses to all the requests, in request order
+     */
+    public void setCertResponses(final List<CertResponse> certResponses) {
+        this.certResponses = new ArrayList<CertResponse>(certResponses);
+    }
+
     @Override
     public boolean requireSignKeyInfo() {
         return true;
@@ -478,6 +517,9 @@ public class CmpResponseMessage implements CertificateResponseMessage {
             this.pbeKeyId = crmf.getPbeKeyId();
             this.pbeKey = crmf.getPbeKey();
             this.implicitConfirm = crmf.isImplicitConfirm();
+            if (reqMsg instanceof CrmfRequestMessage) {
+                this.protectionDeferred = ((CrmfRequestMessage) reqMsg).isResponseProtectionDeferred();
+            }
         }
     }
 
@@ -94,6 +94,10 @@ public class CrmfRequestMessage extends BaseCmpMessage implements ICrmfRequestMe
 
     private int requestType = 0;
     private int requestId = 0;
+    /** Index of the CertReqMsg handled by this message, when the request contains several */
+    private int requestIndex = 0;
+    /** True if the response is protected by the caller, together with the responses to the other CertReqMsg of the message */
+    private transient boolean responseProtectionDeferred = false;
     private String b64SenderNonce = null;
     private String b64TransId = null;
     /** Default CA DN */
@@ -133,9 +137,21 @@ public class CrmfRequestMessage extends BaseCmpMessage implements ICrmfRequestMe
      * @param extractUsernameComponent Defines which component from the DN should be used as username in EJBCA. Can be CN, UID or nothing. Null means that the username should have been pre-set, or that here it is the same as CN.
      */
     public CrmfRequestMessage(final PKIMessage pkiMessage, final String defaultCADN, final boolean allowRaVerifyPopo, final String extractUsernameComponent) {
+        this(pkiMessage, defaultCADN, allowRaVerifyPopo, extractUsernameComponent, 0);
+    }
+
+    /**
+     * Creates a request message for one of the CertReqMsg in a request with several, see {@link #getCertReqMsgCount(PKIMessage)}.
+     * 
+     * @param requestIndex the index of the CertReqMsg to handle, 0 for the first
+     * @see #CrmfRequestMessage(PKIMessage, String, boolean, String)
+     */
+    public CrmfRequestMessage(final PKIMessage pkiMessage, final String defaultCADN, final boolean allowRaVerifyPopo, final String extractUsernameComponent,
+            final int requestIndex) {
         if (log.isTraceEnabled()) {
             log.trace(">CrmfRequestMessage");
         }
+        this.requestIndex = requestIndex;
         setPKIMessage(pkiMessage);
         this.defaultCADN = defaultCADN;
         this.allowRaVerifyPopo = allowRaVerifyPopo;
@@ -168,7 +184,7 @@ public class CrmfRequestMessage extends BaseCmpMessage implements ICrmfRequestMe
         requestType = pkiBody.getType();
         final CertReqMessages msgs = getCertReqFromTag(pkiBody, requestType);
         try {
-            this.req = msgs.toCertReqMsgArray()[0];
+            this.req = msgs.toCertReqMsgArray()[requestIndex];
         } catch(Exception e) {
             this.req = CmpMessageHelper.getNovosecCertReqMsg(msgs);
         }
@@ -624,6 +640,34 @@ public class CrmfRequestMessage extends BaseCmpMessage implements ICrmfRequestMe
         return ret;
     }
 
+    /**
+     * @param pkiMessage a certificate request message
+     * @return the number of CertReqMsg in the request, or 1 if they can't be parsed separately
+     */
+    public static int getCertReqMsgCount(final PKIMessage pkiMessage) {
+        try {
+            return Math.max(1, CertReqMessages.getInstance(pkiMessage.getBody().getContent()).toCertReqMsgArray().length);
+        } catch (RuntimeException e) {
+            // Handled as a single request by init(), for example messages with the Novosec POP encoding
+            return 1;
+        }
+    }
+
+    /** @return the index of the CertReqMsg handled by this message */
+    public int getRequestIndex() {
+        return requestIndex;
+    }
+
+    /** @return true if the response to this request should not be protected, since it will be combined with the responses to the other requests */
+    public boolean isResponseProtectionDeferred() {
+        return responseProtectionDeferred;
+    }
+
+    /** @param responseProtectionDeferred true if the caller protects the response, together with the responses to the other requests */
+    public void setResponseProtectionDeferred(final boolean responseProtectionDeferred) {
+        this.responseProtectionDeferred = responseProtectionDeferred;
+    }
+
     private CertReqMessages getCertReqFromTag(final PKIBody body, final int tag) {
         CertReqMessages msgs = null;
         if (tag == 0 || tag == 2 || tag == 7 || tag == 9 || tag == 13) {
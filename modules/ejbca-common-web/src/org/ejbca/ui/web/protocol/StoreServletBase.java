@@ -301,6 +301,54 @@ public abstract class StoreServletBase extends HttpServlet {
 		sw.close();
 	}
 
+	/**
+	 * Sets the validators of a response, and answers a conditional request with 304 Not Modified if the client already has the
+	 * current certificate or CRL. If-None-Match is used when it is present, otherwise If-Modified-Since.
+	 *
+	 * @param eTag entity tag of the current certificate or CRL, including quotes
+	 * @param lastModified epoch milliseconds when the certificate or CRL was last changed, or -1 if it is not known
+	 * @return true if 304 Not Modified was sent and nothing more should be written to the response
+	 */
+	protected boolean isNotModified(HttpServletRequest req, HttpServletResponse resp, String eTag, long lastModified) {
+		resp.setHeader("ETag", eTag);
+		if (lastModified >= 0) {
+			resp.setDateHeader("Last-Modified", lastModified);
+		}
+		final boolean notModified;
+		final String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			notModified = isMatchingETag(ifNoneMatch, eTag);
+		} else {
+			long ifModifiedSince = -1;
+			try {
+				ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			} catch (IllegalArgumentException e) {
+				// Not a valid date, so the request is not conditional
+			}
+			// HTTP dates only have a resolution of one second
+			notModified = lastModified >= 0 && ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+		}
+		if (notModified) {
+			if (log.isDebugEnabled()) {
+				log.debug("Returning 304 Not Modified for " + eTag + ".");
+			}
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+
+	/** @return true if the If-None-Match header lists the entity tag, using the weak comparison of RFC 7232 */
+	private static boolean isMatchingETag(String ifNoneMatch, String eTag) {
+		final String opaqueTag = StringUtils.removeStart(eTag, "W/");
+		for (final String tag : ifNoneMatch.split(",")) {
+			final String trimmedTag = tag.trim();
+			if (trimmedTag.equals("*") || StringUtils.removeStart(trimmedTag, "W/").equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private class HtmlPrintWriter extends PrintWriter {
 
 		public HtmlPrintWriter(Writer out) {
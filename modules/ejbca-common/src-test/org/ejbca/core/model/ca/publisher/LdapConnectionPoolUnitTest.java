@@ -0,0 +1,170 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPConstraints;
+
+/**
+ * Test of the LdapConnectionPool, using connections that are not connected to any server.
+ *
+ * This is a unit test and does not require EJBCA to be running.
+ *
+ * @version $Id$
+ */
+public class LdapConnectionPoolUnitTest {
+
+    private static final long IDLE_TIMEOUT = 60000;
+
+    /** Connection that is connected and bound until it is disconnected, without a server. */
+    private static class MockedConnection extends LDAPConnection {
+        private boolean alive = true;
+        private boolean bound = true;
+        private boolean disconnected = false;
+
+        @Override
+        public boolean isConnected() {
+            return !disconnected;
+        }
+
+        @Override
+        public boolean isBound() {
+            return bound && !disconnected;
+        }
+
+        @Override
+        public boolean isConnectionAlive() {
+            return alive && !disconnected;
+        }
+
+        @Override
+        public void disconnect(final LDAPConstraints constraints) {
+            disconnected = true;
+        }
+    }
+
+    private static LdapConnectionPool newPool() {
+        return new LdapConnectionPool("test", new LDAPConstraints());
+    }
+
+    @Test
+    public void testReuseReturnedConnection() {
+        final LdapConnectionPool pool = newPool();
+        assertNull("An empty pool should not have any connection.", pool.borrowConnection(IDLE_TIMEOUT));
+        final MockedConnection connection = new MockedConnection();
+        pool.returnConnection(connection, 10);
+        assertEquals(1, pool.getIdleConnectionCount());
+        assertSame("The returned connection should be used again.", connection, pool.borrowConnection(IDLE_TIMEOUT));
+        assertFalse(connection.disconnected);
+        assertNull(pool.borrowConnection(IDLE_TIMEOUT));
+    }
+
+    @Test
+    public void testMostRecentlyUsedFirst() {
+        final LdapConnectionPool pool = newPool();
+        final MockedConnection first = new MockedConnection();
+        final MockedConnection second = new MockedConnection();
+        pool.returnConnection(first, 10);
+        pool.returnConnection(second, 10);
+        assertSame(second, pool.borrowConnection(IDLE_TIMEOUT));
+        assertSame(first, pool.borrowConnection(IDLE_TIMEOUT));
+    }
+
+    @Test
+    public void testMaxIdleConnections() {
+        final LdapConnectionPool pool = newPool();
+        final MockedConnection first = new MockedConnection();
+        final MockedConnection second = new MockedConnection();
+        pool.returnConnection(first, 1);
+        pool.returnConnection(second, 1);
+        assertEquals(1, pool.getIdleConnectionCount());
+        assertFalse(first.disconnected);
+        assertTrue("A connection that does not fit in the pool should be disconnected.", second.disconnected);
+    }
+
+    @Test
+    public void testIdleTimeout() throws InterruptedException {
+        final LdapConnectionPool pool = newPool();
+        final MockedConnection first = new MockedConnection();
+        final MockedConnection second = new MockedConnection();
+        pool.returnConnection(first, 10);
+        pool.returnConnection(second, 10);
+        Thread.sleep(20);
+        assertNull("Connections that have been idle for too long should not be used.", pool.borrowConnection(5));
+        assertTrue(first.disconnected);
+        assertTrue(second.disconnected);
+        assertEquals(0, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testDeadConnectionIsDiscarded() {
+        final LdapConnectionPool pool = newPool();
+        final MockedConnection dead = new MockedConnection();
+        final MockedConnection alive = new MockedConnection();
+        pool.returnConnection(alive, 10);
+        pool.returnConnection(dead, 10);
+        dead.alive = false;
+        assertSame("A connection closed by the server should be skipped.", alive, pool.borrowConnection(IDLE_TIMEOUT));
+        assertTrue(dead.disconnected);
+    }
+
+    @Test
+    public void testUnboundConnectionIsNotPooled() {
+        final LdapConnectionPool pool = newPool();
+        final MockedConnection connection = new MockedConnection();
+        connection.bound = false;
+        pool.returnConnection(connection, 10);
+        assertEquals(0, pool.getIdleConnectionCount());
+        assertTrue(connection.disconnected);
+    }
+
+    @Test
+    public void testPoolPerCredentials() {
+        final LdapConnectionPool pool = LdapConnectionPool.getInstance("testPoolPerCredentials", 389, LdapPublisher.ConnectionSecurity.PLAIN,
+                "CN=admin", "foo123", new LDAPConstraints());
+        assertSame("The same configuration should share the pool.", pool, LdapConnectionPool.getInstance("testPoolPerCredentials", 389,
+                LdapPublisher.ConnectionSecurity.PLAIN, "CN=admin", "foo123", new LDAPConstraints()));
+        // "Aa" and "BB" have the same String.hashCode()
+        assertNotSame("Passwords with the same hash code should not share a pool.",
+                LdapConnectionPool.getInstance("testPoolPerCredentials", 389, LdapPublisher.ConnectionSecurity.PLAIN, "CN=admin", "Aa", new LDAPConstraints()),
+                LdapConnectionPool.getInstance("testPoolPerCredentials", 389, LdapPublisher.ConnectionSecurity.PLAIN, "CN=admin", "BB", new LDAPConstraints()));
+        assertNotSame("Another login DN should not share the pool.", pool, LdapConnectionPool.getInstance("testPoolPerCredentials", 389,
+                LdapPublisher.ConnectionSecurity.PLAIN, "CN=other", "foo123", new LDAPConstraints()));
+    }
+
+    @Test
+    public void testIdlePoolIsDropped() throws InterruptedException {
+        final LdapConnectionPool pool = LdapConnectionPool.getInstance("testIdlePoolIsDropped", 389, LdapPublisher.ConnectionSecurity.PLAIN,
+                "CN=admin", "foo123", new LDAPConstraints());
+        final MockedConnection idle = new MockedConnection();
+        final MockedConnection borrowed = new MockedConnection();
+        pool.returnConnection(idle, 10);
+        Thread.sleep(20);
+        LdapConnectionPool.evictIdlePools(5);
+        assertTrue("An idle connection should be disconnected by the sweep.", idle.disconnected);
+        assertEquals(0, pool.getIdleConnectionCount());
+        assertNotSame("A pool that has not been used should be dropped.", pool, LdapConnectionPool.getInstance("testIdlePoolIsDropped", 389,
+                LdapPublisher.ConnectionSecurity.PLAIN, "CN=admin", "foo123", new LDAPConstraints()));
+        pool.returnConnection(borrowed, 10);
+        assertTrue("A connection returned to a dropped pool should be disconnected.", borrowed.disconnected);
+    }
+}
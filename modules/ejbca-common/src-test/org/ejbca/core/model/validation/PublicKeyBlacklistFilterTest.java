@@ -0,0 +1,103 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+/**
+ * Tests the public key blacklist Bloom filter.
+ *
+ * This is a unit test and does not require EJBCA to be running.
+ *
+ * @version $Id$
+ */
+public class PublicKeyBlacklistFilterTest {
+
+    private static final int ENTRIES = 10000;
+
+    private static String randomFingerprint(final Random random) {
+        final byte[] digest = new byte[32];
+        random.nextBytes(digest);
+        return Hex.toHexString(digest);
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        final PublicKeyBlacklistFilter filter = new PublicKeyBlacklistFilter(ENTRIES, 0.001);
+        final Random random = new Random(1);
+        final String[] fingerprints = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            fingerprints[i] = randomFingerprint(random);
+            filter.add(fingerprints[i]);
+        }
+        for (final String fingerprint : fingerprints) {
+            assertTrue("An added fingerprint must always be found.", filter.mightContain(fingerprint));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        final PublicKeyBlacklistFilter filter = new PublicKeyBlacklistFilter(ENTRIES, 0.01);
+        final Random random = new Random(2);
+        for (int i = 0; i < ENTRIES; i++) {
+            filter.add(randomFingerprint(random));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            if (filter.mightContain(randomFingerprint(random))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positive rate should be close to 1%, was " + falsePositives + " of " + ENTRIES, falsePositives < ENTRIES * 0.03);
+    }
+
+    @Test
+    public void testEmptyFilter() {
+        final PublicKeyBlacklistFilter filter = new PublicKeyBlacklistFilter(0, 0.001);
+        assertFalse(filter.mightContain(randomFingerprint(new Random(3))));
+        assertFalse(filter.mightContain(""));
+    }
+
+    @Test
+    public void testInSync() {
+        final PublicKeyBlacklistFilter filter = new PublicKeyBlacklistFilter(10, 0.001);
+        assertTrue(filter.isInSync(0, 0, 0));
+        filter.entryAdded(17, 1);
+        filter.entryAdded(-5, 1);
+        assertTrue(filter.isInSync(2, 12, 2));
+        filter.entryRemoved(17, 1);
+        assertFalse("A removed entry should be detected.", filter.isInSync(2, 12, 2));
+        assertTrue(filter.isInSync(1, -5, 1));
+        // A changed entry keeps its id but gets a higher update counter
+        assertFalse("A changed entry should be detected.", filter.isInSync(1, -5, 2));
+        filter.entryRemoved(-5, 1);
+        filter.entryAdded(-5, 2);
+        assertTrue(filter.isInSync(1, -5, 2));
+    }
+
+    @Test
+    public void testShouldCheckForUpdates() throws InterruptedException {
+        final PublicKeyBlacklistFilter filter = new PublicKeyBlacklistFilter(10, 0.001);
+        assertFalse("A cache time of Long.MAX_VALUE should never expire.", filter.shouldCheckForUpdates(Long.MAX_VALUE));
+        Thread.sleep(20);
+        assertTrue(filter.shouldCheckForUpdates(10));
+        filter.setCheckedNow();
+        assertFalse(filter.shouldCheckForUpdates(10000));
+    }
+}
@@ -0,0 +1,72 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @version $Id$
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordValue(i);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(100, histogram.getMaxValue());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void testLargeValuesWithinOnePercent() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1000; value <= 1000000; value += 1000) {
+            histogram.recordValue(value);
+        }
+        // 1000 values, so the 99th percentile is the 990th value
+        assertWithinOnePercent(990000, histogram.getValueAtPercentile(99));
+        assertWithinOnePercent(500000, histogram.getValueAtPercentile(50));
+        assertWithinOnePercent(999000, histogram.getValueAtPercentile(99.9));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testAddAndReset() {
+        final LatencyHistogram first = new LatencyHistogram();
+        final LatencyHistogram second = new LatencyHistogram();
+        first.recordValue(10);
+        second.recordValue(5000000000L);
+        first.add(second);
+        assertEquals(2, first.getTotalCount());
+        assertEquals(5000000000L, first.getMaxValue());
+        assertEquals(10, first.getValueAtPercentile(50));
+        assertWithinOnePercent(5000000000L, first.getValueAtPercentile(100));
+        first.reset();
+        assertEquals(0, first.getTotalCount());
+        assertEquals(0, first.getValueAtPercentile(99));
+    }
+
+    private static void assertWithinOnePercent(final long expected, final long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 100);
+    }
+}
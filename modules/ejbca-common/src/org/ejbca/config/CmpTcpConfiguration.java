@@ -6,15 +6,41 @@ public class CmpTcpConfiguration {
         return Integer.valueOf(EjbcaConfigurationHolder.getString("cmp.tcp.portno"));
     }
     
-    public static String getTCPLogDir() {
-        return EjbcaConfigurationHolder.getString("cmp.tcp.logdir");
-    }
-    
-    public static String getTCPConfigFile() {
-        return EjbcaConfigurationHolder.getString("cmp.tcp.conffile");
-    }
-    
     public static String getTCPBindAdress() {
         return EjbcaConfigurationHolder.getString("cmp.tcp.bindadress");
     }
-}
\ No newline at end of file
+
+    /** @return the number of threads that read and write the client connections */
+    public static int getTCPSelectorThreads() {
+        return getPositiveInt("cmp.tcp.selectorthreads", 2);
+    }
+
+    /** @return the number of threads that process CMP messages */
+    public static int getTCPWorkerThreads() {
+        return getPositiveInt("cmp.tcp.workerthreads", 16);
+    }
+
+    /** @return the number of received CMP messages that may wait for a worker thread */
+    public static int getTCPWorkerQueueSize() {
+        return getPositiveInt("cmp.tcp.workerqueuesize", 1000);
+    }
+
+    /** @return the time in milliseconds after which idle client connections are closed, or 0 to never close them */
+    public static long getTCPIdleTimeout() {
+        final String value = EjbcaConfigurationHolder.getString("cmp.tcp.idletimeout");
+        try {
+            return value == null ? 300000L : Math.max(0L, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 300000L;
+        }
+    }
+
+    private static int getPositiveInt(final String key, final int defaultValue) {
+        final String value = EjbcaConfigurationHolder.getString(key);
+        try {
+            return value == null ? defaultValue : Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
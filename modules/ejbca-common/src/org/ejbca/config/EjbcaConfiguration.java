@@ -313,6 +313,46 @@ public final class EjbcaConfiguration {
         return getLongProperty("peerconnector.cachetime", 60000L);
     }
 
+    /** @return the maximum number of CAs to generate CRLs or delta CRLs for at the same time, 1 to generate them one CA at a time. */
+    public static int getCrlGenerationConcurrency() {
+        return Math.max(1, getIntProperty("crlgen.concurrency", 1));
+    }
+
+    /** @return the number of threads that process the queue of a publisher at the same time, 1 to process it in one thread as before. */
+    public static int getPublisherQueueConcurrency() {
+        return Math.max(1, getIntProperty("publisher.queue.concurrency", 1));
+    }
+
+    /** @return the number of publisher queue entries that each thread claims at a time, when the queue is processed by several threads. */
+    public static int getPublisherQueueBatchSize() {
+        return Math.max(1, getIntProperty("publisher.queue.batchsize", 100));
+    }
+
+    /** @return milliseconds until claimed publisher queue entries can be claimed by another thread or node, for example if this node was stopped. */
+    public static long getPublisherQueueClaimTime() {
+        return getLongProperty("publisher.queue.claimtime", 600000L);
+    }
+
+    /** @return the number of CRL entries that are imported in each transaction when a CRL from an external CA is imported. */
+    public static int getCrlImportBatchSize() {
+        return Math.max(1, getIntProperty("crlimport.batchsize", 1000));
+    }
+
+    /** @return true if LDAP publishers should keep bound connections in a pool instead of connecting and binding for every operation. */
+    public static boolean isLdapPublisherConnectionPoolEnabled() {
+        return getBooleanProperty("publisher.ldap.connectionpool.enabled", false);
+    }
+
+    /** @return the maximum number of idle connections that LDAP publishers keep to each server. */
+    public static int getLdapPublisherConnectionPoolMaxIdle() {
+        return Math.max(1, getIntProperty("publisher.ldap.connectionpool.maxidle", 10));
+    }
+
+    /** @return milliseconds that an LDAP publisher connection may be idle in the pool before it is disconnected. */
+    public static long getLdapPublisherConnectionPoolIdleTimeout() {
+        return getLongProperty("publisher.ldap.connectionpool.idletimeout", 60000L);
+    }
+
     /** @return the value as a boolean or the default otherwise. */
     private static boolean getBooleanProperty(final String key, final boolean defaultValue) {
         final String value = EjbcaConfigurationHolder.getString(key);
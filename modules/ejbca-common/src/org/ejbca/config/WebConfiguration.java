@@ -295,6 +295,22 @@ public class WebConfiguration {
         return Boolean.valueOf(EjbcaConfigurationHolder.getString("certstore.enabled"));
     }
     
+    /**
+     * Returns the number of milliseconds that the CRL store serves the latest CRL of a CA from memory, without checking the database for
+     * a newer CRL. CRLs stored by this node are noticed immediately. Default is 10000.
+     */
+    public static long getCrlStoreCacheTime() {
+        final String value = EjbcaConfigurationHolder.getString("crlstore.cachetime");
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("\"crlstore.cachetime\" is not a decimal number. Using default value: 10000");
+            }
+        }
+        return 10000L;
+    }
+
     /** Returns the base URL path of the CRL store servlet, e.g. /ejbca/publicweb/crls */ 
     public static String getCrlStoreContextRoot() {
         String value = EjbcaConfigurationHolder.getString("crlstore.contextroot");
@@ -0,0 +1,227 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.model.ca.publisher;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Hex;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPConstraints;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Pool of idle LDAP connections to one server, that are connected and bound with the credentials of a publisher, so that publishing
+ * does not need a new TCP connection, TLS handshake and bind for every operation.
+ * <p>
+ * There is one pool for each combination of server, port, connection security and credentials, so publishers with the same
+ * configuration share connections and a changed configuration gives a new pool. Connections that have been idle for too long, or
+ * that the server has closed, are disconnected when they are found in the pool. Pools are also swept by {@link #evictIdlePools(long)},
+ * which drops the pools that have not been used for longer than the idle timeout, such as the pool of a configuration that was changed.
+ *
+ * @version $Id$
+ */
+public class LdapConnectionPool {
+
+    private static final Logger log = Logger.getLogger(LdapConnectionPool.class);
+
+    private static final ConcurrentMap<String, LdapConnectionPool> pools = new ConcurrentHashMap<>();
+    private static volatile long lastSweepTime = 0;
+
+    private final String name;
+    private final LDAPConstraints disconnectConstraints;
+    /** Most recently used connection first, so that connections that are not needed any more become idle and are disconnected */
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+    /** Guarded by idleConnections */
+    private long lastUsedTime = System.currentTimeMillis();
+    /** Set when the pool has been dropped, guarded by idleConnections */
+    private boolean closed = false;
+
+    private static class IdleConnection {
+        private final LDAPConnection connection;
+        private final long idleSince;
+
+        private IdleConnection(final LDAPConnection connection, final long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    LdapConnectionPool(final String name, final LDAPConstraints disconnectConstraints) {
+        this.name = name;
+        this.disconnectConstraints = disconnectConstraints;
+    }
+
+    /**
+     * @param server host name of the LDAP server
+     * @param port port of the LDAP server
+     * @param connectionSecurity how the connections are protected
+     * @param loginDn DN that the connections are bound with
+     * @param loginPassword password that the connections are bound with, only a SHA-256 digest of it is kept
+     * @param disconnectConstraints constraints used when disconnecting connections that are not kept
+     * @return the pool for connections with the given parameters
+     */
+    public static LdapConnectionPool getInstance(final String server, final int port, final LdapPublisher.ConnectionSecurity connectionSecurity,
+            final String loginDn, final String loginPassword, final LDAPConstraints disconnectConstraints) {
+        final String name = connectionSecurity + "://" + server + ":" + port + "/" + loginDn;
+        // A digest, so that different passwords for the same DN can not share a pool bound with the wrong password
+        final String key = name + "#" + getPasswordDigest(loginPassword);
+        LdapConnectionPool pool = pools.get(key);
+        if (pool == null) {
+            final LdapConnectionPool newPool = new LdapConnectionPool(name, disconnectConstraints);
+            pool = pools.putIfAbsent(key, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
+        }
+        return pool;
+    }
+
+    private static String getPasswordDigest(final String loginPassword) {
+        try {
+            return Hex.toHexString(MessageDigest.getInstance("SHA-256").digest(loginPassword.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Disconnects the connections that have been idle for longer than the timeout in all pools, and drops the pools that have no idle
+     * connections left and have not been used for longer than the timeout. Called whenever a pool is used, but only sweeps once per timeout.
+     *
+     * @param idleTimeout milliseconds that a connection or a pool may be idle
+     */
+    public static void evictIdlePools(final long idleTimeout) {
+        final long now = System.currentTimeMillis();
+        if (now - lastSweepTime <= idleTimeout) {
+            return;
+        }
+        lastSweepTime = now;
+        for (final Map.Entry<String, LdapConnectionPool> entry : pools.entrySet()) {
+            final LdapConnectionPool pool = entry.getValue();
+            pool.evictIdleConnections(now, idleTimeout);
+            if (pool.closeIfUnused(now, idleTimeout)) {
+                pools.remove(entry.getKey(), pool);
+                if (log.isDebugEnabled()) {
+                    log.debug("Dropped LDAP connection pool " + pool.name + " that has not been used for more than " + idleTimeout + " ms.");
+                }
+            }
+        }
+    }
+
+    /**
+     * @param idleTimeout milliseconds that a connection may have been idle to be used
+     * @return a connected and bound connection, or null if there is no usable connection in the pool
+     */
+    public LDAPConnection borrowConnection(final long idleTimeout) {
+        final long now = System.currentTimeMillis();
+        while (true) {
+            final IdleConnection idleConnection;
+            synchronized (idleConnections) {
+                lastUsedTime = now;
+                idleConnection = idleConnections.pollFirst();
+            }
+            if (idleConnection == null) {
+                return null;
+            }
+            if (now - idleConnection.idleSince > idleTimeout) {
+                // Since the most recently used connections are first, all the remaining ones have been idle for too long as well
+                disconnect(idleConnection.connection, "idle for " + (now - idleConnection.idleSince) + " ms");
+                evictIdleConnections(now, idleTimeout);
+            } else if (!idleConnection.connection.isConnectionAlive()) {
+                disconnect(idleConnection.connection, "closed by the server");
+            } else {
+                return idleConnection.connection;
+            }
+        }
+    }
+
+    /**
+     * Puts a connection in the pool, or disconnects it if it is not bound or there are already enough connections in the pool.
+     *
+     * @param connection a connection that is no longer used by the caller
+     * @param maxIdleConnections the maximum number of idle connections to keep in the pool
+     */
+    public void returnConnection(final LDAPConnection connection, final int maxIdleConnections) {
+        if (!connection.isConnected() || !connection.isBound()) {
+            disconnect(connection, "not bound");
+            return;
+        }
+        final String reason;
+        synchronized (idleConnections) {
+            lastUsedTime = System.currentTimeMillis();
+            if (closed) {
+                // The pool was dropped while the connection was borrowed, so it would never be borrowed again
+                reason = "pool dropped";
+            } else if (idleConnections.size() < maxIdleConnections) {
+                idleConnections.addFirst(new IdleConnection(connection, lastUsedTime));
+                return;
+            } else {
+                reason = "too many idle connections";
+            }
+        }
+        disconnect(connection, reason);
+    }
+
+    /** @return the number of idle connections in the pool */
+    public int getIdleConnectionCount() {
+        synchronized (idleConnections) {
+            return idleConnections.size();
+        }
+    }
+
+    /** Disconnects all connections that have been idle for longer than idleTimeout milliseconds. */
+    private void evictIdleConnections(final long now, final long idleTimeout) {
+        while (true) {
+            final IdleConnection idleConnection;
+            synchronized (idleConnections) {
+                final IdleConnection oldest = idleConnections.peekLast();
+                if (oldest == null || now - oldest.idleSince <= idleTimeout) {
+                    return;
+                }
+                idleConnection = idleConnections.pollLast();
+            }
+            disconnect(idleConnection.connection, "idle for " + (now - idleConnection.idleSince) + " ms");
+        }
+    }
+
+    /** @return true if the pool has no idle connections and has not been used for longer than idleTimeout milliseconds, and is now closed */
+    private boolean closeIfUnused(final long now, final long idleTimeout) {
+        synchronized (idleConnections) {
+            if (idleConnections.isEmpty() && now - lastUsedTime > idleTimeout) {
+                closed = true;
+            }
+            return closed;
+        }
+    }
+
+    private void disconnect(final LDAPConnection connection, final String reason) {
+        if (log.isDebugEnabled()) {
+            log.debug("Disconnecting LDAP connection from pool " + name + ", " + reason + ".");
+        }
+        try {
+            connection.disconnect(disconnectConstraints);
+        } catch (LDAPException e) {
+            log.debug("Failed to disconnect LDAP connection: " + e.getMessage());
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.cesecore.certificates.util.DNFieldExtractor;
 import org.cesecore.util.Base64;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.StringTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.util.LdapNameStyle;
 import org.ejbca.util.LdapTools;
@@ -314,18 +315,9 @@ public class LdapPublisher extends BasePublisher {
     		do {
     			connectionFailed = false;
     			String currentServer = servers.next();
+    			LDAPConnection connection = null;
     			try {
-    				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-    				lc.connect(currentServer, Integer.parseInt(getPort()));
-    				// Execute a STARTTLS handshake if it was requested.
-    				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("STARTTLS to LDAP server "+currentServer);
-                        }
-    				    lc.startTLS();
-    				}
-    				// authenticate to the server
-    				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+    				connection = connectAndBind(lc, currentServer, ldapVersion);
     				// Add or modify the entry
     				if (oldEntry != null && getModifyExistingUsers()) {
     					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -334,7 +326,7 @@ public class LdapPublisher extends BasePublisher {
     					if (log.isDebugEnabled()) {
     						log.debug("Writing modification to DN: "+oldDn);
     					}
-    					lc.modify(oldDn, mods, ldapStoreConstraints);
+    					connection.modify(oldDn, mods, ldapStoreConstraints);
     					String msg = intres.getLocalizedMessage("publisher.ldapmodify", "CERT", oldDn);
     					log.info(msg);  
     				} else {
@@ -345,10 +337,10 @@ public class LdapPublisher extends BasePublisher {
     							if(getCreateIntermediateNodes()) {
     								final String parentDN = CertTools.getParentDN(dn);
     								try {
-    									lc.read(parentDN, ldapSearchConstraints);
+    									connection.read(parentDN, ldapSearchConstraints);
     								} catch(LDAPException e) {
     									if(e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
-    										this.createIntermediateNodes(lc, dn);
+    										this.createIntermediateNodes(connection, dn);
     										String msg = intres.getLocalizedMessage("publisher.ldapaddedintermediate", "CERT", parentDN);
     										log.info(msg);
     									}
@@ -358,7 +350,7 @@ public class LdapPublisher extends BasePublisher {
     							if (log.isDebugEnabled()) {
     								log.debug("Adding DN: "+dn);
     							}
-    							lc.add(newEntry, ldapStoreConstraints);
+    							connection.add(newEntry, ldapStoreConstraints);
     							String msg = intres.getLocalizedMessage("publisher.ldapadd", "CERT", dn);
     							log.info(msg);
     						}
@@ -383,13 +375,7 @@ public class LdapPublisher extends BasePublisher {
     				log.error(msg, e);
     				throw new PublisherException(msg);            
     			} finally {
-    				// disconnect with the server
-    				try {
-    					lc.disconnect(ldapDisconnectConstraints);
-    				} catch (LDAPException e) {
-    					String msg = intres.getLocalizedMessage("publisher.errordisconnect", getLoginPassword());
-    					log.error(msg, e);
-    				}
+    				releaseConnection(connection != null ? connection : lc, currentServer, !connectionFailed);
     			}
     		} while (connectionFailed && servers.hasNext()) ;
         } else {
@@ -538,28 +524,18 @@ public class LdapPublisher extends BasePublisher {
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection connection = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				connection = connectAndBind(lc, currentServer, ldapVersion);
 				// Add or modify the entry
 				if (oldEntry != null) {
 					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
 					mods = (LDAPModification[])modSet.toArray(mods);
-					lc.modify(dn, mods, ldapStoreConstraints);
+					connection.modify(dn, mods, ldapStoreConstraints);
 					String msg = intres.getLocalizedMessage("publisher.ldapmodify", "CRL", dn);
 					log.info(msg);  
 				} else {
-					lc.add(newEntry, ldapStoreConstraints);
+					connection.add(newEntry, ldapStoreConstraints);
 					String msg = intres.getLocalizedMessage("publisher.ldapadd", "CRL", dn);
 					log.info(msg);  
 				}
@@ -577,13 +553,7 @@ public class LdapPublisher extends BasePublisher {
 				log.error(msg, e);
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(connection != null ? connection : lc, currentServer, !connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		if (log.isTraceEnabled()) {
@@ -689,27 +659,18 @@ public class LdapPublisher extends BasePublisher {
 			if (log.isDebugEnabled()) {
 				log.debug("currentServer: "+currentServer);
 			}
+			LDAPConnection connection = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+				connection = connectAndBind(lc, currentServer, ldapVersion);
 				// Add or modify the entry
 				if (modSet != null && getModifyExistingUsers()) {
 					if (removecert) {
 						LDAPModification[] mods = new LDAPModification[modSet.size()]; 
 						mods = (LDAPModification[])modSet.toArray(mods);
-						lc.modify(oldEntry.getDN(), mods, ldapStoreConstraints);            		
+						connection.modify(oldEntry.getDN(), mods, ldapStoreConstraints);            		
 					}
 					if (removeuser) {
-						lc.delete(oldEntry.getDN(), ldapStoreConstraints);            		
+						connection.delete(oldEntry.getDN(), ldapStoreConstraints);            		
 					}
 					String msg = intres.getLocalizedMessage("publisher.ldapremove", dn);
 					log.info(msg);  
@@ -737,13 +698,7 @@ public class LdapPublisher extends BasePublisher {
 				log.error(msg, e);
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(connection != null ? connection : lc, currentServer, !isConnectionNotDone);
 			}
 		}
 		if (log.isTraceEnabled()) {
@@ -768,24 +723,14 @@ public class LdapPublisher extends BasePublisher {
 				log.debug("Current server is: "+currentServer);
 			}
 			final String ldapdn = constructLDAPDN(certDN, userDN);
+			LDAPConnection connection = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				connection = connectAndBind(lc, currentServer, ldapVersion);
 				// try to read the old object
 				if (log.isDebugEnabled()) {
 					log.debug("Searching for old entry with DN '" + ldapdn+"'");
 				}
-				oldEntry = lc.read(ldapdn, ldapSearchConstraints);
+				oldEntry = connection.read(ldapdn, ldapSearchConstraints);
 				if (log.isDebugEnabled()) {
 					if (oldEntry != null) {
 						log.debug("Found an old entry with DN '" + ldapdn+"'");
@@ -812,13 +757,7 @@ public class LdapPublisher extends BasePublisher {
 				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
 				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(connection != null ? connection : lc, currentServer, !connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		return oldEntry;
@@ -921,6 +860,106 @@ public class LdapPublisher extends BasePublisher {
 		return lc;
 	}
 
+	/**
+	 * Connects to a server, executes a STARTTLS handshake if it was requested, and authenticates to the server. If the LDAP
+	 * connection pool is enabled, a bound connection from the pool is returned instead, if there is one that the server still answers
+	 * on. A stale pooled connection is disconnected and a new connection is made to the same server, so that it does not make the
+	 * caller fail over to the next server.
+	 *
+	 * @param lc an unconnected connection from {@link #createLdapConnection()}, that is connected if the connection pool is disabled
+	 * @param server the server to connect to
+	 * @return the bound connection, to be released with {@link #releaseConnection(LDAPConnection, String, boolean)}
+	 */
+	protected LDAPConnection connectAndBind(final LDAPConnection lc, final String server, final int ldapVersion) throws LDAPException, UnsupportedEncodingException {
+		final LDAPConnection connection;
+		if (EjbcaConfiguration.isLdapPublisherConnectionPoolEnabled()) {
+			final LdapConnectionPool pool = getConnectionPool(server);
+			LDAPConnection pooledConnection;
+			while ((pooledConnection = pool.borrowConnection(EjbcaConfiguration.getLdapPublisherConnectionPoolIdleTimeout())) != null) {
+				if (isConnectionAlive(pooledConnection)) {
+					return pooledConnection;
+				}
+				if (log.isDebugEnabled()) {
+					log.debug("Pooled LDAP connection to " + server + " is stale, trying another connection to the same server.");
+				}
+				releaseConnection(pooledConnection, server, false);
+			}
+			// lc may be used again by the caller, so a connection that may end up in the pool must be a separate one
+			connection = createLdapConnection();
+		} else {
+			connection = lc;
+		}
+		TCPTool.probeConnectionLDAP(server, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
+		try {
+			connection.connect(server, Integer.parseInt(getPort()));
+			// Execute a STARTTLS handshake if it was requested.
+			if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
+				if (log.isDebugEnabled()) {
+					log.debug("STARTTLS to LDAP server "+server);
+				}
+				connection.startTLS();
+			}
+			// authenticate to the server
+			connection.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+		} catch (LDAPException | UnsupportedEncodingException e) {
+			if (connection != lc) {
+				releaseConnection(connection, server, false);
+			}
+			throw e;
+		}
+		return connection;
+	}
+
+	/**
+	 * Checks that the server still answers on a pooled connection, by reading the root DSE without any attributes. The connection may
+	 * have been closed by the server or by a firewall while it was idle, without the client noticing.
+	 *
+	 * @return false if the request failed because the connection is broken
+	 */
+	private boolean isConnectionAlive(final LDAPConnection connection) {
+		try {
+			connection.read("", new String[] { LDAPConnection.NO_ATTRS }, ldapSearchConstraints);
+		} catch (LDAPException e) {
+			switch (e.getResultCode()) {
+			case LDAPException.SERVER_DOWN:
+			case LDAPException.CONNECT_ERROR:
+			case LDAPException.LDAP_TIMEOUT:
+				return false;
+			default:
+				// The server answered, even if it does not let us read the root DSE
+				return true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a connection to the LDAP connection pool, or disconnects it if the pool is disabled.
+	 *
+	 * @param connection a connection from {@link #connectAndBind(LDAPConnection, String, int)}
+	 * @param server the server that the connection is connected to
+	 * @param reusable false if the connection failed, so that it should be disconnected
+	 */
+	protected void releaseConnection(final LDAPConnection connection, final String server, final boolean reusable) {
+		if (reusable && EjbcaConfiguration.isLdapPublisherConnectionPoolEnabled()) {
+			getConnectionPool(server).returnConnection(connection, EjbcaConfiguration.getLdapPublisherConnectionPoolMaxIdle());
+			return;
+		}
+		// disconnect with the server
+		try {
+			connection.disconnect(ldapDisconnectConstraints);
+		} catch (LDAPException e) {
+			String msg = intres.getLocalizedMessage("publisher.errordisconnect");
+			log.error(msg, e);
+		}
+	}
+
+	private LdapConnectionPool getConnectionPool(final String server) {
+		LdapConnectionPool.evictIdlePools(EjbcaConfiguration.getLdapPublisherConnectionPoolIdleTimeout());
+		return LdapConnectionPool.getInstance(server, Integer.parseInt(getPort()), getConnectionSecurity(), getLoginDN(), getLoginPassword(),
+				ldapDisconnectConstraints);
+	}
+
 	/**
 	 *  Returns the hostnames of ldap server.
 	 */    
@@ -21,7 +21,6 @@ import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
 import org.ejbca.core.model.InternalEjbcaResources;
-import org.ejbca.util.TCPTool;
 
 import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
@@ -85,22 +84,11 @@ public class LdapSearchPublisher extends LdapPublisher {
 	        // PARTE 1: Search for an existing entry in the LDAP directory
 			//  If it exists, this will be returned to be populated
 			//  if not exist, nothing will be returned and a new LDAP entry created
+			LDAPConnection connection = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
 				// connect to the server
 				log.debug("Connecting to " + currentServer);
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-
-				// authenticate to the server
-				log.debug("Logging in with BIND DN " + getLoginDN());
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				connection = connectAndBind(lc, currentServer, ldapVersion);
 				//searchFilter = "(&(objectclass=person)(uid=" + username + "))";
 				String searchFilter = getSearchFilter();
 				if (log.isDebugEnabled()) {
@@ -140,7 +128,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				int searchScope = LDAPConnection.SCOPE_SUB;
 		        String attrs[] = { LDAPConnection.NO_ATTRS };
 				boolean attributeTypesOnly = true;
-				LDAPSearchResults searchResults = lc.search(searchbasedn, // container to search
+				LDAPSearchResults searchResults = connection.search(searchbasedn, // container to search
 						searchScope, // search scope
 						searchFilter, // search filter
 						attrs, // "1.1" returns entry name only
@@ -166,7 +154,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				}
 				// try to read the old object
 				try {
-					oldEntry = lc.read(ldapDN, ldapSearchConstraints);
+					oldEntry = connection.read(ldapDN, ldapSearchConstraints);
 				} catch (LDAPException e) {
 					if (e.getResultCode() == LDAPException.NO_SUCH_OBJECT) {
 						String msg = intres.getLocalizedMessage("publisher.noentry", ldapDN);
@@ -194,13 +182,7 @@ public class LdapSearchPublisher extends LdapPublisher {
 				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
 	            throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(connection != null ? connection : lc, currentServer, !connectionFailed);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
         return oldEntry;
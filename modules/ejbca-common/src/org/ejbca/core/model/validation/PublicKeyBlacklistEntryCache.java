@@ -21,7 +21,8 @@ import org.cesecore.internal.CommonCache;
 import org.cesecore.internal.CommonCacheBase;
 
 /**
- * Public key blacklist entry (see {@link PublicKeyBlacklistEntry}) and name to id lookup cache. 
+ * Public key blacklist entry (see {@link PublicKeyBlacklistEntry}) and name to id lookup cache, and the {@link PublicKeyBlacklistFilter}
+ * over all public key blacklist entries.
  * Configured through CesecoreConfiguration.getCachePublicKeyBlacklistTime().
  * 
  * @version $Id$
@@ -43,6 +44,8 @@ public enum PublicKeyBlacklistEntryCache implements CommonCache<PublicKeyBlackli
         }
     };
 
+    private volatile PublicKeyBlacklistFilter filter = null;
+
     @Override
     public PublicKeyBlacklistEntry getEntry(final Integer id) {
         if (id == null) {
@@ -90,6 +93,16 @@ public enum PublicKeyBlacklistEntryCache implements CommonCache<PublicKeyBlackli
     @Override
     public void flush() {
         cache.flush();
+        filter = null;
+    }
+
+    /** @return the filter over all public key blacklist fingerprints, or null if it has not been built since the last flush */
+    public PublicKeyBlacklistFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(final PublicKeyBlacklistFilter filter) {
+        this.filter = filter;
     }
 
     @Override
@@ -0,0 +1,138 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.model.validation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the fingerprints in the public key blacklist (see {@link PublicKeyBlacklistEntry#createFingerprint(java.security.PublicKey)}).
+ *
+ * A fingerprint that was added is always reported as possibly blacklisted, while a fingerprint that was not added is reported as possibly
+ * blacklisted with the false positive rate given when the filter was created. Since almost all keys that are validated are not blacklisted,
+ * this lets the validator answer most checks from memory without reading the database. Entries can not be removed, a removed blacklist entry
+ * will only cause a false positive until the filter is rebuilt.
+ *
+ * The filter also keeps the number of entries, the sum of their ids and the sum of their update counters, of the table it was built from.
+ * These are used by BlacklistSessionBean to discover entries added, removed or changed by other nodes.
+ *
+ * @version $Id$
+ */
+public class PublicKeyBlacklistFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private long entryCount;
+    private long idSum;
+    private long updateCounterSum;
+    private volatile long lastCheckedTime;
+
+    /**
+     * @param expectedEntries the number of fingerprints the filter is sized for
+     * @param falsePositiveRate the wanted false positive rate when the expected number of fingerprints have been added, for example 0.01
+     */
+    public PublicKeyBlacklistFilter(final long expectedEntries, final double falsePositiveRate) {
+        final long entries = Math.max(expectedEntries, 1);
+        final long optimalBitCount = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        final int words = (int) Math.min(Math.max((optimalBitCount + 63) / 64, 1), Integer.MAX_VALUE);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = words * 64L;
+        this.hashCount = (int) Math.max(1, Math.min(Math.round((double) bitCount / entries * Math.log(2)), 16));
+        this.lastCheckedTime = System.currentTimeMillis();
+    }
+
+    /** Adds a fingerprint to the filter. May be called concurrently with {@link #mightContain(String)}. */
+    public void add(final String fingerprint) {
+        final long hash1 = hash(fingerprint);
+        final long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            final int word = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /** @return false if the fingerprint has definitely not been added to the filter, true if it might have been */
+    public boolean mightContain(final String fingerprint) {
+        final long hash1 = hash(fingerprint);
+        final long hash2 = mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records that an entry was added to the blacklist table, after its fingerprint has been added to the filter. */
+    public synchronized void entryAdded(final int id, final int updateCounter) {
+        entryCount++;
+        idSum += id;
+        updateCounterSum += updateCounter;
+    }
+
+    /** Records that an entry was removed from the blacklist table, or is about to be changed. The fingerprint remains in the filter. */
+    public synchronized void entryRemoved(final int id, final int updateCounter) {
+        entryCount--;
+        idSum -= id;
+        updateCounterSum -= updateCounter;
+    }
+
+    /**
+     * @return true if the filter was built from, and has been kept up to date with, a table with the given number of entries, sum of ids
+     * and sum of update counters
+     */
+    public synchronized boolean isInSync(final long entryCount, final long idSum, final long updateCounterSum) {
+        return this.entryCount == entryCount && this.idSum == idSum && this.updateCounterSum == updateCounterSum;
+    }
+
+    /** @return the size of the filter in bytes */
+    public long getSize() {
+        return bitCount / 8;
+    }
+
+    /** @return true if the filter has not been checked against the database within the given number of milliseconds */
+    public boolean shouldCheckForUpdates(final long cacheTime) {
+        // Subtract rather than add, since the cache time can be Long.MAX_VALUE
+        return System.currentTimeMillis() - lastCheckedTime > cacheTime;
+    }
+
+    /** Records that the filter has been checked against the database. */
+    public void setCheckedNow() {
+        lastCheckedTime = System.currentTimeMillis();
+    }
+
+    /** 64 bit FNV-1a of the characters, followed by a final mix since the low bits of FNV-1a are weak. */
+    private static long hash(final String fingerprint) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < fingerprint.length(); i++) {
+            hash ^= fingerprint.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /** Finalizer of SplitMix64. */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,129 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, with buckets of logarithmically growing size so that percentiles can be read with a relative error below 1%
+ * for any value, like HdrHistogram. Values can be recorded by several threads at the same time without locking.
+ * <p>
+ * Values below 256 are counted exactly. Larger values are counted in 128 buckets for each power of two.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets for each power of two */
+    private static final int SUB_BUCKET_HALF_COUNT = 128;
+    private static final int SUB_BUCKET_HALF_COUNT_BITS = 7;
+    private static final int BUCKET_COUNT = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /** @param value the value to record, for example a latency in microseconds. Negative values are recorded as 0. */
+    public void recordValue(final long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(v);
+        long max;
+        while (v > (max = maxValue.get()) && !maxValue.compareAndSet(max, v)) {
+            // Another thread recorded a value at the same time, try again
+        }
+    }
+
+    /** Add all values recorded in another histogram */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            final long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+        final long otherMax = other.getMaxValue();
+        long max;
+        while (otherMax > (max = maxValue.get()) && !maxValue.compareAndSet(max, otherMax)) {
+            // Another thread recorded a value at the same time, try again
+        }
+    }
+
+    /** Forget all recorded values. Values recorded at the same time by other threads may or may not be forgotten. */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    public double getMean() {
+        final long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100, for example 99.9
+     * @return the largest value that the given percentage of the recorded values are less than or equal to, rounded up to the upper limit of
+     *          its bucket but never more than the largest recorded value. 0 if no values have been recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * count));
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulativeCount += counts.get(i);
+            if (cumulativeCount >= countAtPercentile) {
+                return Math.min(highestValueInBucket(i), getMaxValue());
+            }
+        }
+        return getMaxValue();
+    }
+
+    private static int index(final long value) {
+        if (value < 2 * SUB_BUCKET_HALF_COUNT) {
+            return (int) value;
+        }
+        // Shift so that the value is between 128 and 255, and use the shift to select the range of buckets
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_COUNT_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestValueInBucket(final int index) {
+        if (index < 2 * SUB_BUCKET_HALF_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        final long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+        final long highest = ((subBucket + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
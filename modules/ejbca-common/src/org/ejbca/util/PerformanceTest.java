@@ -20,45 +20,59 @@ import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Runs the tests of the clientToolBox stress test commands in a number of threads, and prints statistics while the tests are running.
+ * <p>
+ * By default each thread starts a new test as soon as it has finished the previous one (closed loop). The following system properties,
+ * that can be set in JAVA_OPT for ejbcaClientToolBox.sh, change how the tests are run for all commands:
+ * <ul>
+ * <li>performance.rate - number of tests to start each second (open loop). The response time of a test is measured from the time it
+ * should have been started, so a server that can't keep up gets the response times that a client would see. The number of threads
+ * limits how many tests can run at the same time.</li>
+ * <li>performance.warmup - number of seconds before the statistics are reset and the steady state is measured.</li>
+ * <li>performance.duration - number of seconds to measure the steady state, after the warm up. The test stops after this time even if the
+ * number of tests has not been reached.</li>
+ * <li>performance.resultfile - file to write the steady state results to when the test is finished. JSON if the name ends with .json,
+ * otherwise CSV.</li>
+ * </ul>
+ * 
  * @version $Id$
  */
 @SuppressWarnings("synthetic-access")
 public class PerformanceTest {
 
     private final int STATISTIC_UPDATE_PERIOD_IN_SECONDS = 10;
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
     private final Log log;
     private final Random random;
-    private boolean isSomeThreadUsingRandom;
+    /** Tests started each second, or 0 if each thread starts a new test when the previous has finished */
+    private final double rate;
+    private final long warmupSeconds;
+    private final long durationSeconds;
+    private final String resultFile;
+
     public PerformanceTest() {
         this.log =new Log();
         this.random = new Random();
-        this.isSomeThreadUsingRandom = false;
+        this.rate = Double.parseDouble(System.getProperty("performance.rate", "0"));
+        this.warmupSeconds = Long.parseLong(System.getProperty("performance.warmup", "0"));
+        this.durationSeconds = Long.parseLong(System.getProperty("performance.duration", "0"));
+        this.resultFile = System.getProperty("performance.resultfile");
     }
     public long nextLong() {
-        synchronized (this.random) {
-            while ( this.isSomeThreadUsingRandom ) {
-                try {
-                    this.random.wait();
-                } catch (InterruptedException e) {
-                    // should never ever happen
-                    throw new Error(e);
-                }
-            }
-            this.isSomeThreadUsingRandom = true;
-            final long result = this.random.nextLong();
-            this.isSomeThreadUsingRandom = false;
-            this.random.notifyAll();
-            return result;        
-        }
+        return ThreadLocalRandom.current().nextLong();
     }
     public Log getLog() {
         return this.log;
@@ -81,7 +95,7 @@ public class PerformanceTest {
     private class JobRunner implements Runnable { // NOPMD this is a standalone test, not run in jee app
         final private Command command;
         private boolean bIsFinished;
-        private int time;
+        private long time;
         private boolean isSuccess = false;
         JobRunner( Command _command ) throws Exception {
             this.bIsFinished = false;
@@ -106,9 +120,9 @@ public class PerformanceTest {
         @Override
         public void run() {
             try {
-                final long startTime = new Date().getTime();
+                final long startTime = System.nanoTime();
                 this.isSuccess = this.command.doIt();
-                this.time = (int)(new Date().getTime()-startTime);
+                this.time = System.nanoTime()-startTime;
                 this.bIsFinished = true;
             } catch (Throwable t) { // NOPMD: keep on testing 
                 PerformanceTest.this.log.error("Command failure. "+this.command, t);
@@ -118,7 +132,8 @@ public class PerformanceTest {
                 }
             }
         }
-        public int getTimeConsumed() {
+        /** @return the time the command took in nanoseconds */
+        public long getTimeConsumed() {
             return this.time;
         }
     }
@@ -154,16 +169,16 @@ public class PerformanceTest {
             PerformanceTest.this.log.info("Thread nr "+ this.nr +" started.");
             while(this.statistic.doMoreTests()) {
                 try {
-                    final long startTime = new Date().getTime();
+                    final long startTime = this.statistic.waitForStartTime();
                     Command failingCommand = null;
                     for (int i=0; failingCommand==null && i<this.commands.length; i++) {
                         if ( this.maxWaitTime > 0 ) {
-                            final int waitTime = (int)(this.maxWaitTime*PerformanceTest.this.random.nextFloat());
+                            final int waitTime = (int)(this.maxWaitTime*ThreadLocalRandom.current().nextFloat());
                             if ( waitTime > 0) {
                                 synchronized(this) {
                                     wait(waitTime);
                                 }
-                                this.statistic.addTime("Time waiting between jobs",waitTime);
+                                this.statistic.addTime("Time waiting between jobs", TimeUnit.MILLISECONDS.toNanos(waitTime));
                             }
                         }
                         final Command command = this.commands[i];
@@ -173,15 +188,16 @@ public class PerformanceTest {
                         }
                         this.statistic.addTime(command.getJobTimeDescription(), jobRunner.getTimeConsumed());
                     }
+                    final long testTime = System.nanoTime()-startTime;
                     String sResult = "Test in thread "+this.nr+" completed ";
                     if ( failingCommand==null ) {
-                        this.statistic.taskFinished();
+                        this.statistic.taskFinished(testTime);
                         sResult += "successfully";
                     } else {
                         this.statistic.taskFailed();
                         sResult += "but failed when the command '"+failingCommand.getClass().getCanonicalName()+"' was executed";
                     }
-                    sResult += ". The time it took was "+(new Date().getTime()-startTime) + " ms.";
+                    sResult += ". The time it took was "+TimeUnit.NANOSECONDS.toMillis(testTime) + " ms.";
                     if ( failingCommand==null ) {
                         PerformanceTest.this.log.info(sResult);
                     } else {
@@ -201,6 +217,7 @@ public class PerformanceTest {
         for(int i=0; i < numberOfThreads;i++) {
             threads[i] = new Thread(new TestInstance(i, waitTime, statistic, commandFactory)); // NOPMD this is a standalone test, not run in jee app
         }
+        statistic.start();
         for(int i=0; i < numberOfThreads;i++) {
             threads[i].start();
         }
@@ -209,6 +226,13 @@ public class PerformanceTest {
         printStream.println("Statistic will be written to standard output each "+this.STATISTIC_UPDATE_PERIOD_IN_SECONDS+" second.");
         printStream.println("The test was started at "+ new Date());
         printStream.format("%d threads will be started and %d number of tests will be performed. Each thread will wait between 0 and %d milliseconds between each test.%n", numberOfThreads, numberOfTests, waitTime);
+        if ( this.rate > 0 ) {
+            printStream.format("%s tests will be started each second, the response time is measured from when each test should have been started.%n", Double.toString(this.rate));
+        }
+        if ( this.warmupSeconds > 0 || this.durationSeconds > 0 ) {
+            printStream.format("Statistics are reset after a warm up of %d seconds. The steady state is measured for %s.%n", this.warmupSeconds,
+                    this.durationSeconds > 0 ? this.durationSeconds+" seconds" : "the rest of the test");
+        }
         synchronized(this) {
             wait();
         }
@@ -219,19 +243,38 @@ public class PerformanceTest {
     private class Statistic implements Runnable { // NOPMD this is a standalone test, not run in jee app
         private final int nrOfThreads;
         private final int nrOfTests;
-        private final Map<String, Job> jobs;
+        private final ConcurrentHashMap<String, Job> jobs;
+        /** Response times of the successful tests, in microseconds */
+        private final LatencyHistogram testTimes = new LatencyHistogram();
+        /** Number of tests that have been given a start time */
+        private final AtomicLong nrOfScheduled = new AtomicLong();
         private int nrOfStarted = 0;
         private int nrOfSuccesses = 0;
         private int nrOfSuccessesLastTime = 0;
         private int nrOfFailures = 0;
+        /** Successes and failures before the steady state */
+        private int nrOfWarmupSuccesses = 0;
+        private int nrOfWarmupFailures = 0;
+        private long startNanos;
+        private long steadyStateStartNanos;
+        /** When the test should stop, or 0 if it runs until the number of tests have been performed */
+        private long endNanos;
+        private volatile boolean isSteadyState;
         private final PrintStream printStream;
         
         public Statistic(int _nrOfThreads, int _nrOfTests, PrintStream _printStream) {
             this.nrOfThreads = _nrOfThreads;
             this.nrOfTests = _nrOfTests;
-            this.jobs = new HashMap<String, Job>();
+            this.jobs = new ConcurrentHashMap<String, Job>();
             this.printStream = _printStream;
         }
+
+        private synchronized void start() {
+            this.startNanos = System.nanoTime();
+            this.steadyStateStartNanos = this.startNanos + TimeUnit.SECONDS.toNanos(PerformanceTest.this.warmupSeconds);
+            this.isSteadyState = PerformanceTest.this.warmupSeconds <= 0;
+            this.endNanos = PerformanceTest.this.durationSeconds > 0 ? this.steadyStateStartNanos + TimeUnit.SECONDS.toNanos(PerformanceTest.this.durationSeconds) : 0;
+        }
         
         private class Job {
             private final String name;
@@ -240,14 +283,17 @@ public class PerformanceTest {
             private long maxTime = Long.MIN_VALUE;
             private Date minTimeAt;
             private Date maxTimeAt;
+            /** Times in microseconds */
+            private final LatencyHistogram histogram = new LatencyHistogram();
             
             private Job(String _name) {
                 this.name = _name;
                 this.totalTime = 0;
             }
             
-            private void addTime(long duration) {
+            private synchronized void addTime(long duration) {
                 this.totalTime += duration;
+                this.histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(duration));
                 final Date now = new Date();
 
                 if (duration < this.minTime) {
@@ -260,17 +306,30 @@ public class PerformanceTest {
                 }
             }
             
-            private long getTimeSpent() {
+            private synchronized long getTimeSpent() {
                 return this.totalTime;
             }
             
+            private synchronized void reset() {
+                this.totalTime = 0;
+                this.minTime = Long.MAX_VALUE;
+                this.maxTime = Long.MIN_VALUE;
+                this.minTimeAt = null;
+                this.maxTimeAt = null;
+                this.histogram.reset();
+            }
+            
             private void printRelativeTime(long allThreadsTime) {
-                printLine(this.name, new Float((float)this.totalTime / allThreadsTime));
+                printLine(this.name, new Float((float)getTimeSpent() / allThreadsTime));
             }
             
-            private void printMinMaxTime() {
-                printLine("Min time for job '"+this.name+"' (ms)", Long.toString(this.minTime), this.minTimeAt);
-                printLine("Max time per job '"+this.name+"' (ms)", Long.toString(this.maxTime), this.maxTimeAt);
+            private synchronized void printMinMaxTime() {
+                printLine("Min time for job '"+this.name+"' (ms)", toMillis(this.minTime), this.minTimeAt);
+                printLine("Max time per job '"+this.name+"' (ms)", toMillis(this.maxTime), this.maxTimeAt);
+            }
+            
+            private void printPercentiles() {
+                printLine("Percentiles for job '"+this.name+"' (ms)", getPercentiles(this.histogram));
             }
         }
         
@@ -280,11 +339,14 @@ public class PerformanceTest {
                 return job;
             }
             job = new Job(name);
-            this.jobs.put(name, job);
-            return job;
+            final Job existing = this.jobs.putIfAbsent(name, job);
+            return existing!=null ? existing : job;
         }
         
-        private boolean isNotReady() {
+        private synchronized boolean isNotReady() {
+            if ( this.endNanos!=0 && System.nanoTime()>=this.endNanos ) {
+                return false;
+            }
             return this.nrOfTests<0 || (this.nrOfFailures+this.nrOfSuccesses)<this.nrOfTests;
         }
         
@@ -300,19 +362,67 @@ public class PerformanceTest {
             killMeIfReady();
         }
         
-        private synchronized void taskFinished() {
+        private synchronized void taskFinished(long testTime) {
             this.nrOfSuccesses++;
+            this.testTimes.recordValue(TimeUnit.NANOSECONDS.toMicros(testTime));
             killMeIfReady();
         }
         
         private synchronized boolean doMoreTests() {
+            if ( this.endNanos!=0 && System.nanoTime()>=this.endNanos ) {
+                return false;
+            }
             return this.nrOfTests<0 || this.nrOfStarted++<this.nrOfTests;
         }
         
+        /**
+         * Wait until the next test should be started, when a rate is set.
+         * @return the time the test should have been started, or now if no rate is set
+         */
+        private long waitForStartTime() throws InterruptedException {
+            if ( PerformanceTest.this.rate<=0 ) {
+                return System.nanoTime();
+            }
+            final long scheduledTime = this.startNanos + (long)(this.nrOfScheduled.getAndIncrement()*1e9/PerformanceTest.this.rate);
+            final long waitTime = scheduledTime - System.nanoTime();
+            if ( waitTime > 0 ) {
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            }
+            return scheduledTime;
+        }
+        
         private void addTime(String timeName, long duration) {
             getJob(timeName).addTime(duration);
         }
         
+        /** Forget the statistics of the warm up */
+        private synchronized void startSteadyState() {
+            this.nrOfWarmupSuccesses = this.nrOfSuccesses;
+            this.nrOfWarmupFailures = this.nrOfFailures;
+            this.testTimes.reset();
+            for (final Job job : this.jobs.values()) {
+                job.reset();
+            }
+            this.isSteadyState = true;
+        }
+        
+        private String toMillis(long nanos) {
+            return String.format(Locale.ROOT, "%.3f", Double.valueOf(nanos/1e6));
+        }
+        
+        private String getPercentiles(LatencyHistogram histogram) {
+            final StringBuilder sb = new StringBuilder();
+            for (final double percentile : PERCENTILES) {
+                sb.append(String.format(Locale.ROOT, "p%s=%.3f ", formatPercentile(percentile), Double.valueOf(histogram.getValueAtPercentile(percentile)/1e3)));
+            }
+            sb.append(String.format(Locale.ROOT, "max=%.3f", Double.valueOf(histogram.getMaxValue()/1e3)));
+            return sb.toString();
+        }
+        
+        private String formatPercentile(double percentile) {
+            return percentile==Math.rint(percentile) ? Long.toString((long)percentile) : Double.toString(percentile);
+        }
+        
         private void printLine(String description, Object value) {
         	printLine(description, value, null);
         }
@@ -329,11 +439,13 @@ public class PerformanceTest {
             }
         }
         
-        private void printStatistics(final long startTime, final long periodStartTime, final long endTime) {
-            final long time = (int)(endTime-startTime);
+        private void printStatistics(final long periodStartTime, final long endTime) {
+            final long statisticStartTime = this.isSteadyState ? this.steadyStateStartNanos : this.startNanos;
+            final long time = Math.max(1, endTime-statisticStartTime);
             final long allThreadsTime = this.nrOfThreads*time;
-            final Float testsPerSecond = new Float((float)this.nrOfSuccesses*1000/time);
-            final Float testsPerSecondInLastPeriod = new Float((float)(this.nrOfSuccesses - this.nrOfSuccessesLastTime)*1000/(endTime-periodStartTime));
+            final int successes = this.nrOfSuccesses - (this.isSteadyState ? this.nrOfWarmupSuccesses : 0);
+            final Float testsPerSecond = new Float((float)successes*1e9/time);
+            final Float testsPerSecondInLastPeriod = new Float((float)(this.nrOfSuccesses - this.nrOfSuccessesLastTime)*1e9/Math.max(1, endTime-periodStartTime));
             this.nrOfSuccessesLastTime = this.nrOfSuccesses;
             final float relativeWork; 
             {
@@ -347,10 +459,12 @@ public class PerformanceTest {
             final String CSI = "\u001B[";
 
             this.printStream.println(CSI+"J"); // clear rest of screen on VT100 terminals.
+            printLine("Phase", this.isSteadyState ? "steady state" : "warm up");
             printLine("Total # of successfully performed tests", Integer.valueOf(this.nrOfSuccesses));
             printLine("Total # of failed tests", Integer.valueOf(this.nrOfFailures));
             printLine("# of tests completed each second", testsPerSecond);
             printLine("# of tests completed each second in last period", testsPerSecondInLastPeriod);
+            printLine("Test response time percentiles (ms)", getPercentiles(this.testTimes));
             this.printStream.println();
             this.printStream.println("Relative average time for different tasks (all should sum up to 1):");
             {
@@ -361,35 +475,101 @@ public class PerformanceTest {
             }
             printLine("Time spent with test client work", new Float(relativeWork));
             this.printStream.println();
-            this.printStream.println("Absolute extremes:");
+            this.printStream.println("Absolute extremes and percentiles:");
             {
                 final Iterator<Job> i = this.jobs.values().iterator();
                 while( i.hasNext() ) {
-                    i.next().printMinMaxTime();
+                    final Job job = i.next();
+                    job.printMinMaxTime();
+                    job.printPercentiles();
                 }
             }
             if ( isNotReady() ) { // move up if test is not finished.
-                this.printStream.print(CSI+(10+this.jobs.size()*3)+"A"); // move up. 3 lines for each job. relative max min
+                this.printStream.print(CSI+(12+this.jobs.size()*4)+"A"); // move up. 4 lines for each job. relative max min percentiles
             }
             this.printStream.flush();
         }
         
+        /** Write the results of the steady state to the result file, as JSON or CSV */
+        private void writeResults(final long endTime) {
+            final String fileName = PerformanceTest.this.resultFile;
+            if ( fileName==null || fileName.trim().length()==0 ) {
+                return;
+            }
+            final double seconds = (endTime-this.steadyStateStartNanos)/1e9;
+            final int successes = this.nrOfSuccesses-this.nrOfWarmupSuccesses;
+            final int failures = this.nrOfFailures-this.nrOfWarmupFailures;
+            final List<String> names = new ArrayList<String>();
+            final List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+            names.add("Test");
+            histograms.add(this.testTimes);
+            for (final Job job : this.jobs.values()) {
+                names.add(job.name);
+                histograms.add(job.histogram);
+            }
+            try (final PrintWriter writer = new PrintWriter(new FileWriter(fileName.trim()))) {
+                if ( fileName.trim().toLowerCase(Locale.ROOT).endsWith(".json") ) {
+                    writer.format(Locale.ROOT, "{\"threads\":%d,\"rate\":%s,\"warmupSeconds\":%d,\"seconds\":%.3f,\"successes\":%d,\"failures\":%d,\"testsPerSecond\":%.3f,\"latencies\":[",
+                            this.nrOfThreads, Double.toString(PerformanceTest.this.rate), PerformanceTest.this.warmupSeconds, seconds, successes, failures, successes/seconds);
+                    for (int i=0; i<names.size(); i++) {
+                        final LatencyHistogram histogram = histograms.get(i);
+                        writer.format(Locale.ROOT, "%s{\"name\":\"%s\",\"count\":%d,\"meanMs\":%.3f", i>0 ? "," : "", names.get(i).replace("\\", "\\\\").replace("\"", "\\\""),
+                                histogram.getTotalCount(), histogram.getMean()/1e3);
+                        for (final double percentile : PERCENTILES) {
+                            writer.format(Locale.ROOT, ",\"p%sMs\":%.3f", formatPercentile(percentile).replace('.', '_'), histogram.getValueAtPercentile(percentile)/1e3);
+                        }
+                        writer.format(Locale.ROOT, ",\"maxMs\":%.3f}", histogram.getMaxValue()/1e3);
+                    }
+                    writer.println("]}");
+                } else {
+                    writer.print("name,count,failures,per_second,mean_ms");
+                    for (final double percentile : PERCENTILES) {
+                        writer.print(",p" + formatPercentile(percentile) + "_ms");
+                    }
+                    writer.println(",max_ms");
+                    for (int i=0; i<names.size(); i++) {
+                        final LatencyHistogram histogram = histograms.get(i);
+                        writer.format(Locale.ROOT, "\"%s\",%d,%s,%s,%.3f", names.get(i).replace("\"", "\"\""), histogram.getTotalCount(), i==0 ? Integer.toString(failures) : "",
+                                i==0 ? String.format(Locale.ROOT, "%.3f", successes/seconds) : "", histogram.getMean()/1e3);
+                        for (final double percentile : PERCENTILES) {
+                            writer.format(Locale.ROOT, ",%.3f", histogram.getValueAtPercentile(percentile)/1e3);
+                        }
+                        writer.format(Locale.ROOT, ",%.3f%n", histogram.getMaxValue()/1e3);
+                    }
+                }
+                this.printStream.println("Results written to "+fileName.trim());
+            } catch (IOException e) {
+                PerformanceTest.this.log.error("Could not write results to "+fileName, e);
+            }
+        }
+        
         @Override
         public void run() {
-            final long startTime = new Date().getTime();
-            long periodStartTime = startTime;
+            long periodStartTime = System.nanoTime();
             while(isNotReady()) {
                 synchronized(this) {
                     try {
-                        wait(PerformanceTest.this.STATISTIC_UPDATE_PERIOD_IN_SECONDS*1000);
+                        long waitTime = TimeUnit.SECONDS.toMillis(PerformanceTest.this.STATISTIC_UPDATE_PERIOD_IN_SECONDS);
+                        if ( !this.isSteadyState ) {
+                            waitTime = Math.min(waitTime, TimeUnit.NANOSECONDS.toMillis(this.steadyStateStartNanos-System.nanoTime()));
+                        } else if ( this.endNanos!=0 ) {
+                            waitTime = Math.min(waitTime, TimeUnit.NANOSECONDS.toMillis(this.endNanos-System.nanoTime()));
+                        }
+                        if ( waitTime > 0 ) {
+                            wait(waitTime);
+                        }
                     } catch (InterruptedException e) {
                         // do nothing
                     }
                 }
-                final long endTime = new Date().getTime();
-                printStatistics(startTime, periodStartTime, endTime);
+                final long endTime = System.nanoTime();
+                printStatistics(periodStartTime, endTime);
                 periodStartTime = endTime;
+                if ( !this.isSteadyState && endTime>=this.steadyStateStartNanos ) {
+                    startSteadyState();
+                }
             }
+            writeResults(System.nanoTime());
             PerformanceTest.this.log.deActivate();
         }
         
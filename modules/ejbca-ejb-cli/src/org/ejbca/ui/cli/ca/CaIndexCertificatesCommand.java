@@ -0,0 +1,103 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.cli.ca;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.certificate.CertificateStoreSessionRemote;
+import org.cesecore.util.EjbRemoteHelper;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.parameter.Parameter;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+
+/**
+ * Stores the search tokens of existing certificates in the certificate search index.
+ *
+ * @version $Id$
+ */
+public class CaIndexCertificatesCommand extends BaseCaAdminCommand {
+
+    private static final Logger log = Logger.getLogger(CaIndexCertificatesCommand.class);
+
+    private static final String BATCH_SIZE_KEY = "--batchsize";
+    private static final String START_KEY = "--start";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    {
+        registerParameter(new Parameter(BATCH_SIZE_KEY, "Batch size", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "Number of certificates to index in each transaction. Default is " + DEFAULT_BATCH_SIZE + "."));
+        registerParameter(new Parameter(START_KEY, "Fingerprint", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "Continue after the certificate with this fingerprint, as logged by an earlier run that was interrupted."));
+    }
+
+    @Override
+    public String getMainCommand() {
+        return "indexcertificates";
+    }
+
+    @Override
+    public CommandResult execute(ParameterContainer parameters) {
+        int batchSize = DEFAULT_BATCH_SIZE;
+        if (parameters.get(BATCH_SIZE_KEY) != null) {
+            try {
+                batchSize = Integer.parseInt(parameters.get(BATCH_SIZE_KEY));
+            } catch (NumberFormatException e) {
+                log.error(parameters.get(BATCH_SIZE_KEY) + " was not a number.");
+                return CommandResult.CLI_FAILURE;
+            }
+            if (batchSize < 1) {
+                log.error("Batch size must be at least 1.");
+                return CommandResult.CLI_FAILURE;
+            }
+        }
+        final CertificateStoreSessionRemote certificateStoreSession = EjbRemoteHelper.INSTANCE.getRemoteSession(CertificateStoreSessionRemote.class);
+        String fingerprint = parameters.get(START_KEY);
+        long batches = 0;
+        try {
+            do {
+                fingerprint = certificateStoreSession.indexCertificatesForSearch(getAuthenticationToken(), fingerprint, batchSize);
+                batches++;
+                if (fingerprint != null && batches % 100 == 0) {
+                    log.info("Indexed certificates up to fingerprint " + fingerprint + ".");
+                }
+            } while (fingerprint != null);
+        } catch (AuthorizationDeniedException e) {
+            log.error("CLI user not authorized to index certificates: " + e.getMessage());
+            return CommandResult.AUTHORIZATION_FAILURE;
+        }
+        log.info("All certificates have been indexed for search.");
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    public String getCommandDescription() {
+        return "Stores search tokens for all certificates in the certificate search index.";
+    }
+
+    @Override
+    public String getFullHelpText() {
+        return getCommandDescription() + " This is needed before certificate searches can use the index (database.certificatesearchindex.search=true),"
+                + " if certificates were stored before database.certificatesearchindex.enabled was set to true. Certificates are indexed in order of"
+                + " fingerprint, so an interrupted run can be continued with " + START_KEY + " and the last logged fingerprint.";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+}
@@ -14,6 +14,7 @@ package org.ejbca.core.ejb.ca.publisher;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.ejb.CreateException;
 import javax.ejb.Local;
@@ -108,6 +109,8 @@ public interface PublisherQueueSessionLocal {
      * Repeat this process as long as we actually manage to publish something this is because when publishing starts to work we want to publish everything in one go, if possible.
      * However we don't want to publish more than 20000 certificates each time, because we want to commit to the database some time as well.
      * Now, the OCSP publisher uses a non-transactional data source so it commits every time so...
+     * <p>
+     * With publisher.queue.concurrency above 1, the queue is instead processed by that many threads using {@link #doClaimedChunksAsync}, until it is empty.
      */
     void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, int publisherId, BasePublisher publisher);
 
@@ -141,4 +144,39 @@ public interface PublisherQueueSessionLocal {
 	
     /** Publishers digest queues in transaction-based "chunks". */
 	int doChunk(AuthenticationToken admin, int publisherId, BasePublisher publisher);
+
+    /**
+     * Claims a batch of pending entries, so that no other thread or node processes them at the same time, and publishes them.
+     * The certificates are read with one query, and the entries are removed or updated with one statement each for the published and failed entries.
+     *
+     * @return the number of entries that were published, 0 if the queue is empty or nothing could be published
+     */
+    int doClaimedChunk(AuthenticationToken admin, int publisherId, BasePublisher publisher);
+
+    /**
+     * Publishes chunks with {@link #doClaimedChunk} until the queue is empty or nothing in a chunk could be published, in a thread
+     * managed by the container.
+     *
+     * @return the number of entries that were published
+     */
+    Future<Integer> doClaimedChunksAsync(AuthenticationToken admin, int publisherId, BasePublisher publisher);
+
+    /**
+     * Claims the oldest pending entries for a publisher that are not claimed already, in a new transaction.
+     *
+     * @param claimOwner unique identifier of the claim
+     * @param limit the maximum number of entries to claim
+     * @return the claimed entries, never null
+     */
+    List<PublisherQueueData> claimPendingEntries(int publisherId, String claimOwner, int limit);
+
+    /**
+     * Updates claimed entries after publishing them, in a new transaction, and releases the claim.
+     *
+     * @param publishedPks entries that were published, which are removed or updated to PublisherConst.STATUS_SUCCESS
+     * @param failedPks entries that could not be published, which get their try counter incremented
+     * @param unprocessedPks entries that were not tried, which are left as they are
+     * @param keepPublishedInQueue true if published entries should be kept in the queue with status PublisherConst.STATUS_SUCCESS
+     */
+    void completeClaimedEntries(List<String> publishedPks, List<String> failedPks, List<String> unprocessedPks, boolean keepPublishedInQueue);
 }
@@ -63,6 +63,20 @@ public interface BlacklistSessionLocal extends BlacklistSession {
     void addBlacklistEntry(AuthenticationToken admin, int id, BlacklistEntry entry)
             throws AuthorizationDeniedException, BlacklistExistsException;
 
+    /**
+     * Checks a fingerprint against an in memory filter of all public key blacklist entries. The filter is built by a timer, and checked
+     * for changes made by other nodes every public key blacklist cache time, so an entry added on another node may be missed for up to
+     * that time. Entries added on this node are in the filter at once. Does not read the database.
+     * 
+     * @param fingerprint the fingerprint of a public key, as created by PublicKeyBlacklistEntry.createFingerprint.
+     * @return false if the fingerprint is not in the public key blacklist, true if it might be, or if the filter is disabled, not
+     *     built yet or has not been refreshed for twice the cache time.
+     */
+    boolean isPublicKeyPossiblyBlacklisted(String fingerprint);
+
+    /** Starts the timer that builds and refreshes the public key blacklist filter, unless it is disabled or already started. */
+    void initTimers();
+
     /**
      * Flushes the public key blacklist entry cache to ensure that next time they are read from database.
      */
@@ -12,9 +12,31 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.crl.CrlImportException;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+
 @Local
 public interface ImportCrlSessionLocal extends ImportCrlSession {
 
+    /**
+     * Updates the certificate statuses for a chunk of the entries in an imported CRL, in a new transaction. Should only be used
+     * by {@link #importCrl(AuthenticationToken, org.cesecore.certificates.ca.CAInfo, byte[])}.
+     *
+     * @param authenticationToken The administrator performing the operation
+     * @param caId the ID of the CA that issued the CRL
+     * @param issuerDn the subject DN of the CA that issued the CRL
+     * @param caFingerprint fingerprint of the certificate of the CA that issued the CRL
+     * @param crlEntries serial numbers, revocation dates and reason codes of the CRL entries
+     * @return the number of certificates whose status was changed
+     * @throws CrlImportException If a certificate could not be revoked
+     * @throws AuthorizationDeniedException If the administrator is not authorized to the CA
+     */
+    int importCrlEntries(AuthenticationToken authenticationToken, int caId, String issuerDn, String caFingerprint, List<RevokedCertInfo> crlEntries)
+            throws CrlImportException, AuthorizationDeniedException;
 }
@@ -13,6 +13,7 @@
 package org.ejbca.core.ejb.crl;
 
 import java.util.Collection;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
@@ -78,4 +79,16 @@ public interface PublishingCrlSessionLocal extends PublishingCrlSession {
      */
     boolean createDeltaCRLnewTransactionConditioned(AuthenticationToken admin, int caid, long crloverlaptime) throws CryptoTokenOfflineException, CAOfflineException, CADoesntExistsException, AuthorizationDeniedException;
 
+    /**
+     * Creates a CRL, or delta CRL, for one CA if it needs one, in a thread managed by the container. Used by createCRLs and
+     * createDeltaCRLs to process several CAs in parallel. Errors from an offline CA or crypto token are logged, not thrown.
+     * 
+     * @param admin administrator performing the task
+     * @param caid the id of the CA this operation regards
+     * @param overlaptime the overlap time passed to createCRLs, or createDeltaCRLs
+     * @param delta true to create a delta CRL
+     * @return true if a CRL, or delta CRL, was created
+     */
+    Future<Boolean> createCRLAsync(AuthenticationToken admin, int caid, long overlaptime, boolean delta) throws AuthorizationDeniedException;
+
 }
@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.ejbca.core.ejb.upgrade;
 
+import java.util.List;
 import java.util.concurrent.Future;
 
 import javax.ejb.Local;
@@ -76,6 +77,17 @@ public interface UpgradeSessionLocal  extends UpgradeSession{
     /** Persist the time when the post-upgrade starts or 0L when it is no longer running. */
     boolean setPostUpgradeStarted(long startTimeMs);
 
+    /**
+     * Converts the stored data of CAs, publishers, services, roles, internal key bindings and profiles from XML to the compact format, if
+     * database.datamap.compactformat is true. Runs in the background and is safe to run on several nodes at the same time.
+     *
+     * @return the number of converted rows
+     */
+    Future<Integer> startDataMapCompactFormatMigration();
+
+    /** For internal use from UpgradeSessionBean only! Converts the data of the given rows to the compact format, in a new transaction. */
+    int migrateDataMapsToCompactFormat(Class<?> entityClass, List<Integer> ids);
+
     /**
      * Takes two versions and compares the first and the second versions to each other
      * Compares the max amount of numbers on both. So 6.1.2.3,6.1.2 will try to compare 4 numbers, adding a 0, i.e. 6.1.2.3,6.1.2.0 
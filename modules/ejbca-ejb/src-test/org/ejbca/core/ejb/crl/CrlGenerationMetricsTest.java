@@ -0,0 +1,60 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.ejbca.core.ejb.crl.CrlGenerationMetrics.CrlGenerationMetric;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test of the timing of CRL generation per CA.
+ *
+ * @version $Id$
+ */
+public class CrlGenerationMetricsTest {
+
+    @After
+    public void after() {
+        CrlGenerationMetrics.INSTANCE.flush();
+    }
+
+    @Test
+    public void testMetric() {
+        assertNull(CrlGenerationMetrics.INSTANCE.getMetric(1, false));
+        CrlGenerationMetrics.INSTANCE.add(1, false, 100);
+        CrlGenerationMetrics.INSTANCE.add(1, false, 300);
+        CrlGenerationMetrics.INSTANCE.add(1, false, 200);
+        final CrlGenerationMetric metric = CrlGenerationMetrics.INSTANCE.getMetric(1, false);
+        assertEquals(3, metric.getCount());
+        assertEquals(200, metric.getLastTime());
+        assertEquals(300, metric.getMaxTime());
+        assertEquals(200, metric.getAverageTime());
+        assertNull("Delta CRLs should be timed separately.", CrlGenerationMetrics.INSTANCE.getMetric(1, true));
+    }
+
+    @Test
+    public void testOrderByLastTime() {
+        CrlGenerationMetrics.INSTANCE.add(1, false, 60000);
+        CrlGenerationMetrics.INSTANCE.add(2, false, 10);
+        CrlGenerationMetrics.INSTANCE.add(3, false, 500);
+        CrlGenerationMetrics.INSTANCE.add(1, true, 5);
+        assertEquals("The slowest CAs should come first, then CAs without timing.", Arrays.asList(1, 3, 2, 4, 5),
+                CrlGenerationMetrics.INSTANCE.getOrderedByLastTime(Arrays.asList(1, 2, 3, 4, 5), false));
+        assertEquals(Arrays.asList(1, 2, 3), CrlGenerationMetrics.INSTANCE.getOrderedByLastTime(Arrays.asList(1, 2, 3), true));
+    }
+}
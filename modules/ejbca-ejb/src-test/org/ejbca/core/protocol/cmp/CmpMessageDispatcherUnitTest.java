@@ -0,0 +1,162 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.cmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.cmp.CertRepMessage;
+import org.bouncycastle.asn1.cmp.CertResponse;
+import org.bouncycastle.asn1.cmp.PKIBody;
+import org.bouncycastle.asn1.cmp.PKIHeaderBuilder;
+import org.bouncycastle.asn1.cmp.PKIMessage;
+import org.bouncycastle.asn1.cmp.PKIStatus;
+import org.bouncycastle.asn1.crmf.CertReqMessages;
+import org.bouncycastle.asn1.crmf.CertReqMsg;
+import org.bouncycastle.asn1.crmf.CertRequest;
+import org.bouncycastle.asn1.crmf.CertTemplateBuilder;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.certificate.request.FailInfo;
+import org.cesecore.certificates.certificate.request.ResponseMessage;
+import org.cesecore.certificates.certificate.request.ResponseMessageUtils;
+import org.cesecore.certificates.certificate.request.ResponseStatus;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests how the responses to the CertReqMsg of a CMP message with several certificate requests are combined.
+ *
+ * @version $Id$
+ */
+public class CmpMessageDispatcherUnitTest {
+
+    private static KeyPair caKeys;
+    private static X509Certificate caCert;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        caKeys = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCert = CertTools.genSelfCert("CN=CmpMessageDispatcherUnitTest", 10, null, caKeys.getPrivate(), caKeys.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+    }
+
+    @Test
+    public void testMixedAcceptedAndRejected() throws Exception {
+        final PKIMessage pkiMessage = createPKIMessage(4, 5, 6);
+        final List<ResponseMessage> responses = new ArrayList<>();
+        final List<Integer> requestIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final CrmfRequestMessage request = new CrmfRequestMessage(pkiMessage, null, false, null, i);
+            request.setResponseProtectionDeferred(true);
+            requestIds.add(request.getRequestId());
+            // Only the second request is granted
+            responses.add(createResponse(request, i == 1));
+        }
+        assertEquals(Arrays.asList(4, 5, 6), requestIds);
+        assertNull("The response to a single request should not be protected when the protection is deferred.",
+                PKIMessage.getInstance(responses.get(1).getResponseMessage()).getProtection());
+
+        final ResponseMessage combined = CmpMessageDispatcherSessionBean.combineResponses(responses, requestIds);
+        assertSame("The granted response should carry the combined response, since it is signed by the CA.", responses.get(1), combined);
+        final PKIMessage combinedMessage = PKIMessage.getInstance(combined.getResponseMessage());
+        assertNotNull("The combined response should be protected.", combinedMessage.getProtection());
+        assertTrue("The combined response should be signed by the CA.",
+                CmpMessageHelper.verifyCertBasedPKIProtection(combinedMessage, caCert.getPublicKey()));
+        assertEquals(PKIBody.TYPE_INIT_REP, combinedMessage.getBody().getType());
+        final CertResponse[] certResponses = CertRepMessage.getInstance(combinedMessage.getBody().getContent()).getResponse();
+        assertEquals("There should be one response per request.", 3, certResponses.length);
+        final int[] expectedStatuses = { PKIStatus.REJECTION, PKIStatus.GRANTED, PKIStatus.REJECTION };
+        for (int i = 0; i < 3; i++) {
+            assertEquals("The responses should be in request order.", requestIds.get(i).intValue(), certResponses[i].getCertReqId().getValue().intValue());
+            assertEquals(expectedStatuses[i], certResponses[i].getStatus().getStatus().intValue());
+        }
+        assertNotNull("The granted response should contain the certificate.", certResponses[1].getCertifiedKeyPair());
+    }
+
+    @Test
+    public void testAllRejected() throws Exception {
+        final PKIMessage pkiMessage = createPKIMessage(1, 2);
+        final List<ResponseMessage> responses = new ArrayList<>();
+        final List<Integer> requestIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final CrmfRequestMessage request = new CrmfRequestMessage(pkiMessage, null, false, null, i);
+            request.setResponseProtectionDeferred(true);
+            requestIds.add(request.getRequestId());
+            responses.add(createResponse(request, false));
+        }
+        final ResponseMessage combined = CmpMessageDispatcherSessionBean.combineResponses(responses, requestIds);
+        assertSame(responses.get(0), combined);
+        final PKIMessage combinedMessage = PKIMessage.getInstance(combined.getResponseMessage());
+        final CertResponse[] certResponses = CertRepMessage.getInstance(combinedMessage.getBody().getContent()).getResponse();
+        assertEquals(2, certResponses.length);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(requestIds.get(i).intValue(), certResponses[i].getCertReqId().getValue().intValue());
+            assertEquals(PKIStatus.REJECTION, certResponses[i].getStatus().getStatus().intValue());
+        }
+    }
+
+    /** Creates the response like CertificateCreateSessionBean does, with a certificate if the request is granted. */
+    private CmpResponseMessage createResponse(final CrmfRequestMessage request, final boolean granted) throws Exception {
+        final List<Certificate> caChain = new ArrayList<>();
+        caChain.add(caCert);
+        final CmpResponseMessage response = (CmpResponseMessage) ResponseMessageUtils.createResponseMessage(CmpResponseMessage.class, request,
+                caChain, caKeys.getPrivate(), BouncyCastleProvider.PROVIDER_NAME);
+        if (granted) {
+            final KeyPair keys = KeyTools.genKeys("512", AlgorithmConstants.KEYALGORITHM_RSA);
+            response.setCertificate(CertTools.genSelfCert(request.getRequestDN(), 10, null, keys.getPrivate(), keys.getPublic(),
+                    AlgorithmConstants.SIGALG_SHA256_WITH_RSA, false));
+            response.setCACert(caCert);
+            response.setStatus(ResponseStatus.SUCCESS);
+        } else {
+            response.setStatus(ResponseStatus.FAILURE);
+            response.setFailInfo(FailInfo.BAD_REQUEST);
+            response.setFailText("Rejected by test");
+        }
+        assertTrue(response.create());
+        return response;
+    }
+
+    /** @return an ir with one CertReqMsg for each certReqId */
+    private PKIMessage createPKIMessage(final int... certReqIds) {
+        final CertReqMsg[] certReqMsgs = new CertReqMsg[certReqIds.length];
+        for (int i = 0; i < certReqIds.length; i++) {
+            final CertTemplateBuilder certTemplate = new CertTemplateBuilder();
+            certTemplate.setSubject(new X500Name("CN=request" + certReqIds[i]));
+            certReqMsgs[i] = new CertReqMsg(new CertRequest(certReqIds[i], certTemplate.build(), null), null, null);
+        }
+        final PKIHeaderBuilder header = new PKIHeaderBuilder(2, new GeneralName(new X500Name("CN=client")), 
+                new GeneralName(new X500Name(caCert.getSubjectX500Principal().getName())));
+        header.setSenderNonce(new DEROctetString(new byte[] { 1, 2, 3, 4 }));
+        header.setTransactionID(new DEROctetString(new byte[] { 5, 6, 7, 8 }));
+        return new PKIMessage(header.build(), new PKIBody(PKIBody.TYPE_INIT_REQ, new CertReqMessages(certReqMsgs)));
+    }
+}
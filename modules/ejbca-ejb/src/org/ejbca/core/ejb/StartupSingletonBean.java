@@ -72,6 +72,7 @@ import org.ejbca.core.ejb.audit.enums.EjbcaModuleTypes;
 import org.ejbca.core.ejb.audit.enums.EjbcaServiceTypes;
 import org.ejbca.core.ejb.authorization.AuthorizationSystemSessionLocal;
 import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
+import org.ejbca.core.ejb.ca.validation.BlacklistSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspKeyRenewalSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
@@ -104,6 +105,8 @@ public class StartupSingletonBean {
     @EJB
     private AuthorizationSystemSessionLocal authorizationSystemSession;
     @EJB
+    private BlacklistSessionLocal blacklistSession;
+    @EJB
     private CAAdminSessionLocal caAdminSession;
     @EJB
     private CertificateCreateSessionLocal certCreateSession;
@@ -335,10 +338,13 @@ public class StartupSingletonBean {
         // Perform (automatic) upgrades, if needed
         upgradeSession.performPreUpgrade(isFreshInstallation);
         upgradeSession.performUpgrade();
+        upgradeSession.startDataMapCompactFormatMigration();
         // Start key reload timer
         ocspResponseGeneratorSession.initTimers();
         // Start CA certificate cache reload
         certificateStoreSession.initTimers();
+        // Start building and refreshing the public key blacklist filter
+        blacklistSession.initTimers();
         // Start legacy background service for renewal of OCSP signers via EJBCA WS calls to CA
         ocspKeyRenewalSession.startTimer();
         // Verify that the EJB CLI user (if present) cannot be used to generate certificates
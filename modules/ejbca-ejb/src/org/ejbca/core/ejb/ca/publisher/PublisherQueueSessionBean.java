@@ -16,10 +16,14 @@ package org.ejbca.core.ejb.ca.publisher;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -30,6 +34,8 @@ import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.CreateException;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
@@ -48,6 +54,7 @@ import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
 import org.cesecore.certificates.crl.CRLData;
 import org.cesecore.certificates.endentity.ExtendedInformation;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.jndi.JndiConstants;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.model.InternalEjbcaResources;
@@ -274,7 +281,12 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
-    public void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, int publisherId, BasePublisher publisher) {
+    public void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(final AuthenticationToken admin, final int publisherId, final BasePublisher publisher) {
+        final int concurrency = EjbcaConfiguration.getPublisherQueueConcurrency();
+        if (concurrency > 1) {
+            processQueueConcurrently(admin, publisherId, publisher, concurrency);
+            return;
+        }
         int successcount = 0;
         // Repeat this process as long as we actually manage to publish something
         // this is because when publishing starts to work we want to publish everything in one go, if possible.
@@ -286,6 +298,37 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         } while ((successcount > 0) && (totalcount < 20000));
     }
 
+    /**
+     * Processes the queue of a publisher with several threads, that each claim and publish chunks of entries until the queue is empty
+     * or nothing in a chunk could be published. Each chunk is committed separately, so there is no limit on the number of entries.
+     */
+    private void processQueueConcurrently(final AuthenticationToken admin, final int publisherId, final BasePublisher publisher, final int concurrency) {
+        final long startTime = System.currentTimeMillis();
+        int totalcount = 0;
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(publisherQueueSession.doClaimedChunksAsync(admin, publisherId, publisher));
+        }
+        for (final Future<Integer> future : futures) {
+            try {
+                totalcount += future.get().intValue();
+            } catch (ExecutionException e) {
+                // Entries claimed by the failed thread are claimed again when the claim has expired
+                log.info("Failed to process the queue of publisher " + publisherId + ": " + e.getCause().getMessage());
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to process the queue of publisher " + publisherId, e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EJBException("Interrupted while waiting for the publisher queue to be processed.", e);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Published " + totalcount + " entries from the queue of publisher " + publisherId + " using " + concurrency + " threads in "
+                    + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public int doChunk(AuthenticationToken admin, int publisherId, BasePublisher publisher) {
@@ -293,6 +336,127 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return doPublish(admin, publisherId, publisher, c);
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Asynchronous
+    @Override
+    public Future<Integer> doClaimedChunksAsync(final AuthenticationToken admin, final int publisherId, final BasePublisher publisher) {
+        int count = 0;
+        int successcount;
+        do {
+            successcount = publisherQueueSession.doClaimedChunk(admin, publisherId, publisher);
+            count += successcount;
+        } while (successcount > 0);
+        return new AsyncResult<>(Integer.valueOf(count));
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public int doClaimedChunk(final AuthenticationToken admin, final int publisherId, final BasePublisher publisher) {
+        final String claimOwner = CesecoreConfiguration.getNodeIdentifier() + ";" + UUID.randomUUID().toString();
+        final List<PublisherQueueData> entries = publisherQueueSession.claimPendingEntries(publisherId, claimOwner,
+                EjbcaConfiguration.getPublisherQueueBatchSize());
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Claimed " + entries.size() + " entries to republish for publisher " + publisherId + " as " + claimOwner);
+        }
+        // Read all the certificates with one query instead of one query per entry
+        final List<String> fingerprints = new ArrayList<>();
+        for (final PublisherQueueData pqd : entries) {
+            if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT) {
+                fingerprints.add(pqd.getFingerprint());
+            }
+        }
+        final Map<String, CertificateDataWrapper> certificateDatas;
+        if (publisher == null || fingerprints.isEmpty()) {
+            certificateDatas = Collections.emptyMap();
+        } else {
+            certificateDatas = noConflictCertificateStoreSession.getCertificateDatas(fingerprints);
+        }
+        final List<String> publishedPks = new ArrayList<>();
+        final List<String> failedPks = new ArrayList<>();
+        final List<String> unprocessedPks = new ArrayList<>();
+        int failcount = 0;
+        for (final PublisherQueueData pqd : entries) {
+            // If we don't manage to publish anything, but fails on all the first ten ones we expect that this publisher is dead for now.
+            if (publishedPks.isEmpty() && failcount > 10) {
+                unprocessedPks.add(pqd.getPk());
+                continue;
+            }
+            boolean published = false;
+            try {
+                final CertificateDataWrapper certificateDataWrapper = certificateDatas.get(pqd.getFingerprint());
+                if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT && publisher != null && certificateDataWrapper == null) {
+                    throw new FinderException();
+                }
+                published = publishEntry(admin, publisherId, publisher, pqd, certificateDataWrapper);
+            } catch (FinderException e) {
+                final String msg = intres.getLocalizedMessage("publisher.errornocert", pqd.getFingerprint()) + e.getMessage();
+                log.info(msg);
+            } catch (PublisherException e) {
+                log.debug(e.getMessage());
+                failcount++;
+            }
+            if (published) {
+                publishedPks.add(pqd.getPk());
+            } else {
+                failedPks.add(pqd.getPk());
+            }
+        }
+        if (!unprocessedPks.isEmpty() && log.isDebugEnabled()) {
+            log.debug("Releasing " + unprocessedPks.size() + " entries because everything seems to fail (at least the first 10 entries)");
+        }
+        publisherQueueSession.completeClaimedEntries(publishedPks, failedPks, unprocessedPks, publisher != null && publisher.getKeepPublishedInQueue());
+        if (log.isDebugEnabled()) {
+            log.debug("Returning from publisher with " + publishedPks.size() + " entries published successfully.");
+        }
+        return publishedPks.size();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public List<PublisherQueueData> claimPendingEntries(final int publisherId, final String claimOwner, final int limit) {
+        final long now = System.currentTimeMillis();
+        final List<String> pks = org.ejbca.core.ejb.ca.publisher.PublisherQueueData.findPksToClaim(entityManager, publisherId, now, limit);
+        final List<PublisherQueueData> ret = new ArrayList<>();
+        if (pks.isEmpty()) {
+            return ret;
+        }
+        final int claimed = org.ejbca.core.ejb.ca.publisher.PublisherQueueData.claim(entityManager, pks, claimOwner,
+                now + EjbcaConfiguration.getPublisherQueueClaimTime(), now);
+        if (claimed < pks.size() && log.isDebugEnabled()) {
+            log.debug((pks.size() - claimed) + " publisher queue entries were claimed by another thread before " + claimOwner);
+        }
+        for (final org.ejbca.core.ejb.ca.publisher.PublisherQueueData d : org.ejbca.core.ejb.ca.publisher.PublisherQueueData.findClaimed(entityManager,
+                pks, claimOwner)) {
+            ret.add(new PublisherQueueData(d.getPk(), new Date(d.getTimeCreated()), new Date(d.getLastUpdate()), d.getPublishStatus(),
+                    d.getTryCounter(), d.getPublishType(), d.getFingerprint(), d.getPublisherId(), d.getPublisherQueueVolatileData()));
+        }
+        return ret;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public void completeClaimedEntries(final List<String> publishedPks, final List<String> failedPks, final List<String> unprocessedPks,
+            final boolean keepPublishedInQueue) {
+        if (!publishedPks.isEmpty()) {
+            if (keepPublishedInQueue) {
+                // Update with information that publishing was successful
+                org.ejbca.core.ejb.ca.publisher.PublisherQueueData.updateClaimed(entityManager, publishedPks, PublisherConst.STATUS_SUCCESS, false);
+            } else {
+                org.ejbca.core.ejb.ca.publisher.PublisherQueueData.removeByPks(entityManager, publishedPks);
+            }
+        }
+        if (!failedPks.isEmpty()) {
+            // Update with new tryCounter, but same status as before
+            org.ejbca.core.ejb.ca.publisher.PublisherQueueData.updateClaimed(entityManager, failedPks, -1, true);
+        }
+        if (!unprocessedPks.isEmpty()) {
+            org.ejbca.core.ejb.ca.publisher.PublisherQueueData.releaseClaims(entityManager, unprocessedPks);
+        }
+    }
+
     /** @return how many publishes that succeeded */
     private int doPublish(AuthenticationToken admin, int publisherId, BasePublisher publisher, Collection<PublisherQueueData> c) {
         if (log.isDebugEnabled()) {
@@ -304,75 +468,10 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         for (PublisherQueueData pqd : c) {
 
             String fingerprint = pqd.getFingerprint();
-            int publishType = pqd.getPublishType();
-            if (log.isDebugEnabled()) {
-                log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
-                        + ", type: " + publishType);
-            }
-            PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
-            String password = null;
-            ExtendedInformation ei = null;
-            String userDataDN = null;
-            if (voldata != null) {
-                password = voldata.getPassword();
-                ei = voldata.getExtendedInformation();
-                userDataDN = voldata.getUserDN();
-            }
             boolean published = false;
 
             try {
-                if (publishType == PublisherConst.PUBLISH_TYPE_CERT) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing Certificate");
-                    }
-                    if (publisher != null) {
-                        // Read the actual certificate and try to publish it
-                        // again
-                        // TODO: we might need change fetch-type for all but the
-                        // actual cert or a native query w SqlResultSetMapping..
-                        final CertificateDataWrapper certificateDataWrapper = noConflictCertificateStoreSession.getCertificateData(fingerprint);
-                        if (certificateDataWrapper==null) {
-                            throw new FinderException();
-                        }
-                        try {
-                            published = publisherQueueSession.storeCertificateNonTransactional(publisher, admin, certificateDataWrapper, password, userDataDN, ei);
-                        } catch (EJBException e) {
-                            final Throwable t = e.getCause();
-                            if (t instanceof PublisherException) {
-                                throw (PublisherException) t;
-                            } else {
-                                throw e;
-                            }
-                        }
-                    } else {
-                        String msg = intres.getLocalizedMessage("publisher.nopublisher", publisherId);
-                        log.info(msg);
-                    }
-                } else if (publishType == PublisherConst.PUBLISH_TYPE_CRL) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Publishing CRL");
-                    }
-
-                    CRLData crlData = CRLData.findByFingerprint(entityManager, fingerprint);
-
-                    if (crlData == null) {
-                        throw new FinderException();
-                    }
-                    try {
-                        published = publisherQueueSession.storeCRLNonTransactional(publisher, admin, crlData.getCRLBytes(),
-                                crlData.getCaFingerprint(), crlData.getCrlNumber(), userDataDN);
-                    } catch (EJBException e) {
-                        final Throwable t = e.getCause();
-                        if (t instanceof PublisherException) {
-                            throw (PublisherException) t;
-                        } else {
-                            throw e;
-                        }
-                    }
-                } else {
-                    String msg = intres.getLocalizedMessage("publisher.unknowntype", publishType);
-                    log.error(msg);
-                }
+                published = publishEntry(admin, publisherId, publisher, pqd, null);
             } catch (FinderException e) {
                 final String msg = intres.getLocalizedMessage("publisher.errornocert", fingerprint) + e.getMessage();
                 log.info(msg);
@@ -417,6 +516,86 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return successcount;
     }
 
+    /**
+     * Publishes one entry from the queue.
+     *
+     * @param certificateDataWrapper the certificate of the entry if it has already been read, or null to read it
+     * @return true if the entry was published
+     */
+    private boolean publishEntry(final AuthenticationToken admin, final int publisherId, final BasePublisher publisher, final PublisherQueueData pqd,
+            final CertificateDataWrapper certificateDataWrapper) throws FinderException, PublisherException {
+        final String fingerprint = pqd.getFingerprint();
+        int publishType = pqd.getPublishType();
+        if (log.isDebugEnabled()) {
+            log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
+                    + ", type: " + publishType);
+        }
+        PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
+        String password = null;
+        ExtendedInformation ei = null;
+        String userDataDN = null;
+        if (voldata != null) {
+            password = voldata.getPassword();
+            ei = voldata.getExtendedInformation();
+            userDataDN = voldata.getUserDN();
+        }
+        boolean published = false;
+        if (publishType == PublisherConst.PUBLISH_TYPE_CERT) {
+            if (log.isDebugEnabled()) {
+                log.debug("Publishing Certificate");
+            }
+            if (publisher != null) {
+                // Read the actual certificate and try to publish it
+                // again
+                // TODO: we might need change fetch-type for all but the
+                // actual cert or a native query w SqlResultSetMapping..
+                final CertificateDataWrapper certificateData = certificateDataWrapper != null ? certificateDataWrapper
+                        : noConflictCertificateStoreSession.getCertificateData(fingerprint);
+                if (certificateData==null) {
+                    throw new FinderException();
+                }
+                try {
+                    published = publisherQueueSession.storeCertificateNonTransactional(publisher, admin, certificateData, password, userDataDN, ei);
+                } catch (EJBException e) {
+                    final Throwable t = e.getCause();
+                    if (t instanceof PublisherException) {
+                        throw (PublisherException) t;
+                    } else {
+                        throw e;
+                    }
+                }
+            } else {
+                String msg = intres.getLocalizedMessage("publisher.nopublisher", publisherId);
+                log.info(msg);
+            }
+        } else if (publishType == PublisherConst.PUBLISH_TYPE_CRL) {
+            if (log.isDebugEnabled()) {
+                log.debug("Publishing CRL");
+            }
+
+            CRLData crlData = CRLData.findByFingerprint(entityManager, fingerprint);
+
+            if (crlData == null) {
+                throw new FinderException();
+            }
+            try {
+                published = publisherQueueSession.storeCRLNonTransactional(publisher, admin, crlData.getCRLBytes(),
+                        crlData.getCaFingerprint(), crlData.getCrlNumber(), userDataDN);
+            } catch (EJBException e) {
+                final Throwable t = e.getCause();
+                if (t instanceof PublisherException) {
+                    throw (PublisherException) t;
+                } else {
+                    throw e;
+                }
+            }
+        } else {
+            String msg = intres.getLocalizedMessage("publisher.unknowntype", publishType);
+            log.error(msg);
+        }
+        return published;
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public boolean storeCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper certWrapper,
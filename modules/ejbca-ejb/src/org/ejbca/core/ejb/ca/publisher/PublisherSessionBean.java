@@ -13,9 +13,6 @@
 
 package org.ejbca.core.ejb.ca.publisher;
 
-import java.beans.XMLDecoder;
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -53,6 +50,7 @@ import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.DataMapSerializer;
 import org.cesecore.util.ProfileID;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.ejb.audit.enums.EjbcaEventTypes;
@@ -796,14 +794,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
     private BasePublisher getPublisher(PublisherData pData) {
         BasePublisher publisher = pData.getCachedPublisher();
         if (publisher == null) {
-            XMLDecoder decoder;
-            try {
-                decoder = new XMLDecoder(new ByteArrayInputStream(pData.getData().getBytes("UTF8")));
-            } catch (UnsupportedEncodingException e) {
-                throw new EJBException(e);
-            }
-            HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-            decoder.close();
+            HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.decode(pData.getData());
             // Handle Base64 encoded string values
             HashMap<?, ?> data = new Base64GetHashMap(h);
 
@@ -861,14 +852,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         for (PublisherData publisherData : PublisherData.findAll(entityManager)) {
             // Extract the data payload instead of the BasePublisher since the original BasePublisher implementation might no longer
             // be on the classpath
-            XMLDecoder decoder;
-            try {
-                decoder = new XMLDecoder(new ByteArrayInputStream(publisherData.getData().getBytes("UTF8")));
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
-            }
-            HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-            decoder.close();
+            HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.decode(publisherData.getData());
             // Handle Base64 encoded string values
             @SuppressWarnings("unchecked")
             HashMap<Object, Object> data = new Base64GetHashMap(h);
@@ -888,14 +872,7 @@ public class PublisherSessionBean implements PublisherSessionLocal, PublisherSes
         for (PublisherData publisherData : PublisherData.findAll(entityManager)) {
             // Extract the data payload instead of the BasePublisher since the original BasePublisher implementation might no longer
             // be on the classpath
-            XMLDecoder decoder;
-            try {
-                decoder = new XMLDecoder(new ByteArrayInputStream(publisherData.getData().getBytes("UTF8")));
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalStateException(e);
-            }
-            HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-            decoder.close();
+            HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.decode(publisherData.getData());
             // Handle Base64 encoded string values
             @SuppressWarnings("unchecked")
             HashMap<Object, Object> data = new Base64GetHashMap(h);
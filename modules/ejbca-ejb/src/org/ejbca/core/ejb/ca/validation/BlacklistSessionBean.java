@@ -18,8 +18,15 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
@@ -35,6 +42,7 @@ import org.cesecore.authorization.AuthorizationSessionLocal;
 import org.cesecore.authorization.control.StandardRules;
 import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.util.ProfileID;
 import org.ejbca.core.ejb.audit.enums.EjbcaEventTypes;
@@ -45,6 +53,7 @@ import org.ejbca.core.model.validation.DomainBlacklistEntry;
 import org.ejbca.core.model.validation.DomainBlacklistEntryCache;
 import org.ejbca.core.model.validation.PublicKeyBlacklistEntry;
 import org.ejbca.core.model.validation.PublicKeyBlacklistEntryCache;
+import org.ejbca.core.model.validation.PublicKeyBlacklistFilter;
 
 /**
  * Handles management of public key blacklist entries.
@@ -61,6 +70,13 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
 
+    /** False positive rate of the public key blacklist filter. */
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.001;
+    /** Number of entries read from the database at a time when building the public key blacklist filter. */
+    private static final int FILTER_BATCH_SIZE = 10000;
+    /** Timer info of the timer that refreshes the public key blacklist filter. */
+    private static final String FILTER_TIMER_INFO = "PublicKeyBlacklistFilterRefresh";
+
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
 
@@ -72,6 +88,17 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
     private AuthorizationSessionLocal authorizationSession;
     @EJB
     private CaSessionLocal caSession;
+    @Resource
+    private SessionContext sessionContext;
+    /* When the sessionContext is injected, the timerService should be looked up.
+     * This is due to the Glassfish EJB verifier complaining.
+     */
+    private TimerService timerService;
+
+    @PostConstruct
+    public void postConstruct() {
+        timerService = sessionContext.getTimerService();
+    }
 
     @Override
     public BlacklistEntry getBlacklistEntry(int id) {
@@ -136,7 +163,16 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         BlacklistData data = BlacklistData.findById(entityManager, entry.getID());
         if (data != null) {
             final Map<Object, Object> diff = data.getBlacklistEntry().diff(entry);
+            final PublicKeyBlacklistFilter filter = PublicKeyBlacklistEntryCache.INSTANCE.getFilter();
+            if (filter != null && data.getType().equals(PublicKeyBlacklistEntry.TYPE)) {
+                filter.entryRemoved(data.getId(), data.getUpdateCounter());
+            }
             data.setBlacklistEntry(entry);
+            if (filter != null && data.getType().equals(PublicKeyBlacklistEntry.TYPE)) {
+                // The new fingerprint must be in the filter, or the validator would never look it up
+                filter.add(data.getValue());
+                filter.entryAdded(data.getId(), data.getUpdateCounter());
+            }
             // Since loading a Blacklist is quite complex, we simple purge the cache here.
             PublicKeyBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
             final String message = intres.getLocalizedMessage("blacklist.changedblacklist", entry.getValue());
@@ -175,6 +211,11 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
             // Purge the cache here.
             if (type.equals(PublicKeyBlacklistEntry.TYPE)) {
                 PublicKeyBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
+                // The fingerprint stays in the filter, which only causes a database lookup if the key is validated
+                final PublicKeyBlacklistFilter filter = PublicKeyBlacklistEntryCache.INSTANCE.getFilter();
+                if (filter != null) {
+                    filter.entryRemoved(data.getId(), data.getUpdateCounter());
+                }
                 message = intres.getLocalizedMessage("blacklist.removedpublickeyblacklist", value);
             } else if (type.equals(DomainBlacklistEntry.TYPE)){
                 DomainBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
@@ -198,6 +239,63 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         }
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public boolean isPublicKeyPossiblyBlacklisted(final String fingerprint) {
+        final long cacheTime = CesecoreConfiguration.getCachePublicKeyBlacklistTime();
+        final PublicKeyBlacklistFilter filter = PublicKeyBlacklistEntryCache.INSTANCE.getFilter();
+        // The filter is refreshed by a timer every cache time. If that has not happened for a while, the database is used instead.
+        if (cacheTime <= 0 || filter == null || filter.shouldCheckForUpdates(cacheTime > Long.MAX_VALUE / 2 ? Long.MAX_VALUE : 2 * cacheTime)) {
+            return true;
+        }
+        return filter.mightContain(fingerprint);
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void initTimers() {
+        if (CesecoreConfiguration.getCachePublicKeyBlacklistTime() <= 0) {
+            return;
+        }
+        for (final Timer timer : timerService.getTimers()) {
+            if (FILTER_TIMER_INFO.equals(timer.getInfo())) {
+                return;
+            }
+        }
+        // Build the filter as soon as possible, without holding up the startup
+        timerService.createSingleActionTimer(0, new TimerConfig(FILTER_TIMER_INFO, false));
+    }
+
+    /**
+     * Refreshes the public key blacklist filter and schedules the next refresh.
+     *
+     * According to JSR 220 FR (18.2.2), this method may not throw any exceptions.
+     *
+     * @param timer The timer whose expiration caused this notification.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void timeoutHandler(final Timer timer) {
+        if (!FILTER_TIMER_INFO.equals(timer.getInfo())) {
+            return;
+        }
+        final long cacheTime = CesecoreConfiguration.getCachePublicKeyBlacklistTime();
+        try {
+            if (cacheTime > 0) {
+                refreshPublicKeyBlacklistFilter();
+            } else {
+                PublicKeyBlacklistEntryCache.INSTANCE.setFilter(null);
+            }
+        } catch (RuntimeException e) {
+            // The filter gets stale and the database is used instead, until a refresh succeeds
+            log.warn("Unable to refresh public key blacklist filter: " + e.getMessage());
+        } finally {
+            if (cacheTime > 0) {
+                timerService.createSingleActionTimer(cacheTime, new TimerConfig(FILTER_TIMER_INFO, false));
+            }
+        }
+    }
+
     @Override
     public int addBlacklistEntry(AuthenticationToken admin, BlacklistEntry entry)
             throws AuthorizationDeniedException, BlacklistExistsException {
@@ -237,7 +335,10 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         return result;
     }
 
-    /** Adds a public key blacklist or throws an exception. Will not update the cache, it will be read into the cache on next try to read. */
+    /**
+     * Adds a public key blacklist or throws an exception. Will not update the cache, it will be read into the cache on next try to read.
+     * The public key blacklist filter is updated though, since a lookup is only made if the filter contains the fingerprint.
+     */
     private void addBlacklistEntryInternal(AuthenticationToken admin, int id, BlacklistEntry blacklist) throws AuthorizationDeniedException, BlacklistExistsException {
         assertIsAuthorizedToEditBlacklists(admin);
         if (BlacklistData.findByTypeAndValue(entityManager, blacklist.getType(), blacklist.getValue()) == null
@@ -245,6 +346,11 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
             blacklist.setID(Integer.valueOf(id));
             final BlacklistData entity = new BlacklistData(blacklist);
             entityManager.persist(entity);
+            final PublicKeyBlacklistFilter filter = PublicKeyBlacklistEntryCache.INSTANCE.getFilter();
+            if (filter != null && blacklist.getType().equals(PublicKeyBlacklistEntry.TYPE)) {
+                filter.add(blacklist.getValue());
+                filter.entryAdded(id, entity.getUpdateCounter());
+            }
         } else {
             String messageComponent = null;
             if (blacklist.getType().equals(PublicKeyBlacklistEntry.TYPE)) {
@@ -308,6 +414,42 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         return result;
     }
 
+    /**
+     * Builds the public key blacklist filter, or checks it against the database if it has been built. The number of entries, the sum of
+     * their ids and the sum of their update counters are read from the database, and the filter is rebuilt if they have been changed by
+     * another node. Adding, removing and changing an entry all change at least one of them. Entries added or changed on this node are
+     * added to the filter right away.
+     */
+    private void refreshPublicKeyBlacklistFilter() {
+        final PublicKeyBlacklistFilter filter = PublicKeyBlacklistEntryCache.INSTANCE.getFilter();
+        final Object[] countAndSums = BlacklistData.findCountAndSumsByType(entityManager, PublicKeyBlacklistEntry.TYPE);
+        final long entryCount = countAndSums[0] == null ? 0 : ((Number) countAndSums[0]).longValue();
+        final long idSum = countAndSums[1] == null ? 0 : ((Number) countAndSums[1]).longValue();
+        final long updateCounterSum = countAndSums[2] == null ? 0 : ((Number) countAndSums[2]).longValue();
+        if (filter != null && filter.isInSync(entryCount, idSum, updateCounterSum)) {
+            filter.setCheckedNow();
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        // Leave room for entries added on this node before the filter is rebuilt
+        final PublicKeyBlacklistFilter newFilter = new PublicKeyBlacklistFilter(entryCount + entryCount / 4 + 1000, FILTER_FALSE_POSITIVE_RATE);
+        int lastId = Integer.MIN_VALUE;
+        List<Object[]> batch;
+        do {
+            batch = BlacklistData.findIdsValuesAndUpdateCountersByType(entityManager, PublicKeyBlacklistEntry.TYPE, lastId, FILTER_BATCH_SIZE);
+            for (final Object[] row : batch) {
+                lastId = ((Integer) row[0]).intValue();
+                newFilter.add((String) row[1]);
+                newFilter.entryAdded(lastId, ((Integer) row[2]).intValue());
+            }
+        } while (batch.size() == FILTER_BATCH_SIZE);
+        PublicKeyBlacklistEntryCache.INSTANCE.setFilter(newFilter);
+        if (log.isDebugEnabled()) {
+            log.debug("Built public key blacklist filter of " + newFilter.getSize() + " bytes with " + entryCount + " entries in "
+                    + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+    }
+
     /** Gets a free ID for the new blacklist instance. */
     private int findFreeBlacklistId() {
         final ProfileID.DB db = new ProfileID.DB() {
@@ -0,0 +1,109 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time spent generating CRLs and delta CRLs for each CA on this node. Used to start the CAs that take the longest time to generate
+ * CRLs for first when generating CRLs for several CAs in parallel, and logged when a CRL has been generated.
+ *
+ * @version $Id$
+ */
+public enum CrlGenerationMetrics {
+    INSTANCE;
+
+    /** Timing of the generated CRLs, or delta CRLs, for one CA. */
+    public static class CrlGenerationMetric {
+        private long count = 0;
+        private long lastTime = 0;
+        private long maxTime = 0;
+        private long totalTime = 0;
+
+        private synchronized void add(final long time) {
+            count++;
+            lastTime = time;
+            maxTime = Math.max(maxTime, time);
+            totalTime += time;
+        }
+
+        /** @return the number of generated CRLs */
+        public synchronized long getCount() { return count; }
+        /** @return the time in milliseconds it took to generate the last CRL */
+        public synchronized long getLastTime() { return lastTime; }
+        /** @return the longest time in milliseconds it took to generate a CRL */
+        public synchronized long getMaxTime() { return maxTime; }
+        /** @return the average time in milliseconds it took to generate a CRL */
+        public synchronized long getAverageTime() { return count == 0 ? 0 : totalTime / count; }
+    }
+
+    private final ConcurrentHashMap<Integer, CrlGenerationMetric> crlMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, CrlGenerationMetric> deltaCrlMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * Records the time it took to generate a CRL.
+     *
+     * @param caId the CA the CRL was generated for
+     * @param delta true for delta CRLs
+     * @param time milliseconds
+     */
+    public void add(final int caId, final boolean delta, final long time) {
+        final ConcurrentHashMap<Integer, CrlGenerationMetric> metrics = delta ? deltaCrlMetrics : crlMetrics;
+        CrlGenerationMetric metric = metrics.get(caId);
+        if (metric == null) {
+            metric = new CrlGenerationMetric();
+            final CrlGenerationMetric existing = metrics.putIfAbsent(caId, metric);
+            if (existing != null) {
+                metric = existing;
+            }
+        }
+        metric.add(time);
+    }
+
+    /** @return the timing of CRLs, or delta CRLs, generated for the CA, or null if none has been generated on this node */
+    public CrlGenerationMetric getMetric(final int caId, final boolean delta) {
+        return (delta ? deltaCrlMetrics : crlMetrics).get(caId);
+    }
+
+    /**
+     * @return the CA ids ordered by the time it took to generate the last CRL, or delta CRL, longest first. CAs that have
+     *     no CRL generated on this node yet come last, in the given order.
+     */
+    public List<Integer> getOrderedByLastTime(final Collection<Integer> caIds, final boolean delta) {
+        final List<Integer> ret = new ArrayList<>(caIds);
+        // Collections.sort is stable, so the given order is kept for CAs with the same time
+        Collections.sort(ret, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer caId1, final Integer caId2) {
+                return Long.compare(getLastTime(caId2, delta), getLastTime(caId1, delta));
+            }
+        });
+        return ret;
+    }
+
+    private long getLastTime(final int caId, final boolean delta) {
+        final CrlGenerationMetric metric = getMetric(caId, delta);
+        return metric == null ? 0 : metric.getLastTime();
+    }
+
+    /** Clear all metrics. */
+    public void flush() {
+        crlMetrics.clear();
+        deltaCrlMetrics.clear();
+    }
+}
@@ -19,18 +19,29 @@ import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.ca.CAInfo;
@@ -45,6 +56,7 @@ import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.util.CertTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.model.approval.ApprovalException;
@@ -58,14 +70,24 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
 
     private static final Logger log = Logger.getLogger(ImportCrlSessionBean.class);
 
+    @Resource
+    private SessionContext sessionContext;
     @EJB
     private CertificateStoreSessionLocal certStoreSession;
     @EJB
     private CrlStoreSessionLocal crlStoreSession;
     @EJB
     private EndEntityManagementSessionLocal endentityManagementSession;
-    
+
+    private ImportCrlSessionLocal importCrlSession;
+
+    @PostConstruct
+    public void postConstruct() {
+        importCrlSession = sessionContext.getBusinessObject(ImportCrlSessionLocal.class);
+    }
+
     @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void importCrl(AuthenticationToken authenticationToken, CAInfo cainfo, byte[] crlbytes)
             throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
 
@@ -93,59 +115,65 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             return;
         }
         
-        // If the CRL is newer than the last known or there wasn't any old one, loop through it
-        if (x509crl.getRevokedCertificates()==null) {
+        // If the CRL is newer than the last known or there wasn't any old one, loop through it.
+        // The entries are read one at a time from the ASN.1 structure instead of as X509CRLEntry objects, since large CRLs have millions of entries.
+        final Enumeration<?> revokedCertificates = TBSCertList.getInstance(x509crl.getTBSCertList()).getRevokedCertificateEnumeration();
+        if (!revokedCertificates.hasMoreElements()) {
             log.info("No revoked certificates in " + (isDeltaCrl?"delta":"full") + " CRL for CA '" + cainfo.getName() + "'");
         } else {
-            final Set<X509CRLEntry> crlEntries = new HashSet<X509CRLEntry>();
-            crlEntries.addAll(x509crl.getRevokedCertificates());
-            if (log.isDebugEnabled()) {
-                log.debug("Downloaded CRL contains " + crlEntries.size() + " entries.");
-            }
-            
-            if(lastCrlOfSameType != null && lastCrlOfSameType.getRevokedCertificates()!=null) {
+            final long startTime = System.currentTimeMillis();
+            // Entries that were processed last time are skipped. The entries of the last CRL are kept in a set for the lookup,
+            // since the entries of a CRL are in no particular order.
+            final Set<TBSCertList.CRLEntry> lastCrlEntries = new HashSet<>();
+            if (lastCrlOfSameType != null) {
+                final Enumeration<?> lastRevokedCertificates = TBSCertList.getInstance(lastCrlOfSameType.getTBSCertList()).getRevokedCertificateEnumeration();
+                while (lastRevokedCertificates.hasMoreElements()) {
+                    lastCrlEntries.add((TBSCertList.CRLEntry) lastRevokedCertificates.nextElement());
+                }
                 if (log.isDebugEnabled()) {
-                    log.debug("Last known CRL contains " + lastCrlOfSameType.getRevokedCertificates().size() + " entries.");
+                    log.debug("Last known CRL contains " + lastCrlEntries.size() + " entries.");
                 }
-                // Remove all entries that were processed last time
-                crlEntries.removeAll(lastCrlOfSameType.getRevokedCertificates());
             }
-        
-            log.info("Found " + crlEntries.size() + " new entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
-            // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
-            for (final X509CRLEntry crlEntry : crlEntries) {
-                final Date revocationDate = crlEntry.getRevocationDate();
-                final BigInteger serialNumber = crlEntry.getSerialNumber();
-                final int reasonCode = CrlExtensions.extractReasonCode(crlEntry);
-                if (crlEntry.getCertificateIssuer()!=null) {
-                    final String entryIssuerDn = CertTools.stringToBCDNString(crlEntry.getCertificateIssuer().getName());
-                    if (!issuerDn.equals(entryIssuerDn)) {
-                        log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+            final int batchSize = EjbcaConfiguration.getCrlImportBatchSize();
+            final List<RevokedCertInfo> batch = new ArrayList<>(batchSize);
+            int entryCount = 0;
+            int newEntryCount = 0;
+            int changedCount = 0;
+            String entryIssuerDn = issuerDn;
+            while (revokedCertificates.hasMoreElements()) {
+                final TBSCertList.CRLEntry crlEntry = (TBSCertList.CRLEntry) revokedCertificates.nextElement();
+                entryCount++;
+                final BigInteger serialNumber = crlEntry.getUserCertificate().getValue();
+                if (crlEntry.hasExtensions()) {
+                    // The certificate issuer of an indirect CRL applies to all following entries, until another one is given
+                    final Extension certificateIssuer = crlEntry.getExtensions().getExtension(Extension.certificateIssuer);
+                    if (certificateIssuer != null) {
+                        entryIssuerDn = getCertificateIssuerDn(certificateIssuer, entryIssuerDn);
                     }
                 }
-                
-                final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
-                if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
-                    // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
-                    certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint);
-                } else {
-                    final String serialHex = serialNumber.toString(16).toUpperCase();
-                    if (isCertAlreadyRevoked(reasonCode, cdw)) {
-                        log.info("Certificate '" + serialHex + "' is already revoked");
-                        continue;
-                    }
-                    log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
-                    try {
-                        //log.info("Reason code: " + reason);
-                        endentityManagementSession.revokeCert(authenticationToken, serialNumber, crlEntry.getRevocationDate(), issuerDn, reasonCode, false);
-                    } catch (AlreadyRevokedException e) {
-                        log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
-                    } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
-                        throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                if (!issuerDn.equals(entryIssuerDn)) {
+                    log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+                }
+                if (lastCrlEntries.contains(crlEntry)) {
+                    continue;
+                }
+                newEntryCount++;
+                batch.add(new RevokedCertInfo(null, serialNumber.toByteArray(), crlEntry.getRevocationDate().getDate().getTime(),
+                        CrlExtensions.extractReasonCode(crlEntry), 0));
+                if (batch.size() >= batchSize) {
+                    changedCount += importCrlSession.importCrlEntries(authenticationToken, cainfo.getCAId(), issuerDn, caFingerprint, batch);
+                    batch.clear();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Processed " + entryCount + " entries of CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "'.");
                     }
-                    
                 }
             }
+            if (!batch.isEmpty()) {
+                changedCount += importCrlSession.importCrlEntries(authenticationToken, cainfo.getCAId(), issuerDn, caFingerprint, batch);
+            }
+            final long duration = Math.max(1, System.currentTimeMillis() - startTime);
+            log.info("Found " + newEntryCount + " new entires of " + entryCount + " in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous. "
+                    + changedCount + " certificate statuses were changed in " + duration + " ms (" + (entryCount * 1000L / duration) + " entries/s).");
         }
         // Calculate (make up) the CRL Number if the number was not present
         final int newCrlNumber;
@@ -159,6 +187,73 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
         crlStoreSession.storeCRL(authenticationToken, x509crl.getEncoded(), caFingerprint, newCrlNumber, issuerDn, x509crl.getThisUpdate(), x509crl.getNextUpdate(), isDeltaCrl?1:-1);
     
     }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int importCrlEntries(final AuthenticationToken authenticationToken, final int caId, final String issuerDn, final String caFingerprint,
+            final List<RevokedCertInfo> crlEntries) throws CrlImportException, AuthorizationDeniedException {
+        final List<BigInteger> serialNumbers = new ArrayList<>(crlEntries.size());
+        for (final RevokedCertInfo crlEntry : crlEntries) {
+            serialNumbers.add(crlEntry.getUserCertificate());
+        }
+        final Map<BigInteger, CertificateDataWrapper> existing = certStoreSession.getCertificateDatasByIssuerAndSernos(issuerDn, serialNumbers);
+        final List<RevokedCertInfo> limitedEntries = new ArrayList<>();
+        int changedCount = 0;
+        // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
+        for (final RevokedCertInfo crlEntry : crlEntries) {
+            final Date revocationDate = crlEntry.getRevocationDate();
+            final BigInteger serialNumber = crlEntry.getUserCertificate();
+            final int reasonCode = crlEntry.getReason();
+            final CertificateDataWrapper cdw = existing.get(serialNumber);
+            if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
+                if (!isLimitedCertificateUpToDate(revocationDate, reasonCode, cdw)) {
+                    // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
+                    limitedEntries.add(crlEntry);
+                }
+            } else {
+                final String serialHex = serialNumber.toString(16).toUpperCase();
+                if (isCertAlreadyRevoked(reasonCode, cdw)) {
+                    log.info("Certificate '" + serialHex + "' is already revoked");
+                    continue;
+                }
+                log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
+                try {
+                    //log.info("Reason code: " + reason);
+                    endentityManagementSession.revokeCert(authenticationToken, serialNumber, revocationDate, issuerDn, reasonCode, false);
+                    changedCount++;
+                } catch (AlreadyRevokedException e) {
+                    log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
+                } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
+                    throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                }
+            }
+        }
+        if (!limitedEntries.isEmpty()) {
+            certStoreSession.updateLimitedCertificateDataStatuses(authenticationToken, caId, issuerDn, limitedEntries, caFingerprint);
+            changedCount += limitedEntries.size();
+        }
+        return changedCount;
+    }
+
+    /** @return true if the limited entry already has the status given by a CRL entry, or should not exist and does not exist */
+    private boolean isLimitedCertificateUpToDate(final Date revocationDate, final int reasonCode, final CertificateDataWrapper cdw) {
+        if (cdw == null) {
+            return reasonCode == RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+        }
+        final CertificateData certData = cdw.getCertificateData();
+        return reasonCode != RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL && certData.getStatus() == CertificateConstants.CERT_REVOKED
+                && certData.getRevocationDate() == revocationDate.getTime() && certData.getRevocationReason() == reasonCode;
+    }
+
+    /** @return the issuer DN from the first directory name of a certificate issuer CRL entry extension, or the current issuer DN if it has none */
+    private String getCertificateIssuerDn(final Extension certificateIssuer, final String currentIssuerDn) {
+        for (final GeneralName generalName : GeneralNames.getInstance(certificateIssuer.getParsedValue()).getNames()) {
+            if (generalName.getTagNo() == GeneralName.directoryName) {
+                return CertTools.stringToBCDNString(X500Name.getInstance(generalName.getName()).toString());
+            }
+        }
+        return currentIssuerDn;
+    }
     
     private boolean isCertAlreadyRevoked(final int revocationReason, final CertificateDataWrapper cdw) {
         if(cdw != null) {
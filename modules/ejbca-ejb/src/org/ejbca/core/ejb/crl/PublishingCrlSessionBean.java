@@ -19,12 +19,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.FinderException;
@@ -61,12 +66,15 @@ import org.cesecore.certificates.crl.CRLInfo;
 import org.cesecore.certificates.crl.CrlCreateSessionLocal;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.CompressedCollection;
 import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.StringTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 
 /**
@@ -83,6 +91,10 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
     private static final Logger log = Logger.getLogger(PublishingCrlSessionBean.class);
     /** Internal localization of logs and errors */
     private static final InternalResources intres = InternalResources.getInstance();
+    /** Certificates updated this long before the previous full CRL was created are also read for incremental CRLs, in case they were committed late */
+    private static final long INCREMENTAL_CRL_UPDATE_MARGIN = 10 * 60 * 1000L;
+    /** How often CRL generation in progress for other CAs is checked for completion, in milliseconds */
+    private static final long CRL_GENERATION_POLL_INTERVAL = 50L;
 
     @Resource
     private SessionContext sessionContext;
@@ -125,49 +137,111 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
 
     @Override
     public int createCRLs(final AuthenticationToken admin, final Collection<Integer> caids, final long addtocrloverlaptime) throws AuthorizationDeniedException {
+        return createCRLs(admin, caids, addtocrloverlaptime, false);
+    }
+
+    @Override
+    public int createDeltaCRLs(final AuthenticationToken admin, final Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException {
+        return createCRLs(admin, caids, crloverlaptime, true);
+    }
+
+    /**
+     * Generates CRLs, or delta CRLs, for the CAs that need one. With crlgen.concurrency set above 1, CAs are processed in parallel,
+     * starting with the CAs that took the longest time to generate a CRL for last time, and a new CA is started as soon as any CA is done,
+     * so that a CA with a very large CRL is generated alongside the others instead of delaying them at the end.
+     *
+     * @return the number of generated CRLs
+     */
+    private int createCRLs(final AuthenticationToken admin, final Collection<Integer> caids, final long overlaptime, final boolean delta) throws AuthorizationDeniedException {
         final Collection<Integer> caIdsToProcess;
         if (caids==null || caids.contains(Integer.valueOf(CAConstants.ALLCAS))) {
             caIdsToProcess = caSession.getAllCaIds();
         } else {
             caIdsToProcess = caids;
         }
+        final int concurrency = Math.min(EjbcaConfiguration.getCrlGenerationConcurrency(), caIdsToProcess.size());
         int createdcrls = 0;
-        for (final int caid : caIdsToProcess) {
-            if (log.isDebugEnabled()) {
-                log.debug("createCRLs for caid: " + caid);
-            }
-            try {
-                if (publishingCrlSession.createCRLNewTransactionConditioned(admin, caid, addtocrloverlaptime)) {
+        if (concurrency <= 1) {
+            for (final int caid : caIdsToProcess) {
+                if (createCRLForCa(admin, caid, overlaptime, delta)) {
                     createdcrls++;
                 }
-            } catch (CryptoTokenOfflineException | CAOfflineException | CADoesntExistsException e) {
-                // Don't fail all generation just because one of the CAs had token offline or similar.
-                // Continue working with the others, but log an error message in system logs, use error logging
-                // since it might be something that should call for attention of the operators, CRL generation is important.
-                String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
-                log.error(msg, e);
             }
+            return createdcrls;
+        }
+        final long startTime = System.currentTimeMillis();
+        // CAs are started in this order, with at most concurrency CAs in progress at the time.
+        // Wait for all CAs, and then fail in the same way as sequential generation would have for the first CA that failed
+        final List<Integer> orderedCaIds = CrlGenerationMetrics.INSTANCE.getOrderedByLastTime(caIdsToProcess, delta);
+        final List<Future<Boolean>> inProgress = new ArrayList<>();
+        int started = 0;
+        Throwable failure = null;
+        while (started < orderedCaIds.size() || !inProgress.isEmpty()) {
+            while (started < orderedCaIds.size() && inProgress.size() < concurrency) {
+                inProgress.add(publishingCrlSession.createCRLAsync(admin, orderedCaIds.get(started++).intValue(), overlaptime, delta));
+            }
+            boolean anyDone = false;
+            for (final Iterator<Future<Boolean>> iterator = inProgress.iterator(); iterator.hasNext();) {
+                final Future<Boolean> future = iterator.next();
+                if (!future.isDone()) {
+                    continue;
+                }
+                iterator.remove();
+                anyDone = true;
+                try {
+                    if (future.get().booleanValue()) {
+                        createdcrls++;
+                    }
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException("Interrupted while waiting for CRL generation.", e);
+                }
+            }
+            if (!anyDone) {
+                try {
+                    Thread.sleep(CRL_GENERATION_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException("Interrupted while waiting for CRL generation.", e);
+                }
+            }
+        }
+        if (failure instanceof AuthorizationDeniedException) {
+            throw (AuthorizationDeniedException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new EJBException(failure.getMessage(), (Exception) failure);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Generated " + createdcrls + (delta ? " delta CRLs" : " CRLs") + " for " + caIdsToProcess.size() + " CAs using " + concurrency
+                    + " threads in " + (System.currentTimeMillis() - startTime) + " ms.");
         }
         return createdcrls;
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Asynchronous
     @Override
-    public int createDeltaCRLs(final AuthenticationToken admin, final Collection<Integer> caids, long crloverlaptime) throws AuthorizationDeniedException {
-        final Collection<Integer> caIdsToProcess;
-        if (caids==null || caids.contains(Integer.valueOf(CAConstants.ALLCAS))) {
-            caIdsToProcess = caSession.getAllCaIds();
-        } else {
-            caIdsToProcess = caids;
+    public Future<Boolean> createCRLAsync(final AuthenticationToken admin, final int caid, final long overlaptime, final boolean delta)
+            throws AuthorizationDeniedException {
+        return new AsyncResult<>(Boolean.valueOf(createCRLForCa(admin, caid, overlaptime, delta)));
+    }
+
+    /** @return true if a CRL, or delta CRL, was generated for the CA */
+    private boolean createCRLForCa(final AuthenticationToken admin, final int caid, final long overlaptime, final boolean delta) throws AuthorizationDeniedException {
+        if (log.isDebugEnabled()) {
+            log.debug((delta ? "createDeltaCRLs" : "createCRLs") + " for caid: " + caid);
         }
-        int createddeltacrls = 0;
-        for (final int caid : caIdsToProcess) {
-            if (log.isDebugEnabled()) {
-                log.debug("createDeltaCRLs for caid: " + caid);
-            }
+        final long startTime = System.currentTimeMillis();
+        boolean created = false;
+        if (delta) {
             try {
-                if (publishingCrlSession.createDeltaCRLnewTransactionConditioned(admin, caid, crloverlaptime)) {
-                    createddeltacrls++;
-                }
+                created = publishingCrlSession.createDeltaCRLnewTransactionConditioned(admin, caid, overlaptime);
             } catch (CesecoreException e) {
                 // Don't fail all generation just because one of the CAs had token offline or similar.
                 // Continue working with the others, but log a warning message in system logs.
@@ -177,8 +251,26 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 details.put("msg", msg);
                 logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
             }
+        } else {
+            try {
+                created = publishingCrlSession.createCRLNewTransactionConditioned(admin, caid, overlaptime);
+            } catch (CryptoTokenOfflineException | CAOfflineException | CADoesntExistsException e) {
+                // Don't fail all generation just because one of the CAs had token offline or similar.
+                // Continue working with the others, but log an error message in system logs, use error logging
+                // since it might be something that should call for attention of the operators, CRL generation is important.
+                String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
+                log.error(msg, e);
+            }
         }
-        return createddeltacrls;
+        if (created) {
+            // Only CRLs that were actually generated say anything about how long it takes to generate one
+            final long time = System.currentTimeMillis() - startTime;
+            CrlGenerationMetrics.INSTANCE.add(caid, delta, time);
+            final CrlGenerationMetrics.CrlGenerationMetric metric = CrlGenerationMetrics.INSTANCE.getMetric(caid, delta);
+            log.info("Generated " + (delta ? "delta CRL" : "CRL") + " for caid " + caid + " in " + time + " ms. Generated " + metric.getCount()
+                    + " on this node in " + metric.getAverageTime() + " ms on average, at most " + metric.getMaxTime() + " ms.");
+        }
+        return created;
     }
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
@@ -274,7 +366,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                                 if (log.isDebugEnabled()) {
                                     log.debug("Creating CRL for CA, because:"+(now.getTime()+overlap)+" >= "+nextScheduledUpdate);
                                 }
-                                if (internalCreateCRL(admin, ca, lastBaseCrlInfo) != null) {
+                                if (internalCreateCRL(admin, ca, lastBaseCrlInfo, true) != null) {
                                     ret = true;
                                 }
                             }
@@ -378,7 +470,8 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
     public boolean forceCRL(final AuthenticationToken admin, final int caid) throws CADoesntExistsException, AuthorizationDeniedException, CryptoTokenOfflineException, CAOfflineException {
         final CA ca = caSession.getCA(admin, caid);
         final CRLInfo lastBaseCrlInfo = crlSession.getLastCRLInfo(CertTools.getSubjectDN(getCaCertificate(ca.getCAInfo())), false);
-        return internalCreateCRL(admin, ca, lastBaseCrlInfo) != null;
+        // Always generate forced CRLs from all revoked certificates, so an incremental CRL can be corrected if needed
+        return internalCreateCRL(admin, ca, lastBaseCrlInfo, false) != null;
     }
 
     @Override
@@ -407,12 +500,13 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
      *
      * @param admin administrator performing the task
      * @param ca the CA this operation regards
+     * @param allowIncremental true if the CRL may be generated from the previous full CRL, when configured
      * @return fingerprint (primary key) of the generated CRL or null if
      *            generation failed
      * @throws AuthorizationDeniedException
      * @throws javax.ejb.EJBException if a communications- or system error occurs
      */
-    private String internalCreateCRL(final AuthenticationToken admin, final CA ca, final CRLInfo lastBaseCrlInfo) throws CAOfflineException, CryptoTokenOfflineException, AuthorizationDeniedException {
+    private String internalCreateCRL(final AuthenticationToken admin, final CA ca, final CRLInfo lastBaseCrlInfo, final boolean allowIncremental) throws CAOfflineException, CryptoTokenOfflineException, AuthorizationDeniedException {
         if (log.isTraceEnabled()) {
             log.trace(">internalCreateCRL()");
         }
@@ -426,8 +520,15 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             final Certificate cacert = getCaCertificate(cainfo);
             // DN from the CA issuing the CRL to be used when searching for the CRL in the database.
             final String caCertSubjectDN = cacert==null ? null : CertTools.getSubjectDN(cacert);
-            // We can not create a CRL for a CA that is waiting for certificate response
-            if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE )  {
+            final byte[] previousCrl = allowIncremental && caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE ?
+                    getPreviousCrlForIncrementalCrl(ca, caCertSubjectDN, lastBaseCrlInfo) : null;
+            if (previousCrl != null) {
+                final byte[] crlBytes = internalCreateIncrementalCRL(admin, (X509CA) ca, caCertSubjectDN, previousCrl, lastBaseCrlInfo);
+                if (crlBytes != null) {
+                    ret = CertTools.getFingerprintAsString(crlBytes);
+                }
+            } else if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE )  {
+                // We can not create a CRL for a CA that is waiting for certificate response
                 // Find all revoked certificates for a complete CRL
                 if (log.isDebugEnabled()) {
                     final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
@@ -514,7 +615,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                     }
                 }
                 // a full CRL
-                final byte[] crlBytes = generateAndStoreCRL(admin, ca, revokedCertificates, lastBaseCrlInfo, false);
+                final byte[] crlBytes = generateAndStoreCRL(admin, ca, null, revokedCertificates, lastBaseCrlInfo, false);
                 if (crlBytes != null) {
                     ret = CertTools.getFingerprintAsString(crlBytes);
                 }
@@ -547,6 +648,49 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         return ret;
     }
 
+    /** @return the previous full CRL to generate an incremental CRL from, or null if the CRL should be generated from all revoked certificates */
+    private byte[] getPreviousCrlForIncrementalCrl(final CA ca, final String caCertSubjectDN, final CRLInfo lastBaseCrlInfo) {
+        if (!CesecoreConfiguration.isCrlGenIncremental() || lastBaseCrlInfo == null || ca.getCAType() != CAInfo.CATYPE_X509 || ((X509CA)ca).getNameChanged()
+                || ca.getCAInfo().isUseNoConflictCertificateData()) {
+            return null;
+        }
+        return crlSession.getLastCRL(caCertSubjectDN, false);
+    }
+
+    /**
+     * Generates a new full CRL from the previous full CRL, by only reading the certificates that have been revoked, unrevoked or have
+     * expired since the previous CRL was generated. Expired certificates are archived in the same way as when generating CRLs from all
+     * revoked certificates.
+     *
+     * @return the bytes of the generated CRL or null if no CRL was generated
+     */
+    private byte[] internalCreateIncrementalCRL(final AuthenticationToken admin, final X509CA ca, final String caCertSubjectDN, final byte[] previousCrl,
+            final CRLInfo lastBaseCrlInfo) throws CryptoTokenOfflineException, AuthorizationDeniedException {
+        final Date now = new Date();
+        final Date lastCrlCreationDate = lastBaseCrlInfo.getCreateDate();
+        final boolean keepexpiredcertsoncrl = ca.getCAInfo().getKeepExpiredCertsOnCRL();
+        final Collection<RevokedCertInfo> changes = certificateDataSession.getChangedRevokedCertInfos(CertTools.stringToBCDNString(StringTools.strip(caCertSubjectDN)),
+                lastCrlCreationDate.getTime() - INCREMENTAL_CRL_UPDATE_MARGIN, keepexpiredcertsoncrl ? -1 : lastCrlCreationDate.getTime());
+        if (log.isDebugEnabled()) {
+            log.debug("Generating incremental CRL for CA '" + ca.getName() + "' with " + changes.size() + " changed entries since CRL number "
+                    + lastBaseCrlInfo.getLastCRLNumber() + ".");
+        }
+        final AuthenticationToken archiveAdmin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CrlCreateSession.archive_expired"));
+        for (final RevokedCertInfo revokedCertInfo : changes) {
+            if (revokedCertInfo.getReason() == RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
+                continue;
+            }
+            if (!keepexpiredcertsoncrl && revokedCertInfo.getExpireDate() != null && revokedCertInfo.getExpireDate().before(lastCrlCreationDate)) {
+                // Certificate has expired, set status to archived in the database and remove it from the CRL
+                noConflictCertificateStoreSession.setStatus(archiveAdmin, revokedCertInfo.getCertificateFingerprint(), CertificateConstants.CERT_ARCHIVED);
+                revokedCertInfo.setReason(RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL);
+            } else if (!revokedCertInfo.isRevocationDateSet()) {
+                revokedCertInfo.setRevocationDate(now);
+            }
+        }
+        return generateAndStoreCRL(admin, ca, previousCrl, changes, lastBaseCrlInfo, false);
+    }
+
     /**
      * Generates a new Delta CRL by looking in the database for revoked
      * certificates since the last complete CRL issued and generating a CRL with
@@ -634,7 +778,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 }
                 revcertinfos.clear();  // Release unused resources
                 // create a delta CRL
-                crlBytes = generateAndStoreCRL(admin, ca, certs, lastBaseCrlInfo, true);
+                crlBytes = generateAndStoreCRL(admin, ca, null, certs, lastBaseCrlInfo, true);
                 if (log.isDebugEnabled()) {
                     X509CRL crl = CertTools.getCRLfromByteArray(crlBytes);
                     log.debug("Created delta CRL with expire date: "+crl.getNextUpdate());
@@ -663,7 +807,8 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         return crlBytes;
     }
 
-    private byte[] generateAndStoreCRL(final AuthenticationToken admin, final CA ca, final Collection<RevokedCertInfo> certs, final CRLInfo lastBaseCrlInfo, final boolean delta) throws CryptoTokenOfflineException, AuthorizationDeniedException {
+    /** @param previousCrl the previous full CRL that certs are changes to, or null to generate the CRL from certs only */
+    private byte[] generateAndStoreCRL(final AuthenticationToken admin, final CA ca, final byte[] previousCrl, final Collection<RevokedCertInfo> certs, final CRLInfo lastBaseCrlInfo, final boolean delta) throws CryptoTokenOfflineException, AuthorizationDeniedException {
          // Hard and error-prone to do that.
         if (log.isDebugEnabled()) {
             log.debug("Storing CRL in publishers");
@@ -701,7 +846,12 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         final int deltacrlnumber = crlSession.getLastCRLNumber(certSubjectDN, true);
         // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
         final int nextCrlNumber = ( fullcrlnumber > deltacrlnumber ? fullcrlnumber : deltacrlnumber ) +1;
-        final byte[] crlBytes = crlCreateSession.generateAndStoreCRL(admin, ca, certs, delta?fullcrlnumber:-1, nextCrlNumber);
+        final byte[] crlBytes;
+        if (previousCrl != null) {
+            crlBytes = crlCreateSession.generateAndStoreIncrementalCRL(admin, (X509CA) ca, previousCrl, certs, nextCrlNumber);
+        } else {
+            crlBytes = crlCreateSession.generateAndStoreCRL(admin, ca, certs, delta?fullcrlnumber:-1, nextCrlNumber);
+        }
         this.publisherSession.storeCRL(admin, ca.getCRLPublishers(), crlBytes, cafp, nextCrlNumber, certSubjectDN);
         return crlBytes;
     }
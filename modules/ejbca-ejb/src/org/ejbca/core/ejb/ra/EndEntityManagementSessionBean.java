@@ -69,6 +69,7 @@ import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateData;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateRevokeException;
+import org.cesecore.certificates.certificate.CertificateSearchTokenData;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.NoConflictCertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
@@ -83,6 +84,7 @@ import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
 import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.cesecore.certificates.util.DnComponents;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.roles.member.RoleMemberData;
@@ -598,10 +600,19 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         final List<CertificateData> certificateDatas = entityManager.createQuery(
                 "SELECT a FROM CertificateData a WHERE a.username=:username", CertificateData.class).setParameter("username", currentUsername).getResultList();
         int updatedPublisherQueueDataRows = 0;
+        final boolean certificateSearchIndexEnabled = CesecoreConfiguration.isCertificateSearchIndexEnabled();
         for (final CertificateData certificateData : certificateDatas) {
             final String fingerprint = certificateData.getFingerprint();
             certificateData.setUsername(newUsername);
             certificateData.setUpdateTime(now);
+            if (certificateSearchIndexEnabled) {
+                // Replace the search tokens, since the username is one of them
+                entityManager.createQuery("DELETE FROM CertificateSearchTokenData a WHERE a.fingerprint=:fingerprint")
+                        .setParameter("fingerprint", fingerprint).executeUpdate();
+                for (final CertificateSearchTokenData certificateSearchTokenData : CertificateSearchTokenData.createTokens(certificateData)) {
+                    entityManager.persist(certificateSearchTokenData);
+                }
+            }
             // Find all publisher queue data where PublisherQueueData.fingerprint matches CertificateData.fingerprint for this user
             final List<PublisherQueueData> publisherQueueDatas = PublisherQueueData.findDataByFingerprint(entityManager, fingerprint);
             for (final PublisherQueueData publisherQueueData : publisherQueueDatas) {
@@ -15,12 +15,13 @@ package org.ejbca.core.ejb.ra.raadmin;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.persistence.EntityManager;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.internal.CacheStatistics;
+import org.cesecore.internal.SnapshotCache;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
@@ -47,27 +48,39 @@ public enum EndEntityProfileCache {
     /** Internal localization of logs and errors */
     private final InternalEjbcaResources INTRES = InternalEjbcaResources.getInstance();
 
+    /** All profiles and name mappings read at the same time, so they are always replaced together */
+    private static class Profiles {
+        /** Cache of mappings between profileId and profileName */
+        final Map<Integer, String> idNameMapCache;
+        /** Cache of mappings between profileName and profileId */
+        final Map<String, Integer> nameIdMapCache;
+        /** Cache of end entity profiles, with Id as keys */
+        final Map<Integer, EndEntityProfile> profileCache;
+
+        Profiles(final Map<Integer, String> idNameMapCache, final Map<String, Integer> nameIdMapCache,
+                final Map<Integer, EndEntityProfile> profileCache) {
+            this.idNameMapCache = idNameMapCache;
+            this.nameIdMapCache = nameIdMapCache;
+            this.profileCache = profileCache;
+        }
+    }
+
     /*
      * Cache of profiles, with Id as keys. This cache may be
      * unsynchronized between multiple instances of EJBCA, but is common to all
-     * threads in the same VM. Set volatile to make it thread friendly.
+     * threads in the same VM.
      */
-
-    /** Cache of mappings between profileId and profileName */
-    private volatile Map<Integer, String> idNameMapCache = null;
-    /** Cache of mappings between profileName and profileId */
-    private volatile Map<String, Integer> nameIdMapCache = null;
-    /** Cache of end entity profiles, with Id as keys */
-    private volatile Map<Integer, EndEntityProfile> profileCache = null;
-    
-    private volatile long lastUpdate = 0;
+    private final SnapshotCache<Profiles> cache = new SnapshotCache<Profiles>() {
+        @Override
+        protected long getCacheTime() {
+            return EjbcaConfiguration.getCacheEndEntityProfileTime();
+        }
+    };
 
     /* Create template maps with all static constants */
     private final HashMap<Integer,String> idNameMapCacheTemplate = new HashMap<Integer,String>();
     private final HashMap<String,Integer> nameIdMapCacheTemplate = new HashMap<String,Integer>();
 
-    private final ReentrantLock lock = new ReentrantLock(false);
-    
     private EndEntityProfileCache() {
     	idNameMapCacheTemplate.put(Integer.valueOf(EndEntityConstants.EMPTY_END_ENTITY_PROFILE), EndEntityConstants.EMPTY_ENDENTITYPROFILENAME);
     	nameIdMapCacheTemplate.put(EndEntityConstants.EMPTY_ENDENTITYPROFILENAME, Integer.valueOf(EndEntityConstants.EMPTY_END_ENTITY_PROFILE));
@@ -82,63 +95,55 @@ public enum EndEntityProfileCache {
         if (LOG.isTraceEnabled()) {
             LOG.trace(">updateProfileCache: "+force);
         }
-        final long cacheEndEntityProfileTime = EjbcaConfiguration.getCacheEndEntityProfileTime();
-        final long now = System.currentTimeMillis();
-        // Check before acquiring lock
-        if (!force && cacheEndEntityProfileTime!=0 && lastUpdate+cacheEndEntityProfileTime > now) {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("<updateProfileCache returning, cache time not expired: "+cacheEndEntityProfileTime);
-            }
-            return; // We don't need to update cache
-        }
-        try {
-        	lock.lock();
-        	if (!force && cacheEndEntityProfileTime!=0 && lastUpdate+cacheEndEntityProfileTime > now) {
-        		return;	// We don't need to update cache
-        	}
-        	lastUpdate = now; // make sure next thread does not also pass the update test
-        } finally {
-        	lock.unlock();
-        }
-        final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
-        final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
-        final Map<Integer, EndEntityProfile> profCache = new HashMap<Integer, EndEntityProfile>();
-        try {
-        	final List<EndEntityProfileData> result = EndEntityProfileData.findAll(entityManager);
-        	for (final EndEntityProfileData next : result) {
-        		final Integer id = Integer.valueOf(next.getId());
-        		final String profileName = next.getProfileName();
-        		idNameCache.put(id, profileName);
-        		nameIdCache.put(profileName, id);
-        		profCache.put(id, next.getProfile());
-        	}
-        } catch (Exception e) {
-        	LOG.error(INTRES.getLocalizedMessage("ra.errorreadprofiles"), e);
-        }
-        idNameMapCache = idNameCache;
-        nameIdMapCache = nameIdCache;
-        profileCache = profCache;
+        final long start = System.currentTimeMillis();
+        cache.reload(getLoader(entityManager), force);
         if (LOG.isTraceEnabled()) {
             final long end = System.currentTimeMillis();
-            LOG.trace("<updateProfileCache took: "+(end-now)+"ms");
+            LOG.trace("<updateProfileCache took: "+(end-start)+"ms");
         }
-	}
-
-	/** @return the latest object from the cache or a current database representation if no caching is used. */
-	public Map<Integer, EndEntityProfile> getProfileCache(final EntityManager entityManager) {
-		updateProfileCache(entityManager, false);
-		return profileCache;
-	}
-
-	/** @return the latest object from the cache or a current database representation if no caching is used. */
-	public Map<Integer, String> getIdNameMapCache(final EntityManager entityManager) {
-		updateProfileCache(entityManager, false);
-		return idNameMapCache;
-	}
-
-	/** @return the latest object from the cache or a current database representation if no caching is used. */
-	public Map<String, Integer> getNameIdMapCache(final EntityManager entityManager) {
-		updateProfileCache(entityManager, false);
-		return nameIdMapCache;
-	}
+    }
+
+    private SnapshotCache.Loader<Profiles> getLoader(final EntityManager entityManager) {
+        return new SnapshotCache.Loader<Profiles>() {
+            @Override
+            public Profiles load() {
+                final Map<Integer, String> idNameCache = new HashMap<Integer, String>(idNameMapCacheTemplate);
+                final Map<String, Integer> nameIdCache = new HashMap<String, Integer>(nameIdMapCacheTemplate);
+                final Map<Integer, EndEntityProfile> profCache = new HashMap<Integer, EndEntityProfile>();
+                try {
+                    final List<EndEntityProfileData> result = EndEntityProfileData.findAll(entityManager);
+                    for (final EndEntityProfileData next : result) {
+                        final Integer id = Integer.valueOf(next.getId());
+                        final String profileName = next.getProfileName();
+                        idNameCache.put(id, profileName);
+                        nameIdCache.put(profileName, id);
+                        profCache.put(id, next.getProfile());
+                    }
+                } catch (Exception e) {
+                    LOG.error(INTRES.getLocalizedMessage("ra.errorreadprofiles"), e);
+                }
+                return new Profiles(idNameCache, nameIdCache, profCache);
+            }
+        };
+    }
+
+    /** @return the latest object from the cache or a current database representation if no caching is used. */
+    public Map<Integer, EndEntityProfile> getProfileCache(final EntityManager entityManager) {
+        return cache.get(getLoader(entityManager)).profileCache;
+    }
+
+    /** @return the latest object from the cache or a current database representation if no caching is used. */
+    public Map<Integer, String> getIdNameMapCache(final EntityManager entityManager) {
+        return cache.get(getLoader(entityManager)).idNameMapCache;
+    }
+
+    /** @return the latest object from the cache or a current database representation if no caching is used. */
+    public Map<String, Integer> getNameIdMapCache(final EntityManager entityManager) {
+        return cache.get(getLoader(entityManager)).nameIdMapCache;
+    }
+
+    /** @return the hit, miss and load counters of this cache */
+    public CacheStatistics getStatistics() {
+        return cache.getStatistics();
+    }
 }
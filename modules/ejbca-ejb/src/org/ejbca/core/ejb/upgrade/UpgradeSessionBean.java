@@ -66,6 +66,7 @@ import org.cesecore.authorization.user.AccessUserAspectData;
 import org.cesecore.authorization.user.matchvalues.X500PrincipalAccessMatchValue;
 import org.cesecore.certificates.ca.ApprovalRequestType;
 import org.cesecore.certificates.ca.CA;
+import org.cesecore.certificates.ca.CAData;
 import org.cesecore.certificates.ca.CADoesntExistsException;
 import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.ca.CaSessionLocal;
@@ -78,28 +79,33 @@ import org.cesecore.certificates.certificatetransparency.CTLogInfo;
 import org.cesecore.certificates.ocsp.OcspResponseGeneratorSessionLocal;
 import org.cesecore.certificates.util.DNFieldExtractor;
 import org.cesecore.config.AvailableExtendedKeyUsagesConfiguration;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.ConfigurationHolder;
 import org.cesecore.config.GlobalOcspConfiguration;
 import org.cesecore.config.OcspConfiguration;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keybind.InternalKeyBinding;
+import org.cesecore.keybind.InternalKeyBindingData;
 import org.cesecore.keybind.InternalKeyBindingDataSessionLocal;
 import org.cesecore.keybind.InternalKeyBindingNameInUseException;
 import org.cesecore.keybind.InternalKeyBindingRules;
 import org.cesecore.keybind.InternalKeyBindingTrustEntry;
 import org.cesecore.keybind.impl.OcspKeyBinding;
 import org.cesecore.keys.token.CryptoTokenSessionLocal;
+import org.cesecore.profiles.ProfileData;
 import org.cesecore.roles.AccessRulesHelper;
 import org.cesecore.roles.AccessRulesMigrator;
 import org.cesecore.roles.AdminGroupData;
 import org.cesecore.roles.Role;
+import org.cesecore.roles.RoleData;
 import org.cesecore.roles.management.RoleDataSessionLocal;
 import org.cesecore.roles.management.RoleSessionLocal;
 import org.cesecore.roles.member.RoleMember;
 import org.cesecore.roles.member.RoleMemberDataSessionLocal;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.DataMapSerializer;
 import org.cesecore.util.FileTools;
 import org.cesecore.util.StringTools;
 import org.cesecore.util.ui.PropertyValidationException;
@@ -117,10 +123,12 @@ import org.ejbca.core.ejb.approval.ApprovalSessionLocal;
 import org.ejbca.core.ejb.authentication.cli.CliAuthenticationTokenMetaData;
 import org.ejbca.core.ejb.authentication.cli.CliUserAccessMatchValue;
 import org.ejbca.core.ejb.authorization.AuthorizationSystemSessionLocal;
+import org.ejbca.core.ejb.ca.publisher.PublisherData;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
 import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionLocal;
 import org.ejbca.core.ejb.ra.userdatasource.UserDataSourceSessionLocal;
+import org.ejbca.core.ejb.services.ServiceData;
 import org.ejbca.core.model.approval.Approval;
 import org.ejbca.core.model.approval.profile.AccumulativeApprovalProfile;
 import org.ejbca.core.model.approval.profile.ApprovalPartition;
@@ -198,6 +206,18 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
 
     private UpgradeSessionLocal upgradeSession;
 
+    private static final int DATA_MAP_MIGRATION_BATCH_SIZE = 100;
+    /** Entities with data maps that can be stored in the compact format, and the names of their primary keys */
+    private static final Map<Class<?>, String> DATA_MAP_ENTITIES = new LinkedHashMap<>();
+    static {
+        DATA_MAP_ENTITIES.put(CAData.class, "caId");
+        DATA_MAP_ENTITIES.put(ProfileData.class, "id");
+        DATA_MAP_ENTITIES.put(RoleData.class, "id");
+        DATA_MAP_ENTITIES.put(InternalKeyBindingData.class, "id");
+        DATA_MAP_ENTITIES.put(PublisherData.class, "id");
+        DATA_MAP_ENTITIES.put(ServiceData.class, "id");
+    }
+
     @PostConstruct
     public void ejbCreate() {
     	upgradeSession = sessionContext.getBusinessObject(UpgradeSessionLocal.class);
@@ -405,6 +425,87 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
         return new AsyncResult<Boolean>(ret);
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Asynchronous
+    @Override
+    public Future<Integer> startDataMapCompactFormatMigration() {
+        int migrated = 0;
+        if (!CesecoreConfiguration.isDataMapCompactFormat()) {
+            return new AsyncResult<>(migrated);
+        }
+        log.info("Converting stored data to the compact format in the background.");
+        for (final Map.Entry<Class<?>, String> entity : DATA_MAP_ENTITIES.entrySet()) {
+            final List<Integer> ids = entityManager.createQuery("SELECT a." + entity.getValue() + " FROM " + entity.getKey().getSimpleName() + " a",
+                    Integer.class).getResultList();
+            for (int i = 0; i < ids.size(); i += DATA_MAP_MIGRATION_BATCH_SIZE) {
+                final List<Integer> batch = new ArrayList<>(ids.subList(i, Math.min(i + DATA_MAP_MIGRATION_BATCH_SIZE, ids.size())));
+                try {
+                    migrated += upgradeSession.migrateDataMapsToCompactFormat(entity.getKey(), batch);
+                } catch (RuntimeException e) {
+                    // For example if a row was edited at the same time. It will be converted the next time it is saved, or at the next startup.
+                    log.info("Failed to convert " + entity.getKey().getSimpleName() + " rows to the compact format: " + e.getMessage());
+                }
+            }
+        }
+        log.info("Converted " + migrated + " rows to the compact format.");
+        return new AsyncResult<>(migrated);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public int migrateDataMapsToCompactFormat(final Class<?> entityClass, final List<Integer> ids) {
+        int migrated = 0;
+        for (final Integer id : ids) {
+            final Object entity = entityManager.find(entityClass, id);
+            final String compactData;
+            if (entity instanceof CAData) {
+                final CAData caData = (CAData) entity;
+                if ((compactData = toCompactDataMap(caData.getData())) != null) {
+                    caData.setData(compactData);
+                }
+            } else if (entity instanceof ProfileData) {
+                final ProfileData profileData = (ProfileData) entity;
+                if ((compactData = toCompactDataMap(profileData.getRawData())) != null) {
+                    profileData.setRawData(compactData);
+                }
+            } else if (entity instanceof RoleData) {
+                final RoleData roleData = (RoleData) entity;
+                if ((compactData = toCompactDataMap(roleData.getRawData())) != null) {
+                    roleData.setRawData(compactData);
+                }
+            } else if (entity instanceof InternalKeyBindingData) {
+                final InternalKeyBindingData internalKeyBindingData = (InternalKeyBindingData) entity;
+                if ((compactData = toCompactDataMap(internalKeyBindingData.getRawData())) != null) {
+                    internalKeyBindingData.setRawData(compactData);
+                }
+            } else if (entity instanceof PublisherData) {
+                final PublisherData publisherData = (PublisherData) entity;
+                if ((compactData = toCompactDataMap(publisherData.getData())) != null) {
+                    publisherData.setData(compactData);
+                }
+            } else if (entity instanceof ServiceData) {
+                final ServiceData serviceData = (ServiceData) entity;
+                if ((compactData = toCompactDataMap(serviceData.getData())) != null) {
+                    serviceData.setData(compactData);
+                }
+            } else {
+                compactData = null;
+            }
+            if (compactData != null) {
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    /** @return the data in the compact format, or null if it already is in the compact format or can not be written in it */
+    private String toCompactDataMap(final String data) {
+        if (data == null || DataMapSerializer.isCompact(data)) {
+            return null;
+        }
+        return DataMapSerializer.encodeCompact(DataMapSerializer.decode(data));
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public boolean upgrade(String dbtype, String oldVersion, boolean isPost) {
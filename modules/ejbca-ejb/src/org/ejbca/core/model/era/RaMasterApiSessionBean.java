@@ -92,6 +92,7 @@ import org.cesecore.certificates.certificate.CertificateCreateException;
 import org.cesecore.certificates.certificate.CertificateCreateSessionLocal;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateRevokeException;
+import org.cesecore.certificates.certificate.CertificateSearchTokens;
 import org.cesecore.certificates.certificate.CertificateStatus;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.CertificateWrapper;
@@ -1021,6 +1022,77 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         return cdw;
     }
 
+    /**
+     * Append conditions that find certificates through the certificate search index (CertificateSearchTokenData) instead of
+     * scanning the subject DN, subject alternative name and username of every certificate. Non-exact searches match values
+     * with a word that starts with the search string. Exact searches also check the value of the certificate, since long tokens are truncated.
+     */
+    private void appendSearchIndexConditions(final StringBuilder sb, final RaCertificateSearchRequest request) {
+        final List<String> conditions = new ArrayList<>();
+        if (!request.getSubjectDnSearchString().isEmpty()) {
+            conditions.add(getSearchIndexCondition(CertificateSearchTokens.TYPE_SUBJECTDN, "subjectDNToken", request.isSubjectDnSearchExact(),
+                    "UPPER(a.subjectDN) LIKE :subjectDN"));
+        }
+        if (!request.getSubjectAnSearchString().isEmpty()) {
+            conditions.add(getSearchIndexCondition(CertificateSearchTokens.TYPE_SUBJECTALTNAME, "subjectAltNameToken", request.isSubjectAnSearchExact(),
+                    "a.subjectAltName LIKE :subjectAltName"));
+        }
+        if (!request.getUsernameSearchString().isEmpty()) {
+            conditions.add(getSearchIndexCondition(CertificateSearchTokens.TYPE_USERNAME, "usernameToken", request.isUsernameSearchExact(),
+                    "UPPER(a.username) LIKE :username"));
+        }
+        if (!request.getSerialNumberSearchStringFromDec().isEmpty()) {
+            conditions.add(getSearchIndexCondition(CertificateSearchTokens.TYPE_SERIALNUMBER, "serialNumberDec", true, null));
+        }
+        if (!request.getSerialNumberSearchStringFromHex().isEmpty()) {
+            conditions.add(getSearchIndexCondition(CertificateSearchTokens.TYPE_SERIALNUMBER, "serialNumberHex", true, null));
+        }
+        if (!conditions.isEmpty()) {
+            sb.append(" AND (").append(StringUtils.join(conditions, " OR ")).append(")");
+        }
+    }
+
+    /** @return a condition on certificates with a token of the given type, that starts with or (if exact) is equal to the parameter */
+    private String getSearchIndexCondition(final int tokenType, final String parameterName, final boolean exact, final String exactCondition) {
+        final StringBuilder sb = new StringBuilder("(a.fingerprint IN (SELECT t.fingerprint FROM CertificateSearchTokenData t WHERE t.tokenType=");
+        sb.append(tokenType).append(" AND t.searchToken").append(exact ? "=:" : " LIKE :").append(parameterName).append(")");
+        if (exact && exactCondition != null) {
+            sb.append(" AND ").append(exactCondition);
+        }
+        return sb.append(")").toString();
+    }
+
+    /** Set the parameters of the conditions added by {@link #appendSearchIndexConditions(StringBuilder, RaCertificateSearchRequest)} */
+    private void setSearchIndexParameters(final Query query, final RaCertificateSearchRequest request) {
+        final String subjectDnSearchString = request.getSubjectDnSearchString();
+        if (!subjectDnSearchString.isEmpty()) {
+            if (request.isSubjectDnSearchExact()) {
+                query.setParameter("subjectDNToken", CertificateSearchTokens.normalize(subjectDnSearchString));
+                query.setParameter("subjectDN", subjectDnSearchString.toUpperCase());
+            } else {
+                query.setParameter("subjectDNToken", CertificateSearchTokens.normalize(subjectDnSearchString) + "%");
+            }
+        }
+        final String subjectAnSearchString = request.getSubjectAnSearchString();
+        if (!subjectAnSearchString.isEmpty()) {
+            if (request.isSubjectAnSearchExact()) {
+                query.setParameter("subjectAltNameToken", CertificateSearchTokens.normalize(subjectAnSearchString));
+                query.setParameter("subjectAltName", subjectAnSearchString);
+            } else {
+                query.setParameter("subjectAltNameToken", CertificateSearchTokens.normalize(subjectAnSearchString) + "%");
+            }
+        }
+        final String usernameSearchString = request.getUsernameSearchString();
+        if (!usernameSearchString.isEmpty()) {
+            if (request.isUsernameSearchExact()) {
+                query.setParameter("usernameToken", CertificateSearchTokens.normalize(usernameSearchString));
+                query.setParameter("username", usernameSearchString.toUpperCase());
+            } else {
+                query.setParameter("usernameToken", CertificateSearchTokens.normalize(usernameSearchString) + "%");
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken, RaCertificateSearchRequest request) {
@@ -1079,7 +1151,10 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         final String serialNumberSearchStringFromDec = request.getSerialNumberSearchStringFromDec();
         final String serialNumberSearchStringFromHex = request.getSerialNumberSearchStringFromHex();
         final StringBuilder sb = new StringBuilder("SELECT a.fingerprint FROM CertificateData a WHERE (a.issuerDN IN (:issuerDN))");
-        if (!subjectDnSearchString.isEmpty() || !subjectAnSearchString.isEmpty() || !usernameSearchString.isEmpty() ||
+        final boolean useSearchIndex = CesecoreConfiguration.isCertificateSearchIndexUsedForSearch();
+        if (useSearchIndex) {
+            appendSearchIndexConditions(sb, request);
+        } else if (!subjectDnSearchString.isEmpty() || !subjectAnSearchString.isEmpty() || !usernameSearchString.isEmpty() ||
                 !serialNumberSearchStringFromDec.isEmpty() || !serialNumberSearchStringFromHex.isEmpty()) {
             sb.append(" AND (");
             boolean firstAppended = false;
@@ -1175,21 +1250,23 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
                 log.debug(" endEntityProfileId: Any (even deleted) profile(s) due to root access.");
             }
         }
-        if (!subjectDnSearchString.isEmpty()) {
+        if (useSearchIndex) {
+            setSearchIndexParameters(query, request);
+        } else if (!subjectDnSearchString.isEmpty()) {
             if (request.isSubjectDnSearchExact()) {
                 query.setParameter("subjectDN", subjectDnSearchString.toUpperCase());
             } else {
                 query.setParameter("subjectDN", "%" + subjectDnSearchString.toUpperCase() + "%");
             }
         }
-        if (!subjectAnSearchString.isEmpty()) {
+        if (!useSearchIndex && !subjectAnSearchString.isEmpty()) {
             if (request.isSubjectAnSearchExact()) {
                 query.setParameter("subjectAltName", subjectAnSearchString);
             } else {
                 query.setParameter("subjectAltName", "%" + subjectAnSearchString + "%");
             }
         }
-        if (!usernameSearchString.isEmpty()) {
+        if (!useSearchIndex && !usernameSearchString.isEmpty()) {
             if (request.isUsernameSearchExact()) {
                 query.setParameter("username", usernameSearchString.toUpperCase());
             } else {
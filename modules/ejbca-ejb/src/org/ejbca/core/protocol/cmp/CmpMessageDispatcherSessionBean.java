@@ -13,6 +13,9 @@
 
 package org.ejbca.core.protocol.cmp;
 
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -27,10 +30,17 @@ import javax.ejb.TransactionAttributeType;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.cmp.CertRepMessage;
+import org.bouncycastle.asn1.cmp.CertResponse;
+import org.bouncycastle.asn1.cmp.ErrorMsgContent;
 import org.bouncycastle.asn1.cmp.PKIBody;
+import org.bouncycastle.asn1.cmp.PKIFailureInfo;
 import org.bouncycastle.asn1.cmp.PKIHeader;
 import org.bouncycastle.asn1.cmp.PKIMessage;
 import org.bouncycastle.asn1.cmp.PKIMessages;
+import org.bouncycastle.asn1.cmp.PKIStatus;
+import org.bouncycastle.asn1.cmp.PKIStatusInfo;
 import org.bouncycastle.asn1.util.ASN1Dump;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
@@ -38,6 +48,7 @@ import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.certificate.request.FailInfo;
 import org.cesecore.certificates.certificate.request.ResponseMessage;
+import org.cesecore.certificates.certificate.request.ResponseStatus;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.CryptoTokenSessionLocal;
@@ -152,6 +163,7 @@ public class CmpMessageDispatcherSessionBean implements CmpMessageDispatcherSess
             BaseCmpMessage cmpMessage = null;
             ICmpMessageHandler handler = null;
             int unknownMessageType = -1;
+            int certReqMsgCount = 1;
             switch (tagno) {
             case PKIBody.TYPE_INIT_REQ:
                 // 0: ir, Initialization Request and 2 (cr, Certification Req) are both certificate requests
@@ -162,6 +174,7 @@ public class CmpMessageDispatcherSessionBean implements CmpMessageDispatcherSess
                 cmpMessage = new CrmfRequestMessage(pkiMessage, cmpConfiguration.getCMPDefaultCA(cmpConfigurationAlias),
                         cmpConfiguration.getAllowRAVerifyPOPO(cmpConfigurationAlias),
                         cmpConfiguration.getExtractUsernameComponent(cmpConfigurationAlias));
+                certReqMsgCount = CrmfRequestMessage.getCertReqMsgCount(pkiMessage);
                 break;
             case PKIBody.TYPE_KEY_UPDATE_REQ:                    
                 // 7: Key Update request (kur, Key Update Request)
@@ -224,7 +237,13 @@ public class CmpMessageDispatcherSessionBean implements CmpMessageDispatcherSess
                 }
                 throw new IllegalStateException("Something is null! Handler=" + handler + ", cmpMessage=" + cmpMessage);
             }
-            final ResponseMessage ret = handler.handleMessage(cmpMessage, authenticated);
+            final ResponseMessage ret;
+            if (certReqMsgCount > 1) {
+                ret = handleCertReqMsgs(handler, (CrmfRequestMessage) cmpMessage, pkiMessage, certReqMsgCount, cmpConfiguration, cmpConfigurationAlias,
+                        authenticated);
+            } else {
+                ret = handler.handleMessage(cmpMessage, authenticated);
+            }
             if (ret == null) {
                 log.error(intres.getLocalizedMessage("cmp.errorresponsenull"));
             } else {
@@ -239,6 +258,118 @@ public class CmpMessageDispatcherSessionBean implements CmpMessageDispatcherSess
         }
     }
     
+    /**
+     * Handles all the CertReqMsg of an ir or cr with several certificate requests. Each request is handled by the same handler, in the
+     * transaction of {@link #dispatchRequest(AuthenticationToken, byte[], String)}, so the CA, profiles and authentication of the message
+     * are only resolved once. The client gets one CertRepMessage with a CertResponse for each request, in request order, also if some of
+     * them are rejected.
+     * 
+     * @param handler the handler of the first request
+     * @param firstMessage the message for the first CertReqMsg
+     * @param pkiMessage the CMP message with all requests
+     * @param certReqMsgCount the number of CertReqMsg in the message
+     * @return the response, or an error message for the whole message if it could not be handled at all
+     */
+    private ResponseMessage handleCertReqMsgs(final ICmpMessageHandler handler, final CrmfRequestMessage firstMessage, final PKIMessage pkiMessage,
+            final int certReqMsgCount, final CmpConfiguration cmpConfiguration, final String cmpConfigurationAlias, final boolean authenticated) {
+        if (log.isDebugEnabled()) {
+            log.debug("Handling " + certReqMsgCount + " certificate requests in one CMP message.");
+        }
+        final List<ResponseMessage> responses = new ArrayList<>(certReqMsgCount);
+        final List<Integer> requestIds = new ArrayList<>(certReqMsgCount);
+        for (int i = 0; i < certReqMsgCount; i++) {
+            final CrmfRequestMessage message;
+            if (i == 0) {
+                message = firstMessage;
+            } else {
+                message = new CrmfRequestMessage(pkiMessage, cmpConfiguration.getCMPDefaultCA(cmpConfigurationAlias),
+                        cmpConfiguration.getAllowRAVerifyPOPO(cmpConfigurationAlias), cmpConfiguration.getExtractUsernameComponent(cmpConfigurationAlias), i);
+                message.setAdditionalCaCertificates(firstMessage.getAdditionalCaCertificates());
+                message.setAdditionalExtraCertsCertificates(firstMessage.getAdditionalExtraCertsCertificates());
+            }
+            // The response is protected once, below, when all responses have been combined
+            message.setResponseProtectionDeferred(true);
+            responses.add(handler.handleMessage(message, authenticated));
+            requestIds.add(message.getRequestId());
+        }
+        final ResponseMessage combinedResponse = combineResponses(responses, requestIds);
+        if (combinedResponse == null) {
+            return CmpMessageHelper.createUnprotectedErrorMessage(firstMessage, FailInfo.BAD_REQUEST, "Could not create the response message.");
+        }
+        return combinedResponse;
+    }
+
+    /**
+     * Combines the responses to the CertReqMsg of a CMP message into one CertRepMessage. The CertResponses are placed in request order. The
+     * response to the first granted request, or to the first request if none was granted, carries them and is the only response that is
+     * protected, since it is signed by the CA.
+     * 
+     * @param responses the response to each request, in request order
+     * @param requestIds the certReqId of each request, in request order
+     * @return the combined response, the first response if none of them is a CertRepMessage, or null if the combined response could not be created
+     */
+    static ResponseMessage combineResponses(final List<ResponseMessage> responses, final List<Integer> requestIds) {
+        CmpResponseMessage combinedResponse = null;
+        for (final ResponseMessage response : responses) {
+            if (response instanceof CmpResponseMessage) {
+                if (combinedResponse == null) {
+                    combinedResponse = (CmpResponseMessage) response;
+                }
+                if (((CmpResponseMessage) response).getStatus() == ResponseStatus.SUCCESS) {
+                    combinedResponse = (CmpResponseMessage) response;
+                    break;
+                }
+            }
+        }
+        if (combinedResponse == null) {
+            // Not even a rejection, so the message itself was bad
+            return responses.get(0);
+        }
+        final List<CertResponse> certResponses = new ArrayList<>(responses.size());
+        for (int i = 0; i < responses.size(); i++) {
+            certResponses.add(getCertResponse(responses.get(i), requestIds.get(i)));
+        }
+        combinedResponse.setCertResponses(certResponses);
+        try {
+            if (combinedResponse.create()) {
+                return combinedResponse;
+            }
+        } catch (InvalidKeyException | NoSuchAlgorithmException | NoSuchProviderException e) {
+            log.error("Error creating CertRepMessage: ", e);
+        }
+        return null;
+    }
+
+    /** @return the CertResponse in a response to one certificate request, or a rejection if the response was an error message */
+    private static CertResponse getCertResponse(final ResponseMessage response, final int requestId) {
+        if (response instanceof CmpResponseMessage && ((CmpResponseMessage) response).getCertResponse() != null) {
+            return ((CmpResponseMessage) response).getCertResponse();
+        }
+        byte[] responseBytes = null;
+        if (response != null) {
+            try {
+                responseBytes = response.getResponseMessage();
+            } catch (CertificateEncodingException e) {
+                log.info("Could not get the response to certificate request " + requestId + ": " + e.getMessage());
+            }
+        }
+        if (responseBytes == null) {
+            return new CertResponse(new ASN1Integer(requestId), new PKIStatusInfo(PKIStatus.rejection, null,
+                    new PKIFailureInfo(PKIFailureInfo.systemFailure)));
+        }
+        final PKIBody body = PKIMessage.getInstance(responseBytes).getBody();
+        switch (body.getType()) {
+        case PKIBody.TYPE_INIT_REP:
+        case PKIBody.TYPE_CERT_REP:
+            return CertRepMessage.getInstance(body.getContent()).getResponse()[0];
+        case PKIBody.TYPE_ERROR:
+            return new CertResponse(new ASN1Integer(requestId), ErrorMsgContent.getInstance(body.getContent()).getPKIStatusInfo());
+        default:
+            return new CertResponse(new ASN1Integer(requestId), new PKIStatusInfo(PKIStatus.rejection, null,
+                    new PKIFailureInfo(PKIFailureInfo.badRequest)));
+        }
+    }
+
     /**
      * Adds the list of additional CA certificates to the user certificates signing CA certificate to be 
      * returned with the CMP response 'CertRepMessage.caPubs' field.
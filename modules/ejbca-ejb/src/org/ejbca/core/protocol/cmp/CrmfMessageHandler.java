@@ -27,6 +27,7 @@ import javax.ejb.EJBException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cmp.PKIMessage;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
@@ -118,6 +119,28 @@ public class CrmfMessageHandler extends BaseCmpMessageHandler implements ICmpMes
     private final AuthorizationSession authorizationSession;
     private final WebAuthenticationProviderSessionLocal authenticationProviderSession;
     private final EndEntityManagementSession endEntityManagementSession;
+    /** CA, profiles and authentication resolved in RA mode for the message, shared by all its CertReqMsg */
+    private RaContext raContext = null;
+
+    /** The part of handling a message in RA mode that does not depend on which of its CertReqMsg is handled. */
+    private static final class RaContext {
+        private final PKIMessage pkiMessage;
+        private final int eeProfileId;
+        private final String certProfileName;
+        private final int certProfileId;
+        private final int caId;
+        private final ICMPAuthenticationModule authenticationModule;
+
+        private RaContext(final PKIMessage pkiMessage, final int eeProfileId, final String certProfileName, final int certProfileId, final int caId,
+                final ICMPAuthenticationModule authenticationModule) {
+            this.pkiMessage = pkiMessage;
+            this.eeProfileId = eeProfileId;
+            this.certProfileName = certProfileName;
+            this.certProfileId = certProfileId;
+            this.caId = caId;
+            this.authenticationModule = authenticationModule;
+        }
+    }
 
     /** Construct the message handler. */
     public CrmfMessageHandler(final AuthenticationToken authenticationToken, final CmpConfiguration cmpConfiguration, final String configAlias, final EjbBridgeSessionLocal ejbBridgeSession,
@@ -313,6 +336,7 @@ public class CrmfMessageHandler extends BaseCmpMessageHandler implements ICmpMes
 
 	/** Method that takes care of RA mode operations, i.e. when the message is authenticated with a common secret using password based encryption (pbe).
 	 * This method will verify the pbe and if ok  will automatically create/edit a user and issue the certificate. In RA mode we assume that the RA knows what it is doing.
+	 * The CA, profiles and authentication are resolved once per CMP message, and reused for the other CertReqMsg of the same message.
 	 * 
 	 * @param crmfreq
 	 * @param authenticated if the CMP message has already been authenticated in another way or not
@@ -323,43 +347,52 @@ public class CrmfMessageHandler extends BaseCmpMessageHandler implements ICmpMes
 	 * @throws CesecoreException 
 	 */
 	private ResponseMessage handleRaMessage(final CrmfRequestMessage crmfreq, boolean authenticated) throws AuthorizationDeniedException, EjbcaException, CesecoreException {
-        final int eeProfileId;        // The endEntityProfile to be used when adding users in RA mode.
-        final String certProfileName;  // The certificate profile to use when adding users in RA mode.
-        final int certProfileId;
 	    final int requestId = crmfreq.getRequestId();
         final int requestType = crmfreq.getRequestType();
         // Try to find a HMAC/SHA1 protection key
         final String keyId = CmpMessageHelper.getStringFromOctets(crmfreq.getHeader().getSenderKID());
-        int caId = 0; // The CA to user when adding users in RA mode
-        try {
-            eeProfileId = getUsedEndEntityProfileId(keyId);
-            caId = getUsedCaId(keyId, eeProfileId);
-            certProfileName = getUsedCertProfileName(keyId, eeProfileId);
-            certProfileId = getUsedCertProfileId(certProfileName);
-        } catch (CADoesntExistsException e) {
-            LOG.info(INTRES.getLocalizedMessage(CMP_ERRORGENERAL, e.getMessage()), e);
-            return CmpMessageHelper.createErrorMessage(crmfreq, FailInfo.INCORRECT_DATA, e.getMessage(), requestId, requestType, null, keyId, this.responseProt);
-        }  catch (NotFoundException | EndEntityProfileNotFoundException e) {
-            final String errMsg = INTRES.getLocalizedMessage(CMP_ERRORGENERAL, e.getMessage());
-            LOG.info(errMsg, e);
-            // In case an EE profile or a cert profiles, or a CA can not be found, this is a bad configuration or database is down. 
-            // In either case the system is unavailable due to CMP server, so client should try again at some later point
-            return CmpMessageHelper.createErrorMessage(crmfreq, FailInfo.SYSTEM_UNAVAILABLE, e.getMessage(), requestId, requestType, null, keyId, this.responseProt);           
+        if (raContext == null || raContext.pkiMessage != crmfreq.getPKIMessage()) {
+            final int eeProfileId;        // The endEntityProfile to be used when adding users in RA mode.
+            final String certProfileName;  // The certificate profile to use when adding users in RA mode.
+            final int certProfileId;
+            final int caId; // The CA to user when adding users in RA mode
+            try {
+                eeProfileId = getUsedEndEntityProfileId(keyId);
+                caId = getUsedCaId(keyId, eeProfileId);
+                certProfileName = getUsedCertProfileName(keyId, eeProfileId);
+                certProfileId = getUsedCertProfileId(certProfileName);
+            } catch (CADoesntExistsException e) {
+                LOG.info(INTRES.getLocalizedMessage(CMP_ERRORGENERAL, e.getMessage()), e);
+                return CmpMessageHelper.createErrorMessage(crmfreq, FailInfo.INCORRECT_DATA, e.getMessage(), requestId, requestType, null, keyId, this.responseProt);
+            }  catch (NotFoundException | EndEntityProfileNotFoundException e) {
+                final String errMsg = INTRES.getLocalizedMessage(CMP_ERRORGENERAL, e.getMessage());
+                LOG.info(errMsg, e);
+                // In case an EE profile or a cert profiles, or a CA can not be found, this is a bad configuration or database is down. 
+                // In either case the system is unavailable due to CMP server, so client should try again at some later point
+                return CmpMessageHelper.createErrorMessage(crmfreq, FailInfo.SYSTEM_UNAVAILABLE, e.getMessage(), requestId, requestType, null, keyId, this.responseProt);           
+            }
+            //Check the request's authenticity
+            CAInfo cainfo = this.caSession.getCAInfoInternal(caId, null, true);
+            final VerifyPKIMessage messageVerifyer = new VerifyPKIMessage(cainfo, this.confAlias, admin, caSession, 
+                    endEntityAccessSession, certStoreSession, authorizationSession, endEntityProfileSession, certificateProfileSession,
+                    authenticationProviderSession, endEntityManagementSession, this.cmpConfiguration);
+            ICMPAuthenticationModule authenticationModule = messageVerifyer.getUsedAuthenticationModule(crmfreq.getPKIMessage(),  null,  authenticated);
+            if(authenticationModule == null) {
+                String errmsg = messageVerifyer.getErrorMessage();
+                LOG.info(errmsg);
+                return CmpMessageHelper.createUnprotectedErrorMessage(crmfreq, FailInfo.BAD_REQUEST, errmsg);
+            }
+            raContext = new RaContext(crmfreq.getPKIMessage(), eeProfileId, certProfileName, certProfileId, caId, authenticationModule);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Using the CA, profiles and authentication already resolved for certificate request " + crmfreq.getRequestIndex() + " of the message.");
         }
+        final int eeProfileId = raContext.eeProfileId;
+        final String certProfileName = raContext.certProfileName;
+        final int certProfileId = raContext.certProfileId;
+        final int caId = raContext.caId;
+        final ICMPAuthenticationModule authenticationModule = raContext.authenticationModule;
 
         ResponseMessage resp = null;
-        //Check the request's authenticity
-        CAInfo cainfo = this.caSession.getCAInfoInternal(caId, null, true);
-        final VerifyPKIMessage messageVerifyer = new VerifyPKIMessage(cainfo, this.confAlias, admin, caSession, 
-                endEntityAccessSession, certStoreSession, authorizationSession, endEntityProfileSession, certificateProfileSession,
-                authenticationProviderSession, endEntityManagementSession, this.cmpConfiguration);
-        ICMPAuthenticationModule authenticationModule = messageVerifyer.getUsedAuthenticationModule(crmfreq.getPKIMessage(),  null,  authenticated);
-        if(authenticationModule == null) {
-            String errmsg = messageVerifyer.getErrorMessage();
-            LOG.info(errmsg);
-            return CmpMessageHelper.createUnprotectedErrorMessage(crmfreq, FailInfo.BAD_REQUEST, errmsg);
-        }
-        
         try {
 			// Create a username and password and register the new user in EJBCA
 			final UsernameGenerator gen = UsernameGenerator.getInstance(this.usernameGenParams);
@@ -12,24 +12,18 @@
  *************************************************************************/
 package org.ejbca.util;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import org.cesecore.internal.CacheStatistics;
+import org.cesecore.internal.LoadingCache;
 
 /** A simple object cache that can be used to cache object for a limited time. By default object are cached for 5 seconds.
- * Uses synchronized collections.
+ * Built on {@link LoadingCache}, so lookups never lock.
  * 
  * @version $Id$
  */
 public class ObjectCache<K,V> {
 
-	/** The objects */
-	private final Map<K,V> objects;
-	/** map holding expire times for the object, so we know when we should not cache them any more */
-	private final Map<K, Long> expire;
-
-	/** expiration time in milliseconds*/
-	private long expireTime;
+	/** The objects, with expire times so we know when we should not cache them any more */
+	private final LoadingCache<K,V> objects;
 
 	/**
 	 * Constructor with default expire of 5 seconds.
@@ -43,15 +37,21 @@ public class ObjectCache<K,V> {
 	 * @param expireTime expiration time in milliseconds
 	 */
 	public ObjectCache(final long expireTime) {
-		this.objects = Collections.synchronizedMap(new HashMap<K,V>());
-		this.expire = Collections.synchronizedMap(new HashMap<K,Long>());
-		this.expireTime = expireTime;
+		this(expireTime, 0);
+	}
+
+	/**
+	 * Constructor with expire and size limit as arguments.
+	 * @param expireTime expiration time in milliseconds
+	 * @param maxSize maximum number of cached objects, the least recently used are removed first. 0 means no limit.
+	 */
+	public ObjectCache(final long expireTime, final int maxSize) {
+		this.objects = new LoadingCache<K,V>(expireTime, -1, maxSize);
 	}
 
 	/** empties the cache completely */
-	public synchronized void emptyCache() {
+	public void emptyCache() {
 		this.objects.clear();
-		this.expire.clear();
 	}
 	/**
 	 * Put an object into the cache, the expiration time will be set.
@@ -61,7 +61,6 @@ public class ObjectCache<K,V> {
 	 */
 	public void put(final K key, final V o) {
 		this.objects.put(key, o);
-		this.expire.put(key, Long.valueOf(System.currentTimeMillis() + expireTime));
 	}
 
 	/**
@@ -71,16 +70,11 @@ public class ObjectCache<K,V> {
 	 * @return the cached object
 	 */
 	public V get(final K key) {
-		final Long expiresAt = this.expire.get(key);
-		V ret = null;
-		if (expiresAt != null) {
-			if (System.currentTimeMillis() < expiresAt) {
-				return this.objects.get(key);
-			} else {
-				this.objects.remove(key);
-				this.expire.remove(key);				
-			}
-		}
-		return ret;
+		return this.objects.getIfPresent(key);
+	}
+
+	/** @return the hit, miss and eviction counters of this cache */
+	public CacheStatistics getStatistics() {
+		return this.objects.getStatistics();
 	}
 }
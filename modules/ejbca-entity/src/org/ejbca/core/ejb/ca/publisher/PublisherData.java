@@ -14,7 +14,6 @@
 package org.ejbca.core.ejb.ca.publisher;
 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.List;
 
@@ -31,6 +30,7 @@ import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
 import org.cesecore.util.QueryResultWrapper;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
 
@@ -116,18 +116,11 @@ public class PublisherData extends ProtectedData implements Serializable {
 		// We must base64 encode string for UTF safety
         HashMap a = new Base64PutHashMap();
 		a.putAll((HashMap)publisher.saveData());
-		java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-		java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-		encoder.writeObject(a);
-		encoder.close();
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Publisher data: \n" + baos.toString("UTF8"));
-            }
-            setData(baos.toString("UTF8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+		final String data = DataMapSerializer.encode(a);
+        if (log.isDebugEnabled()) {
+            log.debug("Publisher data: \n" + data);
         }
+        setData(data);
 		this.publisher = publisher;
 		setUpdateCounter(getUpdateCounter() + 1);
 	}
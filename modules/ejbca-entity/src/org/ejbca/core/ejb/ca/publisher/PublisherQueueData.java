@@ -16,6 +16,7 @@ package org.ejbca.core.ejb.ca.publisher;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -26,9 +27,11 @@ import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
+import javax.persistence.TypedQuery;
 import javax.persistence.Transient;
 
 import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
@@ -72,6 +75,8 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     private int publishType;
     private String fingerprint;
     private int publisherId;
+    private String claimOwner;
+    private Long claimExpireTime;
     private String volatileData;
 	private int rowVersion = 0;
 	private String rowProtection;
@@ -144,6 +149,19 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     public int getPublisherId() { return publisherId; }
     public void setPublisherId(int publisherId) { this.publisherId = publisherId; }
 
+    /**
+     * Identifies the thread that is processing this entry, when the queue is processed by several threads or nodes.
+     * Null if the entry has not been claimed.
+     */
+    //@Column
+    public String getClaimOwner() { return claimOwner; }
+    public void setClaimOwner(String claimOwner) { this.claimOwner = claimOwner; }
+
+    /** Time when the claim of {@link #getClaimOwner()} expires, and the entry can be claimed by another thread. Null if the entry has not been claimed. */
+    //@Column
+    public Long getClaimExpireTime() { return claimExpireTime; }
+    public void setClaimExpireTime(Long claimExpireTime) { this.claimExpireTime = claimExpireTime; }
+
     //@Column @Lob
     public String getVolatileData() { return volatileData; }
     public void setVolatileData(String volatileData) { this.volatileData = volatileData; }
@@ -228,6 +246,7 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     protected String getProtectString(final int version) {
         final ProtectionStringBuilder build = new ProtectionStringBuilder();
         // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
+        // claimOwner and claimExpireTime only decide who processes the entry, and are updated in bulk when entries are claimed
         build.append(getPk()).append(getTimeCreated()).append(getLastUpdate()).append(getPublishStatus());
         build.append(getTryCounter()).append(getPublishType()).append(getFingerprint()).append(getPublisherId()).append(getVolatileData());
         return build.toString();
@@ -294,6 +313,97 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     	return query.getResultList();
     }
 
+    /**
+     * Finds the oldest pending entries for a publisher that are not claimed, or whose claim has expired.
+     *
+     * @return the primary keys of at most maxRows entries
+     */
+    public static List<String> findPksToClaim(EntityManager entityManager, int publisherId, long now, int maxRows) {
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.pk FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND a.publishStatus=:publishStatus"
+                + " AND (a.claimExpireTime IS NULL OR a.claimExpireTime<:now) ORDER BY a.timeCreated", String.class);
+        query.setParameter("publisherId", publisherId);
+        query.setParameter("publishStatus", PublisherConst.STATUS_PENDING);
+        query.setParameter("now", now);
+        query.setMaxResults(maxRows);
+        return query.getResultList();
+    }
+
+    /**
+     * Claims the given entries, except those that another thread has claimed since they were found with
+     * {@link #findPksToClaim(EntityManager, int, long, int)}. The database only lets one of several concurrent transactions update a row,
+     * and the others will no longer match the condition, so two threads or nodes never claim the same entry.
+     *
+     * @return the number of entries that were claimed
+     */
+    public static int claim(EntityManager entityManager, Collection<String> pks, String claimOwner, long claimExpireTime, long now) {
+        final Query query = entityManager.createQuery("UPDATE PublisherQueueData a SET a.claimOwner=:claimOwner, a.claimExpireTime=:claimExpireTime,"
+                + " a.rowVersion=a.rowVersion+1 WHERE a.pk IN (:pks) AND (a.claimExpireTime IS NULL OR a.claimExpireTime<:now)");
+        query.setParameter("claimOwner", claimOwner);
+        query.setParameter("claimExpireTime", claimExpireTime);
+        query.setParameter("pks", pks);
+        query.setParameter("now", now);
+        return query.executeUpdate();
+    }
+
+    /** @return the entries among the given ones that are claimed by claimOwner */
+    public static List<PublisherQueueData> findClaimed(EntityManager entityManager, Collection<String> pks, String claimOwner) {
+        final TypedQuery<PublisherQueueData> query = entityManager.createQuery(
+                "SELECT a FROM PublisherQueueData a WHERE a.pk IN (:pks) AND a.claimOwner=:claimOwner ORDER BY a.timeCreated", PublisherQueueData.class);
+        query.setParameter("pks", pks);
+        query.setParameter("claimOwner", claimOwner);
+        return query.getResultList();
+    }
+
+    /** Removes the given entries with a single statement. */
+    public static int removeByPks(EntityManager entityManager, Collection<String> pks) {
+        final Query query = entityManager.createQuery("DELETE FROM PublisherQueueData a WHERE a.pk IN (:pks)");
+        query.setParameter("pks", pks);
+        return query.executeUpdate();
+    }
+
+    /**
+     * Updates claimed entries after an attempt to publish them, and releases the claim so that they can be claimed again.
+     *
+     * @param publishStatus new status from PublisherConst.STATUS_SUCCESS etc, or -1 to keep the status
+     * @param incrementTryCounter true to count one more try to publish the entries
+     */
+    public static void updateClaimed(EntityManager entityManager, Collection<String> pks, int publishStatus, boolean incrementTryCounter) {
+        final long now = System.currentTimeMillis();
+        if (CesecoreConfiguration.useDatabaseIntegrityProtection("PublisherQueueData")) {
+            // Status, try counter and update time are integrity protected, so each row must be protected again
+            for (final String pk : pks) {
+                final PublisherQueueData data = findByPk(entityManager, pk);
+                if (data != null) {
+                    if (publishStatus > 0) {
+                        data.setPublishStatus(publishStatus);
+                    }
+                    if (incrementTryCounter) {
+                        data.setTryCounter(data.getTryCounter() + 1);
+                    }
+                    data.setLastUpdate(now);
+                    data.setClaimOwner(null);
+                    data.setClaimExpireTime(null);
+                }
+            }
+        } else {
+            final Query query = entityManager.createQuery("UPDATE PublisherQueueData a SET "
+                    + (publishStatus > 0 ? "a.publishStatus=" + publishStatus + ", " : "")
+                    + (incrementTryCounter ? "a.tryCounter=a.tryCounter+1, " : "")
+                    + "a.lastUpdate=:now, a.claimOwner=NULL, a.claimExpireTime=NULL, a.rowVersion=a.rowVersion+1 WHERE a.pk IN (:pks)");
+            query.setParameter("now", now);
+            query.setParameter("pks", pks);
+            query.executeUpdate();
+        }
+    }
+
+    /** Releases the claim of the given entries without updating them, so that they can be claimed again right away. */
+    public static int releaseClaims(EntityManager entityManager, Collection<String> pks) {
+        final Query query = entityManager.createQuery("UPDATE PublisherQueueData a SET a.claimOwner=NULL, a.claimExpireTime=NULL,"
+                + " a.rowVersion=a.rowVersion+1 WHERE a.pk IN (:pks)");
+        query.setParameter("pks", pks);
+        return query.executeUpdate();
+    }
+
 	/** @return return the count. */
 	public static long findCountOfPendingEntriesForPublisher(EntityManager entityManager, int publisherId) {
 		Query query = entityManager.createQuery("SELECT COUNT(a) FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND publishStatus=" + PublisherConst.STATUS_PENDING);
@@ -245,4 +245,21 @@ public class BlacklistData extends ProtectedData implements Serializable {
         query.setParameter("ids", ids);
         return query.getResultList();
     }
+
+    /** @return the number of entries of the type, the sum of their ids and the sum of their update counters, as three Long values (the sums are null if there are no entries) */
+    public static Object[] findCountAndSumsByType(EntityManager entityManager, final String type) {
+        final Query query = entityManager.createQuery("SELECT COUNT(a), SUM(a.id), SUM(a.updateCounter) FROM BlacklistData a WHERE a.type=:type");
+        query.setParameter("type", type);
+        return (Object[]) query.getSingleResult();
+    }
+
+    /** @return up to maxResults id, value and update counter triples of the type with ids greater than afterId, ordered by id */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> findIdsValuesAndUpdateCountersByType(EntityManager entityManager, final String type, final int afterId, final int maxResults) {
+        final Query query = entityManager.createQuery("SELECT a.id, a.value, a.updateCounter FROM BlacklistData a WHERE a.type=:type AND a.id>:afterId ORDER BY a.id");
+        query.setParameter("type", type);
+        query.setParameter("afterId", afterId);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
 }
@@ -14,7 +14,6 @@
 package org.ejbca.core.ejb.services;
 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 
 import javax.persistence.Entity;
@@ -32,6 +31,7 @@ import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.internal.UpgradeableDataHashMap;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.DataMapSerializer;
 import org.ejbca.core.model.services.ServiceConfiguration;
 
 /**
@@ -118,14 +118,7 @@ public class ServiceData extends ProtectedData implements Serializable {
      */
     @Transient
     public ServiceConfiguration getServiceConfiguration() {
-    	java.beans.XMLDecoder decoder;
-    	try {
-    		decoder = new java.beans.XMLDecoder(new java.io.ByteArrayInputStream(getData().getBytes("UTF8")));
-    	} catch (UnsupportedEncodingException e) {
-    		throw new RuntimeException(e);
-    	}
-    	HashMap<?, ?> h = (HashMap<?, ?>) decoder.readObject();
-    	decoder.close();
+    	HashMap<?, ?> h = (HashMap<?, ?>) DataMapSerializer.decode(getData());
     	// Handle Base64 encoded string values
     	HashMap<?, ?> data = new Base64GetHashMap(h);
     	float oldversion = ((Float) data.get(UpgradeableDataHashMap.VERSION)).floatValue();
@@ -160,18 +153,11 @@ public class ServiceData extends ProtectedData implements Serializable {
         // We must base64 encode string for UTF safety
         HashMap<Object, Object> a = new Base64PutHashMap();
         a.putAll((HashMap<Object, Object>)serviceConfiguration.saveData());
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-        encoder.writeObject(a);
-        encoder.close();
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Service data: \n" + baos.toString("UTF8"));
-            }
-            setData(baos.toString("UTF8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
+        final String data = DataMapSerializer.encode(a);
+        if (log.isDebugEnabled()) {
+            log.debug("Service data: \n" + data);
         }
+        setData(data);
     }
 
     //
@@ -17,6 +17,7 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.Remote;
 
@@ -165,4 +166,13 @@ public interface InternalCertificateStoreSessionRemote {
 
     /** Removes all limited certificates (without certificates and certificate details) that matches the given issuer. */
     void removeLimitedCertificatesByIssuer(String issuerDN);
+
+    /** @see org.cesecore.certificates.certificate.CertificateStoreSessionLocal#getStatuses(String, Collection) */
+    Map<BigInteger, CertificateStatus> getStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /** @see org.cesecore.certificates.certificate.CertificateStoreSessionLocal#getCertificatesAndStatuses(String, Collection) */
+    Map<BigInteger, CertificateStatusHolder> getCertificatesAndStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /** @see org.cesecore.certificates.certificate.CertificateDataSessionLocal#findByIssuerDNSerialNumbers(String, Collection) */
+    List<CertificateData> findByIssuerDNSerialNumbers(String issuerDN, Collection<String> serialNumbers);
 }
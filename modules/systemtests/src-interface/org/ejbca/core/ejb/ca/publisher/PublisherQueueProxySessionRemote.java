@@ -13,6 +13,7 @@
 package org.ejbca.core.ejb.ca.publisher;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.ejb.CreateException;
 import javax.ejb.Remote;
@@ -46,4 +47,8 @@ public interface PublisherQueueProxySessionRemote {
     
     void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, int publisherId, BasePublisher publisher);
 
+    List<PublisherQueueData> claimPendingEntries(int publisherId, String claimOwner, int limit);
+
+    void completeClaimedEntries(List<String> publishedPks, List<String> failedPks, List<String> unprocessedPks, boolean keepPublishedInQueue);
+
 }
@@ -73,6 +73,12 @@ public interface TestRaMasterApiProxySessionRemote {
      * @return returns true if an API of a certain type is available
      */
     boolean isBackendAvailable(Class<? extends RaMasterApi> apiType);
+
+    /**
+     * Searches for certificates over RaMasterApi.
+     * @see RaMasterApi#searchForCertificates(AuthenticationToken, RaCertificateSearchRequest)
+     */
+    RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken, RaCertificateSearchRequest raCertificateSearchRequest);
     
     /**
      * Generates a certificate. This variant is used from the Web Service interface.
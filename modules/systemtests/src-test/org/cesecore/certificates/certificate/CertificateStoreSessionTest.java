@@ -16,6 +16,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -37,6 +38,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.CreateException;
 import javax.ejb.EJBTransactionRolledbackException;
@@ -731,6 +733,78 @@ public class CertificateStoreSessionTest extends RoleUsingTestCase {
                 certificateStatus5.equals(CertificateStatus.NOT_AVAILABLE));
     }
 
+    /**
+     * Looks up statuses in bulk for a mix of active, revoked and missing certificates from two issuers, with more serial numbers than
+     * are sent in a single query.
+     */
+    @Test
+    public void testGetStatusesInBulk() throws Exception {
+        final String issuerA = "CN=CertificateStoreSessionTestBulkA";
+        final String issuerB = "CN=CertificateStoreSessionTestBulkB";
+        final List<X509Certificate> certificates = new ArrayList<>();
+        try {
+            // More than the 100 serial numbers per query used by CertificateStoreSessionBean
+            final List<BigInteger> sernosA = new ArrayList<>();
+            for (int i = 0; i < 105; i++) {
+                final X509Certificate certificate = storeSelfSignedCert(issuerA);
+                certificates.add(certificate);
+                sernosA.add(certificate.getSerialNumber());
+            }
+            final X509Certificate revokedA = certificates.get(50);
+            internalCertStoreSession.setRevokeStatus(alwaysAllowToken, revokedA, new Date(), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+            final X509Certificate activeB = storeSelfSignedCert(issuerB);
+            certificates.add(activeB);
+            final X509Certificate revokedB = storeSelfSignedCert(issuerB);
+            certificates.add(revokedB);
+            internalCertStoreSession.setRevokeStatus(alwaysAllowToken, revokedB, new Date(), RevokedCertInfo.REVOCATION_REASON_SUPERSEDED);
+            final BigInteger missing = new BigInteger("1234567890123456789");
+            sernosA.add(missing);
+            // A certificate from the other issuer should not be found
+            sernosA.add(activeB.getSerialNumber());
+
+            final Map<BigInteger, CertificateStatus> statusesA = internalCertStoreSession.getStatuses(issuerA, sernosA);
+            assertEquals("There should be a status for every serial number.", sernosA.size(), statusesA.size());
+            for (final X509Certificate certificate : certificates.subList(0, 105)) {
+                final CertificateStatus status = statusesA.get(certificate.getSerialNumber());
+                assertEquals("Bulk status should be the same as the single status.", certificateStoreSession.getStatus(issuerA, certificate.getSerialNumber()), status);
+                if (certificate == revokedA) {
+                    assertEquals(CertificateStatus.REVOKED, status);
+                    assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, status.revocationReason);
+                } else {
+                    assertEquals(CertificateStatus.OK, status);
+                }
+            }
+            assertEquals(CertificateStatus.NOT_AVAILABLE, statusesA.get(missing));
+            assertEquals("A certificate from another issuer should not be found.", CertificateStatus.NOT_AVAILABLE, statusesA.get(activeB.getSerialNumber()));
+
+            final Map<BigInteger, CertificateStatusHolder> holdersB = internalCertStoreSession.getCertificatesAndStatuses(issuerB,
+                    Arrays.asList(activeB.getSerialNumber(), revokedB.getSerialNumber(), missing, revokedA.getSerialNumber()));
+            assertEquals(4, holdersB.size());
+            assertEquals(CertificateStatus.OK, holdersB.get(activeB.getSerialNumber()).getCertificateStatus());
+            assertEquals(activeB, holdersB.get(activeB.getSerialNumber()).getCertificate());
+            assertEquals(CertificateStatus.REVOKED, holdersB.get(revokedB.getSerialNumber()).getCertificateStatus());
+            assertEquals(RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, holdersB.get(revokedB.getSerialNumber()).getCertificateStatus().revocationReason);
+            assertEquals(revokedB, holdersB.get(revokedB.getSerialNumber()).getCertificate());
+            for (final BigInteger serno : Arrays.asList(missing, revokedA.getSerialNumber())) {
+                assertEquals(CertificateStatus.NOT_AVAILABLE, holdersB.get(serno).getCertificateStatus());
+                assertNull(holdersB.get(serno).getCertificate());
+            }
+
+            final List<CertificateData> rows = internalCertStoreSession.findByIssuerDNSerialNumbers(issuerB,
+                    Arrays.asList(activeB.getSerialNumber().toString(), revokedB.getSerialNumber().toString(), missing.toString(),
+                            revokedA.getSerialNumber().toString()));
+            assertEquals("Only the existing certificates of the issuer should be found.", 2, rows.size());
+            for (final CertificateData row : rows) {
+                assertEquals(issuerB, row.getIssuerDN());
+                assertTrue(row.getSerialNumber().equals(activeB.getSerialNumber().toString()) || row.getSerialNumber().equals(revokedB.getSerialNumber().toString()));
+            }
+        } finally {
+            for (final X509Certificate certificate : certificates) {
+                internalCertStoreSession.removeCertificate(certificate);
+            }
+        }
+    }
+
     @Test
     public void testLimitedCertificateDataFindByUsername() throws AuthorizationDeniedException {
         final String username = CertificateStoreSessionTest.class.getName()+"_NonExistent";
@@ -850,6 +924,16 @@ public class CertificateStoreSessionTest extends RoleUsingTestCase {
 //		assertTrue("Result returned", result.size()>0);
 //	}
 
+    /** Stores an active self-signed certificate, so that the issuer DN is the given DN. */
+    private X509Certificate storeSelfSignedCert(final String issuerDn) throws Exception {
+        final X509Certificate certificate = CertTools.genSelfCert(issuerDn, 1, null, keys.getPrivate(), keys.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, false);
+        internalCertStoreSession.storeCertificateNoAuth(alwaysAllowToken, certificate, USERNAME, "1234", CertificateConstants.CERT_ACTIVE,
+                CertificateConstants.CERTTYPE_ENDENTITY, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, EndEntityConstants.NO_END_ENTITY_PROFILE,
+                null, System.currentTimeMillis());
+        return certificate;
+    }
+
     private X509Certificate generateCert(final AuthenticationToken admin, final int status) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException,
             SignatureException, InvalidKeyException, CreateException, AuthorizationDeniedException, IllegalStateException, OperatorCreationException, CertificateException, IOException {
         // create a new self signed certificate
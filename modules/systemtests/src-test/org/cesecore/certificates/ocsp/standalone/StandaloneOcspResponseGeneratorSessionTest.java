@@ -1359,6 +1359,95 @@ public class StandaloneOcspResponseGeneratorSessionTest {
         assertNull("Nonce was received in spite of being globally disabled.", retrievedNonce);
     }
     
+    /**
+     * Tests that a response for a certificate that does not exist, answered as good from the revocation index, is not pre-signed and
+     * then returned for a URL where non existing certificates should be answered as unknown.
+     */
+    @Test
+    public void testPreSignedResponseForNonExistingCertificate() throws Exception {
+        final String originalPreSigned = cesecoreConfigurationProxySession.getConfigurationValue(OcspConfiguration.PRESIGNED_RESPONSES_ENABLED);
+        final String originalRevocationIndex = cesecoreConfigurationProxySession.getConfigurationValue("revocationindex.enabled");
+        final String originalNonExistingIsBad = cesecoreConfigurationProxySession.getConfigurationValue(OcspConfiguration.NON_EXISTING_IS_BAD_URI + "1");
+        cesecoreConfigurationProxySession.setConfigurationValue(OcspConfiguration.PRESIGNED_RESPONSES_ENABLED, "true");
+        cesecoreConfigurationProxySession.setConfigurationValue("revocationindex.enabled", "true");
+        cesecoreConfigurationProxySession.setConfigurationValue(OcspConfiguration.NON_EXISTING_IS_BAD_URI + "1", ".*/bad");
+        try {
+            OcspTestUtils.deleteCa(authenticationToken, x509ca);
+            activateKeyBinding(internalKeyBindingId);
+            final OcspKeyBinding ocspKeyBinding = (OcspKeyBinding) internalKeyBindingMgmtSession.getInternalKeyBinding(authenticationToken, internalKeyBindingId);
+            ocspKeyBinding.setNonExistingGood(true);
+            internalKeyBindingMgmtSession.persistInternalKeyBinding(authenticationToken, ocspKeyBinding);
+            ocspResponseGeneratorSession.reloadOcspSigningCache();
+            // Requests without extensions are the ones that may be answered with pre-signed responses
+            final OCSPReqBuilder ocspReqBuilder = new OCSPReqBuilder();
+            ocspReqBuilder.addRequest(new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), caCertificate, new BigInteger("1234567890abcdef", 16)));
+            final OCSPReq ocspRequest = ocspReqBuilder.build();
+            for (int i = 0; i < 2; i++) {
+                final OCSPResp response = sendRequest(ocspRequest, "http://localhost/ocsp/good");
+                assertEquals("Response status not zero.", OCSPResp.SUCCESSFUL, response.getStatus());
+                final SingleResp[] singleResponses = ((BasicOCSPResp) response.getResponseObject()).getResponses();
+                assertEquals("A non existing certificate should be good for this URL.", CertificateStatus.GOOD, singleResponses[0].getCertStatus());
+            }
+            final OCSPResp response = sendRequest(ocspRequest, "http://localhost/ocsp/bad");
+            assertEquals("Response status not zero.", OCSPResp.SUCCESSFUL, response.getStatus());
+            final SingleResp[] singleResponses = ((BasicOCSPResp) response.getResponseObject()).getResponses();
+            assertTrue("A non existing certificate should be unknown for this URL, and not answered with the response for the other URL.",
+                    singleResponses[0].getCertStatus() instanceof UnknownStatus);
+        } finally {
+            cesecoreConfigurationProxySession.setConfigurationValue(OcspConfiguration.PRESIGNED_RESPONSES_ENABLED, originalPreSigned);
+            cesecoreConfigurationProxySession.setConfigurationValue("revocationindex.enabled", originalRevocationIndex);
+            cesecoreConfigurationProxySession.setConfigurationValue(OcspConfiguration.NON_EXISTING_IS_BAD_URI + "1", originalNonExistingIsBad);
+        }
+    }
+
+    /**
+     * Tests a request for many certificates, whose statuses are looked up in bulk. The request has good, revoked and non existing
+     * certificates, and more certificate IDs than are looked up in a single query.
+     */
+    @Test
+    public void testMultipleCertificatesInRequest() throws Exception {
+        final KeyPair keyPair = KeyTools.genKeys("512", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509Certificate goodCertificate = issueOcspAuthenticationCertificate(TESTCLASSNAME + "Good", keyPair.getPublic());
+        final X509Certificate revokedCertificate = issueOcspAuthenticationCertificate(TESTCLASSNAME + "Revoked", keyPair.getPublic());
+        try {
+            internalCertificateStoreSession.setRevokeStatus(authenticationToken, revokedCertificate, new Date(), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+            OcspTestUtils.deleteCa(authenticationToken, x509ca);
+            activateKeyBinding(internalKeyBindingId);
+            ocspResponseGeneratorSession.reloadOcspSigningCache();
+            final OCSPReqBuilder ocspReqBuilder = new OCSPReqBuilder();
+            ocspReqBuilder.addRequest(new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), caCertificate, goodCertificate.getSerialNumber()));
+            ocspReqBuilder.addRequest(new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), caCertificate, revokedCertificate.getSerialNumber()));
+            ocspReqBuilder.addRequest(new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), caCertificate, ocspSigningCertificate.getSerialNumber()));
+            final List<BigInteger> nonExistingSerialNumbers = new ArrayList<>();
+            final SecureRandom random = new SecureRandom();
+            for (int i = 0; i < 110; i++) {
+                final BigInteger serialNumber = new BigInteger(64, random);
+                nonExistingSerialNumbers.add(serialNumber);
+                ocspReqBuilder.addRequest(new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), caCertificate, serialNumber));
+            }
+            final OCSPResp response = sendRequest(ocspReqBuilder.build());
+            assertEquals("Response status not zero.", OCSPResp.SUCCESSFUL, response.getStatus());
+            final SingleResp[] singleResponses = ((BasicOCSPResp) response.getResponseObject()).getResponses();
+            assertEquals("There should be a response for every certificate ID.", 113, singleResponses.length);
+            for (final SingleResp singleResponse : singleResponses) {
+                final BigInteger serialNumber = singleResponse.getCertID().getSerialNumber();
+                if (serialNumber.equals(goodCertificate.getSerialNumber()) || serialNumber.equals(ocspSigningCertificate.getSerialNumber())) {
+                    assertEquals("Status is not null (good)", CertificateStatus.GOOD, singleResponse.getCertStatus());
+                } else if (serialNumber.equals(revokedCertificate.getSerialNumber())) {
+                    assertTrue("Status is not RevokedStatus", singleResponse.getCertStatus() instanceof RevokedStatus);
+                    assertEquals("Wrong revocation reason", RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+                            ((RevokedStatus) singleResponse.getCertStatus()).getRevocationReason());
+                } else {
+                    assertTrue("Response for a serial number that was not requested.", nonExistingSerialNumbers.contains(serialNumber));
+                    assertTrue("Status is not UnknownStatus", singleResponse.getCertStatus() instanceof UnknownStatus);
+                }
+            }
+        } finally {
+            internalCertificateStoreSession.removeCertificate(goodCertificate);
+            internalCertificateStoreSession.removeCertificate(revokedCertificate);
+        }
+    }
+
     // Trusting a certificateSerialNumber of null means any certificate from the CA
     private void addTrustEntry(InternalKeyBinding internalKeyBinding, int caId, BigInteger certificateSerialNumber) {
         final List<InternalKeyBindingTrustEntry> trustList = new ArrayList<InternalKeyBindingTrustEntry>(internalKeyBinding.getTrustedCertificateReferences());
@@ -1433,13 +1522,18 @@ public class StandaloneOcspResponseGeneratorSessionTest {
     
     /** Perform OCSP requests over remote EJB interface and assert the the response is not null. */
     private OCSPResp sendRequest(final OCSPReq ocspRequest) throws MalformedRequestException, IOException, OCSPException {
+        return sendRequest(ocspRequest, null);
+    }
+
+    /** Perform OCSP requests over remote EJB interface, as if sent to the given URL, and assert the the response is not null. */
+    private OCSPResp sendRequest(final OCSPReq ocspRequest, final String requestUrl) throws MalformedRequestException, IOException, OCSPException {
         final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
         // Create the transaction and audit logger for this transaction.
         ConfigurationHolder.updateConfiguration("ocsp.trx-log", "true");
         final TransactionLogger transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), "");
         final AuditLogger auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), "");
-        final OcspResponseInformation responseInformation = ocspResponseGeneratorSession.getOcspResponse(ocspRequest.getEncoded(), null, "", null, null,
-                auditLogger, transactionLogger);
+        final OcspResponseInformation responseInformation = ocspResponseGeneratorSession.getOcspResponse(ocspRequest.getEncoded(), null, "", null,
+                requestUrl == null ? null : new StringBuffer(requestUrl), auditLogger, transactionLogger);
         byte[] responseBytes = responseInformation.getOcspResponse();
         assertNotNull("OCSP responder replied null", responseBytes);
         return new OCSPResp(responseBytes);
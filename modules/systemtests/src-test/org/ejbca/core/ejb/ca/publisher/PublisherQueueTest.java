@@ -20,10 +20,12 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.ejb.EJBTransactionRolledbackException;
 
@@ -404,6 +406,32 @@ public class PublisherQueueTest {
         assertEquals(2, actual[0]); // (~, ~) s = 2
     }
 
+    @Test
+    public void testClaimedEntriesAreNotClaimedAgain() throws Exception {
+        final int publisherId = 11119;
+        for (int i = 0; i < 3; i++) {
+            publisherQueueSession.addQueueData(publisherId, PublisherConst.PUBLISH_TYPE_CERT, "XX", null, PublisherConst.STATUS_PENDING);
+        }
+        final List<PublisherQueueData> first = publisherQueueSession.claimPendingEntries(publisherId, "testClaimedEntriesAreNotClaimedAgain1", 2);
+        assertEquals(2, first.size());
+        final List<PublisherQueueData> second = publisherQueueSession.claimPendingEntries(publisherId, "testClaimedEntriesAreNotClaimedAgain2", 2);
+        assertEquals("Only the entry that was not claimed already should be claimed.", 1, second.size());
+        assertTrue(!second.get(0).getPk().equals(first.get(0).getPk()) && !second.get(0).getPk().equals(first.get(1).getPk()));
+        assertEquals(0, publisherQueueSession.claimPendingEntries(publisherId, "testClaimedEntriesAreNotClaimedAgain3", 2).size());
+        // The first entry was published, the second failed and the third was not tried
+        final List<String> publishedPks = new ArrayList<>(Arrays.asList(first.get(0).getPk()));
+        final List<String> failedPks = new ArrayList<>(Arrays.asList(first.get(1).getPk()));
+        final List<String> unprocessedPks = new ArrayList<>(Arrays.asList(second.get(0).getPk()));
+        publisherQueueSession.completeClaimedEntries(publishedPks, failedPks, unprocessedPks, false);
+        final Collection<PublisherQueueData> pending = publisherQueueSession.getPendingEntriesForPublisher(publisherId);
+        assertEquals("The published entry should have been removed.", 2, pending.size());
+        for (final PublisherQueueData d : pending) {
+            assertEquals(d.getPk().equals(first.get(1).getPk()) ? 1 : 0, d.getTryCounter());
+        }
+        assertEquals("Completed entries should be possible to claim again.", 2,
+                publisherQueueSession.claimPendingEntries(publisherId, "testClaimedEntriesAreNotClaimedAgain4", 2).size());
+    }
+
     @After
     public void cleanUp() throws Exception {
         PublisherQueueProxySessionRemote publisherQueueSession = EjbRemoteHelper.INSTANCE.getRemoteSession(PublisherQueueProxySessionRemote.class, EjbRemoteHelper.MODULE_TEST);
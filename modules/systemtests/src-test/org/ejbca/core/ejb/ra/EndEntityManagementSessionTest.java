@@ -71,6 +71,7 @@ import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
 import org.cesecore.certificates.util.AlgorithmConstants;
 import org.cesecore.certificates.util.DnComponents;
+import org.cesecore.configuration.CesecoreConfigurationProxySessionRemote;
 import org.cesecore.configuration.GlobalConfigurationSessionRemote;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.keys.util.PublicKeyWrapper;
@@ -101,6 +102,8 @@ import org.ejbca.core.model.ca.publisher.PublisherConst;
 import org.ejbca.core.model.ca.publisher.PublisherExistsException;
 import org.ejbca.core.model.ca.publisher.PublisherQueueData;
 import org.ejbca.core.model.ca.publisher.PublisherQueueVolatileInformation;
+import org.ejbca.core.model.era.RaCertificateSearchRequest;
+import org.ejbca.core.model.era.TestRaMasterApiProxySessionRemote;
 import org.ejbca.core.model.ra.AlreadyRevokedException;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfile;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
@@ -151,6 +154,8 @@ public class EndEntityManagementSessionTest extends CaTestCase {
     private PublisherSessionRemote publisherSession = EjbRemoteHelper.INSTANCE.getRemoteSession(PublisherSessionRemote.class);
     private PublisherProxySessionRemote publisherProxySession = EjbRemoteHelper.INSTANCE.getRemoteSession(PublisherProxySessionRemote.class, EjbRemoteHelper.MODULE_TEST);
     private PublisherTestSessionRemote publisherTestSession = EjbRemoteHelper.INSTANCE.getRemoteSession(PublisherTestSessionRemote.class, EjbRemoteHelper.MODULE_TEST);
+    private CesecoreConfigurationProxySessionRemote cesecoreConfigurationProxySession = EjbRemoteHelper.INSTANCE.getRemoteSession(CesecoreConfigurationProxySessionRemote.class, EjbRemoteHelper.MODULE_TEST);
+    private TestRaMasterApiProxySessionRemote raMasterApiProxySession = EjbRemoteHelper.INSTANCE.getRemoteSession(TestRaMasterApiProxySessionRemote.class, EjbRemoteHelper.MODULE_TEST);
     private PublisherQueueProxySessionRemote publisherQueueSession = EjbRemoteHelper.INSTANCE.getRemoteSession(PublisherQueueProxySessionRemote.class, EjbRemoteHelper.MODULE_TEST);
 
     @BeforeClass
@@ -921,6 +926,51 @@ public class EndEntityManagementSessionTest extends CaTestCase {
         }
     }
 
+    /** Test that the certificates of a renamed end entity are found by the new username, and not the old one, through the search index. */
+    @Test
+    public void testRenameEndEntityWithCertsSearchIndex() throws Exception {
+        final String username1 = "testRenameEndEntitySearchIndexA";
+        final String username2 = "testRenameEndEntitySearchIndexB";
+        usernames.add(username1);
+        usernames.add(username2);
+        final String originalIndexEnabled = cesecoreConfigurationProxySession.getConfigurationValue("database.certificatesearchindex.enabled");
+        final String originalIndexSearch = cesecoreConfigurationProxySession.getConfigurationValue("database.certificatesearchindex.search");
+        cesecoreConfigurationProxySession.setConfigurationValue("database.certificatesearchindex.enabled", "true");
+        cesecoreConfigurationProxySession.setConfigurationValue("database.certificatesearchindex.search", "true");
+        String fingerprint = null;
+        try {
+            endEntityManagementSession.addUser(admin, username1, pwd, "C=SE, O=PrimeKey, CN=" + username1, null, null, true,
+                    EndEntityConstants.EMPTY_END_ENTITY_PROFILE, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, EndEntityTypes.ENDUSER.toEndEntityType(), SecConst.TOKEN_SOFT_P12, 0, caid);
+            final KeyPair keyPair = KeyTools.genKeys("512", AlgorithmConstants.KEYALGORITHM_RSA);
+            final X509Certificate x509Certificate = (X509Certificate) signSession.createCertificate(admin, username1, pwd, new PublicKeyWrapper(keyPair.getPublic()));
+            assertNotNull("Failed to issue certificate", x509Certificate);
+            fingerprint = CertTools.getFingerprintAsString(x509Certificate);
+            assertEquals("Certificate should be found by the username before the rename.", Arrays.asList(fingerprint), searchCertificatesByUsername(username1));
+            endEntityManagementSession.renameEndEntity(admin, username1, username2);
+            assertEquals("Certificate should be found by the new username.", Arrays.asList(fingerprint), searchCertificatesByUsername(username2));
+            assertTrue("Certificate should not be found by the old username.", searchCertificatesByUsername(username1).isEmpty());
+        } finally {
+            if (fingerprint!=null) {
+                internalCertStoreSession.removeCertificate(fingerprint);
+            }
+            cesecoreConfigurationProxySession.setConfigurationValue("database.certificatesearchindex.enabled", originalIndexEnabled);
+            cesecoreConfigurationProxySession.setConfigurationValue("database.certificatesearchindex.search", originalIndexSearch);
+        }
+    }
+
+    /** @return the fingerprints of the certificates of the test CA whose username starts with the given string */
+    private List<String> searchCertificatesByUsername(final String username) {
+        final RaCertificateSearchRequest request = new RaCertificateSearchRequest();
+        request.setCaIds(Arrays.asList(caid));
+        request.setUsernameSearchString(username);
+        request.setUsernameSearchExact(false);
+        final List<String> fingerprints = new ArrayList<>();
+        for (final CertificateDataWrapper cdw : raMasterApiProxySession.searchForCertificates(admin, request).getCdws()) {
+            fingerprints.add(cdw.getCertificateData().getFingerprint());
+        }
+        return fingerprints;
+    }
+
     /** Test revocation of an end entity. */
     @Test
     public void testRevokeEndEntity() throws Exception {
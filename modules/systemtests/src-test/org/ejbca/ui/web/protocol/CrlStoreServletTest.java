@@ -165,5 +165,17 @@ public class CrlStoreServletTest extends CaTestCase {
         if ( !Arrays.areEqual(fromBean, fromURL) ) {
             pw.println(" CRL from URL and bean are not equal for '"+sURI+"'.");
         }
+        // A client that already has the CRL should not get it again
+        final String eTag = connection.getHeaderField("ETag");
+        if ( eTag==null ) {
+            pw.println(" No ETag returned for '"+sURI+"'.");
+            return;
+        }
+        final HttpURLConnection conditionalConnection = (HttpURLConnection)new URI(sURI).toURL().openConnection();
+        conditionalConnection.setRequestProperty("If-None-Match", eTag);
+        conditionalConnection.connect();
+        if ( conditionalConnection.getResponseCode()!=HttpURLConnection.HTTP_NOT_MODIFIED ) {
+            pw.println(" Conditional request with '"+sURI+"' did not return 304. responseCode="+conditionalConnection.getResponseCode());
+        }
     }
 }
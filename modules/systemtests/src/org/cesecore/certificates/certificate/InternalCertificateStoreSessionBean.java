@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -347,4 +348,19 @@ public class InternalCertificateStoreSessionBean implements InternalCertificateS
             return null;
         }
     }
+
+    @Override
+    public Map<BigInteger, CertificateStatus> getStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        return certStore.getStatuses(issuerDN, sernos);
+    }
+
+    @Override
+    public Map<BigInteger, CertificateStatusHolder> getCertificatesAndStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        return certStore.getCertificatesAndStatuses(issuerDN, sernos);
+    }
+
+    @Override
+    public List<CertificateData> findByIssuerDNSerialNumbers(final String issuerDN, final Collection<String> serialNumbers) {
+        return certificateDataSession.findByIssuerDNSerialNumbers(issuerDN, serialNumbers);
+    }
 }
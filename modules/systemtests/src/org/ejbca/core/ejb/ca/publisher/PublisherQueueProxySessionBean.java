@@ -13,6 +13,7 @@
 package org.ejbca.core.ejb.ca.publisher;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.ejb.CreateException;
 import javax.ejb.EJB;
@@ -84,6 +85,16 @@ public class PublisherQueueProxySessionBean implements PublisherQueueProxySessio
     public void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, int publisherId, BasePublisher publisher) {
         queueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(admin, publisherId, publisher);
     }
+
+    @Override
+    public List<PublisherQueueData> claimPendingEntries(int publisherId, String claimOwner, int limit) {
+        return queueSession.claimPendingEntries(publisherId, claimOwner, limit);
+    }
+
+    @Override
+    public void completeClaimedEntries(List<String> publishedPks, List<String> failedPks, List<String> unprocessedPks, boolean keepPublishedInQueue) {
+        queueSession.completeClaimedEntries(publishedPks, failedPks, unprocessedPks, keepPublishedInQueue);
+    }
     
 
     
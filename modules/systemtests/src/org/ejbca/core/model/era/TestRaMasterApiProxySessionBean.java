@@ -57,6 +57,11 @@ public class TestRaMasterApiProxySessionBean implements TestRaMasterApiProxySess
         return raMasterApiProxyBean.isBackendAvailable(apiType);
     }
 
+    @Override
+    public RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken, RaCertificateSearchRequest raCertificateSearchRequest) {
+        return raMasterApiProxyBean.searchForCertificates(authenticationToken, raCertificateSearchRequest);
+    }
+
     @Override
     public byte[] createCertificateWS(AuthenticationToken authenticationToken, UserDataVOWS userdata, String requestData, int requestType,
             String hardTokenSN, String responseType)